@@ -23,6 +23,7 @@ repositories {
 dependencies {
     implementation("org.springframework.boot:spring-boot-starter-webflux")
     implementation("com.google.guava:guava:28.2-jre")
+    implementation("org.hdrhistogram:HdrHistogram:2.1.12")
     testImplementation("org.springframework.boot:spring-boot-starter-test")
     testImplementation("io.projectreactor:reactor-test")
     testImplementation("org.mockito:mockito-core:4.8.0")
@@ -37,6 +38,7 @@ dependencies {
     implementation("io.grpc:grpc-netty-shaded:1.76.0")
     implementation("io.grpc:grpc-protobuf:1.76.0")
     implementation("io.grpc:grpc-stub:1.76.0")
+    testImplementation("io.grpc:grpc-inprocess:1.76.0")
     compileOnly("org.apache.tomcat:annotations-api:6.0.53")
 }
 
@@ -1,7 +1,11 @@
 package com.weilai.portfolio;
 
+import com.weilai.portfolio.grpc.server.GrpcServerSettings;
 import com.weilai.portfolio.grpc.server.GrpcServerTemplate;
 import com.weilai.portfolio.grpc.server.PortfolioValuationServer;
+import com.weilai.portfolio.grpc.server.ValuationSubscriptionHub;
+import com.weilai.portfolio.infrastructure.ingest.ValuationIngestor;
+import com.weilai.portfolio.infrastructure.metrics.PipelineMetrics;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
@@ -14,11 +18,29 @@ public class PortfolioReceiverApplication implements CommandLineRunner {
 
     @Value("${grpc.server.port:50052}")
     private int grpcPort;
+    @Value("${grpc.server.executor:FIXED}")
+    private GrpcServerSettings.ExecutorMode executorMode;
+    @Value("${grpc.server.threads:2}")
+    private int executorThreads;
+    @Value("${grpc.server.boss-threads:0}")
+    private int bossThreads;
+    @Value("${grpc.server.worker-threads:0}")
+    private int workerThreads;
+    @Value("${grpc.server.max-inbound-message-size:4194304}")
+    private int maxInboundMessageSize;
+    @Value("${grpc.server.flow-control-window:1048576}")
+    private int flowControlWindow;
 
-    private final com.weilai.portfolio.infrastructure.subscriber.PortfolioValuationSubscriber valuationSubscriber;
+    private final ValuationIngestor valuationIngestor;
+    private final ValuationSubscriptionHub subscriptionHub;
+    private final PipelineMetrics pipelineMetrics;
 
-    public PortfolioReceiverApplication(com.weilai.portfolio.infrastructure.subscriber.PortfolioValuationSubscriber valuationSubscriber) {
-        this.valuationSubscriber = valuationSubscriber;
+    public PortfolioReceiverApplication(ValuationIngestor valuationIngestor,
+                                        ValuationSubscriptionHub subscriptionHub,
+                                        PipelineMetrics pipelineMetrics) {
+        this.valuationIngestor = valuationIngestor;
+        this.subscriptionHub = subscriptionHub;
+        this.pipelineMetrics = pipelineMetrics;
     }
 
     public static void main(String[] args) {
@@ -31,8 +53,15 @@ public class PortfolioReceiverApplication implements CommandLineRunner {
     }
 
     private void startGrpcServer() throws IOException, InterruptedException {
-        PortfolioValuationServer valuationServer = new PortfolioValuationServer(valuationSubscriber);
-        GrpcServerTemplate serverWrapper = new GrpcServerTemplate(grpcPort, valuationServer);
+        PortfolioValuationServer valuationServer = new PortfolioValuationServer(valuationIngestor, subscriptionHub, pipelineMetrics);
+        GrpcServerSettings settings = new GrpcServerSettings();
+        settings.setExecutorMode(executorMode);
+        settings.setThreads(executorThreads);
+        settings.setBossThreads(bossThreads);
+        settings.setWorkerThreads(workerThreads);
+        settings.setMaxInboundMessageSize(maxInboundMessageSize);
+        settings.setFlowControlWindow(flowControlWindow);
+        GrpcServerTemplate serverWrapper = new GrpcServerTemplate(grpcPort, settings, valuationServer);
         serverWrapper.start();
         serverWrapper.blockUntilShutdown();
     }
@@ -17,4 +17,6 @@ public class PortfolioValuation {
     private long timestamp; // 估值时间戳（毫秒）
     private int updateCount; // 更新序号（#1, #2...）
     private Map<String, BigDecimal> changedMarketData; // 本次更新的市场数据变化
+    private long tickTimestamp; // 触发本次估值的最新行情时间戳（毫秒）
+    private String sourceId; // 发送源（组合或分片），区分多个发送端的估值
 }
\ No newline at end of file
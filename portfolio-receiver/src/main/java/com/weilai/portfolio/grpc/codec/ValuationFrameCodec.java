@@ -0,0 +1,325 @@
+package com.weilai.portfolio.grpc.codec;
+
+import com.weilai.portfolio.entity.PortfolioValuation;
+import com.weilai.portfolio.entity.Position;
+import com.weilai.portfolio.grpc.valuation.ExposureRollupProto;
+import com.weilai.portfolio.grpc.valuation.MarketDataChangeProto;
+import com.weilai.portfolio.grpc.valuation.PortfolioValuationBatch;
+import com.weilai.portfolio.grpc.valuation.PortfolioValuationMessage;
+import com.weilai.portfolio.grpc.valuation.PositionProto;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 列式估值帧（PortfolioValuationBatch）编解码
+ * <p>
+ * 金额按 scale 位小数转为定点 long（|值| 需小于 2^53 / 10^scale，scale=4 时约 9×10^11）。
+ * 持仓行顺序不变时只发送相对上一帧的差值，价格未变的行每列只占 1 字节。
+ * 行集合变化、达到关键帧间隔或接收端要求时发送关键帧。
+ */
+public final class ValuationFrameCodec {
+    public static final int DEFAULT_SCALE = 4;
+
+    private ValuationFrameCodec() {
+    }
+
+    /**
+     * 接收端缺少增量帧的基准帧
+     */
+    public static class KeyFrameRequiredException extends IllegalStateException {
+        private static final long serialVersionUID = 1L;
+
+        public KeyFrameRequiredException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * 发送端编码器：每个发送源一个，非线程安全（requestKeyFrame 除外）
+     */
+    public static final class Encoder {
+        private final String sourceId;
+        private final String shardId;
+        private final long sessionId;
+        private final int scale;
+        private final double factor;
+        private final int keyFrameInterval;
+
+        private String[] rowTickers = new String[0];
+        // 上一帧与当前帧的定点列，编码后交换，避免每帧分配
+        private long[] previousQuantities = new long[0];
+        private long[] previousPrices = new long[0];
+        private long[] previousValues = new long[0];
+        private long[] quantities = new long[0];
+        private long[] prices = new long[0];
+        private long[] values = new long[0];
+        private long previousNav;
+        private int previousUpdateCount;
+        private int framesSinceKey;
+        private volatile boolean keyFrameRequired = true; // 可能由发送回调线程置位
+
+        public Encoder(String sourceId, int scale, int keyFrameInterval) {
+            this(sourceId, "", scale, keyFrameInterval);
+        }
+
+        public Encoder(String sourceId, String shardId, int scale, int keyFrameInterval) {
+            this(sourceId, shardId, 0L, scale, keyFrameInterval);
+        }
+
+        public Encoder(String sourceId, String shardId, long sessionId, int scale, int keyFrameInterval) {
+            this.sourceId = sourceId;
+            this.shardId = shardId;
+            this.sessionId = sessionId;
+            this.scale = scale;
+            this.factor = Math.pow(10, scale);
+            this.keyFrameInterval = keyFrameInterval;
+        }
+
+        /**
+         * 下一帧强制为关键帧（接收端要求或发送失败后调用）
+         */
+        public void requestKeyFrame() {
+            keyFrameRequired = true;
+        }
+
+        public PortfolioValuationBatch encode(PortfolioValuation valuation) {
+            Position[] positions = valuation.getPositions();
+            int rows = positions.length;
+            String[] tickers = new String[rows];
+            int[] rowQuantities = new int[rows];
+            long[] rowPrices = new long[rows];
+            long[] rowValues = new long[rows];
+            for (int i = 0; i < rows; i++) {
+                tickers[i] = positions[i].getTicker();
+                rowQuantities[i] = positions[i].getQuantity();
+                rowPrices[i] = toFixed(positions[i].getPrice());
+                rowValues[i] = toFixed(positions[i].getMarketValue());
+            }
+            return encode(valuation.getUpdateCount(), valuation.getTimestamp(), valuation.getTickTimestamp(),
+                    tickers, rowQuantities, rowPrices, rowValues, scale,
+                    toFixed(valuation.getTotalNav()), valuation.getChangedMarketData());
+        }
+
+        /**
+         * 按列编码：价格与市值已是 valueScale 位小数的定点 long（与编码器 scale 相同时直接使用，不经过 double）
+         * 传入的数组只读，编码器不会保留引用
+         */
+        public PortfolioValuationBatch encode(int updateCount, long timestamp, long tickTimestamp,
+                                              String[] tickers, int[] rowQuantities,
+                                              long[] rowPrices, long[] rowValues, int valueScale,
+                                              long totalNav, Map<String, BigDecimal> changedMarketData) {
+            return encode(updateCount, timestamp, tickTimestamp, tickers, rowQuantities, rowPrices, rowValues,
+                    valueScale, totalNav, changedMarketData, null);
+        }
+
+        /**
+         * 同上，并附带按标的汇总的风险（原样放入帧中，不做增量编码；为 null 时不携带）
+         */
+        public PortfolioValuationBatch encode(int updateCount, long timestamp, long tickTimestamp,
+                                              String[] tickers, int[] rowQuantities,
+                                              long[] rowPrices, long[] rowValues, int valueScale,
+                                              long totalNav, Map<String, BigDecimal> changedMarketData,
+                                              ExposureRollupProto exposures) {
+            int rows = tickers.length;
+            boolean keyFrame = keyFrameRequired || framesSinceKey >= keyFrameInterval || !sameRows(tickers);
+            if (quantities.length != rows) {
+                quantities = new long[rows];
+                prices = new long[rows];
+                values = new long[rows];
+            }
+            for (int i = 0; i < rows; i++) {
+                quantities[i] = rowQuantities[i];
+                prices[i] = rescale(rowPrices[i], valueScale);
+                values[i] = rescale(rowValues[i], valueScale);
+            }
+            long nav = rescale(totalNav, valueScale);
+
+            PortfolioValuationBatch.Builder builder = PortfolioValuationBatch.newBuilder()
+                    .setSourceId(sourceId)
+                    .setShardId(shardId)
+                    .setSessionId(sessionId)
+                    .setUpdateCount(updateCount)
+                    .setTimestamp(timestamp)
+                    .setTickTimestamp(tickTimestamp)
+                    .setScale(scale)
+                    .setKeyFrame(keyFrame);
+            if (keyFrame) {
+                appendDictionary(builder, tickers);
+                for (int i = 0; i < rows; i++) {
+                    builder.addQuantities(quantities[i]);
+                    builder.addPrices(prices[i]);
+                    builder.addMarketValues(values[i]);
+                }
+                builder.setTotalNav(nav);
+                framesSinceKey = 0;
+                keyFrameRequired = false;
+            } else {
+                builder.setBaseUpdateCount(previousUpdateCount);
+                for (int i = 0; i < rows; i++) {
+                    builder.addQuantities(quantities[i] - previousQuantities[i]);
+                    builder.addPrices(prices[i] - previousPrices[i]);
+                    builder.addMarketValues(values[i] - previousValues[i]);
+                }
+                builder.setTotalNav(nav - previousNav);
+                framesSinceKey++;
+            }
+            for (Map.Entry<String, BigDecimal> change : changedMarketData.entrySet()) {
+                builder.addChangedTickers(change.getKey());
+                builder.addChangedPrices(toFixed(change.getValue()));
+            }
+            if (exposures != null) {
+                builder.setExposures(exposures);
+            }
+
+            swapColumns();
+            previousNav = nav;
+            previousUpdateCount = updateCount;
+            return builder.build();
+        }
+
+        private boolean sameRows(String[] tickers) {
+            if (tickers.length != rowTickers.length) {
+                return false;
+            }
+            for (int i = 0; i < tickers.length; i++) {
+                String ticker = tickers[i];
+                if (ticker != rowTickers[i] && !ticker.equals(rowTickers[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // 关键帧：去重后的标的字典 + 每行 ticker id（相对上一行的差值）
+        private void appendDictionary(PortfolioValuationBatch.Builder builder, String[] tickers) {
+            rowTickers = tickers.clone();
+            Map<String, Integer> ids = new HashMap<>(tickers.length * 2);
+            int previousId = 0;
+            for (String ticker : tickers) {
+                Integer id = ids.get(ticker);
+                if (id == null) {
+                    id = ids.size();
+                    ids.put(ticker, id);
+                    builder.addTickers(ticker);
+                }
+                builder.addTickerIds(id - previousId);
+                previousId = id;
+            }
+        }
+
+        private void swapColumns() {
+            long[] swap = previousQuantities;
+            previousQuantities = quantities;
+            quantities = swap;
+            swap = previousPrices;
+            previousPrices = prices;
+            prices = swap;
+            swap = previousValues;
+            previousValues = values;
+            values = swap;
+        }
+
+        private long toFixed(BigDecimal value) {
+            return value == null ? 0L : Math.round(value.doubleValue() * factor);
+        }
+
+        private long rescale(long units, int valueScale) {
+            return valueScale == scale ? units : Math.round(units * Math.pow(10, scale - valueScale));
+        }
+    }
+
+    /**
+     * 接收端解码器：每个发送源一个，调用方负责按到达顺序串行调用
+     */
+    public static final class Decoder {
+        private String[] rowTickers;
+        private long[] quantities;
+        private long[] prices;
+        private long[] values;
+        private long nav;
+        private int lastUpdateCount;
+        private long sessionId;
+
+        /**
+         * 解码为行式消息；缺少基准帧时抛出 KeyFrameRequiredException，且不修改解码器状态
+         */
+        public PortfolioValuationMessage decode(PortfolioValuationBatch frame) {
+            int rows = frame.getQuantitiesCount();
+            if (frame.getPricesCount() != rows || frame.getMarketValuesCount() != rows) {
+                throw new IllegalArgumentException("Columns of frame #" + frame.getUpdateCount() + " differ in length");
+            }
+            if (frame.getKeyFrame()) {
+                readKeyFrame(frame, rows);
+            } else {
+                // 基准帧来自发送端的上一个会话时同样缺少基准
+                if (rowTickers == null || frame.getBaseUpdateCount() != lastUpdateCount
+                        || frame.getSessionId() != sessionId || rows != rowTickers.length) {
+                    throw new KeyFrameRequiredException("Missing base frame #" + frame.getBaseUpdateCount()
+                            + " for frame #" + frame.getUpdateCount() + " from [" + frame.getSourceId() + "]");
+                }
+                for (int i = 0; i < rows; i++) {
+                    quantities[i] += frame.getQuantities(i);
+                    prices[i] += frame.getPrices(i);
+                    values[i] += frame.getMarketValues(i);
+                }
+                nav += frame.getTotalNav();
+            }
+            lastUpdateCount = frame.getUpdateCount();
+            return toMessage(frame, rows);
+        }
+
+        private void readKeyFrame(PortfolioValuationBatch frame, int rows) {
+            if (frame.getTickerIdsCount() != rows) {
+                throw new IllegalArgumentException("Key frame #" + frame.getUpdateCount() + " has "
+                        + frame.getTickerIdsCount() + " ticker ids for " + rows + " rows");
+            }
+            String[] tickers = new String[rows];
+            int id = 0;
+            for (int i = 0; i < rows; i++) {
+                id += frame.getTickerIds(i);
+                tickers[i] = frame.getTickers(id);
+            }
+            rowTickers = tickers;
+            quantities = new long[rows];
+            prices = new long[rows];
+            values = new long[rows];
+            for (int i = 0; i < rows; i++) {
+                quantities[i] = frame.getQuantities(i);
+                prices[i] = frame.getPrices(i);
+                values[i] = frame.getMarketValues(i);
+            }
+            nav = frame.getTotalNav();
+            sessionId = frame.getSessionId();
+        }
+
+        private PortfolioValuationMessage toMessage(PortfolioValuationBatch frame, int rows) {
+            double factor = Math.pow(10, frame.getScale());
+            PortfolioValuationMessage.Builder builder = PortfolioValuationMessage.newBuilder()
+                    .setTotalNav(nav / factor)
+                    .setTimestamp(frame.getTimestamp())
+                    .setUpdateCount(frame.getUpdateCount())
+                    .setTickTimestamp(frame.getTickTimestamp())
+                    .setSourceId(frame.getSourceId())
+                    .setShardId(frame.getShardId())
+                    .setSessionId(frame.getSessionId());
+            for (int i = 0; i < rows; i++) {
+                builder.addPositions(PositionProto.newBuilder()
+                        .setTicker(rowTickers[i])
+                        .setQuantity((int) quantities[i])
+                        .setPrice(prices[i] / factor)
+                        .setMarketValue(values[i] / factor));
+            }
+            for (int i = 0; i < frame.getChangedTickersCount(); i++) {
+                builder.addChangedMarketData(MarketDataChangeProto.newBuilder()
+                        .setTicker(frame.getChangedTickers(i))
+                        .setPrice(frame.getChangedPrices(i) / factor));
+            }
+            if (frame.hasExposures()) {
+                builder.setExposures(frame.getExposures());
+            }
+            return builder.build();
+        }
+    }
+}
@@ -1,64 +1,223 @@
 package com.weilai.portfolio.grpc.server;
 
-import com.weilai.portfolio.entity.PortfolioValuation;
-import com.weilai.portfolio.entity.Position;
+import com.weilai.portfolio.grpc.codec.ValuationFrameCodec;
+import com.weilai.portfolio.grpc.valuation.FormatRequest;
+import com.weilai.portfolio.grpc.valuation.FormatResponse;
+import com.weilai.portfolio.grpc.valuation.PortfolioValuationBatch;
 import com.weilai.portfolio.grpc.valuation.PortfolioValuationMessage;
 import com.weilai.portfolio.grpc.valuation.PortfolioValuationServiceGrpc;
+import com.weilai.portfolio.grpc.valuation.ValuationBatchEntry;
+import com.weilai.portfolio.grpc.valuation.ValuationBatchRequest;
+import com.weilai.portfolio.grpc.valuation.ValuationFormat;
 
 
 import com.weilai.portfolio.grpc.valuation.ValuationResponse;
+import com.weilai.portfolio.infrastructure.ingest.ValuationIngestor;
+import com.weilai.portfolio.infrastructure.metrics.PipelineMetrics;
+import io.grpc.BindableService;
+import io.grpc.ServerMethodDefinition;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.Status;
+import io.grpc.stub.ServerCalls;
 import io.grpc.stub.StreamObserver;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
-import java.math.BigDecimal;
-import java.util.HashMap;
 import java.util.Map;
-
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 估值服务实现
+ * 不继承生成的 ImplBase（其 bindService 为 final），以便把 SubscribeValuations 的响应替换为预先序列化的字节
+ */
 @Slf4j
-@RequiredArgsConstructor
-public class PortfolioValuationServer extends PortfolioValuationServiceGrpc.PortfolioValuationServiceImplBase {
+public class PortfolioValuationServer implements PortfolioValuationServiceGrpc.AsyncService, BindableService {
+
+    // 转换、排序和处理都在 ValuationIngestor 的分片线程上完成，gRPC 线程只负责投递；
+    // 分片队列已满时以 RESOURCE_EXHAUSTED 失败调用，不确认未入队的估值
+    private final ValuationIngestor valuationIngestor;
+    private final ValuationSubscriptionHub subscriptionHub;
+    // 多个 gRPC 线程并发累加，使用分段计数器
+    private final LongAdder receivedCounter;
+    private final LongAdder keyFrameRequestCounter;
+    // 列式帧解码器，每个发送源一个（保存上一帧状态）
+    private final Map<String, ValuationFrameCodec.Decoder> frameDecoders = new ConcurrentHashMap<>();
+
+    public PortfolioValuationServer(ValuationIngestor valuationIngestor,
+                                    ValuationSubscriptionHub subscriptionHub,
+                                    PipelineMetrics pipelineMetrics) {
+        this.valuationIngestor = valuationIngestor;
+        this.subscriptionHub = subscriptionHub;
+        this.receivedCounter = pipelineMetrics.counter("valuations-received");
+        this.keyFrameRequestCounter = pipelineMetrics.counter("key-frame-requests");
+    }
 
-    private final com.weilai.portfolio.infrastructure.subscriber.PortfolioValuationSubscriber valuationSubscriber;
-    private int receivedCount = 0;
+    @Override
+    public ServerServiceDefinition bindService() {
+        ServerServiceDefinition generated = PortfolioValuationServiceGrpc.bindService(this);
+        String subscribeMethod = PortfolioValuationServiceGrpc.getSubscribeValuationsMethod().getFullMethodName();
+        ServerServiceDefinition.Builder builder =
+                ServerServiceDefinition.builder(PortfolioValuationServiceGrpc.SERVICE_NAME);
+        for (ServerMethodDefinition<?, ?> method : generated.getMethods()) {
+            if (!method.getMethodDescriptor().getFullMethodName().equals(subscribeMethod)) {
+                builder.addMethod(method);
+            }
+        }
+        builder.addMethod(
+                ValuationSubscriptionHub.preSerialized(PortfolioValuationServiceGrpc.getSubscribeValuationsMethod()),
+                ServerCalls.asyncServerStreamingCall(subscriptionHub::subscribe));
+        return builder.build();
+    }
 
     @Override
     public void sendValuation(PortfolioValuationMessage request,
                               StreamObserver<ValuationResponse> responseObserver) {
+        long receiveNanos = System.nanoTime();
         try {
-            // 将gRPC消息转换为本地实体
-            PortfolioValuation valuation = convertToPortfolioValuation(request);
-            receivedCount++;
-
-            // 处理估值结果
-            valuationSubscriber.handleValuation(valuation);
+            receivedCounter.increment();
+            valuationIngestor.submit(request, receiveNanos);
 
             // 发送响应
             ValuationResponse response = ValuationResponse.newBuilder()
                     .setSuccess(true)
-                    .setMessage("估值已接收，累计接收: " + receivedCount)
+                    .setMessage("估值已接收，累计接收: " + receivedCounter.sum())
                     .build();
             responseObserver.onNext(response);
             responseObserver.onCompleted();
 
-            log.info("Receive valuation updates #{}", request.getUpdateCount());
+            log.debug("Receive valuation updates #{} from [{}]", request.getUpdateCount(), request.getSourceId());
+        } catch (RejectedExecutionException e) {
+            responseObserver.onError(exhausted(e));
         } catch (Exception e) {
             log.error("The processing of the valuation message failed", e);
             responseObserver.onError(e);
         }
     }
 
+    @Override
+    public void negotiateFormat(FormatRequest request, StreamObserver<FormatResponse> responseObserver) {
+        // 按发送端的偏好顺序选择第一个支持的格式
+        ValuationFormat format = ValuationFormat.ROW;
+        for (ValuationFormat supported : request.getSupportedList()) {
+            if (supported == ValuationFormat.COLUMNAR || supported == ValuationFormat.ROW) {
+                format = supported;
+                break;
+            }
+        }
+        if (format == ValuationFormat.COLUMNAR) {
+            // 新一轮协商意味着发送端从关键帧重新开始
+            frameDecoders.remove(request.getSourceId());
+        }
+        log.info("Source [{}] negotiated wire format {}", request.getSourceId(), format);
+        responseObserver.onNext(FormatResponse.newBuilder().setFormat(format).build());
+        responseObserver.onCompleted();
+    }
+
+    @Override
+    public void sendValuationFrame(PortfolioValuationBatch request,
+                                   StreamObserver<ValuationResponse> responseObserver) {
+        long receiveNanos = System.nanoTime();
+        try {
+            PortfolioValuationMessage message = decodeFrame(request);
+            receivedCounter.increment();
+            valuationIngestor.submit(message, receiveNanos);
+
+            responseObserver.onNext(ValuationResponse.newBuilder()
+                    .setSuccess(true)
+                    .setMessage("估值帧已接收，累计接收: " + receivedCounter.sum())
+                    .build());
+            responseObserver.onCompleted();
+        } catch (ValuationFrameCodec.KeyFrameRequiredException e) {
+            keyFrameRequestCounter.increment();
+            log.warn(e.getMessage());
+            responseObserver.onNext(ValuationResponse.newBuilder()
+                    .setSuccess(false)
+                    .setKeyFrameRequired(true)
+                    .setMessage(e.getMessage())
+                    .build());
+            responseObserver.onCompleted();
+        } catch (RejectedExecutionException e) {
+            responseObserver.onError(exhausted(e));
+        } catch (Exception e) {
+            log.error("The processing of the valuation frame failed", e);
+            responseObserver.onError(e);
+        }
+    }
+
+    @Override
+    public void batchValuations(ValuationBatchRequest request,
+                                StreamObserver<ValuationResponse> responseObserver) {
+        long receiveNanos = System.nanoTime();
+        try {
+            // 批内按发送顺序逐条投递；某一帧缺少基准帧时跳过它，其余估值照常处理
+            boolean keyFrameRequired = false;
+            for (ValuationBatchEntry entry : request.getEntriesList()) {
+                PortfolioValuationMessage message;
+                if (entry.hasFrame()) {
+                    try {
+                        message = decodeFrame(entry.getFrame());
+                    } catch (ValuationFrameCodec.KeyFrameRequiredException e) {
+                        keyFrameRequestCounter.increment();
+                        keyFrameRequired = true;
+                        log.warn(e.getMessage());
+                        continue;
+                    }
+                } else {
+                    message = entry.getValuation();
+                }
+                receivedCounter.increment();
+                valuationIngestor.submit(message, receiveNanos);
+            }
+
+            responseObserver.onNext(ValuationResponse.newBuilder()
+                    .setSuccess(!keyFrameRequired)
+                    .setKeyFrameRequired(keyFrameRequired)
+                    .setMessage("批量估值已接收 " + request.getEntriesCount() + " 条，累计接收: " + receivedCounter.sum())
+                    .build());
+            responseObserver.onCompleted();
+            log.debug("Receive valuation batch of {}", request.getEntriesCount());
+        } catch (RejectedExecutionException e) {
+            responseObserver.onError(exhausted(e));
+        } catch (Exception e) {
+            log.error("The processing of the valuation batch failed", e);
+            responseObserver.onError(e);
+        }
+    }
+
+    private static RuntimeException exhausted(RejectedExecutionException e) {
+        log.warn(e.getMessage());
+        return Status.RESOURCE_EXHAUSTED.withDescription(e.getMessage()).asRuntimeException();
+    }
+
+    // 同一发送源的帧必须按顺序解码
+    private PortfolioValuationMessage decodeFrame(PortfolioValuationBatch frame) {
+        ValuationFrameCodec.Decoder decoder =
+                frameDecoders.computeIfAbsent(frame.getSourceId(), id -> new ValuationFrameCodec.Decoder());
+        synchronized (decoder) {
+            return decoder.decode(frame);
+        }
+    }
+
     @Override
     public StreamObserver<PortfolioValuationMessage> streamValuations(
             StreamObserver<ValuationResponse> responseObserver) {
         return new StreamObserver<PortfolioValuationMessage>() {
+            private boolean failed; // 已因队列满结束调用，忽略后续消息（gRPC 串行调用回调）
+
             @Override
             public void onNext(PortfolioValuationMessage request) {
+                if (failed) {
+                    return;
+                }
+                long receiveNanos = System.nanoTime();
                 try {
-                    PortfolioValuation valuation = convertToPortfolioValuation(request);
-                    receivedCount++;
-                    valuationSubscriber.handleValuation(valuation);
-                    log.info("流式接收估值更新 #{}，累计: {}", request.getUpdateCount(), receivedCount);
+                    receivedCounter.increment();
+                    valuationIngestor.submit(request, receiveNanos);
+                    log.debug("流式接收估值更新 #{}，累计: {}", request.getUpdateCount(), receivedCounter.sum());
+                } catch (RejectedExecutionException e) {
+                    failed = true;
+                    responseObserver.onError(exhausted(e));
                 } catch (Exception e) {
                     log.error("处理流式估值消息失败", e);
                 }
@@ -71,39 +230,16 @@ public class PortfolioValuationServer extends PortfolioValuationServiceGrpc.Port
 
             @Override
             public void onCompleted() {
+                if (failed) {
+                    return;
+                }
                 ValuationResponse response = ValuationResponse.newBuilder()
                         .setSuccess(true)
-                        .setMessage("流式估值接收完成，共接收: " + receivedCount)
+                        .setMessage("流式估值接收完成，共接收: " + receivedCounter.sum())
                         .build();
                 responseObserver.onNext(response);
                 responseObserver.onCompleted();
             }
         };
     }
-
-    // 转换gRPC消息到本地实体
-    private PortfolioValuation convertToPortfolioValuation(PortfolioValuationMessage request) {
-        Position[] positions = request.getPositionsList().stream()
-                .map(posProto -> {
-                    Position position = new Position();
-                    position.setTicker(posProto.getTicker());
-                    position.setQuantity(posProto.getQuantity());
-                    position.setPrice(BigDecimal.valueOf(posProto.getPrice()));
-                    position.setMarketValue(BigDecimal.valueOf(posProto.getMarketValue()));
-                    return position;
-                })
-                .toArray(Position[]::new);
-
-        Map<String, BigDecimal> changedMarketData = new HashMap<>();
-        request.getChangedMarketDataList().forEach(change ->
-                changedMarketData.put(change.getTicker(), BigDecimal.valueOf(change.getPrice())));
-
-        return new PortfolioValuation(
-                positions,
-                BigDecimal.valueOf(request.getTotalNav()),
-                request.getTimestamp(),
-                request.getUpdateCount(),
-                changedMarketData
-        );
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,265 @@
+package com.weilai.portfolio.grpc.server;
+
+import com.google.common.io.ByteStreams;
+import com.weilai.portfolio.grpc.valuation.MarketDataChangeProto;
+import com.weilai.portfolio.grpc.valuation.PortfolioValuationMessage;
+import com.weilai.portfolio.grpc.valuation.SubscribeRequest;
+import com.weilai.portfolio.infrastructure.metrics.PipelineMetrics;
+import io.grpc.Drainable;
+import io.grpc.KnownLength;
+import io.grpc.MethodDescriptor;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * SubscribeValuations 的订阅管理
+ * <p>
+ * - 每条估值最多序列化一次，所有订阅方共享同一份字节（响应使用字节数组 Marshaller）
+ * - 遵守每个订阅方的 gRPC 流控：isReady 为 false 时不再写入，等 onReady 回调再继续
+ * - 等待期间同一发送源只保留最新估值，慢订阅方只会跳过中间估值，不会拖慢接收线程
+ * - 过滤按整条消息进行（发送源、行情变化标的），不裁剪消息内容
+ */
+@Slf4j
+@Component
+public class ValuationSubscriptionHub {
+    private static final String DEFAULT_SOURCE_ID = "default";
+
+    // 各发送源的最新估值，用于新订阅方的快照
+    private final Map<String, Frame> latestBySource = new ConcurrentHashMap<>();
+    private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    private final LongAdder streamedCounter;
+    private final LongAdder conflatedCounter;
+
+    public ValuationSubscriptionHub(PipelineMetrics pipelineMetrics) {
+        this.streamedCounter = pipelineMetrics.counter("valuations-streamed");
+        this.conflatedCounter = pipelineMetrics.counter("stream-conflated");
+    }
+
+    /**
+     * 发布一条已按序确认的估值（由接收分片线程调用，不阻塞）
+     */
+    public void publish(PortfolioValuationMessage message) {
+        String sourceId = message.getSourceId().isEmpty() ? DEFAULT_SOURCE_ID : message.getSourceId();
+        Frame frame = new Frame(sourceId, changedTickers(message), message);
+        latestBySource.put(sourceId, frame);
+        for (Subscription subscription : subscriptions) {
+            if (subscription.accepts(frame)) {
+                subscription.offer(frame);
+            }
+        }
+    }
+
+    /**
+     * SubscribeValuations 的处理入口
+     */
+    public void subscribe(SubscribeRequest request, StreamObserver<byte[]> responseObserver) {
+        ServerCallStreamObserver<byte[]> observer = (ServerCallStreamObserver<byte[]>) responseObserver;
+        Subscription subscription = new Subscription(request, observer);
+        observer.setOnCancelHandler(() -> {
+            subscriptions.remove(subscription);
+            log.info("Valuation subscriber left, {} remaining", subscriptions.size());
+        });
+        observer.setOnReadyHandler(subscription::drain);
+
+        // 先登记再取快照：快照之后到达的估值不会丢，且 putIfAbsent 保证快照不会覆盖更新的估值
+        subscriptions.add(subscription);
+        if (request.getSnapshot()) {
+            for (Frame frame : latestBySource.values()) {
+                if (subscription.acceptsSource(frame.sourceId)) {
+                    subscription.pending.putIfAbsent(frame.sourceId, frame);
+                }
+            }
+        }
+        subscription.started = true;
+        subscription.drain();
+        log.info("Valuation subscriber joined (tickers={}, sources={}, snapshot={}), {} total",
+                request.getTickersList(), request.getSourceIdsList(), request.getSnapshot(), subscriptions.size());
+    }
+
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (Subscription subscription : subscriptions) {
+            try {
+                subscription.observer.onCompleted();
+            } catch (RuntimeException e) {
+                log.debug("Completing valuation subscriber failed", e);
+            }
+        }
+        subscriptions.clear();
+    }
+
+    /**
+     * 将 SubscribeValuations 的响应类型替换为预先序列化的字节数组
+     */
+    static MethodDescriptor<SubscribeRequest, byte[]> preSerialized(
+            MethodDescriptor<SubscribeRequest, PortfolioValuationMessage> method) {
+        return method.toBuilder(method.getRequestMarshaller(), PreSerializedMarshaller.INSTANCE).build();
+    }
+
+    private static Set<String> changedTickers(PortfolioValuationMessage message) {
+        if (message.getChangedMarketDataCount() == 0) {
+            return Collections.emptySet();
+        }
+        Set<String> tickers = new HashSet<>();
+        for (MarketDataChangeProto change : message.getChangedMarketDataList()) {
+            tickers.add(change.getTicker());
+        }
+        return tickers;
+    }
+
+    private static final class Frame {
+        private final String sourceId;
+        private final Set<String> changedTickers;
+        private final PortfolioValuationMessage message;
+        // 第一次发送时才序列化（没有订阅方时不产生开销），之后所有订阅方复用
+        private volatile byte[] bytes;
+
+        private Frame(String sourceId, Set<String> changedTickers, PortfolioValuationMessage message) {
+            this.sourceId = sourceId;
+            this.changedTickers = changedTickers;
+            this.message = message;
+        }
+
+        private byte[] bytes() {
+            byte[] result = bytes;
+            if (result == null) {
+                synchronized (this) {
+                    result = bytes;
+                    if (result == null) {
+                        result = message.toByteArray();
+                        bytes = result;
+                    }
+                }
+            }
+            return result;
+        }
+    }
+
+    private final class Subscription {
+        private final Set<String> tickers;
+        private final Set<String> sourceIds;
+        private final ServerCallStreamObserver<byte[]> observer;
+        // 待发送的估值，按发送源保留最新一条
+        private final Map<String, Frame> pending = new ConcurrentHashMap<>();
+        // drain 的串行化计数（onNext 不是线程安全的）
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean started;
+
+        private Subscription(SubscribeRequest request, ServerCallStreamObserver<byte[]> observer) {
+            this.tickers = new HashSet<>(request.getTickersList());
+            this.sourceIds = new HashSet<>(request.getSourceIdsList());
+            this.observer = observer;
+        }
+
+        private boolean acceptsSource(String sourceId) {
+            return sourceIds.isEmpty() || sourceIds.contains(sourceId);
+        }
+
+        private boolean accepts(Frame frame) {
+            if (!acceptsSource(frame.sourceId)) {
+                return false;
+            }
+            if (tickers.isEmpty()) {
+                return true;
+            }
+            for (String ticker : frame.changedTickers) {
+                if (tickers.contains(ticker)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void offer(Frame frame) {
+            if (pending.put(frame.sourceId, frame) != null) {
+                conflatedCounter.increment();
+            }
+            drain();
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                if (started && !observer.isCancelled()) {
+                    for (String sourceId : pending.keySet()) {
+                        if (!observer.isReady()) {
+                            break; // 等待 onReady 回调
+                        }
+                        Frame frame = pending.remove(sourceId);
+                        if (frame != null) {
+                            try {
+                                observer.onNext(frame.bytes());
+                                streamedCounter.increment();
+                            } catch (RuntimeException e) {
+                                log.debug("Streaming valuation to subscriber failed", e);
+                                subscriptions.remove(this);
+                                return;
+                            }
+                        }
+                    }
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+    }
+
+    /**
+     * 字节数组 Marshaller：字节即为 PortfolioValuationMessage 的 protobuf 编码，客户端照常按消息解析
+     */
+    private static final class PreSerializedMarshaller implements MethodDescriptor.Marshaller<byte[]> {
+        private static final PreSerializedMarshaller INSTANCE = new PreSerializedMarshaller();
+
+        @Override
+        public InputStream stream(byte[] value) {
+            return new BytesInputStream(value);
+        }
+
+        @Override
+        public byte[] parse(InputStream stream) {
+            try {
+                return ByteStreams.toByteArray(stream);
+            } catch (IOException e) {
+                throw new IllegalStateException("Reading valuation bytes failed", e);
+            }
+        }
+    }
+
+    // 声明长度并支持一次性写出，gRPC 可以直接写入帧而不必先缓冲
+    private static final class BytesInputStream extends ByteArrayInputStream implements KnownLength, Drainable {
+        private BytesInputStream(byte[] bytes) {
+            super(bytes);
+        }
+
+        @Override
+        public int drainTo(OutputStream target) throws IOException {
+            int length = count - pos;
+            target.write(buf, pos, length);
+            pos = count;
+            return length;
+        }
+    }
+}
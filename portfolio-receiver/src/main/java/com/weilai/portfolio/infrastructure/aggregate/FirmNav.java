@@ -0,0 +1,26 @@
+package com.weilai.portfolio.infrastructure.aggregate;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * 公司级合并 NAV：各发送源最新估值之和
+ * <p>
+ * watermark 为参与合并的最旧估值时间，latestTimestamp 为最新估值时间；
+ * 两者相差不超过 stale-after-ms 时 consistent 为 true，否则 staleSources 个发送源落后。
+ */
+@Data
+@AllArgsConstructor
+public class FirmNav {
+    private BigDecimal totalNav;
+    private long version;             // 合并结果的更新次数
+    private int sources;
+    private int staleSources;
+    private long watermark;
+    private long latestTimestamp;
+    private boolean consistent;
+    private List<SourceNav> contributions; // 按发送源排序；只查询汇总时为 null
+}
@@ -0,0 +1,173 @@
+package com.weilai.portfolio.infrastructure.aggregate;
+
+import com.weilai.portfolio.grpc.valuation.PortfolioValuationMessage;
+import com.weilai.portfolio.infrastructure.metrics.PipelineMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * 公司级 NAV 合并：多个 portfolio 实例（组合或分片）各自发送部分估值，按发送源保留最新一条，合并为公司级 NAV
+ * <p>
+ * - 总额按差值更新（减去该发送源的旧值、加上新值），以 10^-6 的定点整数累计，不随更新次数累积误差；
+ *   每条估值 O(log 发送源数)，查询汇总不需要遍历全部发送源
+ * - 时间策略：同一发送源只采纳时间不早于已有估值的消息；落后最新发送源超过 stale-after-ms 的发送源标记为落后，
+ *   合并结果的 watermark 为最旧一条的时间；超过 expire-after-ms 没有收到新估值的发送源移出合并（如已下线的分片）
+ * 线程安全：由各接收分片线程并发调用
+ */
+@Component
+@Slf4j
+public class FirmNavAggregator {
+    private static final int SCALE = 6;
+    private static final double UNITS_PER_CURRENCY = 1_000_000d;
+    private static final Comparator<Entry> BY_TIMESTAMP =
+            Comparator.comparingLong((Entry entry) -> entry.timestamp).thenComparing(entry -> entry.sourceId);
+
+    private final long staleAfterMillis;
+    private final long expireAfterMillis;
+    private final LongSupplier clock; // 接收端时钟（毫秒），测试可替换
+    private final LongAdder updateCounter;
+    private final LongAdder outdatedCounter;
+    private final LongAdder expiredCounter;
+
+    // 以下状态只在持有对象锁时访问
+    private final LinkedHashMap<String, Entry> bySource = new LinkedHashMap<>(); // 按最近一次更新的先后排列
+    private final TreeSet<Entry> byTimestamp = new TreeSet<>(BY_TIMESTAMP);     // 按估值时间排列
+    private long totalUnits;
+    private long version;
+
+    @Autowired
+    public FirmNavAggregator(PipelineMetrics pipelineMetrics,
+                             @Value("${portfolio.firm-nav.stale-after-ms:2000}") long staleAfterMillis,
+                             @Value("${portfolio.firm-nav.expire-after-ms:60000}") long expireAfterMillis) {
+        this(pipelineMetrics, staleAfterMillis, expireAfterMillis, System::currentTimeMillis);
+    }
+
+    FirmNavAggregator(PipelineMetrics pipelineMetrics, long staleAfterMillis, long expireAfterMillis,
+                      LongSupplier clock) {
+        if (staleAfterMillis <= 0 || expireAfterMillis < staleAfterMillis) {
+            throw new IllegalArgumentException("portfolio.firm-nav.stale-after-ms 必须大于0且不大于 expire-after-ms："
+                    + staleAfterMillis + " / " + expireAfterMillis);
+        }
+        this.staleAfterMillis = staleAfterMillis;
+        this.expireAfterMillis = expireAfterMillis;
+        this.clock = clock;
+        this.updateCounter = pipelineMetrics.counter("firm-nav-updates");
+        this.outdatedCounter = pipelineMetrics.counter("firm-nav-outdated");
+        this.expiredCounter = pipelineMetrics.counter("firm-nav-sources-expired");
+        pipelineMetrics.gauge("firm-nav-sources", this::sourceCount);
+    }
+
+    /**
+     * 合并发送源的一条估值（按序交付后调用），返回合并后的公司级 NAV；
+     * 比该发送源已有估值更早的消息被丢弃，返回 null
+     */
+    public synchronized BigDecimal accept(String sourceId, PortfolioValuationMessage message) {
+        long now = clock.getAsLong();
+        expire(now);
+        Entry entry = bySource.get(sourceId);
+        if (entry == null) {
+            entry = new Entry(sourceId);
+            log.info("Source [{}] joined the firm NAV ({} sources)", sourceId, bySource.size() + 1);
+        } else {
+            if (message.getTimestamp() < entry.timestamp) {
+                outdatedCounter.increment();
+                return null;
+            }
+            bySource.remove(sourceId); // 重新放到末尾，保持按更新先后排列
+            byTimestamp.remove(entry);
+            totalUnits -= entry.navUnits;
+        }
+        bySource.put(sourceId, entry);
+        entry.receivedMillis = now;
+        entry.shardId = message.getShardId();
+        entry.navUnits = Math.round(message.getTotalNav() * UNITS_PER_CURRENCY);
+        entry.updateCount = message.getUpdateCount();
+        entry.timestamp = message.getTimestamp();
+        totalUnits += entry.navUnits;
+        byTimestamp.add(entry);
+        version++;
+        updateCounter.increment();
+        return BigDecimal.valueOf(totalUnits, SCALE);
+    }
+
+    /**
+     * 当前的合并结果；withContributions 为 false 时只返回汇总
+     */
+    public synchronized FirmNav current(boolean withContributions) {
+        expire(clock.getAsLong());
+        if (byTimestamp.isEmpty()) {
+            return new FirmNav(BigDecimal.valueOf(0L, SCALE), version, 0, 0, 0L, 0L, true,
+                    withContributions ? Collections.<SourceNav>emptyList() : null);
+        }
+        long watermark = byTimestamp.first().timestamp;
+        long latest = byTimestamp.last().timestamp;
+        long staleBefore = latest - staleAfterMillis;
+        int stale = 0;
+        for (Entry entry : byTimestamp) { // 按时间升序，只遍历落后的发送源
+            if (entry.timestamp >= staleBefore) {
+                break;
+            }
+            stale++;
+        }
+        List<SourceNav> contributions = null;
+        if (withContributions) {
+            contributions = new ArrayList<>(bySource.size());
+            for (Entry entry : bySource.values()) {
+                contributions.add(new SourceNav(entry.sourceId, entry.shardId,
+                        BigDecimal.valueOf(entry.navUnits, SCALE), entry.updateCount, entry.timestamp,
+                        entry.timestamp < staleBefore));
+            }
+            contributions.sort(Comparator.comparing(SourceNav::getSourceId));
+        }
+        return new FirmNav(BigDecimal.valueOf(totalUnits, SCALE), version, bySource.size(), stale,
+                watermark, latest, stale == 0, contributions);
+    }
+
+    private synchronized long sourceCount() {
+        return bySource.size();
+    }
+
+    // 移出超过 expire-after-ms 没有收到新估值的发送源（接收端时钟；按更新先后，只检查最久未更新的几个）
+    private void expire(long now) {
+        Iterator<Entry> iterator = bySource.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.receivedMillis >= now - expireAfterMillis) {
+                break;
+            }
+            iterator.remove();
+            byTimestamp.remove(entry);
+            totalUnits -= entry.navUnits;
+            version++;
+            expiredCounter.increment();
+            log.warn("Source [{}] expired from the firm NAV, last valuation #{} received {} ms ago",
+                    entry.sourceId, entry.updateCount, now - entry.receivedMillis);
+        }
+    }
+
+    private static final class Entry {
+        private final String sourceId;
+        private String shardId;
+        private long navUnits;
+        private int updateCount;
+        private long timestamp;
+        private long receivedMillis;
+
+        private Entry(String sourceId) {
+            this.sourceId = sourceId;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.weilai.portfolio.infrastructure.aggregate;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+/**
+ * 单个发送源（组合或分片）在公司级 NAV 中的最新贡献
+ */
+@Data
+@AllArgsConstructor
+public class SourceNav {
+    private String sourceId;
+    private String shardId;      // 发送端不分片时为空串
+    private BigDecimal nav;
+    private int updateCount;
+    private long timestamp;      // 该发送源最近一次估值的时间（毫秒，发送端时钟）
+    private boolean stale;       // 落后最新发送源超过 stale-after-ms
+}
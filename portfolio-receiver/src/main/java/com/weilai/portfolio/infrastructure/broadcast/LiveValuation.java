@@ -0,0 +1,21 @@
+package com.weilai.portfolio.infrastructure.broadcast;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+/**
+ * 推送给浏览器的精简估值（不含持仓明细）
+ */
+@Data
+@AllArgsConstructor
+public class LiveValuation {
+    private String sourceId;
+    private long updateCount;
+    private long timestamp;
+    private long tickTimestamp;
+    private BigDecimal totalNav;
+    private Map<String, BigDecimal> changedMarketData;
+}
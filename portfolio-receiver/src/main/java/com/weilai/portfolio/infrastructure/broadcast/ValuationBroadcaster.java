@@ -0,0 +1,204 @@
+package com.weilai.portfolio.infrastructure.broadcast;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.weilai.portfolio.entity.PortfolioValuation;
+import com.weilai.portfolio.infrastructure.metrics.PipelineMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 实时估值广播（SSE / WebSocket 共用）
+ * <p>
+ * - 接收线程只把估值放入该发送源的「最新值」槽位，立即返回，不会被慢客户端拖住
+ * - 单一广播线程取走各发送源的最新估值，序列化一次，把同一份字节发给所有客户端
+ * - 每个客户端按发送源保留待发送的最新一帧：消费不过来只跳过同一发送源的中间帧，不会丢掉整个发送源，也不影响其他客户端
+ * - 新连接先收到每个发送源最近一帧
+ */
+@Slf4j
+@Component
+public class ValuationBroadcaster {
+    private static final byte[] SSE_ID = "id:".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SSE_EVENT = "\nevent:valuation\ndata:".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SSE_END = "\n\n".getBytes(StandardCharsets.UTF_8);
+
+    private final ObjectMapper objectMapper;
+
+    // 各发送源的最新值槽位：接收线程覆盖写，槽位由空变为非空时登记到 ready，广播线程 getAndSet(null) 取走
+    private final Map<String, AtomicReference<PortfolioValuation>> latest = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<AtomicReference<PortfolioValuation>> ready = new ConcurrentLinkedQueue<>();
+    // 各发送源最近一帧，用于新连接的快照
+    private final Map<String, ValuationFrame> latestFrames = new ConcurrentHashMap<>();
+    private final CopyOnWriteArrayList<Client> clients = new CopyOnWriteArrayList<>();
+    private volatile boolean running;
+    private Thread broadcastThread;
+
+    private final LongAdder broadcastCounter;
+    private final LongAdder conflatedCounter;
+    private final LongAdder clientConflatedCounter;
+
+    public ValuationBroadcaster(ObjectMapper objectMapper, PipelineMetrics pipelineMetrics) {
+        this.objectMapper = objectMapper;
+        this.broadcastCounter = pipelineMetrics.counter("valuations-broadcast");
+        this.conflatedCounter = pipelineMetrics.counter("broadcast-conflated");
+        this.clientConflatedCounter = pipelineMetrics.counter("broadcast-client-conflated");
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        broadcastThread = new Thread(this::broadcastLoop, "valuation-broadcaster");
+        broadcastThread.setDaemon(true);
+        broadcastThread.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (broadcastThread != null) {
+            LockSupport.unpark(broadcastThread);
+            broadcastThread.join(TimeUnit.SECONDS.toMillis(1));
+        }
+        for (Client client : clients) {
+            client.emitter.complete();
+        }
+    }
+
+    /**
+     * 发布一条估值（非阻塞，可在任意线程调用）
+     */
+    public void publish(PortfolioValuation valuation) {
+        AtomicReference<PortfolioValuation> slot =
+                latest.computeIfAbsent(valuation.getSourceId(), id -> new AtomicReference<>());
+        if (slot.getAndSet(valuation) != null) {
+            conflatedCounter.increment();
+        } else {
+            ready.offer(slot);
+        }
+        LockSupport.unpark(broadcastThread);
+    }
+
+    /**
+     * 单个客户端的订阅流：按发送源合并，慢客户端只会跳帧
+     */
+    public Flux<ValuationFrame> frames() {
+        return Flux.create(emitter -> {
+            Client client = new Client(emitter);
+            emitter.onRequest(n -> client.drain());
+            emitter.onDispose(() -> clients.remove(client));
+            // 先登记再取快照：快照之后广播的帧不会丢，且 putIfAbsent 保证快照不会覆盖更新的帧
+            clients.add(client);
+            for (ValuationFrame frame : latestFrames.values()) {
+                client.pending.putIfAbsent(frame.getSourceId(), frame);
+            }
+            client.drain();
+        }, FluxSink.OverflowStrategy.IGNORE);
+    }
+
+    public int getClientCount() {
+        return clients.size();
+    }
+
+    private void broadcastLoop() {
+        while (running) {
+            LockSupport.park(this);
+            AtomicReference<PortfolioValuation> slot;
+            while ((slot = ready.poll()) != null) {
+                PortfolioValuation valuation = slot.getAndSet(null);
+                if (valuation == null) {
+                    continue;
+                }
+                try {
+                    ValuationFrame frame = encode(valuation);
+                    latestFrames.put(frame.getSourceId(), frame);
+                    for (Client client : clients) {
+                        client.offer(frame);
+                    }
+                    broadcastCounter.increment();
+                } catch (Exception e) {
+                    log.error("Broadcasting valuation #{} from [{}] failed",
+                            valuation.getUpdateCount(), valuation.getSourceId(), e);
+                }
+            }
+        }
+    }
+
+    private ValuationFrame encode(PortfolioValuation valuation) throws JsonProcessingException {
+        byte[] json = objectMapper.writeValueAsBytes(new LiveValuation(
+                valuation.getSourceId(),
+                valuation.getUpdateCount(),
+                valuation.getTimestamp(),
+                valuation.getTickTimestamp(),
+                valuation.getTotalNav(),
+                valuation.getChangedMarketData()));
+        // 事件 id 为「发送源:序号」，不同发送源的序号可能相同
+        byte[] id = (valuation.getSourceId() + ':' + valuation.getUpdateCount()).getBytes(StandardCharsets.UTF_8);
+
+        // JSON 序列化结果不含换行，可以直接作为单行 data
+        byte[] sseEvent = new byte[SSE_ID.length + id.length + SSE_EVENT.length + json.length + SSE_END.length];
+        int offset = 0;
+        System.arraycopy(SSE_ID, 0, sseEvent, offset, SSE_ID.length);
+        offset += SSE_ID.length;
+        System.arraycopy(id, 0, sseEvent, offset, id.length);
+        offset += id.length;
+        System.arraycopy(SSE_EVENT, 0, sseEvent, offset, SSE_EVENT.length);
+        offset += SSE_EVENT.length;
+        System.arraycopy(json, 0, sseEvent, offset, json.length);
+        offset += json.length;
+        System.arraycopy(SSE_END, 0, sseEvent, offset, SSE_END.length);
+        return new ValuationFrame(valuation.getSourceId(), valuation.getUpdateCount(), json, sseEvent);
+    }
+
+    private final class Client {
+        private final FluxSink<ValuationFrame> emitter;
+        // 待发送的帧，按发送源保留最新一条
+        private final Map<String, ValuationFrame> pending = new ConcurrentHashMap<>();
+        // drain 的串行化计数（FluxSink.next 不能并发调用）
+        private final AtomicInteger wip = new AtomicInteger();
+
+        private Client(FluxSink<ValuationFrame> emitter) {
+            this.emitter = emitter;
+        }
+
+        private void offer(ValuationFrame frame) {
+            if (pending.put(frame.getSourceId(), frame) != null) {
+                clientConflatedCounter.increment();
+            }
+            drain();
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                for (String sourceId : pending.keySet()) {
+                    if (emitter.isCancelled() || emitter.requestedFromDownstream() == 0) {
+                        break; // 等待下游 request
+                    }
+                    ValuationFrame frame = pending.remove(sourceId);
+                    if (frame != null) {
+                        emitter.next(frame);
+                    }
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.weilai.portfolio.infrastructure.broadcast;
+
+/**
+ * 一次估值更新预先序列化好的字节，所有客户端共享同一份（只读，不可修改）
+ */
+public final class ValuationFrame {
+    private final String sourceId;
+    private final long updateCount;
+    private final byte[] json;
+    private final byte[] sseEvent;
+
+    ValuationFrame(String sourceId, long updateCount, byte[] json, byte[] sseEvent) {
+        this.sourceId = sourceId;
+        this.updateCount = updateCount;
+        this.json = json;
+        this.sseEvent = sseEvent;
+    }
+
+    public String getSourceId() {
+        return sourceId;
+    }
+
+    public long getUpdateCount() {
+        return updateCount;
+    }
+
+    /**
+     * JSON 正文，用于 WebSocket 文本帧
+     */
+    public byte[] getJson() {
+        return json;
+    }
+
+    /**
+     * 完整的 SSE 事件（id/event/data 行及结尾空行）
+     */
+    public byte[] getSseEvent() {
+        return sseEvent;
+    }
+}
@@ -0,0 +1,21 @@
+package com.weilai.portfolio.infrastructure.history;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.Map;
+
+/**
+ * 降采样后的 NAV 序列：每个时间桶的 min/max/last（空桶不返回）
+ */
+@Data
+@AllArgsConstructor
+public class NavBuckets {
+    private long bucketMillis; // 桶宽（毫秒）
+    private long[] bucketStart; // 桶起始时间戳（毫秒）
+    private int[] count; // 桶内样本数
+    private double[] min;
+    private double[] max;
+    private double[] last;
+    private Map<String, double[]> lastPrices; // 标的 → 桶内最后一个价格
+}
@@ -0,0 +1,263 @@
+package com.weilai.portfolio.infrastructure.history;
+
+import com.weilai.portfolio.entity.PortfolioValuation;
+import com.weilai.portfolio.infrastructure.metrics.PipelineMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * NAV 历史环形缓冲区：启动时按容量一次性分配原始类型数组，写满后覆盖最旧数据，运行期不产生垃圾
+ * <p>
+ * 每个槽位保存 (时间戳, 公司级 NAV, 各标的最新价格)；分片时各分片的估值依次写入合并后的 NAV，
+ * 序列不会在各分片的部分 NAV 之间跳动。时间戳单调不减（迟到的估值按上一条时间戳入库），
+ * 因此范围查询可以在环上二分，复杂度 O(log n)。
+ */
+@Slf4j
+@Component
+public class NavHistoryBuffer {
+    private final int capacity;
+    private final int maxUnderlyings;
+
+    private final long[] timestamps;
+    private final double[] navs;
+    private final double[][] prices; // [标的列][槽位]，未知价格为 NaN
+    private final double[] lastKnownPrices; // 各标的最近一次价格（行情只推送变化的标的，需向前填充）
+    private final Map<String, Integer> columns = new HashMap<>();
+    private final String[] columnNames;
+
+    private long written = 0; // 累计写入条数（单调递增）
+    private final StampedLock lock = new StampedLock();
+    private final LongAdder droppedUnderlyings;
+
+    public NavHistoryBuffer(@Value("${portfolio.history.capacity:262144}") int capacity,
+                            @Value("${portfolio.history.max-underlyings:8}") int maxUnderlyings,
+                            PipelineMetrics pipelineMetrics) {
+        if (capacity <= 0 || maxUnderlyings < 0) {
+            throw new IllegalArgumentException("portfolio.history.capacity 必须大于0，max-underlyings 不能为负");
+        }
+        this.capacity = capacity;
+        this.maxUnderlyings = maxUnderlyings;
+        this.timestamps = new long[capacity];
+        this.navs = new double[capacity];
+        this.prices = new double[maxUnderlyings][capacity];
+        for (double[] column : prices) {
+            Arrays.fill(column, Double.NaN);
+        }
+        this.lastKnownPrices = new double[maxUnderlyings];
+        Arrays.fill(lastKnownPrices, Double.NaN);
+        this.columnNames = new String[maxUnderlyings];
+        this.droppedUnderlyings = pipelineMetrics.counter("history-dropped-underlyings");
+    }
+
+    /**
+     * 单一发送源：估值的 NAV 即公司级 NAV
+     */
+    public void append(PortfolioValuation valuation) {
+        append(valuation, valuation.getTotalNav());
+    }
+
+    /**
+     * @param nav 合并该估值后的公司级 NAV
+     */
+    public void append(PortfolioValuation valuation, BigDecimal nav) {
+        long stamp = lock.writeLock();
+        try {
+            for (Map.Entry<String, BigDecimal> change : valuation.getChangedMarketData().entrySet()) {
+                int column = columnOf(change.getKey());
+                if (column >= 0) {
+                    lastKnownPrices[column] = change.getValue().doubleValue();
+                }
+            }
+
+            int slot = (int) (written % capacity);
+            long timestamp = valuation.getTimestamp();
+            if (written > 0) {
+                timestamp = Math.max(timestamp, timestamps[(int) ((written - 1) % capacity)]);
+            }
+            timestamps[slot] = timestamp;
+            navs[slot] = nav.doubleValue();
+            for (int c = 0; c < columns.size(); c++) {
+                prices[c][slot] = lastKnownPrices[c];
+            }
+            written++;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * 最近 n 条
+     */
+    public NavSeries last(int n) {
+        long stamp = lock.readLock();
+        try {
+            int count = count();
+            return copy(count - Math.min(Math.max(n, 0), count), count);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 时间范围 [from, to]（毫秒，闭区间），超过 limit 条时只返回最近的 limit 条
+     */
+    public NavSeries range(long from, long to, int limit) {
+        long stamp = lock.readLock();
+        try {
+            int lo = lowerBound(from);
+            int hi = to == Long.MAX_VALUE ? count() : lowerBound(to + 1);
+            return copy(Math.max(lo, hi - Math.max(limit, 0)), hi);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 按 bucketMillis 宽度降采样 [from, to]，每个非空桶输出 min/max/last
+     */
+    public NavBuckets downsample(long from, long to, long bucketMillis, int maxBuckets) {
+        if (bucketMillis <= 0) {
+            throw new IllegalArgumentException("bucket 必须大于0");
+        }
+        long stamp = lock.readLock();
+        try {
+            int lo = lowerBound(from);
+            int hi = to == Long.MAX_VALUE ? count() : lowerBound(to + 1);
+            int columnCount = columns.size();
+            int capacityHint = Math.max(Math.min(hi - lo, maxBuckets), 0);
+
+            long[] bucketStart = new long[capacityHint];
+            int[] counts = new int[capacityHint];
+            double[] min = new double[capacityHint];
+            double[] max = new double[capacityHint];
+            double[] last = new double[capacityHint];
+            double[][] lastPrices = new double[columnCount][capacityHint];
+
+            int buckets = 0;
+            long currentBucket = Long.MIN_VALUE;
+            for (int i = lo; i < hi; i++) {
+                int slot = physical(i);
+                long bucket = from + Math.floorDiv(timestamps[slot] - from, bucketMillis) * bucketMillis;
+                if (bucket != currentBucket) {
+                    if (buckets == capacityHint) {
+                        break; // 超过最大桶数，截断
+                    }
+                    currentBucket = bucket;
+                    bucketStart[buckets] = bucket;
+                    min[buckets] = Double.POSITIVE_INFINITY;
+                    max[buckets] = Double.NEGATIVE_INFINITY;
+                    buckets++;
+                }
+                int b = buckets - 1;
+                double nav = navs[slot];
+                counts[b]++;
+                min[b] = Math.min(min[b], nav);
+                max[b] = Math.max(max[b], nav);
+                last[b] = nav;
+                for (int c = 0; c < columnCount; c++) {
+                    lastPrices[c][b] = prices[c][slot];
+                }
+            }
+
+            Map<String, double[]> priceSeries = new LinkedHashMap<>();
+            for (int c = 0; c < columnCount; c++) {
+                priceSeries.put(columnNames[c], Arrays.copyOf(lastPrices[c], buckets));
+            }
+            return new NavBuckets(bucketMillis,
+                    Arrays.copyOf(bucketStart, buckets),
+                    Arrays.copyOf(counts, buckets),
+                    Arrays.copyOf(min, buckets),
+                    Arrays.copyOf(max, buckets),
+                    Arrays.copyOf(last, buckets),
+                    priceSeries);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return count();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    // 以下方法调用方需持有锁
+
+    private int columnOf(String ticker) {
+        Integer column = columns.get(ticker);
+        if (column != null) {
+            return column;
+        }
+        if (columns.size() >= maxUnderlyings) {
+            droppedUnderlyings.increment();
+            return -1;
+        }
+        int newColumn = columns.size();
+        columns.put(ticker, newColumn);
+        columnNames[newColumn] = ticker;
+        log.info("NAV history tracks underlying {} in column {}", ticker, newColumn);
+        return newColumn;
+    }
+
+    private int count() {
+        return (int) Math.min(written, capacity);
+    }
+
+    // 逻辑下标（0 为最旧）→ 物理槽位
+    private int physical(int logicalIndex) {
+        long oldest = written - count();
+        return (int) ((oldest + logicalIndex) % capacity);
+    }
+
+    // 第一个时间戳 >= timestamp 的逻辑下标
+    private int lowerBound(long timestamp) {
+        int lo = 0;
+        int hi = count();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (timestamps[physical(mid)] < timestamp) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private NavSeries copy(int fromIndex, int toIndex) {
+        int n = Math.max(toIndex - fromIndex, 0);
+        int columnCount = columns.size();
+        long[] ts = new long[n];
+        double[] nav = new double[n];
+        double[][] columnPrices = new double[columnCount][n];
+        for (int i = 0; i < n; i++) {
+            int slot = physical(fromIndex + i);
+            ts[i] = timestamps[slot];
+            nav[i] = navs[slot];
+            for (int c = 0; c < columnCount; c++) {
+                columnPrices[c][i] = prices[c][slot];
+            }
+        }
+        Map<String, double[]> priceSeries = new LinkedHashMap<>();
+        for (int c = 0; c < columnCount; c++) {
+            priceSeries.put(columnNames[c], columnPrices[c]);
+        }
+        return new NavSeries(ts, nav, priceSeries);
+    }
+}
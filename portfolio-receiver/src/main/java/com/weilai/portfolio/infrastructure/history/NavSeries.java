@@ -0,0 +1,17 @@
+package com.weilai.portfolio.infrastructure.history;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.Map;
+
+/**
+ * NAV 历史序列（列式返回，按时间升序）
+ */
+@Data
+@AllArgsConstructor
+public class NavSeries {
+    private long[] timestamps; // 估值时间戳（毫秒）
+    private double[] nav; // 公司级合并 NAV（单一发送源时即组合总净资产）
+    private Map<String, double[]> prices; // 标的 → 对应时刻的最新价格（无数据为 NaN）
+}
@@ -0,0 +1,151 @@
+package com.weilai.portfolio.infrastructure.ingest;
+
+import com.weilai.portfolio.grpc.valuation.PortfolioValuationMessage;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 单个发送源的排序器：按 update_count 顺序交付，缓冲乱序消息，丢弃重复/过期消息
+ * - 首条消息（#1 除外）同样缓冲一个重排超时，等待可能先发后到的更早消息
+ * - 发送端会话 id 变大时视为发送端重启（从检查点恢复的序号可能低于重启前已发送的序号），更早会话的消息丢弃；
+ *   未携带会话 id 时，序号回到 #1 且该发送源已静默超过重排超时，才视为发送端重启
+ * 非线程安全，只能在该发送源所属的分片线程上访问
+ */
+@Slf4j
+class SourceSequencer {
+    private final String sourceId;
+    private final int reorderWindow;
+    private final long reorderTimeoutNanos;
+    private final Counters counters;
+
+    private long sessionId = 0; // 0 表示未携带会话 id
+    private int lastDelivered = 0; // 0 表示尚未交付过
+    private long lastReceiveNanos;
+    private final TreeMap<Integer, Pending> pending = new TreeMap<>();
+
+    SourceSequencer(String sourceId, int reorderWindow, long reorderTimeoutNanos, Counters counters) {
+        this.sourceId = sourceId;
+        this.reorderWindow = reorderWindow;
+        this.reorderTimeoutNanos = reorderTimeoutNanos;
+        this.counters = counters;
+    }
+
+    void accept(Pending item, Consumer<Pending> deliver) {
+        int seq = item.message.getUpdateCount();
+        if (seq <= 0) {
+            // 未带序号的消息不参与排序
+            deliver.accept(item);
+            return;
+        }
+        long session = item.message.getSessionId();
+        if (session != 0 && session != sessionId) {
+            if (session < sessionId) {
+                counters.duplicates.increment();
+                log.debug("Drop valuation #{} from an earlier session of [{}]", seq, sourceId);
+                return;
+            }
+            if (lastDelivered > 0 || !pending.isEmpty()) {
+                log.warn("Source [{}] started a new session at #{} (last delivered #{})", sourceId, seq, lastDelivered);
+                restart(deliver);
+            }
+            sessionId = session;
+        }
+        boolean silent = item.receiveNanos - lastReceiveNanos >= reorderTimeoutNanos;
+        lastReceiveNanos = item.receiveNanos;
+        if (session == 0 && seq == 1 && lastDelivered > 1 && silent) {
+            // 静默一段时间后序号从1重新开始：发送端重启
+            log.warn("Source [{}] restarted its sequence (last delivered #{})", sourceId, lastDelivered);
+            restart(deliver);
+        }
+        if (seq == lastDelivered + 1) {
+            lastDelivered = seq;
+            deliver.accept(item);
+            drainConsecutive(deliver);
+            return;
+        }
+        if (seq <= lastDelivered || pending.containsKey(seq)) {
+            counters.duplicates.increment();
+            log.debug("Drop duplicate/stale valuation #{} from [{}], last delivered #{}", seq, sourceId, lastDelivered);
+            return;
+        }
+
+        // 序号有空洞（或首条消息不是 #1）：先缓冲，超过重排窗口则放弃等待缺失的消息
+        if (lastDelivered > 0) {
+            counters.outOfOrder.increment();
+        }
+        pending.put(seq, item);
+        if (pending.size() > reorderWindow) {
+            skipToPending(deliver, 1);
+        }
+    }
+
+    /**
+     * 等待超时：放弃缺失的消息，交付已缓冲的后续消息
+     */
+    void flushExpired(long nowNanos, long timeoutNanos, Consumer<Pending> deliver) {
+        while (!pending.isEmpty() && nowNanos - pending.firstEntry().getValue().receiveNanos >= timeoutNanos) {
+            skipToPending(deliver, 1);
+        }
+    }
+
+    boolean isIdle() {
+        return pending.isEmpty();
+    }
+
+    // 发送端重启：交付旧会话剩余消息后重置
+    private void restart(Consumer<Pending> deliver) {
+        counters.sourceResets.increment();
+        skipToPending(deliver, Integer.MAX_VALUE);
+        lastDelivered = 0;
+    }
+
+    // 跳过空洞直接交付缓冲区中最早的消息（最多 rounds 段连续区间）
+    private void skipToPending(Consumer<Pending> deliver, int rounds) {
+        for (int i = 0; i < rounds && !pending.isEmpty(); i++) {
+            Map.Entry<Integer, Pending> first = pending.pollFirstEntry();
+            if (lastDelivered > 0) {
+                // 首条消息之前的序号不计为缺失（接收端在发送中途接入）
+                counters.gaps.add(first.getKey() - lastDelivered - 1L);
+            }
+            lastDelivered = first.getKey();
+            deliver.accept(first.getValue());
+            drainConsecutive(deliver);
+        }
+    }
+
+    private void drainConsecutive(Consumer<Pending> deliver) {
+        Pending next;
+        while ((next = pending.remove(lastDelivered + 1)) != null) {
+            lastDelivered++;
+            deliver.accept(next);
+        }
+    }
+
+    static final class Pending {
+        final PortfolioValuationMessage message;
+        final long receiveNanos;
+
+        Pending(PortfolioValuationMessage message, long receiveNanos) {
+            this.message = message;
+            this.receiveNanos = receiveNanos;
+        }
+    }
+
+    static final class Counters {
+        final LongAdder duplicates;
+        final LongAdder outOfOrder;
+        final LongAdder gaps;
+        final LongAdder sourceResets;
+
+        Counters(LongAdder duplicates, LongAdder outOfOrder, LongAdder gaps, LongAdder sourceResets) {
+            this.duplicates = duplicates;
+            this.outOfOrder = outOfOrder;
+            this.gaps = gaps;
+            this.sourceResets = sourceResets;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.weilai.portfolio.infrastructure.ingest;
+
+import com.weilai.portfolio.entity.PortfolioValuation;
+import com.weilai.portfolio.grpc.server.ValuationSubscriptionHub;
+import com.weilai.portfolio.grpc.valuation.PortfolioValuationMessage;
+import com.weilai.portfolio.infrastructure.aggregate.FirmNavAggregator;
+import com.weilai.portfolio.infrastructure.metrics.PipelineMetrics;
+import com.weilai.portfolio.infrastructure.subscriber.PortfolioValuationSubscriber;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 估值接收入口：按发送源（source_id）分片到单线程执行器
+ * - 同一发送源的消息始终落在同一分片，按 update_count 顺序交付
+ * - 不同发送源并行处理，gRPC 线程只负责投递
+ * - 每个分片的待处理队列有界（queue-capacity 条）：队列满时拒绝投递（RejectedExecutionException），
+ *   由 gRPC 服务以 RESOURCE_EXHAUSTED 失败该调用而不是确认，发送端据此感知接收端处理不过来
+ * - 排好序的估值先按发送源合并为公司级 NAV，再连同合并结果交给订阅者，并转发给 SubscribeValuations 的订阅方
+ */
+@Slf4j
+@Component
+public class ValuationIngestor {
+    static final String DEFAULT_SOURCE_ID = "default";
+
+    private final PortfolioValuationSubscriber valuationSubscriber;
+    private final ValuationSubscriptionHub subscriptionHub;
+    private final FirmNavAggregator firmNavAggregator;
+    private final int reorderWindow;
+    private final long reorderTimeoutNanos;
+
+    private final ThreadPoolExecutor[] shards;
+    private final ScheduledExecutorService flushTimer;
+    // 每个分片自己的发送源状态，只在对应分片线程上访问
+    private final List<Map<String, SourceSequencer>> sequencersByShard;
+    private final SourceSequencer.Counters counters;
+    private final LongAdder rejectedCounter;
+
+    public ValuationIngestor(PortfolioValuationSubscriber valuationSubscriber,
+                             ValuationSubscriptionHub subscriptionHub,
+                             FirmNavAggregator firmNavAggregator,
+                             PipelineMetrics pipelineMetrics,
+                             @Value("${portfolio.ingest.shards:0}") int shardCount,
+                             @Value("${portfolio.ingest.reorder-window:64}") int reorderWindow,
+                             @Value("${portfolio.ingest.reorder-timeout:200}") long reorderTimeoutMillis,
+                             @Value("${portfolio.ingest.queue-capacity:4096}") int queueCapacity) {
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("portfolio.ingest.queue-capacity 必须大于0");
+        }
+        this.valuationSubscriber = valuationSubscriber;
+        this.subscriptionHub = subscriptionHub;
+        this.firmNavAggregator = firmNavAggregator;
+        this.reorderWindow = reorderWindow;
+        this.reorderTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(reorderTimeoutMillis);
+        this.counters = new SourceSequencer.Counters(
+                pipelineMetrics.counter("valuations-duplicate"),
+                pipelineMetrics.counter("valuations-out-of-order"),
+                pipelineMetrics.counter("valuations-gap"),
+                pipelineMetrics.counter("source-resets"));
+        this.rejectedCounter = pipelineMetrics.counter("ingest-rejected");
+
+        int size = shardCount > 0 ? shardCount : Runtime.getRuntime().availableProcessors();
+        this.shards = new ThreadPoolExecutor[size];
+        this.sequencersByShard = new ArrayList<>(size);
+        AtomicInteger threadIndex = new AtomicInteger();
+        for (int i = 0; i < size; i++) {
+            // 单线程、有界队列；队列满时 AbortPolicy 抛出 RejectedExecutionException
+            shards[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                Thread thread = new Thread(runnable, "valuation-ingest-" + threadIndex.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.AbortPolicy());
+            sequencersByShard.add(new HashMap<>());
+        }
+        // 定期把「放弃等待超时的缺失消息」投递到各分片线程上执行
+        this.flushTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "valuation-ingest-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flushTimer.scheduleWithFixedDelay(this::scheduleFlush,
+                reorderTimeoutMillis, reorderTimeoutMillis, TimeUnit.MILLISECONDS);
+        pipelineMetrics.gauge("ingest-queue-depth", this::queueDepth);
+        log.info("Valuation ingestion started with {} shards, queue capacity {} per shard", size, queueCapacity);
+    }
+
+    /**
+     * 投递一条估值消息（任意线程调用，立即返回）
+     *
+     * @throws RejectedExecutionException 所属分片的待处理队列已满
+     */
+    public void submit(PortfolioValuationMessage message, long receiveNanos) {
+        String sourceId = message.getSourceId().isEmpty() ? DEFAULT_SOURCE_ID : message.getSourceId();
+        int shard = Math.floorMod(sourceId.hashCode(), shards.length);
+        SourceSequencer.Pending item = new SourceSequencer.Pending(message, receiveNanos);
+        try {
+            shards[shard].execute(() -> sequencerFor(shard, sourceId).accept(item, this::deliver));
+        } catch (RejectedExecutionException e) {
+            rejectedCounter.increment();
+            throw new RejectedExecutionException("接收分片 " + shard + " 的待处理队列已满，拒绝估值 #"
+                    + message.getUpdateCount() + " [" + sourceId + "]", e);
+        }
+    }
+
+    /**
+     * 所有分片待处理的消息数
+     */
+    public long queueDepth() {
+        long depth = 0;
+        for (ThreadPoolExecutor shard : shards) {
+            depth += shard.getQueue().size();
+        }
+        return depth;
+    }
+
+    private void scheduleFlush() {
+        for (int i = 0; i < shards.length; i++) {
+            final int shard = i;
+            try {
+                shards[i].execute(() -> flushExpired(shard));
+            } catch (RejectedExecutionException e) {
+                // 队列已满时该分片正忙，下一轮再检查
+            }
+        }
+    }
+
+    private SourceSequencer sequencerFor(int shard, String sourceId) {
+        return sequencersByShard.get(shard)
+                .computeIfAbsent(sourceId, id -> new SourceSequencer(id, reorderWindow, reorderTimeoutNanos, counters));
+    }
+
+    private void flushExpired(int shard) {
+        long now = System.nanoTime();
+        Consumer<SourceSequencer.Pending> deliver = this::deliver;
+        for (SourceSequencer sequencer : sequencersByShard.get(shard).values()) {
+            if (!sequencer.isIdle()) {
+                sequencer.flushExpired(now, reorderTimeoutNanos, deliver);
+            }
+        }
+    }
+
+    private void deliver(SourceSequencer.Pending item) {
+        try {
+            String sourceId = item.message.getSourceId().isEmpty() ? DEFAULT_SOURCE_ID : item.message.getSourceId();
+            BigDecimal firmNav = firmNavAggregator.accept(sourceId, item.message);
+            PortfolioValuation valuation = ValuationMessageConverter.toPortfolioValuation(item.message);
+            valuationSubscriber.handleValuation(valuation, firmNav, item.receiveNanos);
+            subscriptionHub.publish(item.message);
+        } catch (Exception e) {
+            log.error("The processing of valuation #{} from [{}] failed",
+                    item.message.getUpdateCount(), item.message.getSourceId(), e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flushTimer.shutdown();
+        for (ThreadPoolExecutor shard : shards) {
+            shard.shutdown();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.weilai.portfolio.infrastructure.ingest;
+
+import com.weilai.portfolio.entity.PortfolioValuation;
+import com.weilai.portfolio.entity.Position;
+import com.weilai.portfolio.grpc.valuation.PortfolioValuationMessage;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * gRPC估值消息 → 本地实体
+ */
+public final class ValuationMessageConverter {
+
+    private ValuationMessageConverter() {
+    }
+
+    public static PortfolioValuation toPortfolioValuation(PortfolioValuationMessage request) {
+        Position[] positions = request.getPositionsList().stream()
+                .map(posProto -> {
+                    Position position = new Position();
+                    position.setTicker(posProto.getTicker());
+                    position.setQuantity(posProto.getQuantity());
+                    position.setPrice(BigDecimal.valueOf(posProto.getPrice()));
+                    position.setMarketValue(BigDecimal.valueOf(posProto.getMarketValue()));
+                    return position;
+                })
+                .toArray(Position[]::new);
+
+        Map<String, BigDecimal> changedMarketData = new HashMap<>();
+        request.getChangedMarketDataList().forEach(change ->
+                changedMarketData.put(change.getTicker(), BigDecimal.valueOf(change.getPrice())));
+
+        return new PortfolioValuation(
+                positions,
+                BigDecimal.valueOf(request.getTotalNav()),
+                request.getTimestamp(),
+                request.getUpdateCount(),
+                changedMarketData,
+                request.getTickTimestamp(),
+                request.getSourceId().isEmpty() ? ValuationIngestor.DEFAULT_SOURCE_ID : request.getSourceId()
+        );
+    }
+}
@@ -0,0 +1,66 @@
+package com.weilai.portfolio.infrastructure.metrics;
+
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * 流水线指标注册表：各阶段延迟直方图 + 计数器 + 瞬时值（如队列深度）
+ * 调用方在构造时取得 StageLatency / LongAdder 引用，热路径上不再查表
+ */
+@Component
+public class PipelineMetrics {
+    private final ConcurrentMap<String, StageLatency> stages = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+    private final long startTime = System.currentTimeMillis();
+
+    public StageLatency stage(String name) {
+        return stages.computeIfAbsent(name, StageLatency::new);
+    }
+
+    public LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, key -> new LongAdder());
+    }
+
+    /**
+     * 注册瞬时值，读取快照时才求值（同名后注册的覆盖先注册的）
+     */
+    public void gauge(String name, LongSupplier supplier) {
+        gauges.put(name, supplier);
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, StageLatencySnapshot> stageSnapshots = new LinkedHashMap<>();
+        stages.values().stream()
+                .sorted((a, b) -> a.getName().compareTo(b.getName()))
+                .forEach(stage -> stageSnapshots.put(stage.getName(), stage.snapshot()));
+
+        Map<String, Long> counterSnapshots = new LinkedHashMap<>();
+        counters.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .forEach(entry -> counterSnapshots.put(entry.getKey(), entry.getValue().sum()));
+
+        Map<String, Long> gaugeSnapshots = new LinkedHashMap<>();
+        gauges.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .forEach(entry -> gaugeSnapshots.put(entry.getKey(), entry.getValue().getAsLong()));
+
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("uptimeMillis", System.currentTimeMillis() - startTime);
+        snapshot.put("stages", stageSnapshots);
+        snapshot.put("counters", counterSnapshots);
+        snapshot.put("gauges", gaugeSnapshots);
+        return snapshot;
+    }
+
+    public void reset() {
+        stages.values().forEach(StageLatency::reset);
+        counters.values().forEach(LongAdder::reset);
+    }
+}
@@ -1,75 +1,35 @@
 package com.weilai.portfolio.infrastructure.subscriber;
 
 import com.weilai.portfolio.entity.PortfolioValuation;
-import com.weilai.portfolio.entity.Position;
+import com.weilai.portfolio.infrastructure.broadcast.ValuationBroadcaster;
+import com.weilai.portfolio.infrastructure.history.NavHistoryBuffer;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Component;
 import reactor.core.Disposable;
 import reactor.core.publisher.Flux;
 
 import java.math.BigDecimal;
-import java.text.DecimalFormat;
-import java.time.Instant;
-import java.time.LocalDateTime;
-import java.time.ZoneId;
-import java.time.format.DateTimeFormatter;
-import java.util.Map;
 
 /**
  * 投资组合估值订阅者（统一类名，适配启动类注入）
+ * 渲染交给 ValuationRenderer 的独立线程，调用方（gRPC 线程）不再被控制台 I/O 阻塞
+ * 每条估值同时交给 ValuationBroadcaster 按发送源推送给浏览器；NAV 历史与渲染使用公司级合并 NAV，
+ * 分片时不会把单个分片的部分 NAV 当作组合 NAV
  */
 @Component
 @RequiredArgsConstructor
 public class PortfolioValuationSubscriber {
-    private static final DecimalFormat PRICE_FORMAT = new DecimalFormat("#,##0.00");
-    private static final DecimalFormat CURRENCY_FORMAT = new DecimalFormat("#,##0.00 USD");
-    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+    private final ValuationRenderer valuationRenderer;
+    private final NavHistoryBuffer navHistoryBuffer;
+    private final ValuationBroadcaster valuationBroadcaster;
 
     public void subscribe(Flux<PortfolioValuation> valuationFlux) {
         Disposable disposable = valuationFlux
-                // 过滤掉总净资产为0的估值结果
-                .filter(valuation -> valuation.getTotalNav().compareTo(BigDecimal.ZERO) > 0)
-                .subscribe(this::printValuationResult, this::handleError);
+                .subscribe(this::handleValuation, this::handleError);
 
         // 程序关闭时取消订阅，避免资源泄露
         Runtime.getRuntime().addShutdownHook(new Thread(disposable::dispose));
     }
-    private void printValuationResult(PortfolioValuation valuation) {
-        // 1. 打印市场数据更新
-        System.out.println("# " + valuation.getUpdateCount() + " Market Data Update");
-        Map<String, BigDecimal> changedPrices = valuation.getChangedMarketData();
-        for (Map.Entry<String, BigDecimal> entry : changedPrices.entrySet()) {
-            System.out.printf("%s change to %s%n", entry.getKey(), PRICE_FORMAT.format(entry.getValue()));
-        }
-
-        // 2. 打印估值时间和总净资产（保留原有格式）
-        System.out.println();
-        LocalDateTime valuationTime = LocalDateTime.ofInstant(
-                Instant.ofEpochMilli(valuation.getTimestamp()),
-                ZoneId.systemDefault()
-        );
-        System.out.printf("[Valuation Time]: %s%n", valuationTime.format(TIME_FORMAT));
-        System.out.printf("[Portfolio Total Net Asset Value (NAV)]: %s%n", CURRENCY_FORMAT.format(valuation.getTotalNav()));
-        // 3. 打印持仓表格
-        System.out.println("# Portfolio");
-        // 表头（左对齐25字符，右对齐10字符，右对齐10字符，右对齐15字符）
-        System.out.printf("%-25s %10s %10s %15s%n", "symbol", "price", "qty", "value");
-        for (Position position : valuation.getPositions()) {
-            System.out.printf(
-                    "%-25s %10s %10d %15s%n",
-                    position.getTicker(),
-                    PRICE_FORMAT.format(position.getPrice()),
-                    position.getQuantity(),
-                    CURRENCY_FORMAT.format(position.getMarketValue())
-            );
-        }
-
-        // 4. 打印组合总价值
-        System.out.println("# Total portfolio");
-        System.out.println(PRICE_FORMAT.format(valuation.getTotalNav()) + " USD");
-        System.out.println("======================================================");
-        System.out.println(); // 空行分隔不同更新
-    }
 
     private void handleError(Throwable error) {
         System.err.println("======================================================");
@@ -80,11 +40,26 @@ public class PortfolioValuationSubscriber {
     }
 
     public void handleValuation(PortfolioValuation valuation) {
-        // 过滤掉总净资产为0的估值结果
-        if (valuation.getTotalNav().compareTo(BigDecimal.ZERO) <= 0) {
+        handleValuation(valuation, valuation.getTotalNav(), System.nanoTime());
+    }
+
+    /**
+     * 分片的部分 NAV 可以为0或负数（如空头持仓），只按公司级 NAV 过滤
+     *
+     * @param firmNav      合并该估值后的公司级 NAV（单一发送源时即该估值的 NAV）；该估值未被合并（过期）时为 null
+     * @param receiveNanos 接收时刻的 System.nanoTime()，用于统计 receive-to-render
+     */
+    public void handleValuation(PortfolioValuation valuation, BigDecimal firmNav, long receiveNanos) {
+        // 过滤掉公司级总净资产为0的估值结果
+        if (firmNav != null && firmNav.compareTo(BigDecimal.ZERO) <= 0) {
             return;
         }
 
-        printValuationResult(valuation);
+        valuationBroadcaster.publish(valuation);
+        if (firmNav == null) {
+            return; // 比该发送源已有估值更早，公司级 NAV 未变化
+        }
+        navHistoryBuffer.append(valuation, firmNav);
+        valuationRenderer.submit(valuation, firmNav, receiveNanos);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,241 @@
+package com.weilai.portfolio.infrastructure.subscriber;
+
+import com.weilai.portfolio.entity.PortfolioValuation;
+import com.weilai.portfolio.entity.Position;
+import com.weilai.portfolio.infrastructure.metrics.PipelineMetrics;
+import com.weilai.portfolio.infrastructure.metrics.StageLatency;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.text.DecimalFormat;
+import java.text.FieldPosition;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 估值渲染器：gRPC 线程只把估值放入容量为 1 的「最新值」槽位，由单一渲染线程负责格式化和输出
+ * <p>
+ * - APPEND：每次有新估值就追加打印一帧（渲染慢于接收时，中间的估值被合并丢弃）
+ * - DASHBOARD：按固定频率清屏重绘最新一帧
+ * - NONE：不输出，仅统计
+ */
+@Slf4j
+@Component
+public class ValuationRenderer {
+    public enum Mode {APPEND, DASHBOARD, NONE}
+
+    private static final String CLEAR_SCREEN = "\033[H\033[2J";
+    private static final String SEPARATOR = "======================================================";
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+
+    private final Mode mode;
+    private final long dashboardIntervalNanos;
+
+    // 最新值槽位：生产者覆盖写，消费者 getAndSet(null) 取走
+    private final AtomicReference<PendingRender> latest = new AtomicReference<>();
+    private volatile boolean running;
+    private Thread renderThread;
+
+    private final StageLatency receiveToRender;
+    private final LongAdder renderedCounter;
+    private final LongAdder conflatedCounter;
+
+    // 以下字段仅由渲染线程访问（DecimalFormat 非线程安全）
+    private final DecimalFormat priceFormat = new DecimalFormat("#,##0.00");
+    private final DecimalFormat currencyFormat = new DecimalFormat("#,##0.00 USD");
+    private final FieldPosition fieldPosition = new FieldPosition(0);
+    private final StringBuffer frame = new StringBuffer(4096);
+    private final StringBuffer cell = new StringBuffer(32);
+    private char[] chars = new char[4096];
+    private final Writer out;
+
+    @Autowired
+    public ValuationRenderer(@Value("${portfolio.render.mode:APPEND}") Mode mode,
+                             @Value("${portfolio.render.dashboard-interval:250}") long dashboardIntervalMillis,
+                             PipelineMetrics pipelineMetrics) {
+        this(mode, dashboardIntervalMillis, pipelineMetrics, new OutputStreamWriter(
+                new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16), StandardCharsets.UTF_8));
+    }
+
+    // 输出目标可替换（测试用）
+    ValuationRenderer(Mode mode, long dashboardIntervalMillis, PipelineMetrics pipelineMetrics, Writer out) {
+        this.mode = mode;
+        this.out = out;
+        this.dashboardIntervalNanos = TimeUnit.MILLISECONDS.toNanos(dashboardIntervalMillis);
+        this.receiveToRender = pipelineMetrics.stage("receive-to-render");
+        this.renderedCounter = pipelineMetrics.counter("valuations-rendered");
+        this.conflatedCounter = pipelineMetrics.counter("valuations-conflated");
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        renderThread = new Thread(this::renderLoop, "valuation-renderer");
+        renderThread.setDaemon(true);
+        renderThread.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (renderThread != null) {
+            LockSupport.unpark(renderThread);
+            renderThread.join(TimeUnit.SECONDS.toMillis(1));
+        }
+    }
+
+    /**
+     * 提交待渲染估值（非阻塞，可在任意线程调用）
+     *
+     * @param firmNav      公司级合并 NAV，显示为组合总净资产；持仓表格为该估值所属发送源的持仓
+     * @param receiveNanos 接收时刻的 System.nanoTime()，用于统计 receive-to-render
+     */
+    public void submit(PortfolioValuation valuation, BigDecimal firmNav, long receiveNanos) {
+        if (latest.getAndSet(new PendingRender(valuation, firmNav, receiveNanos)) != null) {
+            conflatedCounter.increment();
+        }
+        if (mode == Mode.APPEND) {
+            LockSupport.unpark(renderThread);
+        }
+    }
+
+    private void renderLoop() {
+        while (running) {
+            if (mode == Mode.APPEND) {
+                // 输出时的阻塞调用可能消耗掉渲染期间 submit 发出的 unpark 许可，槽位非空时不再等待
+                if (latest.get() == null) {
+                    LockSupport.park(this);
+                }
+            } else {
+                LockSupport.parkNanos(this, dashboardIntervalNanos);
+            }
+            PendingRender pending = latest.getAndSet(null);
+            if (pending == null) {
+                continue;
+            }
+            try {
+                if (mode != Mode.NONE) {
+                    frame.setLength(0);
+                    if (mode == Mode.DASHBOARD) {
+                        frame.append(CLEAR_SCREEN);
+                    }
+                    formatFrame(pending.valuation, pending.firmNav);
+                    writeFrame();
+                }
+                renderedCounter.increment();
+                receiveToRender.recordNanos(System.nanoTime() - pending.receiveNanos);
+            } catch (Exception e) {
+                log.error("Rendering valuation #{} failed", pending.valuation.getUpdateCount(), e);
+            }
+        }
+    }
+
+    // 与原 printValuationResult 的输出格式保持一致；分片时另起一行显示该分片的部分 NAV
+    private void formatFrame(PortfolioValuation valuation, BigDecimal firmNav) {
+        // 1. 市场数据更新
+        frame.append("# ").append(valuation.getUpdateCount()).append(" Market Data Update\n");
+        for (Map.Entry<String, BigDecimal> entry : valuation.getChangedMarketData().entrySet()) {
+            frame.append(entry.getKey()).append(" change to ");
+            priceFormat.format(entry.getValue(), frame, fieldPosition);
+            frame.append('\n');
+        }
+
+        // 2. 估值时间和总净资产
+        frame.append('\n');
+        LocalDateTime valuationTime = LocalDateTime.ofInstant(
+                Instant.ofEpochMilli(valuation.getTimestamp()),
+                ZoneId.systemDefault()
+        );
+        frame.append("[Valuation Time]: ");
+        TIME_FORMAT.formatTo(valuationTime, frame);
+        frame.append("\n[Portfolio Total Net Asset Value (NAV)]: ");
+        currencyFormat.format(firmNav, frame, fieldPosition);
+        frame.append('\n');
+        if (firmNav.compareTo(valuation.getTotalNav()) != 0) {
+            frame.append("[Source ").append(valuation.getSourceId()).append(" NAV]: ");
+            currencyFormat.format(valuation.getTotalNav(), frame, fieldPosition);
+            frame.append('\n');
+        }
+
+        // 3. 持仓表格（左对齐25字符，右对齐10字符，右对齐10字符，右对齐15字符）
+        frame.append("# Portfolio\n");
+        appendLeft("symbol", 25).append(' ');
+        appendRight("price", 10).append(' ');
+        appendRight("qty", 10).append(' ');
+        appendRight("value", 15).append('\n');
+        for (Position position : valuation.getPositions()) {
+            appendLeft(position.getTicker(), 25).append(' ');
+            cell.setLength(0);
+            priceFormat.format(position.getPrice(), cell, fieldPosition);
+            appendRight(cell, 10).append(' ');
+            cell.setLength(0);
+            cell.append(position.getQuantity());
+            appendRight(cell, 10).append(' ');
+            cell.setLength(0);
+            currencyFormat.format(position.getMarketValue(), cell, fieldPosition);
+            appendRight(cell, 15).append('\n');
+        }
+
+        // 4. 组合总价值
+        frame.append("# Total portfolio\n");
+        priceFormat.format(firmNav, frame, fieldPosition);
+        frame.append(" USD\n").append(SEPARATOR).append("\n\n");
+    }
+
+    private StringBuffer appendLeft(CharSequence value, int width) {
+        frame.append(value);
+        for (int i = value.length(); i < width; i++) {
+            frame.append(' ');
+        }
+        return frame;
+    }
+
+    private StringBuffer appendRight(CharSequence value, int width) {
+        for (int i = value.length(); i < width; i++) {
+            frame.append(' ');
+        }
+        return frame.append(value);
+    }
+
+    // 整帧一次写出、一次 flush
+    private void writeFrame() throws IOException {
+        int length = frame.length();
+        if (chars.length < length) {
+            chars = new char[Math.max(length, chars.length * 2)];
+        }
+        frame.getChars(0, length, chars, 0);
+        out.write(chars, 0, length);
+        out.flush();
+    }
+
+    private static final class PendingRender {
+        private final PortfolioValuation valuation;
+        private final BigDecimal firmNav;
+        private final long receiveNanos;
+
+        private PendingRender(PortfolioValuation valuation, BigDecimal firmNav, long receiveNanos) {
+            this.valuation = valuation;
+            this.firmNav = firmNav;
+            this.receiveNanos = receiveNanos;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.weilai.portfolio.web;
+
+import com.weilai.portfolio.infrastructure.aggregate.FirmNav;
+import com.weilai.portfolio.infrastructure.aggregate.FirmNavAggregator;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+/**
+ * 公司级合并 NAV 接口
+ * - GET /firm/nav                   合并 NAV、watermark 与各发送源的最新贡献
+ * - GET /firm/nav?sources=false     只返回汇总
+ */
+@RestController
+@RequestMapping("/firm/nav")
+@RequiredArgsConstructor
+public class FirmNavController {
+    private final FirmNavAggregator firmNavAggregator;
+
+    @GetMapping
+    public Mono<FirmNav> nav(@RequestParam(defaultValue = "true") boolean sources) {
+        return Mono.fromSupplier(() -> firmNavAggregator.current(sources));
+    }
+}
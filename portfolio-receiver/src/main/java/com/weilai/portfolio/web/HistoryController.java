@@ -0,0 +1,58 @@
+package com.weilai.portfolio.web;
+
+import com.weilai.portfolio.infrastructure.history.NavBuckets;
+import com.weilai.portfolio.infrastructure.history.NavHistoryBuffer;
+import com.weilai.portfolio.infrastructure.history.NavSeries;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+/**
+ * NAV 历史查询接口
+ * - GET /history/nav?last=N                         最近 N 条
+ * - GET /history/nav?from=&to=&limit=               时间范围（毫秒，闭区间）
+ * - GET /history/nav/downsample?from=&to=&bucket=   按桶宽（毫秒）降采样为 min/max/last
+ */
+@RestController
+@RequestMapping("/history/nav")
+@RequiredArgsConstructor
+public class HistoryController {
+    private static final int DEFAULT_LIMIT = 10_000;
+    private static final int MAX_BUCKETS = 10_000;
+
+    private final NavHistoryBuffer navHistoryBuffer;
+
+    @GetMapping
+    public Mono<NavSeries> series(@RequestParam(required = false) Integer last,
+                                  @RequestParam(required = false) Long from,
+                                  @RequestParam(required = false) Long to,
+                                  @RequestParam(defaultValue = "" + DEFAULT_LIMIT) int limit) {
+        if (last != null) {
+            return Mono.fromSupplier(() -> navHistoryBuffer.last(last));
+        }
+        if (from == null) {
+            return Mono.fromSupplier(() -> navHistoryBuffer.last(limit));
+        }
+        long end = to == null ? Long.MAX_VALUE : to;
+        return Mono.fromSupplier(() -> navHistoryBuffer.range(from, end, limit));
+    }
+
+    @GetMapping("/downsample")
+    public Mono<NavBuckets> downsample(@RequestParam long from,
+                                       @RequestParam(required = false) Long to,
+                                       @RequestParam long bucket) {
+        if (bucket <= 0) {
+            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "bucket 必须大于0"));
+        }
+        if (to != null && to < from) {
+            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "to 不能早于 from"));
+        }
+        long end = to == null ? Long.MAX_VALUE : to;
+        return Mono.fromSupplier(() -> navHistoryBuffer.downsample(from, end, bucket, MAX_BUCKETS));
+    }
+}
@@ -0,0 +1,50 @@
+package com.weilai.portfolio.web;
+
+import com.weilai.portfolio.infrastructure.broadcast.ValuationBroadcaster;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * 实时估值 SSE 接口：GET /live/valuations
+ * 直接写出广播器预先拼好的 SSE 字节，不再逐客户端做 JSON 编码
+ */
+@RestController
+@RequestMapping("/live")
+@RequiredArgsConstructor
+public class LiveValuationController {
+    private static final Duration HEARTBEAT_INTERVAL = Duration.ofSeconds(15);
+    // SSE 注释行，防止代理因空闲断开连接
+    private static final byte[] HEARTBEAT = ":\n\n".getBytes(StandardCharsets.UTF_8);
+
+    private final ValuationBroadcaster valuationBroadcaster;
+
+    @GetMapping("/valuations")
+    public Mono<Void> valuations(ServerHttpResponse response) {
+        response.getHeaders().setContentType(MediaType.TEXT_EVENT_STREAM);
+        response.getHeaders().setCacheControl("no-cache");
+        DataBufferFactory bufferFactory = response.bufferFactory();
+        Flux<DataBuffer> events = Flux.merge(
+                // wrap 只包装共享数组，不复制
+                valuationBroadcaster.frames().map(frame -> bufferFactory.wrap(frame.getSseEvent())),
+                Flux.interval(HEARTBEAT_INTERVAL).map(tick -> bufferFactory.wrap(HEARTBEAT)));
+        return response.writeAndFlushWith(events.map(Mono::just));
+    }
+
+    @GetMapping("/clients")
+    public Mono<Map<String, Integer>> clients() {
+        return Mono.fromSupplier(() -> Collections.singletonMap("clients", valuationBroadcaster.getClientCount()));
+    }
+}
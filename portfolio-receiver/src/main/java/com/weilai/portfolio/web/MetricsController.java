@@ -0,0 +1,31 @@
+package com.weilai.portfolio.web;
+
+import com.weilai.portfolio.infrastructure.metrics.PipelineMetrics;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+/**
+ * 流水线指标 HTTP 接口：GET 查询各阶段延迟分位数与计数器，POST reset 开始新的统计窗口
+ */
+@RestController
+@RequestMapping("/metrics/pipeline")
+@RequiredArgsConstructor
+public class MetricsController {
+    private final PipelineMetrics pipelineMetrics;
+
+    @GetMapping
+    public Mono<Map<String, Object>> snapshot() {
+        return Mono.fromSupplier(pipelineMetrics::snapshot);
+    }
+
+    @PostMapping("/reset")
+    public Mono<Void> reset() {
+        return Mono.fromRunnable(pipelineMetrics::reset);
+    }
+}
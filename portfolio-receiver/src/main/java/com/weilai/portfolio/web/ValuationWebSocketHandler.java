@@ -0,0 +1,27 @@
+package com.weilai.portfolio.web;
+
+import com.weilai.portfolio.infrastructure.broadcast.ValuationBroadcaster;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.socket.WebSocketHandler;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import org.springframework.web.reactive.socket.WebSocketSession;
+import reactor.core.publisher.Mono;
+
+/**
+ * 实时估值 WebSocket 接口：ws://host:8081/live/ws，每条估值一个文本帧（JSON）
+ */
+@Component
+@RequiredArgsConstructor
+public class ValuationWebSocketHandler implements WebSocketHandler {
+    private final ValuationBroadcaster valuationBroadcaster;
+
+    @Override
+    public Mono<Void> handle(WebSocketSession session) {
+        Mono<Void> outbound = session.send(valuationBroadcaster.frames()
+                .map(frame -> new WebSocketMessage(WebSocketMessage.Type.TEXT,
+                        session.bufferFactory().wrap(frame.getJson()))));
+        // 读取入站消息仅用于感知客户端关闭，任一方向结束即结束会话
+        return Mono.firstWithSignal(outbound, session.receive().then());
+    }
+}
@@ -0,0 +1,19 @@
+package com.weilai.portfolio.web;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.web.reactive.HandlerMapping;
+import org.springframework.web.reactive.handler.SimpleUrlHandlerMapping;
+
+import java.util.Collections;
+
+@Configuration
+public class WebSocketConfig {
+
+    @Bean
+    public HandlerMapping valuationWebSocketMapping(ValuationWebSocketHandler valuationWebSocketHandler) {
+        return new SimpleUrlHandlerMapping(
+                Collections.singletonMap("/live/ws", valuationWebSocketHandler), Ordered.HIGHEST_PRECEDENCE);
+    }
+}
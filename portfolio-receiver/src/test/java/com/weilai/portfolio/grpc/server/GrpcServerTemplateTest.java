@@ -0,0 +1,128 @@
+package com.weilai.portfolio.grpc.server;
+
+import com.weilai.portfolio.grpc.valuation.PortfolioValuationMessage;
+import com.weilai.portfolio.grpc.valuation.PortfolioValuationServiceGrpc;
+import com.weilai.portfolio.grpc.valuation.ValuationResponse;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.stub.StreamObserver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GrpcServerTemplateTest {
+
+    private GrpcServerTemplate server;
+    private ManagedChannel channel;
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        if (channel != null) {
+            channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        }
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    // 回显处理回调所在线程名的服务
+    private static final class ThreadNameService extends PortfolioValuationServiceGrpc.PortfolioValuationServiceImplBase {
+        @Override
+        public void sendValuation(PortfolioValuationMessage request, StreamObserver<ValuationResponse> responseObserver) {
+            responseObserver.onNext(ValuationResponse.newBuilder()
+                    .setSuccess(true)
+                    .setMessage(Thread.currentThread().getName())
+                    .build());
+            responseObserver.onCompleted();
+        }
+    }
+
+    private static GrpcServerSettings settings(GrpcServerSettings.ExecutorMode mode) {
+        GrpcServerSettings settings = new GrpcServerSettings();
+        settings.setExecutorMode(mode);
+        settings.setThreads(2);
+        return settings;
+    }
+
+    // 启动服务端（端口 0），发一次请求，返回服务端处理请求的线程名
+    private String handlerThread(GrpcServerTemplate template) throws IOException {
+        server = template;
+        server.start();
+        channel = ManagedChannelBuilder.forAddress("localhost", server.getPort()).usePlaintext().build();
+        ValuationResponse response = PortfolioValuationServiceGrpc.newBlockingStub(channel)
+                .withDeadlineAfter(5, TimeUnit.SECONDS)
+                .sendValuation(PortfolioValuationMessage.getDefaultInstance());
+        assertTrue(response.getSuccess());
+        return response.getMessage();
+    }
+
+    /**
+     * DIRECT：回调直接在 Netty 事件循环（自定义 worker 组）线程上执行
+     */
+    @Test
+    void start_DirectExecutor_RunsOnEventLoop() throws IOException {
+        GrpcServerSettings settings = settings(GrpcServerSettings.ExecutorMode.DIRECT);
+        settings.setWorkerThreads(1);
+
+        assertTrue(handlerThread(new GrpcServerTemplate(0, settings, new ThreadNameService())).startsWith("grpc-worker"));
+    }
+
+    /**
+     * WORK_STEALING：回调在命名的 ForkJoinPool 工作线程上执行
+     */
+    @Test
+    void start_WorkStealingExecutor_RunsOnForkJoinWorker() throws IOException {
+        GrpcServerSettings settings = settings(GrpcServerSettings.ExecutorMode.WORK_STEALING);
+
+        assertTrue(handlerThread(new GrpcServerTemplate(0, settings, new ThreadNameService())).startsWith("grpc-ws-"));
+    }
+
+    /**
+     * FIXED：回调在固定大小线程池上执行，不占用事件循环
+     */
+    @Test
+    void start_FixedExecutor_RunsOnPoolThread() throws IOException {
+        GrpcServerSettings settings = settings(GrpcServerSettings.ExecutorMode.FIXED);
+
+        String thread = handlerThread(new GrpcServerTemplate(0, settings, new ThreadNameService()));
+        assertTrue(thread.startsWith("pool-"), thread);
+    }
+
+    /**
+     * 默认配置与只指定线程数的构造方法均为 FIXED 线程池，使用 gRPC 共享的默认事件循环
+     */
+    @Test
+    void start_DefaultSettings_UsesFixedPool() throws IOException {
+        GrpcServerSettings defaults = new GrpcServerSettings();
+        assertEquals(GrpcServerSettings.ExecutorMode.FIXED, defaults.getExecutorMode());
+        assertEquals(0, defaults.getBossThreads());
+        assertEquals(0, defaults.getWorkerThreads());
+
+        String thread = handlerThread(new GrpcServerTemplate(0, defaults, new ThreadNameService()));
+        assertTrue(thread.startsWith("pool-"), thread);
+    }
+
+    /**
+     * 旧构造方法（端口 + 线程池大小）等价于 FIXED 模式
+     */
+    @Test
+    void start_LegacyConstructor_UsesFixedPool() throws IOException {
+        String thread = handlerThread(new GrpcServerTemplate(0, 1, new ThreadNameService()));
+        assertTrue(thread.startsWith("pool-"), thread);
+    }
+
+    /**
+     * 线程数为 0 时取 CPU 核数
+     */
+    @Test
+    void resolvedThreads_Zero_UsesAvailableProcessors() {
+        GrpcServerSettings settings = new GrpcServerSettings();
+        assertEquals(2, settings.resolvedThreads());
+        settings.setThreads(0);
+        assertEquals(Runtime.getRuntime().availableProcessors(), settings.resolvedThreads());
+    }
+}
@@ -0,0 +1,78 @@
+package com.weilai.portfolio.grpc.server;
+
+import com.weilai.portfolio.grpc.valuation.PortfolioValuationMessage;
+import com.weilai.portfolio.grpc.valuation.PortfolioValuationServiceGrpc;
+import com.weilai.portfolio.grpc.valuation.ValuationBatchEntry;
+import com.weilai.portfolio.grpc.valuation.ValuationBatchRequest;
+import com.weilai.portfolio.infrastructure.ingest.ValuationIngestor;
+import com.weilai.portfolio.infrastructure.metrics.PipelineMetrics;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+
+class PortfolioValuationServerTest {
+
+    private final PipelineMetrics metrics = new PipelineMetrics();
+    private final ValuationIngestor ingestor = mock(ValuationIngestor.class);
+    private final ValuationSubscriptionHub hub = new ValuationSubscriptionHub(metrics);
+    private Server server;
+    private ManagedChannel channel;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        String name = InProcessServerBuilder.generateName();
+        server = InProcessServerBuilder.forName(name)
+                .addService(new PortfolioValuationServer(ingestor, hub, metrics))
+                .build()
+                .start();
+        channel = InProcessChannelBuilder.forName(name).build();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        hub.shutdown();
+        channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    private static PortfolioValuationMessage valuation(int updateCount) {
+        return PortfolioValuationMessage.newBuilder().setSourceId("test").setUpdateCount(updateCount).build();
+    }
+
+    /**
+     * 接收分片队列已满：调用以 RESOURCE_EXHAUSTED 失败，而不是确认
+     */
+    @Test
+    void sendValuation_IngestQueueFull_ResourceExhausted() {
+        doThrow(new RejectedExecutionException("full")).when(ingestor).submit(any(), anyLong());
+        PortfolioValuationServiceGrpc.PortfolioValuationServiceBlockingStub stub =
+                PortfolioValuationServiceGrpc.newBlockingStub(channel);
+
+        StatusRuntimeException single = assertThrows(StatusRuntimeException.class,
+                () -> stub.sendValuation(valuation(1)));
+        assertEquals(Status.Code.RESOURCE_EXHAUSTED, single.getStatus().getCode());
+
+        ValuationBatchRequest batch = ValuationBatchRequest.newBuilder()
+                .addEntries(ValuationBatchEntry.newBuilder().setValuation(valuation(2)))
+                .build();
+        StatusRuntimeException batched = assertThrows(StatusRuntimeException.class,
+                () -> stub.batchValuations(batch));
+        assertEquals(Status.Code.RESOURCE_EXHAUSTED, batched.getStatus().getCode());
+    }
+}
@@ -0,0 +1,223 @@
+package com.weilai.portfolio.grpc.server;
+
+import com.weilai.portfolio.grpc.valuation.MarketDataChangeProto;
+import com.weilai.portfolio.grpc.valuation.PortfolioValuationMessage;
+import com.weilai.portfolio.grpc.valuation.PortfolioValuationServiceGrpc;
+import com.weilai.portfolio.grpc.valuation.SubscribeRequest;
+import com.weilai.portfolio.infrastructure.metrics.PipelineMetrics;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ValuationSubscriptionHubTest {
+
+    private final PipelineMetrics metrics = new PipelineMetrics();
+    private final ValuationSubscriptionHub hub = new ValuationSubscriptionHub(metrics);
+    private Server server;
+    private ManagedChannel channel;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        String name = InProcessServerBuilder.generateName();
+        // 订阅接口不经过接收入口，ValuationIngestor 传 null
+        server = InProcessServerBuilder.forName(name)
+                .addService(new PortfolioValuationServer(null, hub, metrics))
+                .build()
+                .start();
+        channel = InProcessChannelBuilder.forName(name).build();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        hub.shutdown();
+        channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    private static PortfolioValuationMessage valuation(String sourceId, int updateCount, String... changedTickers) {
+        PortfolioValuationMessage.Builder builder = PortfolioValuationMessage.newBuilder()
+                .setSourceId(sourceId)
+                .setUpdateCount(updateCount)
+                .setTotalNav(1000.0 + updateCount);
+        for (String ticker : changedTickers) {
+            builder.addChangedMarketData(MarketDataChangeProto.newBuilder().setTicker(ticker).setPrice(100.0));
+        }
+        return builder.build();
+    }
+
+    private Subscriber subscribe(SubscribeRequest request, int initialRequest) throws InterruptedException {
+        int before = hub.getSubscriberCount();
+        Subscriber subscriber = new Subscriber(initialRequest);
+        PortfolioValuationServiceGrpc.newStub(channel).subscribeValuations(request, subscriber);
+        for (int i = 0; i < 500 && hub.getSubscriberCount() == before; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(before + 1, hub.getSubscriberCount());
+        return subscriber;
+    }
+
+    /**
+     * 慢订阅方：不 request 时服务端不写入，同一发送源只保留最新估值；request 后收到各发送源的最新一条
+     */
+    @Test
+    void subscribe_SlowSubscriber_KeepsLatestPerSource() throws InterruptedException {
+        Subscriber subscriber = subscribe(SubscribeRequest.getDefaultInstance(), 0);
+        for (int i = 1; i <= 5; i++) {
+            hub.publish(valuation("portfolio-a", i));
+        }
+        for (int i = 1; i <= 3; i++) {
+            hub.publish(valuation("portfolio-b", i));
+        }
+        assertNull(subscriber.received.poll(100, TimeUnit.MILLISECONDS));
+        assertEquals(6L, metrics.counter("stream-conflated").sum());
+
+        subscriber.request(10);
+        Map<String, Integer> latest = new HashMap<>();
+        for (int i = 0; i < 2; i++) {
+            PortfolioValuationMessage message = subscriber.received.poll(5, TimeUnit.SECONDS);
+            assertNotNull(message);
+            latest.put(message.getSourceId(), message.getUpdateCount());
+        }
+        assertEquals(Integer.valueOf(5), latest.get("portfolio-a"));
+        assertEquals(Integer.valueOf(3), latest.get("portfolio-b"));
+        assertNull(subscriber.received.poll(100, TimeUnit.MILLISECONDS));
+
+        // 恢复消费后逐条推送
+        hub.publish(valuation("portfolio-a", 6));
+        PortfolioValuationMessage next = subscriber.received.poll(5, TimeUnit.SECONDS);
+        assertNotNull(next);
+        assertEquals(6, next.getUpdateCount());
+        assertEquals(3L, metrics.counter("valuations-streamed").sum());
+    }
+
+    /**
+     * 发送源与标的过滤按整条消息进行
+     */
+    @Test
+    void subscribe_SourceAndTickerFilters() throws InterruptedException {
+        Subscriber subscriber = subscribe(SubscribeRequest.newBuilder()
+                .addSourceIds("portfolio-a")
+                .addTickers("AAPL")
+                .build(), Integer.MAX_VALUE);
+        Subscriber bySource = subscribe(SubscribeRequest.newBuilder()
+                .addSourceIds("portfolio-b")
+                .build(), Integer.MAX_VALUE);
+
+        hub.publish(valuation("portfolio-a", 1, "TSLA"));
+        hub.publish(valuation("portfolio-b", 1, "AAPL"));
+        hub.publish(valuation("portfolio-a", 2, "TSLA", "AAPL"));
+        hub.publish(valuation("portfolio-a", 3));
+
+        PortfolioValuationMessage message = subscriber.received.poll(5, TimeUnit.SECONDS);
+        assertNotNull(message);
+        assertEquals("portfolio-a", message.getSourceId());
+        assertEquals(2, message.getUpdateCount());
+        assertEquals(2, message.getChangedMarketDataCount());
+        assertNull(subscriber.received.poll(100, TimeUnit.MILLISECONDS));
+
+        PortfolioValuationMessage other = bySource.received.poll(5, TimeUnit.SECONDS);
+        assertNotNull(other);
+        assertEquals("portfolio-b", other.getSourceId());
+        assertNull(bySource.received.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * 快照：先推送各匹配发送源的最新估值（不受标的过滤），再推送实时更新
+     */
+    @Test
+    void subscribe_Snapshot_LatestOfMatchingSources() throws InterruptedException {
+        hub.publish(valuation("portfolio-a", 1));
+        hub.publish(valuation("portfolio-a", 2));
+        hub.publish(valuation("portfolio-b", 7));
+        hub.publish(valuation("portfolio-c", 4));
+
+        Subscriber subscriber = subscribe(SubscribeRequest.newBuilder()
+                .setSnapshot(true)
+                .addSourceIds("portfolio-a")
+                .addSourceIds("portfolio-b")
+                .addTickers("AAPL")
+                .build(), Integer.MAX_VALUE);
+        List<String> snapshot = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            PortfolioValuationMessage message = subscriber.received.poll(5, TimeUnit.SECONDS);
+            assertNotNull(message);
+            snapshot.add(message.getSourceId() + "#" + message.getUpdateCount());
+        }
+        snapshot.sort(null);
+        assertEquals("[portfolio-a#2, portfolio-b#7]", snapshot.toString());
+
+        hub.publish(valuation("portfolio-b", 8, "AAPL"));
+        PortfolioValuationMessage live = subscriber.received.poll(5, TimeUnit.SECONDS);
+        assertNotNull(live);
+        assertEquals(8, live.getUpdateCount());
+    }
+
+    /**
+     * 订阅方取消后从订阅列表移除
+     */
+    @Test
+    void subscribe_Cancel_RemovesSubscriber() throws InterruptedException {
+        Subscriber subscriber = subscribe(SubscribeRequest.getDefaultInstance(), Integer.MAX_VALUE);
+        subscriber.cancel();
+        for (int i = 0; i < 500 && hub.getSubscriberCount() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, hub.getSubscriberCount());
+    }
+
+    // 手动流控的客户端：initialRequest 为 0 时模拟不消费的慢订阅方
+    private static final class Subscriber
+            implements ClientResponseObserver<SubscribeRequest, PortfolioValuationMessage> {
+        private final BlockingQueue<PortfolioValuationMessage> received = new LinkedBlockingQueue<>();
+        private final int initialRequest;
+        private volatile ClientCallStreamObserver<SubscribeRequest> call;
+
+        private Subscriber(int initialRequest) {
+            this.initialRequest = initialRequest;
+        }
+
+        @Override
+        public void beforeStart(ClientCallStreamObserver<SubscribeRequest> requestStream) {
+            this.call = requestStream;
+            requestStream.disableAutoRequestWithInitial(initialRequest);
+        }
+
+        void request(int count) {
+            call.request(count);
+        }
+
+        void cancel() {
+            call.cancel("test", null);
+        }
+
+        @Override
+        public void onNext(PortfolioValuationMessage value) {
+            received.add(value);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+        }
+
+        @Override
+        public void onCompleted() {
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.weilai.portfolio.infrastructure.aggregate;
+
+import com.weilai.portfolio.grpc.valuation.PortfolioValuationMessage;
+import com.weilai.portfolio.infrastructure.metrics.PipelineMetrics;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FirmNavAggregatorTest {
+    private static final long STALE_AFTER_MILLIS = 2_000L;
+    private static final long EXPIRE_AFTER_MILLIS = 60_000L;
+
+    private final PipelineMetrics metrics = new PipelineMetrics();
+    private final AtomicLong now = new AtomicLong(1_000_000L);
+    private final FirmNavAggregator aggregator =
+            new FirmNavAggregator(metrics, STALE_AFTER_MILLIS, EXPIRE_AFTER_MILLIS, now::get);
+
+    private static PortfolioValuationMessage message(String shardId, int updateCount, long timestamp, double nav) {
+        return PortfolioValuationMessage.newBuilder()
+                .setShardId(shardId)
+                .setUpdateCount(updateCount)
+                .setTimestamp(timestamp)
+                .setTotalNav(nav)
+                .build();
+    }
+
+    private static BigDecimal nav(String value) {
+        return new BigDecimal(value).setScale(6);
+    }
+
+    /**
+     * 各发送源保留最新一条，总额按差值更新
+     */
+    @Test
+    void accept_TwoSources_SumsLatestPerSource() {
+        assertEquals(nav("100.25"), aggregator.accept("book/0", message("0", 1, 1000L, 100.25)));
+        assertEquals(nav("300.75"), aggregator.accept("book/1", message("1", 1, 1000L, 200.5)));
+        assertEquals(nav("310.75"), aggregator.accept("book/0", message("0", 2, 1100L, 110.25)));
+
+        FirmNav firmNav = aggregator.current(true);
+        assertEquals(nav("310.75"), firmNav.getTotalNav());
+        assertEquals(2, firmNav.getSources());
+        assertEquals(3L, firmNav.getVersion());
+        assertEquals("book/0", firmNav.getContributions().get(0).getSourceId());
+        assertEquals(2, firmNav.getContributions().get(0).getUpdateCount());
+        assertEquals(nav("200.5"), firmNav.getContributions().get(1).getNav());
+    }
+
+    /**
+     * 比该发送源已有估值更早的消息被丢弃，总额不变
+     */
+    @Test
+    void accept_OutdatedMessage_Dropped() {
+        aggregator.accept("book/0", message("0", 2, 2000L, 120.0));
+        assertNull(aggregator.accept("book/0", message("0", 1, 1999L, 100.0)));
+
+        FirmNav firmNav = aggregator.current(true);
+        assertEquals(nav("120"), firmNav.getTotalNav());
+        assertEquals(2, firmNav.getContributions().get(0).getUpdateCount());
+        assertEquals(1L, firmNav.getVersion());
+        assertEquals(1L, metrics.counter("firm-nav-outdated").sum());
+    }
+
+    /**
+     * watermark 为最旧一条的时间；落后最新发送源超过 stale-after-ms 的发送源标记为落后
+     */
+    @Test
+    void current_LaggingSource_FlaggedStaleWithWatermark() {
+        aggregator.accept("book/0", message("0", 1, 10_000L, 1.0));
+        aggregator.accept("book/1", message("1", 1, 10_000L + STALE_AFTER_MILLIS, 2.0));
+        FirmNav consistent = aggregator.current(false);
+        assertTrue(consistent.isConsistent());
+        assertEquals(0, consistent.getStaleSources());
+        assertNull(consistent.getContributions());
+
+        aggregator.accept("book/1", message("1", 2, 10_001L + STALE_AFTER_MILLIS, 2.0));
+        FirmNav lagging = aggregator.current(true);
+        assertFalse(lagging.isConsistent());
+        assertEquals(1, lagging.getStaleSources());
+        assertEquals(10_000L, lagging.getWatermark());
+        assertEquals(10_001L + STALE_AFTER_MILLIS, lagging.getLatestTimestamp());
+        assertTrue(lagging.getContributions().get(0).isStale());
+        assertFalse(lagging.getContributions().get(1).isStale());
+
+        // 落后的发送源追上后恢复一致
+        aggregator.accept("book/0", message("0", 2, 10_001L + STALE_AFTER_MILLIS, 1.5));
+        FirmNav caughtUp = aggregator.current(false);
+        assertTrue(caughtUp.isConsistent());
+        assertEquals(10_001L + STALE_AFTER_MILLIS, caughtUp.getWatermark());
+    }
+
+    /**
+     * 超过 expire-after-ms（接收端时钟）没有新估值的发送源移出合并
+     */
+    @Test
+    void current_SilentSource_Expired() {
+        aggregator.accept("book/0", message("0", 1, 1000L, 100.0));
+        now.addAndGet(EXPIRE_AFTER_MILLIS / 2);
+        aggregator.accept("book/1", message("1", 1, 1000L, 50.0));
+
+        now.addAndGet(EXPIRE_AFTER_MILLIS / 2);
+        assertEquals(2, aggregator.current(false).getSources());
+
+        now.incrementAndGet();
+        FirmNav firmNav = aggregator.current(true);
+        assertEquals(1, firmNav.getSources());
+        assertEquals(nav("50"), firmNav.getTotalNav());
+        assertEquals("book/1", firmNav.getContributions().get(0).getSourceId());
+        assertEquals(1L, metrics.counter("firm-nav-sources-expired").sum());
+
+        // 过期的发送源再次发送时重新加入
+        assertEquals(nav("150"), aggregator.accept("book/0", message("0", 2, 2000L, 100.0)));
+    }
+
+    /**
+     * stale-after-ms 必须大于0且不大于 expire-after-ms
+     */
+    @Test
+    void constructor_InvalidWindows_Rejected() {
+        assertThrows(IllegalArgumentException.class, () -> new FirmNavAggregator(metrics, 0L, 1000L));
+        assertThrows(IllegalArgumentException.class, () -> new FirmNavAggregator(metrics, 2000L, 1000L));
+    }
+}
@@ -0,0 +1,158 @@
+package com.weilai.portfolio.infrastructure.broadcast;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.weilai.portfolio.entity.PortfolioValuation;
+import com.weilai.portfolio.entity.Position;
+import com.weilai.portfolio.infrastructure.metrics.PipelineMetrics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.test.StepVerifier;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ValuationBroadcasterTest {
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final PipelineMetrics metrics = new PipelineMetrics();
+    private ValuationBroadcaster broadcaster;
+
+    @BeforeEach
+    void setUp() {
+        broadcaster = new ValuationBroadcaster(objectMapper, metrics);
+        broadcaster.start();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        broadcaster.stop();
+    }
+
+    static PortfolioValuation valuation(String sourceId, int updateCount, double nav) {
+        return new PortfolioValuation(new Position[0], BigDecimal.valueOf(nav), 1000L + updateCount, updateCount,
+                Collections.<String, BigDecimal>emptyMap(), 900L + updateCount, sourceId);
+    }
+
+    // 等待广播线程处理完已发布的估值，使后续订阅的快照确定
+    private void awaitBroadcast(long expected) throws InterruptedException {
+        for (int i = 0; i < 500 && metrics.counter("valuations-broadcast").sum() < expected; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, metrics.counter("valuations-broadcast").sum());
+    }
+
+    /**
+     * 新连接先收到每个发送源的最新一帧，而不是只有全局最后一帧
+     */
+    @Test
+    void frames_Snapshot_LatestOfEverySource() throws InterruptedException {
+        broadcaster.publish(valuation("shard-0", 1, 100));
+        awaitBroadcast(1);
+        broadcaster.publish(valuation("shard-1", 1, 200));
+        awaitBroadcast(2);
+        broadcaster.publish(valuation("shard-0", 2, 110));
+        awaitBroadcast(3);
+
+        Map<String, Long> snapshot = new HashMap<>();
+        StepVerifier.create(broadcaster.frames().take(2))
+                .recordWith(ArrayList::new)
+                .expectNextCount(2)
+                .consumeRecordedWith(frames -> frames.forEach(frame ->
+                        snapshot.put(frame.getSourceId(), frame.getUpdateCount())))
+                .expectComplete()
+                .verify(TIMEOUT);
+        Map<String, Long> expected = new HashMap<>();
+        expected.put("shard-0", 2L);
+        expected.put("shard-1", 1L);
+        assertEquals(expected, snapshot);
+    }
+
+    /**
+     * 慢客户端只在同一发送源内跳帧，请求后能收到每个发送源的最新一帧
+     */
+    @Test
+    void frames_SlowClient_ConflatesPerSource() throws InterruptedException {
+        StepVerifier.create(broadcaster.frames(), 0)
+                .then(() -> {
+                    for (int i = 1; i <= 5; i++) {
+                        broadcaster.publish(valuation("shard-0", i, 100 + i));
+                        broadcaster.publish(valuation("shard-1", i, 200 + i));
+                    }
+                })
+                .then(() -> {
+                    try {
+                        awaitClientIdle();
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                })
+                .thenRequest(2)
+                .recordWith(ArrayList::new)
+                .expectNextCount(2)
+                .consumeRecordedWith(frames -> {
+                    Map<String, Long> received = new HashMap<>();
+                    frames.forEach(frame -> received.put(frame.getSourceId(), frame.getUpdateCount()));
+                    assertEquals(Long.valueOf(5L), received.get("shard-0"));
+                    assertEquals(Long.valueOf(5L), received.get("shard-1"));
+                })
+                .expectNoEvent(Duration.ofMillis(100))
+                .thenCancel()
+                .verify(TIMEOUT);
+        assertEquals(0, broadcaster.getClientCount());
+    }
+
+    // 等待广播线程处理完已发布的 10 条估值（广播或在槽位中被合并）
+    private void awaitClientIdle() throws InterruptedException {
+        for (int i = 0; i < 500; i++) {
+            long handled = metrics.counter("valuations-broadcast").sum() + metrics.counter("broadcast-conflated").sum();
+            if (handled >= 10L) {
+                break;
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * 帧内容：JSON 含发送源，SSE 事件 id 为「发送源:序号」
+     */
+    @Test
+    void frames_Encoding_IncludesSourceId() throws Exception {
+        broadcaster.publish(valuation("portfolio/shard-2", 7, 123.45));
+        ValuationFrame frame = broadcaster.frames().blockFirst(TIMEOUT);
+        assertNotNull(frame);
+
+        JsonNode json = objectMapper.readTree(frame.getJson());
+        assertEquals("portfolio/shard-2", json.get("sourceId").asText());
+        assertEquals(7L, json.get("updateCount").asLong());
+        assertEquals(0, new BigDecimal("123.45").compareTo(json.get("totalNav").decimalValue()));
+
+        String sse = new String(frame.getSseEvent(), StandardCharsets.UTF_8);
+        assertTrue(sse.startsWith("id:portfolio/shard-2:7\nevent:valuation\ndata:{"), sse);
+        assertTrue(sse.endsWith("}\n\n"), sse);
+    }
+
+    /**
+     * 客户端计数随订阅和取消变化
+     */
+    @Test
+    void getClientCount_TracksSubscriptions() {
+        assertEquals(0, broadcaster.getClientCount());
+        Disposable first = broadcaster.frames().subscribe();
+        Disposable second = broadcaster.frames().subscribe();
+        assertEquals(2, broadcaster.getClientCount());
+        first.dispose();
+        second.dispose();
+        assertEquals(0, broadcaster.getClientCount());
+    }
+}
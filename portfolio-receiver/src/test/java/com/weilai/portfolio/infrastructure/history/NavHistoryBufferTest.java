@@ -0,0 +1,156 @@
+package com.weilai.portfolio.infrastructure.history;
+
+import com.weilai.portfolio.entity.PortfolioValuation;
+import com.weilai.portfolio.entity.Position;
+import com.weilai.portfolio.infrastructure.metrics.PipelineMetrics;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NavHistoryBufferTest {
+
+    private static PortfolioValuation valuation(long timestamp, double nav, Map<String, BigDecimal> changed) {
+        return new PortfolioValuation(new Position[0], BigDecimal.valueOf(nav), timestamp, 0, changed, timestamp,
+                "test");
+    }
+
+    private static PortfolioValuation valuation(long timestamp, double nav) {
+        return valuation(timestamp, nav, Collections.<String, BigDecimal>emptyMap());
+    }
+
+    private static Map<String, BigDecimal> prices(String ticker, double price) {
+        Map<String, BigDecimal> changed = new HashMap<>();
+        changed.put(ticker, BigDecimal.valueOf(price));
+        return changed;
+    }
+
+    /**
+     * 写满后覆盖最旧数据，查询按时间升序返回最近的数据
+     */
+    @Test
+    void append_Wraps_KeepsNewest() {
+        NavHistoryBuffer buffer = new NavHistoryBuffer(4, 0, new PipelineMetrics());
+        for (int i = 1; i <= 10; i++) {
+            buffer.append(valuation(i * 100L, i));
+        }
+        assertEquals(4, buffer.size());
+
+        NavSeries all = buffer.last(100);
+        assertArrayEquals(new long[]{700L, 800L, 900L, 1000L}, all.getTimestamps());
+        assertArrayEquals(new double[]{7, 8, 9, 10}, all.getNav());
+
+        NavSeries last2 = buffer.last(2);
+        assertArrayEquals(new long[]{900L, 1000L}, last2.getTimestamps());
+        assertEquals(0, buffer.last(-1).getTimestamps().length);
+    }
+
+    /**
+     * 时间范围闭区间，跨越环的物理末尾时二分结果仍正确
+     */
+    @Test
+    void range_AcrossWrap_InclusiveBounds() {
+        NavHistoryBuffer buffer = new NavHistoryBuffer(5, 0, new PipelineMetrics());
+        for (int i = 1; i <= 8; i++) {
+            buffer.append(valuation(i * 100L, i));
+        }
+        // 环中为 400..800，物理上 600 之后回绕
+        assertArrayEquals(new long[]{500L, 600L, 700L}, buffer.range(500L, 700L, 100).getTimestamps());
+        assertArrayEquals(new long[]{500L, 600L, 700L}, buffer.range(450L, 750L, 100).getTimestamps());
+        assertArrayEquals(new long[]{400L, 500L, 600L, 700L, 800L},
+                buffer.range(0L, Long.MAX_VALUE, 100).getTimestamps());
+        // 超过 limit 时只返回最近的 limit 条
+        assertArrayEquals(new long[]{700L, 800L}, buffer.range(0L, Long.MAX_VALUE, 2).getTimestamps());
+        // 空区间与倒置区间
+        assertEquals(0, buffer.range(810L, 900L, 100).getTimestamps().length);
+        assertEquals(0, buffer.range(700L, 500L, 100).getTimestamps().length);
+    }
+
+    /**
+     * 迟到的估值按上一条时间戳入库，保持时间戳单调
+     */
+    @Test
+    void append_LateTimestamp_KeptMonotonic() {
+        NavHistoryBuffer buffer = new NavHistoryBuffer(8, 0, new PipelineMetrics());
+        buffer.append(valuation(100L, 1));
+        buffer.append(valuation(300L, 2));
+        buffer.append(valuation(200L, 3));
+        buffer.append(valuation(400L, 4));
+        assertArrayEquals(new long[]{100L, 300L, 300L, 400L}, buffer.last(10).getTimestamps());
+        assertArrayEquals(new double[]{2, 3}, buffer.range(300L, 300L, 10).getNav());
+    }
+
+    /**
+     * 行情只推送变化的标的：未变化的标的向前填充最近一次价格，首次出现之前为 NaN
+     */
+    @Test
+    void append_Prices_ForwardFilled() {
+        PipelineMetrics metrics = new PipelineMetrics();
+        NavHistoryBuffer buffer = new NavHistoryBuffer(8, 2, metrics);
+        buffer.append(valuation(100L, 1, prices("AAPL", 110.0)));
+        buffer.append(valuation(200L, 2, prices("TSLA", 450.0)));
+        buffer.append(valuation(300L, 3, prices("AAPL", 111.0)));
+        buffer.append(valuation(400L, 4, prices("MSFT", 300.0)));
+
+        NavSeries series = buffer.last(10);
+        assertArrayEquals(new double[]{110.0, 110.0, 111.0, 111.0}, series.getPrices().get("AAPL"));
+        assertArrayEquals(new double[]{Double.NaN, 450.0, 450.0, 450.0}, series.getPrices().get("TSLA"));
+        // 超过 max-underlyings 的标的不跟踪
+        assertFalse(series.getPrices().containsKey("MSFT"));
+        assertEquals(1L, metrics.counter("history-dropped-underlyings").sum());
+    }
+
+    /**
+     * 降采样：每个非空桶输出 count/min/max/last 与桶内最后一个价格
+     */
+    @Test
+    void downsample_Buckets() {
+        NavHistoryBuffer buffer = new NavHistoryBuffer(16, 1, new PipelineMetrics());
+        buffer.append(valuation(1000L, 5, prices("AAPL", 100.0)));
+        buffer.append(valuation(1005L, 3));
+        buffer.append(valuation(1009L, 4, prices("AAPL", 101.0)));
+        buffer.append(valuation(1030L, 7));
+
+        NavBuckets buckets = buffer.downsample(1000L, 2000L, 10L, 100);
+        assertArrayEquals(new long[]{1000L, 1030L}, buckets.getBucketStart());
+        assertArrayEquals(new int[]{3, 1}, buckets.getCount());
+        assertArrayEquals(new double[]{3, 7}, buckets.getMin());
+        assertArrayEquals(new double[]{5, 7}, buckets.getMax());
+        assertArrayEquals(new double[]{4, 7}, buckets.getLast());
+        assertArrayEquals(new double[]{101.0, 101.0}, buckets.getLastPrices().get("AAPL"));
+
+        // 超过最大桶数时截断
+        assertEquals(1, buffer.downsample(1000L, 2000L, 10L, 1).getBucketStart().length);
+    }
+
+    /**
+     * to 早于 from：返回空结果而不是抛异常
+     */
+    @Test
+    void downsample_InvertedRange_Empty() {
+        NavHistoryBuffer buffer = new NavHistoryBuffer(16, 0, new PipelineMetrics());
+        for (int i = 1; i <= 5; i++) {
+            buffer.append(valuation(i * 500L, i));
+        }
+        NavBuckets buckets = buffer.downsample(2000L, 1000L, 10L, 100);
+        assertEquals(0, buckets.getBucketStart().length);
+        assertThrows(IllegalArgumentException.class, () -> buffer.downsample(0L, 1000L, 0L, 100));
+    }
+
+    /**
+     * 分片的估值写入合并后的 NAV，序列不在各分片的部分 NAV 之间跳动
+     */
+    @Test
+    void append_ShardValuations_RecordsFirmNav() {
+        NavHistoryBuffer buffer = new NavHistoryBuffer(8, 0, new PipelineMetrics());
+        buffer.append(valuation(100L, 60.0), BigDecimal.valueOf(60.0));
+        buffer.append(valuation(110L, 40.0), BigDecimal.valueOf(100.0));
+        buffer.append(valuation(120L, 61.0), BigDecimal.valueOf(101.0));
+
+        assertArrayEquals(new double[]{60.0, 100.0, 101.0}, buffer.last(3).getNav(), 1e-9);
+    }
+}
@@ -0,0 +1,210 @@
+package com.weilai.portfolio.infrastructure.ingest;
+
+import com.weilai.portfolio.grpc.valuation.PortfolioValuationMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SourceSequencerTest {
+    private static final long TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+
+    private final SourceSequencer.Counters counters =
+            new SourceSequencer.Counters(new LongAdder(), new LongAdder(), new LongAdder(), new LongAdder());
+    private final List<Integer> delivered = new ArrayList<>();
+    private final Consumer<SourceSequencer.Pending> deliver =
+            item -> delivered.add(item.message.getUpdateCount());
+
+    private static SourceSequencer.Pending item(int updateCount, long receiveNanos) {
+        return item(0L, updateCount, receiveNanos);
+    }
+
+    private static SourceSequencer.Pending item(long sessionId, int updateCount, long receiveNanos) {
+        PortfolioValuationMessage message = PortfolioValuationMessage.newBuilder()
+                .setSourceId("test")
+                .setSessionId(sessionId)
+                .setUpdateCount(updateCount)
+                .build();
+        return new SourceSequencer.Pending(message, receiveNanos);
+    }
+
+    private SourceSequencer sequencer(int reorderWindow) {
+        return new SourceSequencer("test", reorderWindow, TIMEOUT_NANOS, counters);
+    }
+
+    /**
+     * 乱序到达的消息按序号交付
+     */
+    @Test
+    void accept_OutOfOrder_DeliveredInSequence() {
+        SourceSequencer sequencer = sequencer(8);
+        sequencer.accept(item(1, 0L), deliver);
+        sequencer.accept(item(3, 1L), deliver);
+        sequencer.accept(item(4, 2L), deliver);
+        assertEquals(Arrays.asList(1), delivered);
+        assertFalse(sequencer.isIdle());
+
+        sequencer.accept(item(2, 3L), deliver);
+        assertEquals(Arrays.asList(1, 2, 3, 4), delivered);
+        assertTrue(sequencer.isIdle());
+        assertEquals(2L, counters.outOfOrder.sum());
+        assertEquals(0L, counters.gaps.sum());
+    }
+
+    /**
+     * #2 先于 #1 到达：#1 不视为重启，两条按序交付，后续消息无需等待超时
+     */
+    @Test
+    void accept_FirstMessagesSwapped_NoRestart() {
+        SourceSequencer sequencer = sequencer(8);
+        sequencer.accept(item(2, 0L), deliver);
+        assertTrue(delivered.isEmpty());
+
+        sequencer.accept(item(1, 1L), deliver);
+        sequencer.accept(item(3, 2L), deliver);
+        assertEquals(Arrays.asList(1, 2, 3), delivered);
+        assertEquals(0L, counters.sourceResets.sum());
+        assertEquals(0L, counters.duplicates.sum());
+    }
+
+    /**
+     * 首条消息不是 #1（接收端中途接入）：等待一个重排超时后交付，之前的序号不计为缺失
+     */
+    @Test
+    void flushExpired_FirstMessageMidStream_DeliveredAfterTimeout() {
+        SourceSequencer sequencer = sequencer(8);
+        sequencer.accept(item(500, 0L), deliver);
+        sequencer.flushExpired(TIMEOUT_NANOS - 1, TIMEOUT_NANOS, deliver);
+        assertTrue(delivered.isEmpty());
+
+        sequencer.flushExpired(TIMEOUT_NANOS, TIMEOUT_NANOS, deliver);
+        sequencer.accept(item(501, TIMEOUT_NANOS + 1), deliver);
+        assertEquals(Arrays.asList(500, 501), delivered);
+        assertEquals(0L, counters.gaps.sum());
+    }
+
+    /**
+     * 缺失的消息超时未到：跳过空洞，交付已缓冲的后续消息并统计缺失数量
+     */
+    @Test
+    void flushExpired_MissingMessage_SkipsGap() {
+        SourceSequencer sequencer = sequencer(8);
+        sequencer.accept(item(1, 0L), deliver);
+        sequencer.accept(item(4, 10L), deliver);
+        sequencer.accept(item(5, 20L), deliver);
+
+        sequencer.flushExpired(10L + TIMEOUT_NANOS, TIMEOUT_NANOS, deliver);
+        assertEquals(Arrays.asList(1, 4, 5), delivered);
+        assertEquals(2L, counters.gaps.sum());
+
+        // 迟到的缺失消息按过期丢弃
+        sequencer.accept(item(2, 30L + TIMEOUT_NANOS), deliver);
+        assertEquals(Arrays.asList(1, 4, 5), delivered);
+        assertEquals(1L, counters.duplicates.sum());
+    }
+
+    /**
+     * 缓冲超过重排窗口：不等超时，放弃最早的空洞
+     */
+    @Test
+    void accept_WindowOverflow_SkipsOldestGap() {
+        SourceSequencer sequencer = sequencer(2);
+        sequencer.accept(item(1, 0L), deliver);
+        sequencer.accept(item(3, 1L), deliver);
+        sequencer.accept(item(5, 2L), deliver);
+        assertEquals(Arrays.asList(1), delivered);
+
+        sequencer.accept(item(6, 3L), deliver);
+        assertEquals(Arrays.asList(1, 3), delivered);
+        assertEquals(1L, counters.gaps.sum());
+    }
+
+    /**
+     * 重复消息（已交付或已缓冲）被丢弃
+     */
+    @Test
+    void accept_Duplicates_Dropped() {
+        SourceSequencer sequencer = sequencer(8);
+        sequencer.accept(item(1, 0L), deliver);
+        sequencer.accept(item(1, 1L), deliver);
+        sequencer.accept(item(3, 2L), deliver);
+        sequencer.accept(item(3, 3L), deliver);
+        sequencer.accept(item(2, 4L), deliver);
+        assertEquals(Arrays.asList(1, 2, 3), delivered);
+        assertEquals(2L, counters.duplicates.sum());
+    }
+
+    /**
+     * 静默超过重排超时后序号回到 #1：视为发送端重启；仍在发送时回到 #1 则按重复丢弃
+     */
+    @Test
+    void accept_SequenceRestart_OnlyAfterSilence() {
+        SourceSequencer sequencer = sequencer(8);
+        sequencer.accept(item(1, 0L), deliver);
+        sequencer.accept(item(2, 1L), deliver);
+        sequencer.accept(item(3, 2L), deliver);
+
+        sequencer.accept(item(1, 3L), deliver);
+        assertEquals(Arrays.asList(1, 2, 3), delivered);
+        assertEquals(0L, counters.sourceResets.sum());
+
+        long restartNanos = 3L + TIMEOUT_NANOS;
+        sequencer.accept(item(1, restartNanos), deliver);
+        sequencer.accept(item(2, restartNanos + 1), deliver);
+        assertEquals(Arrays.asList(1, 2, 3, 1, 2), delivered);
+        assertEquals(1L, counters.sourceResets.sum());
+    }
+
+    /**
+     * 未带序号的消息直接交付
+     */
+    @Test
+    void accept_NoSequence_DeliveredImmediately() {
+        SourceSequencer sequencer = sequencer(8);
+        sequencer.accept(item(0, 0L), deliver);
+        sequencer.accept(item(0, 1L), deliver);
+        assertEquals(Arrays.asList(0, 0), delivered);
+    }
+
+    /**
+     * 发送端从检查点恢复，新会话的序号低于已交付的序号：重置排序，新会话的消息不被当作重复丢弃
+     */
+    @Test
+    void accept_NewSessionWithLowerSequence_Resets() {
+        SourceSequencer sequencer = sequencer(8);
+        for (int seq = 1; seq <= 10; seq++) {
+            sequencer.accept(item(100L, seq, seq), deliver);
+        }
+        delivered.clear();
+
+        sequencer.accept(item(200L, 8, 20L), deliver);
+        sequencer.accept(item(200L, 9, 21L), deliver);
+        sequencer.flushExpired(20L + TIMEOUT_NANOS, TIMEOUT_NANOS, deliver);
+        sequencer.accept(item(200L, 10, 22L + TIMEOUT_NANOS), deliver);
+        assertEquals(Arrays.asList(8, 9, 10), delivered);
+        assertEquals(1L, counters.sourceResets.sum());
+        assertEquals(0L, counters.duplicates.sum());
+        assertEquals(0L, counters.gaps.sum());
+    }
+
+    /**
+     * 新会话开始后才到达的旧会话消息被丢弃，不会再次重置
+     */
+    @Test
+    void accept_EarlierSessionAfterRestart_Dropped() {
+        SourceSequencer sequencer = sequencer(8);
+        sequencer.accept(item(100L, 1, 0L), deliver);
+        sequencer.accept(item(200L, 1, 1L), deliver);
+        sequencer.accept(item(100L, 2, 2L), deliver);
+        sequencer.accept(item(200L, 2, 3L), deliver);
+        assertEquals(Arrays.asList(1, 1, 2), delivered);
+        assertEquals(1L, counters.sourceResets.sum());
+        assertEquals(1L, counters.duplicates.sum());
+    }
+}
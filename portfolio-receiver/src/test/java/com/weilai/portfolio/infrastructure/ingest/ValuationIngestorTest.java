@@ -0,0 +1,93 @@
+package com.weilai.portfolio.infrastructure.ingest;
+
+import com.weilai.portfolio.grpc.server.ValuationSubscriptionHub;
+import com.weilai.portfolio.grpc.valuation.PortfolioValuationMessage;
+import com.weilai.portfolio.infrastructure.aggregate.FirmNavAggregator;
+import com.weilai.portfolio.infrastructure.metrics.PipelineMetrics;
+import com.weilai.portfolio.infrastructure.subscriber.PortfolioValuationSubscriber;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class ValuationIngestorTest {
+    private static final int QUEUE_CAPACITY = 2;
+
+    private final PipelineMetrics metrics = new PipelineMetrics();
+    private final PortfolioValuationSubscriber subscriber = mock(PortfolioValuationSubscriber.class);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final CountDownLatch blocked = new CountDownLatch(1);
+    // 单分片；重排超时足够长，定时清理任务不会进入队列
+    private final ValuationIngestor ingestor = new ValuationIngestor(subscriber, mock(ValuationSubscriptionHub.class),
+            new FirmNavAggregator(metrics, 2000L, 60_000L), metrics, 1, 64, 60_000L, QUEUE_CAPACITY);
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        ingestor.shutdown();
+    }
+
+    private static PortfolioValuationMessage valuation(int updateCount) {
+        return PortfolioValuationMessage.newBuilder()
+                .setSourceId("test")
+                .setUpdateCount(updateCount)
+                .setTimestamp(1000L + updateCount)
+                .setTotalNav(100.0)
+                .build();
+    }
+
+    // 订阅者阻塞，模拟处理慢的分片
+    private void blockSubscriber() {
+        doAnswer(invocation -> {
+            blocked.countDown();
+            release.await();
+            return null;
+        }).when(subscriber).handleValuation(any(), any(), anyLong());
+    }
+
+    /**
+     * 分片处理不过来时队列有界：超过容量的投递被拒绝并计数，不会无限堆积
+     */
+    @Test
+    void submit_ShardQueueFull_Rejected() throws InterruptedException {
+        blockSubscriber();
+        ingestor.submit(valuation(1), 0L);
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+        ingestor.submit(valuation(2), 1L);
+        ingestor.submit(valuation(3), 2L);
+        assertEquals(QUEUE_CAPACITY, ingestor.queueDepth());
+
+        assertThrows(RejectedExecutionException.class, () -> ingestor.submit(valuation(4), 3L));
+        assertEquals(1L, metrics.counter("ingest-rejected").sum());
+        assertEquals(QUEUE_CAPACITY, ingestor.queueDepth());
+    }
+
+    /**
+     * 分片追上后恢复接收，已入队的估值全部按序交付
+     */
+    @Test
+    void submit_AfterBacklogDrains_Accepted() throws InterruptedException {
+        blockSubscriber();
+        ingestor.submit(valuation(1), 0L);
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+        ingestor.submit(valuation(2), 1L);
+        ingestor.submit(valuation(3), 2L);
+        release.countDown();
+
+        verify(subscriber, timeout(5000).times(3)).handleValuation(any(), any(), anyLong());
+        ingestor.submit(valuation(4), 3L);
+        verify(subscriber, timeout(5000).times(4)).handleValuation(any(), any(), anyLong());
+        assertEquals(0L, metrics.counter("ingest-rejected").sum());
+    }
+}
@@ -0,0 +1,59 @@
+package com.weilai.portfolio.infrastructure.subscriber;
+
+import com.weilai.portfolio.entity.PortfolioValuation;
+import com.weilai.portfolio.entity.Position;
+import com.weilai.portfolio.infrastructure.broadcast.ValuationBroadcaster;
+import com.weilai.portfolio.infrastructure.history.NavHistoryBuffer;
+import com.weilai.portfolio.infrastructure.metrics.PipelineMetrics;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class PortfolioValuationSubscriberTest {
+
+    private final ValuationRenderer renderer = mock(ValuationRenderer.class);
+    private final ValuationBroadcaster broadcaster = mock(ValuationBroadcaster.class);
+    private final NavHistoryBuffer history = new NavHistoryBuffer(8, 0, new PipelineMetrics());
+    private final PortfolioValuationSubscriber subscriber =
+            new PortfolioValuationSubscriber(renderer, history, broadcaster);
+
+    private static PortfolioValuation valuation(String sourceId, long timestamp, double nav) {
+        return new PortfolioValuation(new Position[0], BigDecimal.valueOf(nav), timestamp, 1,
+                Collections.<String, BigDecimal>emptyMap(), timestamp, sourceId);
+    }
+
+    /**
+     * 空头分片的部分 NAV 为负，公司级 NAV 为正：照常写入历史、渲染和广播
+     */
+    @Test
+    void handleValuation_ShortShardNegativePartial_RecordsFirmNav() {
+        subscriber.handleValuation(valuation("book/0", 100L, 500.0), BigDecimal.valueOf(500.0), 0L);
+        PortfolioValuation shortShard = valuation("book/1", 110L, -120.0);
+        subscriber.handleValuation(shortShard, BigDecimal.valueOf(380.0), 0L);
+
+        assertArrayEquals(new double[]{500.0, 380.0}, history.last(2).getNav(), 1e-9);
+        verify(renderer).submit(eq(shortShard), eq(BigDecimal.valueOf(380.0)), anyLong());
+        verify(broadcaster).publish(shortShard);
+    }
+
+    /**
+     * 公司级 NAV 不大于0时不处理；未被合并的过期估值只广播，不写历史
+     */
+    @Test
+    void handleValuation_NonPositiveFirmNavOrOutdated_Skipped() {
+        subscriber.handleValuation(valuation("book/0", 100L, 0.0), BigDecimal.ZERO, 0L);
+        subscriber.handleValuation(valuation("book/0", 90L, 10.0), null, 0L);
+
+        assertEquals(0, history.size());
+        verify(renderer, never()).submit(any(), any(), anyLong());
+    }
+}
@@ -0,0 +1,124 @@
+package com.weilai.portfolio.infrastructure.subscriber;
+
+import com.weilai.portfolio.entity.PortfolioValuation;
+import com.weilai.portfolio.entity.Position;
+import com.weilai.portfolio.infrastructure.metrics.PipelineMetrics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ValuationRendererTest {
+    private static final int BURST = 100;
+
+    private final PipelineMetrics metrics = new PipelineMetrics();
+    private final FrameWriter out = new FrameWriter();
+    private final ValuationRenderer renderer =
+            new ValuationRenderer(ValuationRenderer.Mode.APPEND, 250L, metrics, out);
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        out.release.countDown();
+        renderer.stop();
+    }
+
+    private static PortfolioValuation valuation(int updateCount) {
+        return new PortfolioValuation(new Position[0], BigDecimal.valueOf(100.0 + updateCount), 1000L + updateCount,
+                updateCount, Collections.<String, BigDecimal>emptyMap(), 1000L + updateCount, "book/0");
+    }
+
+    private void submit(int updateCount) {
+        PortfolioValuation valuation = valuation(updateCount);
+        renderer.submit(valuation, valuation.getTotalNav(), System.nanoTime());
+    }
+
+    private void awaitRendered(long expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (metrics.counter("valuations-rendered").sum() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(expected, metrics.counter("valuations-rendered").sum());
+    }
+
+    private static String header(int updateCount) {
+        return "# " + updateCount + " Market Data Update\n";
+    }
+
+    /**
+     * 渲染线程未取走前连续提交：槽位只保留最新一条，其余计为合并丢弃
+     */
+    @Test
+    void submit_BurstBeforeRender_OnlyLatestRendered() throws InterruptedException {
+        out.release.countDown();
+        for (int i = 1; i <= BURST; i++) {
+            submit(i);
+        }
+        renderer.start();
+        submit(BURST + 1);
+
+        awaitRendered(1L);
+        assertEquals(1, out.frames.size());
+        assertTrue(out.frames.get(0).startsWith(header(BURST + 1)));
+        assertEquals(BURST, metrics.counter("valuations-conflated").sum());
+        assertEquals(1L, metrics.stage("receive-to-render").snapshot().getCount());
+    }
+
+    /**
+     * 渲染慢于接收：正在输出的一帧完成后只再渲染一帧，且为最新的估值
+     */
+    @Test
+    void submit_BurstWhileRendering_RendersLatestNext() throws InterruptedException {
+        renderer.start();
+        submit(1);
+        assertTrue(out.writing.await(5, TimeUnit.SECONDS));
+        for (int i = 2; i <= BURST; i++) {
+            submit(i);
+        }
+        out.release.countDown();
+
+        awaitRendered(2L);
+        Thread.sleep(50);
+        assertEquals(2L, metrics.counter("valuations-rendered").sum());
+        assertEquals(2, out.frames.size());
+        assertTrue(out.frames.get(0).startsWith(header(1)));
+        assertTrue(out.frames.get(1).startsWith(header(BURST)));
+        assertEquals(BURST - 2, metrics.counter("valuations-conflated").sum());
+    }
+
+    // 按帧记录输出；第一帧写出时阻塞，模拟慢终端
+    private static final class FrameWriter extends Writer {
+        private final List<String> frames = Collections.synchronizedList(new ArrayList<>());
+        private final CountDownLatch writing = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public void write(char[] buffer, int offset, int length) throws IOException {
+            writing.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            frames.add(new String(buffer, offset, length));
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
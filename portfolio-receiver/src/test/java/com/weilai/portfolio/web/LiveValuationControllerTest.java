@@ -0,0 +1,77 @@
+package com.weilai.portfolio.web;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.weilai.portfolio.entity.PortfolioValuation;
+import com.weilai.portfolio.entity.Position;
+import com.weilai.portfolio.infrastructure.broadcast.ValuationBroadcaster;
+import com.weilai.portfolio.infrastructure.metrics.PipelineMetrics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.test.StepVerifier;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LiveValuationControllerTest {
+
+    private ValuationBroadcaster broadcaster;
+    private WebTestClient client;
+
+    @BeforeEach
+    void setUp() {
+        broadcaster = new ValuationBroadcaster(new ObjectMapper(), new PipelineMetrics());
+        broadcaster.start();
+        client = WebTestClient.bindToController(new LiveValuationController(broadcaster)).build();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        broadcaster.stop();
+    }
+
+    private static PortfolioValuation valuation(String sourceId, int updateCount) {
+        return new PortfolioValuation(new Position[0], BigDecimal.TEN, 1000L, updateCount,
+                Collections.<String, BigDecimal>emptyMap(), 900L, sourceId);
+    }
+
+    /**
+     * SSE 流：事件名 valuation，id 为「发送源:序号」，data 为 JSON
+     */
+    @Test
+    void valuations_StreamsSseEvents() {
+        broadcaster.publish(valuation("shard-0", 3));
+
+        StepVerifier.create(client.get().uri("/live/valuations")
+                        .accept(MediaType.TEXT_EVENT_STREAM)
+                        .exchange()
+                        .expectStatus().isOk()
+                        .expectHeader().contentTypeCompatibleWith(MediaType.TEXT_EVENT_STREAM)
+                        .returnResult(new ParameterizedTypeReference<ServerSentEvent<String>>() {
+                        })
+                        .getResponseBody()
+                        .take(1))
+                .assertNext(event -> {
+                    assertEquals("shard-0:3", event.id());
+                    assertEquals("valuation", event.event());
+                    assertTrue(event.data().contains("\"sourceId\":\"shard-0\""), event.data());
+                })
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void clients_ReturnsCount() {
+        client.get().uri("/live/clients")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody().jsonPath("$.clients").isEqualTo(0);
+    }
+}
@@ -0,0 +1,97 @@
+package com.weilai.portfolio.web;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.weilai.portfolio.entity.PortfolioValuation;
+import com.weilai.portfolio.entity.Position;
+import com.weilai.portfolio.infrastructure.broadcast.ValuationBroadcaster;
+import com.weilai.portfolio.infrastructure.metrics.PipelineMetrics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Publisher;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import org.springframework.web.reactive.socket.WebSocketSession;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ValuationWebSocketHandlerTest {
+
+    private ValuationBroadcaster broadcaster;
+
+    @BeforeEach
+    void setUp() {
+        broadcaster = new ValuationBroadcaster(new ObjectMapper(), new PipelineMetrics());
+        broadcaster.start();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        broadcaster.stop();
+    }
+
+    private static PortfolioValuation valuation(String sourceId, int updateCount) {
+        return new PortfolioValuation(new Position[0], BigDecimal.TEN, 1000L, updateCount,
+                Collections.<String, BigDecimal>emptyMap(), 900L, sourceId);
+    }
+
+    /**
+     * 每条估值一个 JSON 文本帧；客户端关闭时会话结束并退订
+     */
+    @Test
+    void handle_SendsTextFramesUntilClientCloses() {
+        List<String> sent = Collections.synchronizedList(new ArrayList<>());
+        Sinks.Empty<Void> closed = Sinks.empty();
+        WebSocketSession session = mock(WebSocketSession.class);
+        when(session.bufferFactory()).thenReturn(DefaultDataBufferFactory.sharedInstance);
+        when(session.receive()).thenReturn(closed.asMono().thenMany(Flux.<WebSocketMessage>empty()));
+        when(session.send(any())).thenAnswer(invocation -> Flux.from(invocation.<Publisher<WebSocketMessage>>getArgument(0))
+                .doOnNext(message -> {
+                    assertEquals(WebSocketMessage.Type.TEXT, message.getType());
+                    sent.add(message.getPayloadAsText(StandardCharsets.UTF_8));
+                })
+                .then());
+
+        broadcaster.publish(valuation("shard-0", 1));
+        broadcaster.publish(valuation("shard-1", 1));
+        Mono<Void> handled = new ValuationWebSocketHandler(broadcaster).handle(session);
+
+        StepVerifier.create(handled)
+                .then(() -> {
+                    for (int i = 0; i < 500 && sent.size() < 2; i++) {
+                        sleep(10);
+                    }
+                    assertEquals(1, broadcaster.getClientCount());
+                    closed.tryEmitEmpty();
+                })
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+
+        assertEquals(2, sent.size());
+        assertTrue(sent.stream().anyMatch(json -> json.contains("\"sourceId\":\"shard-0\"")), sent.toString());
+        assertTrue(sent.stream().anyMatch(json -> json.contains("\"sourceId\":\"shard-1\"")), sent.toString());
+        assertEquals(0, broadcaster.getClientCount());
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
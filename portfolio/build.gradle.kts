@@ -26,6 +26,7 @@ dependencies {
     runtimeOnly("io.r2dbc:r2dbc-h2")
     runtimeOnly("com.h2database:h2")
     implementation("com.google.guava:guava:28.2-jre")
+    implementation("org.hdrhistogram:HdrHistogram:2.1.12")
     testImplementation("org.springframework.boot:spring-boot-starter-test")
     testImplementation("io.projectreactor:reactor-test")
     testImplementation("org.mockito:mockito-core:4.8.0")
@@ -40,6 +41,7 @@ dependencies {
     implementation("io.grpc:grpc-netty-shaded:1.76.0")
     implementation("io.grpc:grpc-protobuf:1.76.0")
     implementation("io.grpc:grpc-stub:1.76.0")
+    testImplementation("io.grpc:grpc-inprocess:1.76.0")
     compileOnly("org.apache.tomcat:annotations-api:6.0.53")
 }
 
@@ -71,6 +73,91 @@ sourceSets {
     }
 }
 
+// 单进程压测：同时运行估值发送端与 portfolio-receiver 的接收端（接收端源码直接引用兄弟模块）
+val loadTest by sourceSets.creating {
+    java {
+        srcDir("src/loadTest/java")
+        srcDir("../portfolio-receiver/src/main/java")
+        include("com/weilai/portfolio/loadtest/**")
+        include("com/weilai/portfolio/grpc/server/PortfolioValuationServer.java")
+        include("com/weilai/portfolio/grpc/server/ValuationSubscriptionHub.java")
+        include("com/weilai/portfolio/infrastructure/subscriber/**")
+        include("com/weilai/portfolio/infrastructure/ingest/**")
+        include("com/weilai/portfolio/infrastructure/history/**")
+        include("com/weilai/portfolio/infrastructure/broadcast/**")
+        include("com/weilai/portfolio/infrastructure/aggregate/**")
+    }
+    compileClasspath += sourceSets.main.get().output
+    runtimeClasspath += sourceSets.main.get().output
+}
+
+configurations["loadTestImplementation"].extendsFrom(configurations.implementation.get())
+configurations["loadTestRuntimeOnly"].extendsFrom(configurations.runtimeOnly.get())
+
+dependencies {
+    "loadTestCompileOnly"("org.projectlombok:lombok")
+    "loadTestAnnotationProcessor"("org.projectlombok:lombok")
+}
+
+// 用法：./gradlew loadTest -PloadTestArgs="--positions=10000 --underlyings=50 --duration=60"
+tasks.register<JavaExec>("loadTest") {
+    group = "verification"
+    description = "Runs the in-process tick-to-receiver load test harness"
+    classpath = loadTest.runtimeClasspath
+    mainClass.set("com.weilai.portfolio.loadtest.ValuationLoadTest")
+    val loadTestArgs = project.findProperty("loadTestArgs") as String?
+    if (loadTestArgs != null) {
+        args(loadTestArgs.split(" ").filter { it.isNotBlank() })
+    }
+}
+
+// 用法：./gradlew grpcBenchmark -PbenchmarkArgs="--modes=FIXED:2,WORK_STEALING:0,DIRECT --clients=4 --duration=10"
+tasks.register<JavaExec>("grpcBenchmark") {
+    group = "verification"
+    description = "Compares gRPC server executor modes on the receiver's SendValuation path"
+    classpath = loadTest.runtimeClasspath
+    mainClass.set("com.weilai.portfolio.loadtest.GrpcServerBenchmark")
+    val benchmarkArgs = project.findProperty("benchmarkArgs") as String?
+    if (benchmarkArgs != null) {
+        args(benchmarkArgs.split(" ").filter { it.isNotBlank() })
+    }
+}
+
+// 用法：./gradlew wireFormatBenchmark -PbenchmarkArgs="--positions=10000 --underlyings=50 --moving=0.2"
+tasks.register<JavaExec>("wireFormatBenchmark") {
+    group = "verification"
+    description = "Compares row and columnar valuation wire formats (size, encode and decode time)"
+    classpath = loadTest.runtimeClasspath
+    mainClass.set("com.weilai.portfolio.loadtest.WireFormatBenchmark")
+    val benchmarkArgs = project.findProperty("benchmarkArgs") as String?
+    if (benchmarkArgs != null) {
+        args(benchmarkArgs.split(" ").filter { it.isNotBlank() })
+    }
+}
+
+// 用法：./gradlew americanBenchmark -PbenchmarkArgs="--options=10000 --underlyings=20 --steps=50,100,200,500"
+tasks.register<JavaExec>("americanBenchmark") {
+    group = "verification"
+    description = "Measures per-tick cost and error of the American option pricers (BAW and CRR lattice)"
+    classpath = loadTest.runtimeClasspath
+    mainClass.set("com.weilai.portfolio.loadtest.AmericanPricingBenchmark")
+    val benchmarkArgs = project.findProperty("benchmarkArgs") as String?
+    if (benchmarkArgs != null) {
+        args(benchmarkArgs.split(" ").filter { it.isNotBlank() })
+    }
+}
+
+// 用法：./gradlew securityMasterBenchmark -PbenchmarkArgs="--underlyings=500 --expiries=20 --strikes=25"
+tasks.register<JavaExec>("securityMasterBenchmark") {
+    group = "verification"
+    description = "Measures streaming security master loads into the cache and into H2 (batched R2DBC upserts)"
+    classpath = loadTest.runtimeClasspath
+    mainClass.set("com.weilai.portfolio.loadtest.SecurityMasterBenchmark")
+    val benchmarkArgs = project.findProperty("benchmarkArgs") as String?
+    if (benchmarkArgs != null) {
+        args(benchmarkArgs.split(" ").filter { it.isNotBlank() })
+    }
+}
 
 tasks.withType<Test> {
     useJUnitPlatform()
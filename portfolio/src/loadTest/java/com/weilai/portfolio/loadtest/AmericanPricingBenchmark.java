@@ -0,0 +1,145 @@
+package com.weilai.portfolio.loadtest;
+
+import com.weilai.portfolio.entity.SecurityType;
+import com.weilai.portfolio.service.AmericanOptionPricingService;
+import com.weilai.portfolio.service.AmericanOptionPricingService.Model;
+import com.weilai.portfolio.service.BlackScholesPricingService;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * 美式期权定价的性能边界：欧式 Black-Scholes、BAW 与不同步数的 CRR 二叉树，每个 tick 对整本期权重新定价的耗时与误差
+ * <p>
+ * 与估值流水线一样经 calculate 定价（含 BigDecimal 取整），欧式一行即当前逐笔估值的开销。
+ * 期权一半看涨一半看跌，到期日按天取整（同一到期日、同一标的的期权共享缓存的常量）；每个 tick 全部标的小幅随机移动。
+ * 误差以 reference-steps 步的二叉树为基准，只统计看跌（看涨各模型相同）。首个 tick 的耗时单独列出（需要构造缓存）。
+ * 参数：--options=10000 --underlyings=20 --steps=50,100,200,500 --reference-steps=2000 --ticks=20 --warmup=50
+ */
+public class AmericanPricingBenchmark {
+    private static final double RATE = 0.03;
+    private static final BlackScholesPricingService EUROPEAN = new BlackScholesPricingService();
+
+    public static void main(String[] args) {
+        Map<String, String> options = parseArgs(args);
+        int count = Integer.parseInt(options.getOrDefault("options", "10000"));
+        int underlyings = Integer.parseInt(options.getOrDefault("underlyings", "20"));
+        String[] stepList = options.getOrDefault("steps", "50,100,200,500").split(",");
+        int referenceSteps = Integer.parseInt(options.getOrDefault("reference-steps", "2000"));
+        int ticks = Integer.parseInt(options.getOrDefault("ticks", "20"));
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "50"));
+
+        SplittableRandom random = new SplittableRandom(42);
+        double[] spots = new double[underlyings];
+        double[] sigmas = new double[underlyings];
+        for (int u = 0; u < underlyings; u++) {
+            spots[u] = 50 + random.nextDouble() * 400;
+            sigmas[u] = 0.15 + random.nextDouble() * 0.35;
+        }
+        int[] underlyingOf = new int[count];
+        SecurityType[] types = new SecurityType[count];
+        double[] strikes = new double[count];
+        double[] years = new double[count];
+        for (int i = 0; i < count; i++) {
+            underlyingOf[i] = i % underlyings;
+            types[i] = i % 2 == 0 ? SecurityType.PUT : SecurityType.CALL;
+            strikes[i] = Math.round(spots[underlyingOf[i]] * (0.7 + random.nextDouble() * 0.6));
+            years[i] = (7 + random.nextInt(724)) / 365.0;
+        }
+
+        // 基准价格：按初始现价计算一次
+        AmericanOptionPricingService reference = new AmericanOptionPricingService(Model.BINOMIAL, referenceSteps, count);
+        BigDecimal[] strikeDecimals = new BigDecimal[count];
+        double[] expected = new double[count];
+        for (int i = 0; i < count; i++) {
+            strikeDecimals[i] = BigDecimal.valueOf(strikes[i]);
+            expected[i] = reference.theoreticalPrice(types[i], spots[underlyingOf[i]], strikes[i], years[i], RATE,
+                    sigmas[underlyingOf[i]]);
+        }
+
+        List<String> modes = new ArrayList<>();
+        modes.add("BLACK_SCHOLES");
+        modes.add("BAW");
+        for (String steps : stepList) {
+            modes.add("BINOMIAL:" + steps.trim());
+        }
+        System.out.printf("American pricing benchmark: %d options (%d puts) x %d underlyings, %d ticks, "
+                        + "errors vs %d-step lattice%n", count, (count + 1) / 2, underlyings, ticks, referenceSteps);
+        System.out.printf("%-14s %14s %14s %14s %14s %14s%n",
+                "model", "first tick(ms)", "tick(ms)", "ns/option", "max err", "mean err");
+        long checksum = 0;
+        for (String mode : modes) {
+            AmericanOptionPricingService american = mode.equals("BLACK_SCHOLES") ? null : service(mode, count);
+            double[] prices = new double[count];
+            double[] tickSpots = spots.clone();
+
+            long start = System.nanoTime();
+            price(american, underlyingOf, types, strikeDecimals, years, sigmas, tickSpots, prices);
+            long firstNanos = System.nanoTime() - start;
+            double maxError = 0;
+            double sumError = 0;
+            for (int i = 0; i < count; i += 2) {
+                double error = Math.abs(prices[i] - expected[i]);
+                maxError = Math.max(maxError, error);
+                sumError += error;
+            }
+
+            SplittableRandom moves = new SplittableRandom(7);
+            long measuredNanos = 0;
+            for (int tick = 0; tick < warmup + ticks; tick++) {
+                for (int u = 0; u < underlyings; u++) {
+                    tickSpots[u] = spots[u] * (1 + (moves.nextDouble() - 0.5) * 0.002);
+                }
+                start = System.nanoTime();
+                price(american, underlyingOf, types, strikeDecimals, years, sigmas, tickSpots, prices);
+                if (tick >= warmup) {
+                    measuredNanos += System.nanoTime() - start;
+                }
+                checksum += (long) prices[tick % count];
+            }
+            double tickNanos = (double) measuredNanos / ticks;
+            System.out.printf("%-14s %14.2f %14.2f %14.0f %14.2e %14.2e%n", mode, firstNanos / 1e6, tickNanos / 1e6,
+                    tickNanos / count, maxError, sumError / ((count + 1) / 2));
+        }
+        System.out.printf("checksum %d%n", checksum);
+    }
+
+    private static AmericanOptionPricingService service(String mode, int count) {
+        if (mode.startsWith("BINOMIAL:")) {
+            return new AmericanOptionPricingService(Model.BINOMIAL, Integer.parseInt(mode.substring(9)), count);
+        }
+        return new AmericanOptionPricingService(Model.BAW, 1, count);
+    }
+
+    // american 为 null 时按欧式定价
+    private static void price(AmericanOptionPricingService american, int[] underlyingOf, SecurityType[] types,
+                              BigDecimal[] strikes, double[] years, double[] sigmas, double[] spots, double[] prices) {
+        BigDecimal[] spotDecimals = new BigDecimal[spots.length];
+        for (int u = 0; u < spots.length; u++) {
+            spotDecimals[u] = BigDecimal.valueOf(spots[u]);
+        }
+        for (int i = 0; i < prices.length; i++) {
+            int u = underlyingOf[i];
+            BigDecimal price = american == null
+                    ? EUROPEAN.calculate(types[i], spotDecimals[u], strikes[i], years[i], RATE, sigmas[u])
+                    : american.calculate(types[i], spotDecimals[u], strikes[i], years[i], RATE, sigmas[u]);
+            prices[i] = price.doubleValue();
+        }
+    }
+
+    private static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("参数格式应为 --key=value：" + arg);
+            }
+            int eq = arg.indexOf('=');
+            options.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        return options;
+    }
+}
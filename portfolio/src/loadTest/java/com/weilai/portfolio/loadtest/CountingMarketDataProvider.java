@@ -0,0 +1,30 @@
+package com.weilai.portfolio.loadtest;
+
+import com.weilai.portfolio.entity.MarketData;
+import com.weilai.portfolio.infrastructure.marketdata.provider.ReactiveMarketDataProvider;
+import com.weilai.portfolio.infrastructure.marketdata.strategy.GBMPricingStrategy;
+import com.weilai.portfolio.infrastructure.marketdata.strategy.RandomPricingStrategy;
+import reactor.core.publisher.Flux;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 统计行情推送笔数的行情提供者（压测专用）
+ */
+public class CountingMarketDataProvider extends ReactiveMarketDataProvider {
+    private final LongAdder tickCount = new LongAdder();
+
+    public CountingMarketDataProvider(GBMPricingStrategy gbmPricingStrategy,
+                                      RandomPricingStrategy randomPricingStrategy) {
+        super(gbmPricingStrategy, randomPricingStrategy);
+    }
+
+    @Override
+    public Flux<MarketData> publishMarketData() {
+        return super.publishMarketData().doOnNext(marketData -> tickCount.increment());
+    }
+
+    public long sumThenReset() {
+        return tickCount.sumThenReset();
+    }
+}
@@ -0,0 +1,212 @@
+package com.weilai.portfolio.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.weilai.portfolio.grpc.server.GrpcServerSettings;
+import com.weilai.portfolio.grpc.server.GrpcServerTemplate;
+import com.weilai.portfolio.grpc.server.PortfolioValuationServer;
+import com.weilai.portfolio.grpc.server.ValuationSubscriptionHub;
+import com.weilai.portfolio.grpc.valuation.PortfolioValuationMessage;
+import com.weilai.portfolio.grpc.valuation.PortfolioValuationServiceGrpc;
+import com.weilai.portfolio.grpc.valuation.PositionProto;
+import com.weilai.portfolio.grpc.valuation.ValuationResponse;
+import com.weilai.portfolio.infrastructure.aggregate.FirmNavAggregator;
+import com.weilai.portfolio.infrastructure.broadcast.ValuationBroadcaster;
+import com.weilai.portfolio.infrastructure.history.NavHistoryBuffer;
+import com.weilai.portfolio.infrastructure.ingest.ValuationIngestor;
+import com.weilai.portfolio.infrastructure.metrics.PipelineMetrics;
+import com.weilai.portfolio.infrastructure.subscriber.ValuationRenderer;
+import io.grpc.Grpc;
+import io.grpc.InsecureChannelCredentials;
+import io.grpc.ManagedChannel;
+import io.grpc.stub.StreamObserver;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * gRPC 服务端线程模型对比：依次以不同执行器模式启动接收端（真实的 PortfolioValuationServer + ValuationIngestor），
+ * 多个客户端以固定并发度发送 SendValuation，统计吞吐与往返延迟
+ * <p>
+ * 参数：
+ * --modes=FIXED:2,FIXED:0,WORK_STEALING:0,DIRECT  模式:线程数（0 表示 CPU 核数）
+ * --positions=100 --clients=4 --in-flight=64 --worker-threads=0 --warmup=3 --duration=10 --port=50170
+ */
+public class GrpcServerBenchmark {
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.SECONDS.toMicros(10);
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseArgs(args);
+        // 没有 Spring 上下文时 logback 默认 DEBUG，Netty 的调试日志会严重干扰测量
+        ((Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+        String[] modes = options.getOrDefault("modes", "FIXED:2,FIXED:0,WORK_STEALING:0,DIRECT").split(",");
+        int positions = Integer.parseInt(options.getOrDefault("positions", "100"));
+        int clients = Integer.parseInt(options.getOrDefault("clients", "4"));
+        int inFlight = Integer.parseInt(options.getOrDefault("in-flight", "64"));
+        int workerThreads = Integer.parseInt(options.getOrDefault("worker-threads", "0"));
+        int warmupSeconds = Integer.parseInt(options.getOrDefault("warmup", "3"));
+        int durationSeconds = Integer.parseInt(options.getOrDefault("duration", "10"));
+        int port = Integer.parseInt(options.getOrDefault("port", "50170"));
+
+        PortfolioValuationMessage template = buildMessage(positions);
+        System.out.printf("gRPC server benchmark: %d positions (%d bytes), %d clients x %d in flight, %ds per mode%n",
+                positions, template.getSerializedSize(), clients, inFlight, durationSeconds);
+
+        List<String> rows = new ArrayList<>();
+        for (int i = 0; i < modes.length; i++) {
+            String[] spec = modes[i].trim().split(":");
+            GrpcServerSettings settings = new GrpcServerSettings();
+            settings.setExecutorMode(GrpcServerSettings.ExecutorMode.valueOf(spec[0]));
+            settings.setThreads(spec.length > 1 ? Integer.parseInt(spec[1]) : 0);
+            settings.setWorkerThreads(workerThreads);
+            rows.add(runMode(settings, port + i, template, clients, inFlight, warmupSeconds, durationSeconds));
+        }
+
+        System.out.println();
+        System.out.printf("%-16s %8s %12s %10s %10s %10s %10s%n",
+                "mode", "threads", "calls/s", "p50(us)", "p99(us)", "p99.9(us)", "max(us)");
+        for (String row : rows) {
+            System.out.println(row);
+        }
+        System.exit(0);
+    }
+
+    private static String runMode(GrpcServerSettings settings, int port, PortfolioValuationMessage template,
+                                  int clients, int inFlight, int warmupSeconds, int durationSeconds)
+            throws Exception {
+        // 接收端装配与 PortfolioReceiverApplication 一致，渲染与广播线程不启动
+        PipelineMetrics metrics = new PipelineMetrics();
+        ValuationRenderer renderer = new ValuationRenderer(ValuationRenderer.Mode.NONE, 250L, metrics);
+        LatencyRecordingSubscriber subscriber = new LatencyRecordingSubscriber(renderer,
+                new NavHistoryBuffer(4096, 8, metrics), new ValuationBroadcaster(new ObjectMapper(), metrics), false);
+        ValuationSubscriptionHub subscriptionHub = new ValuationSubscriptionHub(metrics);
+        ValuationIngestor ingestor = new ValuationIngestor(subscriber, subscriptionHub,
+                new FirmNavAggregator(metrics, 2000L, 60_000L), metrics, 0, inFlight, 200L, 65_536);
+        GrpcServerTemplate server = new GrpcServerTemplate(port, settings,
+                new PortfolioValuationServer(ingestor, subscriptionHub, metrics));
+        server.start();
+
+        Recorder latency = new Recorder(HIGHEST_TRACKABLE_MICROS, 3);
+        LongAdder completed = new LongAdder();
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<ManagedChannel> channels = new ArrayList<>();
+        List<Thread> drivers = new ArrayList<>();
+        for (int c = 0; c < clients; c++) {
+            ManagedChannel channel = Grpc.newChannelBuilder("localhost:" + port, InsecureChannelCredentials.create())
+                    .build();
+            channels.add(channel);
+            String sourceId = settings.getExecutorMode() + "-" + c;
+            Thread driver = new Thread(() -> drive(channel, template, sourceId, inFlight, running, latency, completed),
+                    "benchmark-client-" + c);
+            driver.setDaemon(true);
+            driver.start();
+            drivers.add(driver);
+        }
+
+        TimeUnit.SECONDS.sleep(warmupSeconds);
+        latency.getIntervalHistogram();
+        completed.sumThenReset();
+        long start = System.nanoTime();
+        TimeUnit.SECONDS.sleep(durationSeconds);
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        Histogram histogram = latency.getIntervalHistogram();
+        long calls = completed.sumThenReset();
+
+        running.set(false);
+        for (Thread driver : drivers) {
+            driver.join(TimeUnit.SECONDS.toMillis(5));
+        }
+        for (ManagedChannel channel : channels) {
+            channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        }
+        server.stop();
+        ingestor.shutdown();
+
+        return String.format("%-16s %8d %12.0f %10d %10d %10d %10d",
+                settings.getExecutorMode(), settings.getExecutorMode() == GrpcServerSettings.ExecutorMode.DIRECT
+                        ? 0 : settings.resolvedThreads(),
+                calls / elapsedSeconds,
+                histogram.getValueAtPercentile(50), histogram.getValueAtPercentile(99),
+                histogram.getValueAtPercentile(99.9), histogram.getMaxValue());
+    }
+
+    // 单个客户端：用信号量保持固定的在途请求数
+    private static void drive(ManagedChannel channel, PortfolioValuationMessage template, String sourceId,
+                              int inFlight, AtomicBoolean running, Recorder latency, LongAdder completed) {
+        PortfolioValuationServiceGrpc.PortfolioValuationServiceStub stub = PortfolioValuationServiceGrpc.newStub(channel);
+        Semaphore permits = new Semaphore(inFlight);
+        int updateCount = 0;
+        while (running.get()) {
+            try {
+                if (!permits.tryAcquire(100, TimeUnit.MILLISECONDS)) {
+                    continue;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            long sendNanos = System.nanoTime();
+            PortfolioValuationMessage message = template.toBuilder()
+                    .setSourceId(sourceId)
+                    .setUpdateCount(++updateCount)
+                    .setTimestamp(System.currentTimeMillis())
+                    .build();
+            stub.sendValuation(message, new StreamObserver<ValuationResponse>() {
+                @Override
+                public void onNext(ValuationResponse response) {
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    permits.release();
+                }
+
+                @Override
+                public void onCompleted() {
+                    long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - sendNanos);
+                    latency.recordValue(Math.min(micros, HIGHEST_TRACKABLE_MICROS));
+                    completed.increment();
+                    permits.release();
+                }
+            });
+        }
+    }
+
+    private static PortfolioValuationMessage buildMessage(int positions) {
+        PortfolioValuationMessage.Builder builder = PortfolioValuationMessage.newBuilder();
+        double nav = 0;
+        for (int i = 0; i < positions; i++) {
+            double price = 100 + i % 50;
+            int quantity = 100 + i;
+            nav += price * quantity;
+            builder.addPositions(PositionProto.newBuilder()
+                    .setTicker("SYN" + i)
+                    .setQuantity(quantity)
+                    .setPrice(price)
+                    .setMarketValue(price * quantity));
+        }
+        return builder.setTotalNav(nav).build();
+    }
+
+    private static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("参数格式应为 --key=value：" + arg);
+            }
+            int eq = arg.indexOf('=');
+            options.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        return options;
+    }
+}
@@ -0,0 +1,56 @@
+package com.weilai.portfolio.loadtest;
+
+import com.weilai.portfolio.entity.PortfolioValuation;
+import com.weilai.portfolio.infrastructure.broadcast.ValuationBroadcaster;
+import com.weilai.portfolio.infrastructure.history.NavHistoryBuffer;
+import com.weilai.portfolio.infrastructure.subscriber.PortfolioValuationSubscriber;
+import com.weilai.portfolio.infrastructure.subscriber.ValuationRenderer;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 记录「行情时间戳 → handleValuation」延迟的订阅者（压测专用）
+ */
+public class LatencyRecordingSubscriber extends PortfolioValuationSubscriber {
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(10);
+
+    private final Recorder latencyRecorder = new Recorder(HIGHEST_TRACKABLE_MICROS, 3);
+    private final LongAdder valuationCount = new LongAdder();
+    private final boolean render;
+
+    public LatencyRecordingSubscriber(ValuationRenderer valuationRenderer,
+                                      NavHistoryBuffer navHistoryBuffer,
+                                      ValuationBroadcaster valuationBroadcaster,
+                                      boolean render) {
+        super(valuationRenderer, navHistoryBuffer, valuationBroadcaster);
+        this.render = render;
+    }
+
+    @Override
+    public void handleValuation(PortfolioValuation valuation, BigDecimal firmNav, long receiveNanos) {
+        long tickTimestamp = valuation.getTickTimestamp();
+        if (tickTimestamp > 0) {
+            long latencyMicros = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis() - tickTimestamp);
+            latencyRecorder.recordValue(Math.min(Math.max(latencyMicros, 0L), HIGHEST_TRACKABLE_MICROS));
+        }
+        valuationCount.increment();
+        if (render) {
+            super.handleValuation(valuation, firmNav, receiveNanos);
+        }
+    }
+
+    /**
+     * 取出自上次调用以来的延迟直方图（单位：微秒）
+     */
+    public Histogram intervalHistogram() {
+        return latencyRecorder.getIntervalHistogram();
+    }
+
+    public long sumThenReset() {
+        return valuationCount.sumThenReset();
+    }
+}
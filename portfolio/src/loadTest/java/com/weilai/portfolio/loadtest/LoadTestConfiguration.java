@@ -0,0 +1,71 @@
+package com.weilai.portfolio.loadtest;
+
+import com.weilai.portfolio.grpc.client.PortfolioValuationClient;
+import com.weilai.portfolio.infrastructure.metrics.PipelineMetrics;
+import com.weilai.portfolio.infrastructure.marketdata.strategy.GBMPricingStrategy;
+import com.weilai.portfolio.infrastructure.marketdata.strategy.RandomPricingStrategy;
+import com.weilai.portfolio.infrastructure.reader.CsvPositionReader;
+import com.weilai.portfolio.infrastructure.reader.SecurityFileReader;
+import com.weilai.portfolio.infrastructure.sharding.ShardAssignment;
+import com.weilai.portfolio.repository.SecurityCache;
+import com.weilai.portfolio.repository.SecurityRepository;
+import com.weilai.portfolio.service.AmericanOptionPricingService;
+import com.weilai.portfolio.service.BlackScholesPricingService;
+import com.weilai.portfolio.service.ExposureAggregator;
+import com.weilai.portfolio.service.ReactivePortfolioValuator;
+import com.weilai.portfolio.service.SecurityMasterLoader;
+import com.weilai.portfolio.service.ValuationCheckpointer;
+import com.weilai.portfolio.service.ValuationSendQueue;
+import com.weilai.portfolio.service.ValuationWarmup;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.r2dbc.repository.config.EnableR2dbcRepositories;
+
+/**
+ * 压测用的发送端上下文：显式导入估值链路上的组件，不做包扫描（避免扫到同包下的接收端类）
+ */
+@SpringBootConfiguration
+@EnableAutoConfiguration
+@EnableR2dbcRepositories(basePackageClasses = SecurityRepository.class)
+@Import({
+        ReactivePortfolioValuator.class,
+        ValuationSendQueue.class,
+        ExposureAggregator.class,
+        BlackScholesPricingService.class,
+        AmericanOptionPricingService.class,
+        CsvPositionReader.class,
+        SecurityFileReader.class,
+        SecurityCache.class,
+        SecurityMasterLoader.class,
+        ValuationCheckpointer.class,
+        ValuationWarmup.class,
+        ShardAssignment.class,
+        PipelineMetrics.class,
+        GBMPricingStrategy.class,
+        RandomPricingStrategy.class
+})
+public class LoadTestConfiguration {
+
+    @Bean
+    public CountingMarketDataProvider marketDataProvider(GBMPricingStrategy gbmPricingStrategy,
+                                                         RandomPricingStrategy randomPricingStrategy) {
+        return new CountingMarketDataProvider(gbmPricingStrategy, randomPricingStrategy);
+    }
+
+    @Bean
+    public PortfolioValuationClient portfolioValuationClient(
+            @Value("${grpc.valuation.server.address}") String valuationServerAddress,
+            @Value("${portfolio.valuation.batch.max-count:64}") int batchMaxCount,
+            @Value("${portfolio.valuation.batch.max-bytes:1048576}") int batchMaxBytes,
+            @Value("${portfolio.valuation.batch.linger-ms:0}") long batchLingerMillis,
+            @Value("${portfolio.valuation.batch.max-pending:2}") int batchMaxPending,
+            @Value("${portfolio.valuation.batch.deadline-ms:5000}") long batchDeadlineMillis,
+            @Value("${portfolio.valuation.send-queue.overflow-policy:DROP_OLDEST}")
+            ValuationSendQueue.OverflowPolicy overflowPolicy) {
+        return new PortfolioValuationClient(valuationServerAddress, batchMaxCount, batchMaxBytes, batchLingerMillis,
+                batchMaxPending, overflowPolicy, batchDeadlineMillis);
+    }
+}
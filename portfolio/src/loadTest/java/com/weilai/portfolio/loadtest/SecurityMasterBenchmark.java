@@ -0,0 +1,132 @@
+package com.weilai.portfolio.loadtest;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.weilai.portfolio.infrastructure.reader.SecurityFileReader;
+import com.weilai.portfolio.repository.SecurityCache;
+import com.weilai.portfolio.service.SecurityMasterLoader;
+import io.r2dbc.spi.ConnectionFactories;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.r2dbc.core.DatabaseClient;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 证券主数据批量加载：生成股票 + 完整期权链的证券文件（underlyings × expiries × strikes × 看涨 / 看跌），
+ * 分别加载到 SecurityCache 与 H2 内存库的 security 表，输出耗时与吞吐
+ * <p>
+ * 每个 DATABASE 配置使用新建的库；heap(MB) 为加载后 GC 的堆占用减去加载前（CACHE 即缓存常驻的大小）。
+ * 参数：--underlyings=500 --expiries=20 --strikes=25 --targets=CACHE,DATABASE:1000:1,DATABASE:1000:4 --repeat=2
+ */
+public class SecurityMasterBenchmark {
+    private static final String DDL = "CREATE TABLE security (\n"
+            + "    id BIGINT AUTO_INCREMENT PRIMARY KEY,\n"
+            + "    ticker VARCHAR(50) UNIQUE NOT NULL,\n"
+            + "    security_type VARCHAR(20) NOT NULL CHECK (security_type IN ('STOCK', 'CALL', 'PUT')),\n"
+            + "    strike_price DECIMAL(18,2),\n"
+            + "    maturity_date DATE,\n"
+            + "    underlying_ticker VARCHAR(50),\n"
+            + "    exercise_style VARCHAR(20) CHECK (exercise_style IN ('EUROPEAN', 'AMERICAN'))\n"
+            + ")";
+
+    public static void main(String[] args) throws IOException {
+        // 没有 Spring 上下文时 logback 默认 DEBUG，逐条 SQL 的调试日志会严重干扰测量
+        ((Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+        Map<String, String> options = parseArgs(args);
+        int underlyings = Integer.parseInt(options.getOrDefault("underlyings", "500"));
+        int expiries = Integer.parseInt(options.getOrDefault("expiries", "20"));
+        int strikes = Integer.parseInt(options.getOrDefault("strikes", "25"));
+        String[] targets = options.getOrDefault("targets", "CACHE,DATABASE:1000:1,DATABASE:1000:4").split(",");
+        int repeat = Integer.parseInt(options.getOrDefault("repeat", "2"));
+
+        Path file = Files.createTempFile("securities", ".csv");
+        file.toFile().deleteOnExit();
+        long rows = writeFile(file, underlyings, expiries, strikes);
+        System.out.printf("Security master benchmark: %d rows (%d options), file %.1f MB%n",
+                rows, rows - underlyings, Files.size(file) / 1e6);
+        System.out.printf("%-22s %10s %12s %12s%n", "target", "ms", "rows/s", "heap(MB)");
+
+        SecurityFileReader reader = new SecurityFileReader(new DefaultResourceLoader());
+        int database = 0;
+        for (int run = 0; run < repeat; run++) {
+            for (String target : targets) {
+                String[] parts = target.trim().split(":");
+                SecurityMasterLoader.Target kind = SecurityMasterLoader.Target.valueOf(parts[0]);
+                int batchSize = parts.length > 1 ? Integer.parseInt(parts[1]) : 1000;
+                int concurrency = parts.length > 2 ? Integer.parseInt(parts[2]) : 4;
+                DatabaseClient client = DatabaseClient.create(ConnectionFactories.get(
+                        "r2dbc:h2:mem:///security-master-" + (database++) + "?DB_CLOSE_DELAY=-1"));
+                client.sql(DDL).then().block();
+                SecurityCache cache = new SecurityCache();
+                SecurityMasterLoader loader = new SecurityMasterLoader(reader, cache, client, "", kind,
+                        batchSize, concurrency);
+
+                long heapBefore = usedHeap();
+                long start = System.nanoTime();
+                Long loaded = loader.load(file.toUri().toString(), kind).block();
+                long nanos = System.nanoTime() - start;
+                long heapAfter = usedHeap();
+                if (loaded == null || loaded != rows) {
+                    throw new IllegalStateException("加载行数不符：" + loaded + " / " + rows);
+                }
+                System.out.printf("%-22s %10.0f %12.0f %12.1f%n", target.trim(), nanos / 1e6, rows * 1e9 / nanos,
+                        (heapAfter - heapBefore) / 1e6);
+                client.sql("DROP ALL OBJECTS").then().block();
+                cache.clear();
+            }
+        }
+    }
+
+    // 每个标的 1 只股票 + expiries 个到期日 × strikes 个行权价 × 看涨 / 看跌；单股期权为美式
+    private static long writeFile(Path file, int underlyings, int expiries, int strikes) throws IOException {
+        LocalDate firstExpiry = LocalDate.now().plusDays(30);
+        long rows = 0;
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("ticker,securityType,strikePrice,maturityDate,underlyingTicker,exerciseStyle\n");
+            for (int u = 0; u < underlyings; u++) {
+                String underlying = String.format("SYN%04d", u);
+                out.write(underlying + ",STOCK,,," + underlying + ",\n");
+                rows++;
+                for (int e = 0; e < expiries; e++) {
+                    LocalDate maturity = firstExpiry.plusDays(7L * e);
+                    for (int k = 0; k < strikes; k++) {
+                        int strike = 50 + 5 * k;
+                        String prefix = underlying + "-" + maturity + "-" + strike;
+                        out.write(prefix + "-C,CALL," + strike + ".00," + maturity + "," + underlying + ",AMERICAN\n");
+                        out.write(prefix + "-P,PUT," + strike + ".00," + maturity + "," + underlying + ",AMERICAN\n");
+                        rows += 2;
+                    }
+                }
+            }
+        }
+        return rows;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("参数格式应为 --key=value：" + arg);
+            }
+            int eq = arg.indexOf('=');
+            options.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        return options;
+    }
+}
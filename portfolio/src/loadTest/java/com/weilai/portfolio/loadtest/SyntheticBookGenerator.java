@@ -0,0 +1,87 @@
+package com.weilai.portfolio.loadtest;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 合成持仓生成器：M 个标的，共 N 笔持仓（每个标的 1 只股票 + 若干期权），输出 schema.sql 与 positions.csv
+ */
+public class SyntheticBookGenerator {
+    private static final int INSERT_BATCH_SIZE = 500; // 单条 INSERT 语句的最大行数
+
+    private final int positionCount;
+    private final int underlyingCount;
+
+    public SyntheticBookGenerator(int positionCount, int underlyingCount) {
+        if (underlyingCount <= 0 || positionCount < underlyingCount) {
+            throw new IllegalArgumentException("positions 必须不少于 underlyings，且 underlyings > 0");
+        }
+        this.positionCount = positionCount;
+        this.underlyingCount = underlyingCount;
+    }
+
+    public List<String> underlyingTickers() {
+        List<String> tickers = new ArrayList<>(underlyingCount);
+        for (int u = 0; u < underlyingCount; u++) {
+            tickers.add(String.format("SYN%04d", u));
+        }
+        return tickers;
+    }
+
+    /**
+     * 在 dir 下生成 schema.sql 与 positions.csv
+     */
+    public void writeTo(Path dir) throws IOException {
+        List<String> underlyings = underlyingTickers();
+        LocalDate today = LocalDate.now();
+
+        try (BufferedWriter sql = Files.newBufferedWriter(dir.resolve("schema.sql"), StandardCharsets.UTF_8);
+             BufferedWriter csv = Files.newBufferedWriter(dir.resolve("positions.csv"), StandardCharsets.UTF_8)) {
+            sql.write("DROP TABLE IF EXISTS security;\n");
+            sql.write("CREATE TABLE IF NOT EXISTS security (\n"
+                    + "    id BIGINT AUTO_INCREMENT PRIMARY KEY,\n"
+                    + "    ticker VARCHAR(50) UNIQUE NOT NULL,\n"
+                    + "    security_type VARCHAR(20) NOT NULL CHECK (security_type IN ('STOCK', 'CALL', 'PUT')),\n"
+                    + "    strike_price DECIMAL(18,2),\n"
+                    + "    maturity_date DATE,\n"
+                    + "    underlying_ticker VARCHAR(50),\n"
+                    + "    exercise_style VARCHAR(20) CHECK (exercise_style IN ('EUROPEAN', 'AMERICAN'))\n"
+                    + ");\n");
+            csv.write("symbol,positionSize\n");
+
+            for (int i = 0; i < positionCount; i++) {
+                if (i % INSERT_BATCH_SIZE == 0) {
+                    if (i > 0) {
+                        sql.write(";\n");
+                    }
+                    sql.write("INSERT INTO security (ticker, security_type, strike_price, maturity_date, underlying_ticker) VALUES\n");
+                } else {
+                    sql.write(",\n");
+                }
+
+                // 第 i 笔持仓挂在第 i % M 个标的上；每个标的的第一笔为股票，其余为期权
+                String underlying = underlyings.get(i % underlyingCount);
+                int k = i / underlyingCount;
+                if (k == 0) {
+                    sql.write(String.format("('%s', 'STOCK', NULL, NULL, '%s')", underlying, underlying));
+                    csv.write(underlying + "," + (1000 - (i % 7) * 300) + "\n");
+                } else {
+                    String type = k % 2 == 0 ? "PUT" : "CALL";
+                    String ticker = String.format("%s-OPT%05d-%s", underlying, k, type.charAt(0));
+                    int strike = 80 + (k * 5) % 45;
+                    LocalDate maturity = today.plusDays(30 + (k * 7L) % 720);
+                    sql.write(String.format("('%s', '%s', %d.00, '%s', '%s')",
+                            ticker, type, strike, maturity, underlying));
+                    csv.write(ticker + "," + ((k % 3 == 0 ? -1 : 1) * 100 * (1 + k % 10)) + "\n");
+                }
+            }
+            sql.write(";\n");
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.weilai.portfolio.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.weilai.portfolio.grpc.server.GrpcServerTemplate;
+import com.weilai.portfolio.grpc.server.PortfolioValuationServer;
+import com.weilai.portfolio.grpc.server.ValuationSubscriptionHub;
+import com.weilai.portfolio.infrastructure.aggregate.FirmNav;
+import com.weilai.portfolio.infrastructure.aggregate.FirmNavAggregator;
+import com.weilai.portfolio.infrastructure.aggregate.SourceNav;
+import com.weilai.portfolio.infrastructure.broadcast.ValuationBroadcaster;
+import com.weilai.portfolio.infrastructure.history.NavHistoryBuffer;
+import com.weilai.portfolio.infrastructure.ingest.ValuationIngestor;
+import com.weilai.portfolio.infrastructure.metrics.PipelineMetrics;
+import com.weilai.portfolio.infrastructure.subscriber.ValuationRenderer;
+import com.weilai.portfolio.service.ReactivePortfolioValuator;
+import com.weilai.portfolio.service.ValuationWarmup;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import reactor.core.Disposable;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单进程端到端压测：合成持仓 → ReactiveMarketDataProvider → 估值 → gRPC(localhost) → PortfolioValuationServer
+ * <p>
+ * 参数（--key=value）：
+ * positions 持仓笔数，underlyings 标的个数，min-interval/max-interval 行情推送间隔（毫秒），
+ * sample-interval 估值采样间隔（毫秒），warmup/duration 预热与统计时长（秒），port gRPC 端口，render 是否打印估值，
+ * parallel 是否并行估值，chunk-size/rails 并行估值的分块大小与 rail 数，
+ * checkpoint 估值检查点文件（为空不启用；两次运行使用同一文件即可验证热重启），
+ * jit-warmup 订阅行情前是否先做 JIT 预热（portfolio.warmup.enabled），
+ * shards 分片数（大于1时启动多个发送端上下文，模拟多个本地实例按标的分片估值同一份持仓）
+ */
+public class ValuationLoadTest {
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseArgs(args);
+        int positions = Integer.parseInt(options.getOrDefault("positions", "1000"));
+        int underlyings = Integer.parseInt(options.getOrDefault("underlyings", "10"));
+        long minInterval = Long.parseLong(options.getOrDefault("min-interval", "5"));
+        long maxInterval = Long.parseLong(options.getOrDefault("max-interval", "20"));
+        long sampleInterval = Long.parseLong(options.getOrDefault("sample-interval", "50"));
+        long warmupSeconds = Long.parseLong(options.getOrDefault("warmup", "10"));
+        long durationSeconds = Long.parseLong(options.getOrDefault("duration", "30"));
+        int port = Integer.parseInt(options.getOrDefault("port", "50152"));
+        boolean render = Boolean.parseBoolean(options.getOrDefault("render", "false"));
+        boolean parallel = Boolean.parseBoolean(options.getOrDefault("parallel", "false"));
+        int chunkSize = Integer.parseInt(options.getOrDefault("chunk-size", "2048"));
+        int rails = Integer.parseInt(options.getOrDefault("rails", "0"));
+        String checkpoint = options.getOrDefault("checkpoint", "");
+        boolean jitWarmup = Boolean.parseBoolean(options.getOrDefault("jit-warmup", "false"));
+        int shards = Integer.parseInt(options.getOrDefault("shards", "1"));
+
+        // 1. 生成合成证券与持仓
+        SyntheticBookGenerator generator = new SyntheticBookGenerator(positions, underlyings);
+        Path workDir = Files.createTempDirectory("portfolio-loadtest");
+        generator.writeTo(workDir);
+
+        // 2. 启动发送端上下文（先于接收端启动，使日志级别配置生效）；多个分片时每个分片一个上下文，各用自己的内存库
+        List<String> nodes = new ArrayList<>();
+        for (int shard = 0; shard < shards; shard++) {
+            nodes.add("shard-" + shard);
+        }
+        List<ConfigurableApplicationContext> contexts = new ArrayList<>();
+        for (String node : nodes) {
+            String suffix = shards > 1 ? "-" + node : "";
+            List<String> springArgs = new ArrayList<>();
+            springArgs.add("--spring.main.web-application-type=none");
+            springArgs.add("--spring.main.banner-mode=off");
+            springArgs.add("--spring.r2dbc.url=r2dbc:h2:mem:///loadtest" + suffix + "?DB_CLOSE_DELAY=-1");
+            springArgs.add("--spring.sql.init.schema-locations=" + workDir.resolve("schema.sql").toUri());
+            springArgs.add("--portfolio.position.csv-path=" + workDir.resolve("positions.csv").toUri());
+            springArgs.add("--portfolio.market-data.stock-tickers=" + String.join(",", generator.underlyingTickers()));
+            springArgs.add("--portfolio.market-data.pricing-strategy=GBM");
+            springArgs.add("--portfolio.market-data.min-interval=" + minInterval);
+            springArgs.add("--portfolio.market-data.max-interval=" + maxInterval);
+            springArgs.add("--portfolio.valuation.sample-interval=" + sampleInterval);
+            springArgs.add("--portfolio.valuation.parallel.enabled=" + parallel);
+            springArgs.add("--portfolio.valuation.parallel.chunk-size=" + chunkSize);
+            springArgs.add("--portfolio.valuation.parallel.rails=" + rails);
+            springArgs.add("--grpc.valuation.server.address=localhost:" + port);
+            springArgs.add("--portfolio.checkpoint.file=" + (checkpoint.isEmpty() ? "" : checkpoint + suffix));
+            springArgs.add("--portfolio.warmup.enabled=" + jitWarmup);
+            if (shards > 1) {
+                springArgs.add("--portfolio.shard.node-id=" + node);
+                springArgs.add("--portfolio.shard.nodes=" + String.join(",", nodes));
+            }
+            springArgs.add("--logging.level.root=WARN");
+            springArgs.add("--logging.level.org.springframework.data.r2dbc=WARN");
+            contexts.add(new SpringApplicationBuilder(LoadTestConfiguration.class)
+                    .run(springArgs.toArray(new String[0])));
+        }
+        // 各分片的行情源相同（每个分片只处理自己的标的），行情吞吐只统计第一个分片
+        CountingMarketDataProvider marketDataProvider = contexts.get(0).getBean(CountingMarketDataProvider.class);
+
+        // 3. 启动接收端（与 PortfolioReceiverApplication 相同的装配方式），随后订阅估值流
+        PipelineMetrics receiverMetrics = new PipelineMetrics();
+        ValuationRenderer renderer = new ValuationRenderer(ValuationRenderer.Mode.APPEND, 250L, receiverMetrics);
+        ValuationBroadcaster broadcaster = new ValuationBroadcaster(new ObjectMapper(), receiverMetrics);
+        if (render) {
+            renderer.start();
+            broadcaster.start();
+        }
+        NavHistoryBuffer navHistory = new NavHistoryBuffer(65_536, 8, receiverMetrics);
+        LatencyRecordingSubscriber subscriber =
+                new LatencyRecordingSubscriber(renderer, navHistory, broadcaster, render);
+        ValuationSubscriptionHub subscriptionHub = new ValuationSubscriptionHub(receiverMetrics);
+        FirmNavAggregator firmNav = new FirmNavAggregator(receiverMetrics, 2000L, 60_000L);
+        ValuationIngestor ingestor = new ValuationIngestor(subscriber, subscriptionHub, firmNav, receiverMetrics,
+                0, 64, 200L, 4096);
+        GrpcServerTemplate receiver = new GrpcServerTemplate(port,
+                new PortfolioValuationServer(ingestor, subscriptionHub, receiverMetrics));
+        receiver.start();
+        List<Disposable> valuationStreams = new ArrayList<>();
+        for (ConfigurableApplicationContext context : contexts) {
+            int warmedUp = context.getBean(ValuationWarmup.class).run();
+            if (warmedUp > 0) {
+                System.out.printf("JIT warm-up: %d valuations%n", warmedUp);
+            }
+            valuationStreams.add(context.getBean(ReactivePortfolioValuator.class)
+                    .calculateRealTimeValuation()
+                    .subscribe());
+        }
+
+        System.out.printf("Load test: %d positions x %d underlyings, tick interval %d-%dms, sample %dms, port %d, %s, "
+                        + "%d shard(s)%n",
+                positions, underlyings, minInterval, maxInterval, sampleInterval, port,
+                parallel ? "parallel (chunk " + chunkSize + ")" : "sequential", shards);
+
+        // 4. 预热后清空统计，再进入正式统计窗口
+        TimeUnit.SECONDS.sleep(warmupSeconds);
+        subscriber.intervalHistogram();
+        subscriber.sumThenReset();
+        marketDataProvider.sumThenReset();
+        for (ConfigurableApplicationContext context : contexts) {
+            context.getBean(PipelineMetrics.class).snapshot(); // 读取一次，阶段利用率从此开始统计
+        }
+
+        long start = System.nanoTime();
+        TimeUnit.SECONDS.sleep(durationSeconds);
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        Histogram latency = subscriber.intervalHistogram();
+        long ticks = marketDataProvider.sumThenReset();
+        long valuations = subscriber.sumThenReset();
+        Map<String, Long> utilization = new LinkedHashMap<>();
+        for (ConfigurableApplicationContext context : contexts) {
+            // 多个分片时取各阶段最忙的分片
+            stageUtilization(context.getBean(PipelineMetrics.class)).forEach((stage, percent) ->
+                    utilization.merge(stage, percent, Math::max));
+        }
+        FirmNav firm = firmNav.current(true);
+
+        for (int i = 0; i < contexts.size(); i++) {
+            valuationStreams.get(i).dispose();
+            contexts.get(i).close();
+        }
+        receiver.stop();
+        ingestor.shutdown();
+        renderer.stop();
+        broadcaster.stop();
+
+        report(elapsedSeconds, ticks, valuations, latency, utilization, firm);
+        System.exit(0);
+    }
+
+    // 统计窗口内各流水线阶段的利用率（瞬时值 {stage}-utilization-pct）
+    @SuppressWarnings("unchecked")
+    private static Map<String, Long> stageUtilization(PipelineMetrics metrics) {
+        Map<String, Long> utilization = new LinkedHashMap<>();
+        Map<String, Long> gauges = (Map<String, Long>) metrics.snapshot().get("gauges");
+        for (String stage : new String[]{"intake", "revaluation", "aggregation", "encode", "send"}) {
+            Long percent = gauges.get(stage + "-utilization-pct");
+            if (percent != null) {
+                utilization.put(stage, percent);
+            }
+        }
+        return utilization;
+    }
+
+    private static void report(double elapsedSeconds, long ticks, long valuations, Histogram latency,
+                               Map<String, Long> utilization, FirmNav firm) {
+        System.out.println("======================================================");
+        System.out.printf("%-28s %12.1f s%n", "elapsed", elapsedSeconds);
+        System.out.printf("%-28s %12.1f /s%n", "tick throughput", ticks / elapsedSeconds);
+        System.out.printf("%-28s %12.1f /s%n", "valuation throughput", valuations / elapsedSeconds);
+        System.out.printf("%-28s %12d%n", "latency samples", latency.getTotalCount());
+        System.out.printf("%-28s %12.3f ms%n", "tick->receiver p50", latency.getValueAtPercentile(50.0) / 1000.0);
+        System.out.printf("%-28s %12.3f ms%n", "tick->receiver p99", latency.getValueAtPercentile(99.0) / 1000.0);
+        System.out.printf("%-28s %12.3f ms%n", "tick->receiver p99.9", latency.getValueAtPercentile(99.9) / 1000.0);
+        System.out.printf("%-28s %12.3f ms%n", "tick->receiver max", latency.getMaxValue() / 1000.0);
+        for (Map.Entry<String, Long> entry : utilization.entrySet()) {
+            System.out.printf("%-28s %12d %%%n", "utilization " + entry.getKey(), entry.getValue());
+        }
+        // 接收端按发送源（分片）合并的公司级 NAV
+        System.out.printf("%-28s %12.2f (%d sources, %s)%n", "firm NAV", firm.getTotalNav(), firm.getSources(),
+                firm.isConsistent() ? "consistent" : firm.getStaleSources() + " stale");
+        for (SourceNav source : firm.getContributions()) {
+            System.out.printf("  %-26s %12.2f #%d%n", source.getSourceId(), source.getNav(), source.getUpdateCount());
+        }
+        System.out.println("======================================================");
+    }
+
+    private static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("参数格式应为 --key=value：" + arg);
+            }
+            int eq = arg.indexOf('=');
+            options.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        return options;
+    }
+}
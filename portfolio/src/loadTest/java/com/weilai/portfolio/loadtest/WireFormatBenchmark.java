@@ -0,0 +1,154 @@
+package com.weilai.portfolio.loadtest;
+
+import com.weilai.portfolio.entity.PortfolioValuation;
+import com.weilai.portfolio.entity.Position;
+import com.weilai.portfolio.grpc.codec.ValuationFrameCodec;
+import com.weilai.portfolio.grpc.valuation.MarketDataChangeProto;
+import com.weilai.portfolio.grpc.valuation.PortfolioValuationBatch;
+import com.weilai.portfolio.grpc.valuation.PortfolioValuationMessage;
+import com.weilai.portfolio.grpc.valuation.PositionProto;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * 线上格式对比：行式 PortfolioValuationMessage 与列式 PortfolioValuationBatch 的消息大小、编码与解码耗时
+ * <p>
+ * 每帧随机移动一部分标的的价格，挂在这些标的上的持仓随之变化，其余持仓不变。
+ * 参数：--positions=10000 --underlyings=50 --moving=0.2 --key-frame-interval=100 --frames=2000 --warmup=1000
+ */
+public class WireFormatBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseArgs(args);
+        int positionCount = Integer.parseInt(options.getOrDefault("positions", "10000"));
+        int underlyings = Integer.parseInt(options.getOrDefault("underlyings", "50"));
+        double moving = Double.parseDouble(options.getOrDefault("moving", "0.2"));
+        int keyFrameInterval = Integer.parseInt(options.getOrDefault("key-frame-interval", "100"));
+        int frames = Integer.parseInt(options.getOrDefault("frames", "2000"));
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "1000"));
+
+        SplittableRandom random = new SplittableRandom(42);
+        double[] spots = new double[underlyings];
+        for (int u = 0; u < underlyings; u++) {
+            spots[u] = 50 + random.nextDouble() * 400;
+        }
+        Position[] positions = new Position[positionCount];
+        for (int i = 0; i < positionCount; i++) {
+            int u = i % underlyings;
+            int k = i / underlyings;
+            String ticker = k == 0 ? String.format("SYN%04d", u) : String.format("SYN%04d-OPT%05d-C", u, k);
+            positions[i] = new Position(ticker, (k % 3 == 0 ? -1 : 1) * 100 * (1 + k % 10), null, null);
+        }
+
+        ValuationFrameCodec.Encoder encoder =
+                new ValuationFrameCodec.Encoder("benchmark", ValuationFrameCodec.DEFAULT_SCALE, keyFrameInterval);
+        ValuationFrameCodec.Decoder decoder = new ValuationFrameCodec.Decoder();
+        long rowBytes = 0, columnarBytes = 0;
+        long rowEncodeNanos = 0, rowDecodeNanos = 0, columnarEncodeNanos = 0, columnarDecodeNanos = 0;
+        long checksum = 0;
+
+        for (int frame = 1; frame <= warmup + frames; frame++) {
+            PortfolioValuation valuation = nextValuation(frame, positions, spots, moving, random);
+            boolean measured = frame > warmup;
+
+            long start = System.nanoTime();
+            byte[] row = toMessage(valuation).toByteArray();
+            long encoded = System.nanoTime();
+            PortfolioValuationMessage rowDecoded = PortfolioValuationMessage.parseFrom(row);
+            long decoded = System.nanoTime();
+            if (measured) {
+                rowBytes += row.length;
+                rowEncodeNanos += encoded - start;
+                rowDecodeNanos += decoded - encoded;
+            }
+
+            start = System.nanoTime();
+            byte[] columnar = encoder.encode(valuation).toByteArray();
+            encoded = System.nanoTime();
+            PortfolioValuationMessage columnarDecoded = decoder.decode(PortfolioValuationBatch.parseFrom(columnar));
+            decoded = System.nanoTime();
+            if (measured) {
+                columnarBytes += columnar.length;
+                columnarEncodeNanos += encoded - start;
+                columnarDecodeNanos += decoded - encoded;
+            }
+            checksum += rowDecoded.getPositionsCount() + columnarDecoded.getPositionsCount();
+        }
+
+        System.out.printf("Wire format benchmark: %d positions x %d underlyings, %.0f%% moving per frame, "
+                        + "key frame every %d, %d frames (checksum %d)%n",
+                positionCount, underlyings, moving * 100, keyFrameInterval, frames, checksum);
+        System.out.printf("%-10s %14s %14s %14s%n", "format", "bytes/frame", "encode(us)", "decode(us)");
+        System.out.printf("%-10s %14d %14.1f %14.1f%n", "ROW",
+                rowBytes / frames, rowEncodeNanos / 1e3 / frames, rowDecodeNanos / 1e3 / frames);
+        System.out.printf("%-10s %14d %14.1f %14.1f%n", "COLUMNAR",
+                columnarBytes / frames, columnarEncodeNanos / 1e3 / frames, columnarDecodeNanos / 1e3 / frames);
+        System.out.printf("size ratio %.3f%n", (double) columnarBytes / rowBytes);
+    }
+
+    // 随机移动一部分标的，更新挂在其上的持仓价格与市值（期权价格简化为现价的固定比例）
+    private static PortfolioValuation nextValuation(int updateCount, Position[] positions, double[] spots,
+                                                    double moving, SplittableRandom random) {
+        Map<String, BigDecimal> changed = new HashMap<>();
+        boolean[] moved = new boolean[spots.length];
+        for (int u = 0; u < spots.length; u++) {
+            if (updateCount == 1 || random.nextDouble() < moving) {
+                spots[u] = Math.max(1, spots[u] * (1 + (random.nextDouble() - 0.5) * 0.002));
+                moved[u] = true;
+                changed.put(String.format("SYN%04d", u), BigDecimal.valueOf(Math.round(spots[u] * 100) / 100.0));
+            }
+        }
+        BigDecimal nav = BigDecimal.ZERO;
+        for (int i = 0; i < positions.length; i++) {
+            int u = i % spots.length;
+            Position position = positions[i];
+            if (moved[u]) {
+                int k = i / spots.length;
+                double price = k == 0 ? spots[u] : spots[u] * (0.02 + (k % 20) * 0.005);
+                position.setPrice(BigDecimal.valueOf(price));
+                position.setMarketValue(BigDecimal.valueOf(price * position.getQuantity()));
+            }
+            nav = nav.add(position.getMarketValue());
+        }
+        return new PortfolioValuation(positions, nav, System.currentTimeMillis(), updateCount, changed,
+                System.currentTimeMillis(), "benchmark");
+    }
+
+    // 与 ReactivePortfolioValuator 的行式转换一致
+    private static PortfolioValuationMessage toMessage(PortfolioValuation valuation) {
+        PortfolioValuationMessage.Builder builder = PortfolioValuationMessage.newBuilder();
+        for (Position position : valuation.getPositions()) {
+            builder.addPositions(PositionProto.newBuilder()
+                    .setTicker(position.getTicker())
+                    .setQuantity(position.getQuantity())
+                    .setPrice(position.getPrice().doubleValue())
+                    .setMarketValue(position.getMarketValue().doubleValue()));
+        }
+        for (Map.Entry<String, BigDecimal> entry : valuation.getChangedMarketData().entrySet()) {
+            builder.addChangedMarketData(MarketDataChangeProto.newBuilder()
+                    .setTicker(entry.getKey())
+                    .setPrice(entry.getValue().doubleValue()));
+        }
+        return builder.setTotalNav(valuation.getTotalNav().doubleValue())
+                .setTimestamp(valuation.getTimestamp())
+                .setUpdateCount(valuation.getUpdateCount())
+                .setTickTimestamp(valuation.getTickTimestamp())
+                .setSourceId("benchmark")
+                .build();
+    }
+
+    private static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("参数格式应为 --key=value：" + arg);
+            }
+            int eq = arg.indexOf('=');
+            options.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        return options;
+    }
+}
@@ -2,6 +2,8 @@ package com.weilai.portfolio;
 
 import com.weilai.portfolio.grpc.client.PortfolioValuationClient;
 import com.weilai.portfolio.service.ReactivePortfolioValuator;
+import com.weilai.portfolio.service.ValuationSendQueue;
+import com.weilai.portfolio.service.ValuationWarmup;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
@@ -14,21 +16,43 @@ import org.springframework.context.annotation.Bean;
 public class PortfolioApplication implements CommandLineRunner{
 
     private final ReactivePortfolioValuator valuator;
+    private final ValuationWarmup valuationWarmup;
 
     @Value("${grpc.valuation.server.address:localhost:50052}")
     private String valuationServerAddress;
 
+    @Value("${portfolio.valuation.batch.max-count:64}")
+    private int batchMaxCount;
+
+    @Value("${portfolio.valuation.batch.max-bytes:1048576}")
+    private int batchMaxBytes;
+
+    @Value("${portfolio.valuation.batch.linger-ms:0}")
+    private long batchLingerMillis;
+
+    @Value("${portfolio.valuation.batch.max-pending:2}")
+    private int batchMaxPending;
+
+    @Value("${portfolio.valuation.batch.deadline-ms:5000}")
+    private long batchDeadlineMillis;
+
+    @Value("${portfolio.valuation.send-queue.overflow-policy:DROP_OLDEST}")
+    private ValuationSendQueue.OverflowPolicy overflowPolicy;
+
     public static void main(String[] args) {
         SpringApplication.run(PortfolioApplication.class, args);
     }
 
     @Bean
     public PortfolioValuationClient portfolioValuationClient() {
-        return new PortfolioValuationClient(valuationServerAddress);
+        return new PortfolioValuationClient(valuationServerAddress, batchMaxCount, batchMaxBytes, batchLingerMillis,
+                batchMaxPending, overflowPolicy, batchDeadlineMillis);
     }
 
     @Override
     public void run(String... args) throws Exception {
+        // JIT 预热（portfolio.warmup.enabled）完成后才订阅行情
+        valuationWarmup.run();
         valuator.calculateRealTimeValuation().subscribe();
     }
 }
\ No newline at end of file
@@ -0,0 +1,6 @@
+package com.weilai.portfolio.entity;
+
+// 期权行权方式枚举（为空按欧式处理）
+public enum ExerciseStyle {
+    EUROPEAN, AMERICAN
+}
@@ -24,4 +24,6 @@ public class Security {
 
     // 可选：标的股票代码（如期权 AAPL-OCT-2020-110-C 对应的标的股票是 AAPL）
     private String underlyingTicker;
+
+    private ExerciseStyle exerciseStyle; // 行权方式（仅期权有效，为空按欧式）
 }
\ No newline at end of file
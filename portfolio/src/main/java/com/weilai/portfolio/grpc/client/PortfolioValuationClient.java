@@ -1,22 +1,45 @@
 package com.weilai.portfolio.grpc.client;
 
+import com.weilai.portfolio.grpc.valuation.FormatRequest;
+import com.weilai.portfolio.grpc.valuation.FormatResponse;
+import com.weilai.portfolio.grpc.valuation.PortfolioValuationBatch;
 import com.weilai.portfolio.grpc.valuation.PortfolioValuationMessage;
 import com.weilai.portfolio.grpc.valuation.PortfolioValuationServiceGrpc;
+import com.weilai.portfolio.grpc.valuation.ValuationFormat;
 import com.weilai.portfolio.grpc.valuation.ValuationResponse;
+import com.weilai.portfolio.service.ValuationSendQueue.OverflowPolicy;
 import io.grpc.Channel;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
 @Slf4j
 @RequiredArgsConstructor
-public class PortfolioValuationClient {
+public class PortfolioValuationClient implements AutoCloseable {
     private final GrpcClientTemplate<PortfolioValuationMessage, ValuationResponse> valuationClient;
+    private final GrpcClientTemplate<PortfolioValuationBatch, ValuationResponse> frameClient;
+    private final GrpcClientTemplate<FormatRequest, FormatResponse> formatClient;
+    private final ValuationBatcher batcher; // 未开启攒批时为 null
 
     public PortfolioValuationClient(String target) {
+        this(target, 0, 0, 0L, 1, OverflowPolicy.DROP_OLDEST, 0L);
+    }
+
+    /**
+     * @param lingerMillis 大于0时开启攒批：估值最多等待 lingerMillis，攒满 maxCount 条或 maxBytes 字节提前发送
+     * @param maxPending   攒批时等待发送的批次上限，超出时按 overflowPolicy 处理
+     * @param deadlineMillis 攒批时每次 BatchValuations 调用的超时（毫秒），超时按发送失败处理
+     */
+    public PortfolioValuationClient(String target, int maxCount, int maxBytes, long lingerMillis,
+                                    int maxPending, OverflowPolicy overflowPolicy, long deadlineMillis) {
+        this.batcher = lingerMillis > 0
+                ? new ValuationBatcher(target, maxCount, maxBytes, lingerMillis, maxPending, overflowPolicy,
+                deadlineMillis)
+                : null;
         this.valuationClient = new GrpcClientTemplate<PortfolioValuationMessage, ValuationResponse>(target) {
             @Override
             protected Object createBlockingStub(Channel channel) {
@@ -30,6 +53,87 @@ public class PortfolioValuationClient {
                 return valuationStub.sendValuation(request);
             }
         };
+        this.frameClient = new GrpcClientTemplate<PortfolioValuationBatch, ValuationResponse>(target) {
+            @Override
+            protected Object createBlockingStub(Channel channel) {
+                return PortfolioValuationServiceGrpc.newBlockingStub(channel);
+            }
+
+            @Override
+            protected ValuationResponse doRpcCall(Object stub, PortfolioValuationBatch request) {
+                PortfolioValuationServiceGrpc.PortfolioValuationServiceBlockingStub valuationStub =
+                        (PortfolioValuationServiceGrpc.PortfolioValuationServiceBlockingStub) stub;
+                return valuationStub.sendValuationFrame(request);
+            }
+        };
+        this.formatClient = new GrpcClientTemplate<FormatRequest, FormatResponse>(target) {
+            @Override
+            protected Object createBlockingStub(Channel channel) {
+                return PortfolioValuationServiceGrpc.newBlockingStub(channel);
+            }
+
+            @Override
+            protected FormatResponse doRpcCall(Object stub, FormatRequest request) {
+                PortfolioValuationServiceGrpc.PortfolioValuationServiceBlockingStub valuationStub =
+                        (PortfolioValuationServiceGrpc.PortfolioValuationServiceBlockingStub) stub;
+                return valuationStub.negotiateFormat(request);
+            }
+        };
+    }
+
+    /**
+     * 与接收端协商线上格式；接收端不支持协商（旧版本）或调用失败时回退到 ROW
+     */
+    public ValuationFormat negotiateFormat(String sourceId, ValuationFormat preferred) {
+        if (preferred == ValuationFormat.ROW) {
+            return ValuationFormat.ROW;
+        }
+        FormatRequest request = FormatRequest.newBuilder()
+                .setSourceId(sourceId)
+                .addSupported(preferred)
+                .addSupported(ValuationFormat.ROW)
+                .build();
+        AtomicReference<ValuationFormat> negotiated = new AtomicReference<>(ValuationFormat.ROW);
+        formatClient.execute(param -> request,
+                response -> negotiated.set(response.getFormat()),
+                e -> log.warn("Format negotiation failed, falling back to ROW: {}", e.getMessage()),
+                request);
+        log.info("Negotiated valuation wire format {} for [{}]", negotiated.get(), sourceId);
+        return negotiated.get();
+    }
+
+    public boolean isBatching() {
+        return batcher != null;
+    }
+
+    /**
+     * 攒批发送（需开启攒批）：通常立即返回，回调在批次确认或失败后由发送线程执行；
+     * 等待发送的批次超过上限时按溢出策略丢弃（以 ValuationBatcher.DroppedException 回调）或阻塞
+     */
+    public void sendBatched(PortfolioValuationMessage valuation,
+                            Consumer<ValuationResponse> responseHandler,
+                            Consumer<Throwable> exceptionHandler) {
+        batcher.add(valuation, responseHandler, exceptionHandler);
+    }
+
+    public void sendBatched(PortfolioValuationBatch frame,
+                            Consumer<ValuationResponse> responseHandler,
+                            Consumer<Throwable> exceptionHandler) {
+        batcher.add(frame, responseHandler, exceptionHandler);
+    }
+
+    @Override
+    public void close() {
+        if (batcher != null) {
+            batcher.close();
+        }
+    }
+
+    public <T> void sendValuationFrame(Function<T, PortfolioValuationBatch> requestBuilder,
+                                       Consumer<ValuationResponse> responseHandler,
+                                       Consumer<Throwable> exceptionHandler,
+                                       T businessParam) {
+        frameClient.execute(requestBuilder, responseHandler, exceptionHandler, businessParam);
     }
 
     public <T> void sendValuation(Function<T, PortfolioValuationMessage> requestBuilder,
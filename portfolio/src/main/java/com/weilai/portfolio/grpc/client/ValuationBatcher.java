@@ -0,0 +1,279 @@
+package com.weilai.portfolio.grpc.client;
+
+import com.weilai.portfolio.grpc.valuation.PortfolioValuationBatch;
+import com.weilai.portfolio.grpc.valuation.PortfolioValuationMessage;
+import com.weilai.portfolio.grpc.valuation.PortfolioValuationServiceGrpc;
+import com.weilai.portfolio.grpc.valuation.ValuationBatchEntry;
+import com.weilai.portfolio.grpc.valuation.ValuationBatchRequest;
+import com.weilai.portfolio.grpc.valuation.ValuationResponse;
+import com.weilai.portfolio.service.ValuationSendQueue.OverflowPolicy;
+import io.grpc.Grpc;
+import io.grpc.InsecureChannelCredentials;
+import io.grpc.ManagedChannel;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 估值攒批发送（类似 Kafka Producer 的 batch.size / linger.ms）
+ * <p>
+ * - 攒满 maxCount 条或 maxBytes 字节立即发送，否则在第一条入队 lingerMillis 后发送
+ * - 所有批次在同一个发送线程上按入队顺序串行发送，接收端按批内顺序处理
+ * - 复用一条长连接，调用方线程只负责入队，不会被 RPC 阻塞
+ * - 等待发送的批次最多 maxPending 个，超出时按溢出策略处理（与发送队列相同）：
+ *   DROP_OLDEST 丢弃最旧的批次，LATEST 只保留最新的批次，BLOCK 阻塞调用方；
+ *   被丢弃批次中的每条估值以 DroppedException 回调 exceptionHandler
+ * - 每次 RPC 带 deadline（deadlineMillis）：接收端挂起但不断开连接时按发送失败处理（DEADLINE_EXCEEDED），
+ *   发送线程不会被永久阻塞，BLOCK 策略下的调用方也随之恢复
+ */
+@Slf4j
+public class ValuationBatcher implements AutoCloseable {
+    private static final int CHANNEL_SHUTDOWN_TIMEOUT = 5; // 通道关闭超时时间（秒）
+    private static final List<Pending> END = Collections.emptyList(); // 关闭标记
+
+    private final int maxCount;
+    private final int maxBytes;
+    private final long lingerMillis;
+    private final OverflowPolicy overflowPolicy;
+
+    private final ManagedChannel channel; // 测试直接注入 RPC 时为 null
+    private final Function<ValuationBatchRequest, ValuationResponse> rpc;
+    private final LinkedBlockingDeque<List<Pending>> batches;
+    private final ExecutorService sender;
+    private final ScheduledExecutorService lingerTimer;
+
+    // 以下字段由 this 锁保护
+    private List<Pending> buffer = new ArrayList<>();
+    private int bufferedBytes;
+    private ScheduledFuture<?> lingerFuture;
+
+    public ValuationBatcher(String target, int maxCount, int maxBytes, long lingerMillis,
+                            int maxPending, OverflowPolicy overflowPolicy, long deadlineMillis) {
+        this(Grpc.newChannelBuilder(target, InsecureChannelCredentials.create()).build(),
+                maxCount, maxBytes, lingerMillis, maxPending, overflowPolicy, deadlineMillis);
+        log.info("Valuation batching enabled: max-count={}, max-bytes={}, linger={}ms, max-pending={}, "
+                        + "overflow-policy={}, deadline={}ms, target={}",
+                this.maxCount, this.maxBytes, lingerMillis, maxPending, overflowPolicy, deadlineMillis, target);
+    }
+
+    ValuationBatcher(ManagedChannel channel, int maxCount, int maxBytes, long lingerMillis,
+                     int maxPending, OverflowPolicy overflowPolicy, long deadlineMillis) {
+        this(deadlineRpc(PortfolioValuationServiceGrpc.newBlockingStub(channel), deadlineMillis), channel,
+                maxCount, maxBytes, lingerMillis, maxPending, overflowPolicy);
+    }
+
+    // deadline 从每次调用开始计时，因此每次调用前重新设置
+    private static Function<ValuationBatchRequest, ValuationResponse> deadlineRpc(
+            PortfolioValuationServiceGrpc.PortfolioValuationServiceBlockingStub stub, long deadlineMillis) {
+        if (deadlineMillis <= 0) {
+            throw new IllegalArgumentException("portfolio.valuation.batch.deadline-ms 必须大于0");
+        }
+        return request -> stub.withDeadlineAfter(deadlineMillis, TimeUnit.MILLISECONDS).batchValuations(request);
+    }
+
+    ValuationBatcher(Function<ValuationBatchRequest, ValuationResponse> rpc, ManagedChannel channel,
+                     int maxCount, int maxBytes, long lingerMillis, int maxPending, OverflowPolicy overflowPolicy) {
+        if (maxPending <= 0) {
+            throw new IllegalArgumentException("portfolio.valuation.batch.max-pending 必须大于0");
+        }
+        this.maxCount = Math.max(maxCount, 1);
+        this.maxBytes = Math.max(maxBytes, 1);
+        this.lingerMillis = lingerMillis;
+        this.overflowPolicy = overflowPolicy;
+        this.rpc = rpc;
+        this.channel = channel;
+        this.batches = new LinkedBlockingDeque<>(maxPending);
+        this.sender = Executors.newSingleThreadExecutor(daemon("valuation-batcher"));
+        this.lingerTimer = Executors.newSingleThreadScheduledExecutor(daemon("valuation-batcher-linger"));
+        sender.execute(this::drain);
+    }
+
+    public void add(PortfolioValuationMessage valuation,
+                    Consumer<ValuationResponse> responseHandler,
+                    Consumer<Throwable> exceptionHandler) {
+        append(ValuationBatchEntry.newBuilder().setValuation(valuation).build(), responseHandler, exceptionHandler);
+    }
+
+    public void add(PortfolioValuationBatch frame,
+                    Consumer<ValuationResponse> responseHandler,
+                    Consumer<Throwable> exceptionHandler) {
+        append(ValuationBatchEntry.newBuilder().setFrame(frame).build(), responseHandler, exceptionHandler);
+    }
+
+    /**
+     * 等待发送的批次数（不含正在发送的批次）
+     */
+    public int pendingBatches() {
+        return batches.size();
+    }
+
+    private synchronized void append(ValuationBatchEntry entry,
+                                     Consumer<ValuationResponse> responseHandler,
+                                     Consumer<Throwable> exceptionHandler) {
+        buffer.add(new Pending(entry, responseHandler, exceptionHandler));
+        bufferedBytes += entry.getSerializedSize();
+        if (buffer.size() >= maxCount || bufferedBytes >= maxBytes) {
+            flushLocked();
+        } else if (lingerFuture == null) {
+            lingerFuture = lingerTimer.schedule(this::flush, lingerMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized void flush() {
+        flushLocked();
+    }
+
+    // 取出当前批次交给发送线程；在锁内入队，保证批次顺序与估值顺序一致
+    private void flushLocked() {
+        if (lingerFuture != null) {
+            lingerFuture.cancel(false);
+            lingerFuture = null;
+        }
+        if (buffer.isEmpty()) {
+            return;
+        }
+        List<Pending> batch = buffer;
+        buffer = new ArrayList<>(Math.min(maxCount, 1024));
+        bufferedBytes = 0;
+        switch (overflowPolicy) {
+            case BLOCK:
+                try {
+                    batches.putLast(batch);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    drop(batch);
+                }
+                break;
+            case LATEST:
+                List<Pending> stale;
+                while ((stale = batches.pollFirst()) != null) {
+                    drop(stale);
+                }
+                offerDroppingOldest(batch);
+                break;
+            default:
+                offerDroppingOldest(batch);
+                break;
+        }
+    }
+
+    // 与发送线程并发出队时可能需要重试
+    private void offerDroppingOldest(List<Pending> batch) {
+        while (!batches.offerLast(batch)) {
+            List<Pending> oldest = batches.pollFirst();
+            if (oldest != null) {
+                drop(oldest);
+            }
+        }
+    }
+
+    private void drop(List<Pending> batch) {
+        log.debug("Drop a batch of {} valuations, the receiver is behind", batch.size());
+        DroppedException dropped = new DroppedException(batch.size());
+        for (Pending pending : batch) {
+            pending.exceptionHandler.accept(dropped);
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            List<Pending> batch;
+            try {
+                batch = batches.takeFirst();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (batch == END) {
+                return;
+            }
+            send(batch);
+        }
+    }
+
+    private void send(List<Pending> batch) {
+        ValuationBatchRequest.Builder request = ValuationBatchRequest.newBuilder();
+        for (Pending pending : batch) {
+            request.addEntries(pending.entry);
+        }
+        try {
+            ValuationResponse response = rpc.apply(request.build());
+            log.debug("Batch of {} valuations acknowledged", batch.size());
+            for (Pending pending : batch) {
+                pending.responseHandler.accept(response);
+            }
+        } catch (Exception e) {
+            for (Pending pending : batch) {
+                pending.exceptionHandler.accept(e);
+            }
+        }
+    }
+
+    /**
+     * 发送剩余估值并关闭连接；等待期间被中断时立即关闭，并保留中断标记
+     */
+    @Override
+    public void close() {
+        flush();
+        lingerTimer.shutdownNow();
+        try {
+            batches.putLast(END);
+            sender.shutdown();
+            if (!sender.awaitTermination(CHANNEL_SHUTDOWN_TIMEOUT, TimeUnit.SECONDS)) {
+                sender.shutdownNow();
+            }
+            if (channel != null) {
+                channel.shutdown().awaitTermination(CHANNEL_SHUTDOWN_TIMEOUT, TimeUnit.SECONDS);
+            }
+        } catch (InterruptedException e) {
+            sender.shutdownNow();
+            if (channel != null) {
+                channel.shutdownNow();
+            }
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * 等待发送的批次超过上限，估值未发送即被丢弃
+     */
+    public static final class DroppedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private DroppedException(int batchSize) {
+            super("估值批次被丢弃（" + batchSize + " 条），接收端处理跟不上", null, false, false);
+        }
+    }
+
+    private static final class Pending {
+        private final ValuationBatchEntry entry;
+        private final Consumer<ValuationResponse> responseHandler;
+        private final Consumer<Throwable> exceptionHandler;
+
+        private Pending(ValuationBatchEntry entry,
+                        Consumer<ValuationResponse> responseHandler,
+                        Consumer<Throwable> exceptionHandler) {
+            this.entry = entry;
+            this.responseHandler = responseHandler;
+            this.exceptionHandler = exceptionHandler;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.weilai.portfolio.grpc.server;
+
+import lombok.Data;
+
+/**
+ * gRPC 服务端线程模型与传输参数
+ */
+@Data
+public class GrpcServerSettings {
+    /**
+     * 业务回调（ServerCall 监听器）所在的执行器
+     */
+    public enum ExecutorMode {
+        /** 直接在 Netty 事件循环线程上执行，只适用于不阻塞的处理逻辑 */
+        DIRECT,
+        /** 有界 ForkJoinPool（异步模式），线程数为 threads */
+        WORK_STEALING,
+        /** 固定大小线程池，线程数为 threads */
+        FIXED
+    }
+
+    private ExecutorMode executorMode = ExecutorMode.FIXED;
+    // WORK_STEALING / FIXED 的线程数，0 表示 CPU 核数
+    private int threads = 2;
+    // Netty boss / worker 事件循环线程数，均为 0 时使用 gRPC 共享的默认事件循环
+    private int bossThreads = 0;
+    private int workerThreads = 0;
+    // 单条入站消息上限（字节）
+    private int maxInboundMessageSize = 4 * 1024 * 1024;
+    // HTTP/2 初始流控窗口（字节）
+    private int flowControlWindow = 1024 * 1024;
+
+    public int resolvedThreads() {
+        return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+}
@@ -1,13 +1,18 @@
 package com.weilai.portfolio.grpc.server;
 
 import io.grpc.BindableService;
-import io.grpc.Grpc;
-import io.grpc.InsecureServerCredentials;
 import io.grpc.Server;
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+import io.grpc.netty.shaded.io.netty.channel.EventLoopGroup;
+import io.grpc.netty.shaded.io.netty.channel.nio.NioEventLoopGroup;
+import io.grpc.netty.shaded.io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.grpc.netty.shaded.io.netty.util.concurrent.DefaultThreadFactory;
 
 import java.io.IOException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
@@ -18,7 +23,9 @@ public class GrpcServerTemplate {
     private static final int SHUTDOWN_TIMEOUT = 30; // 关闭超时时间（秒）
 
     private final Server server;
-    private final ExecutorService executorService;
+    private final ExecutorService executorService; // DIRECT 模式下为 null
+    private final EventLoopGroup bossGroup; // 使用默认事件循环时为 null
+    private final EventLoopGroup workerGroup;
 
     public GrpcServerTemplate(BindableService service) {
         this(DEFAULT_PORT, DEFAULT_THREAD_POOL_SIZE, service);
@@ -29,11 +36,39 @@ public class GrpcServerTemplate {
     }
 
     public GrpcServerTemplate(int port, int threadPoolSize, BindableService service) {
-        this.executorService = Executors.newFixedThreadPool(threadPoolSize);
-        this.server = Grpc.newServerBuilderForPort(port, InsecureServerCredentials.create())
-                .executor(executorService)
+        this(port, fixedPool(threadPoolSize), service);
+    }
+
+    public GrpcServerTemplate(int port, GrpcServerSettings settings, BindableService service) {
+        NettyServerBuilder builder = NettyServerBuilder.forPort(port)
+                .maxInboundMessageSize(settings.getMaxInboundMessageSize())
+                .initialFlowControlWindow(settings.getFlowControlWindow());
+
+        this.executorService = createExecutor(settings);
+        if (executorService == null) {
+            builder.directExecutor();
+        } else {
+            builder.executor(executorService);
+        }
+
+        if (settings.getBossThreads() > 0 || settings.getWorkerThreads() > 0) {
+            // 自定义事件循环时 boss、worker 与 channelType 必须同时指定；线程数为 0 时由 Netty 取默认值（2 × CPU 核数）
+            this.bossGroup = new NioEventLoopGroup(Math.max(settings.getBossThreads(), 1),
+                    new DefaultThreadFactory("grpc-boss", true));
+            this.workerGroup = new NioEventLoopGroup(settings.getWorkerThreads(),
+                    new DefaultThreadFactory("grpc-worker", true));
+            builder.bossEventLoopGroup(bossGroup)
+                    .workerEventLoopGroup(workerGroup)
+                    .channelType(NioServerSocketChannel.class);
+        } else {
+            this.bossGroup = null;
+            this.workerGroup = null;
+        }
+
+        this.server = builder
                 .addService(service) // 注册服务实现
                 .build();
+        logger.info("gRPC server configured: " + settings);
         registerShutdownHook();
     }
 
@@ -44,6 +79,13 @@ public class GrpcServerTemplate {
         }
     }
 
+    /**
+     * 实际监听的端口（以端口 0 构造时为启动后系统分配的端口）
+     */
+    public int getPort() {
+        return server.getPort();
+    }
+
     public void blockUntilShutdown() throws InterruptedException {
         if (server != null) {
             server.awaitTermination();
@@ -54,10 +96,40 @@ public class GrpcServerTemplate {
         if (server != null && !server.isShutdown()) {
             server.shutdown().awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.SECONDS);
         }
-        executorService.shutdown();
+        if (executorService != null) {
+            executorService.shutdown();
+        }
+        if (bossGroup != null) {
+            bossGroup.shutdownGracefully(0, SHUTDOWN_TIMEOUT, TimeUnit.SECONDS);
+            workerGroup.shutdownGracefully(0, SHUTDOWN_TIMEOUT, TimeUnit.SECONDS);
+        }
         logger.info("Server shut down completely");
     }
 
+    private static GrpcServerSettings fixedPool(int threadPoolSize) {
+        GrpcServerSettings settings = new GrpcServerSettings();
+        settings.setExecutorMode(GrpcServerSettings.ExecutorMode.FIXED);
+        settings.setThreads(threadPoolSize);
+        return settings;
+    }
+
+    private static ExecutorService createExecutor(GrpcServerSettings settings) {
+        switch (settings.getExecutorMode()) {
+            case DIRECT:
+                return null;
+            case WORK_STEALING:
+                return new ForkJoinPool(settings.resolvedThreads(), pool -> {
+                    ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                    thread.setName("grpc-ws-" + thread.getPoolIndex());
+                    thread.setDaemon(true);
+                    return thread;
+                }, null, true);
+            case FIXED:
+            default:
+                return Executors.newFixedThreadPool(settings.resolvedThreads());
+        }
+    }
+
     private void registerShutdownHook() {
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             System.err.println("*** shutting down gRPC server since JVM is shutting down");
@@ -70,4 +142,4 @@ public class GrpcServerTemplate {
             System.err.println("*** server shut down");
         }));
     }
-}
\ No newline at end of file
+}
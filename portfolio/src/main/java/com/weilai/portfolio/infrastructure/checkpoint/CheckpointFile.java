@@ -0,0 +1,151 @@
+package com.weilai.portfolio.infrastructure.checkpoint;
+
+import com.weilai.portfolio.entity.MarketData;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * 检查点文件：先写临时文件再原子重命名，崩溃时磁盘上要么是旧检查点，要么是完整的新检查点
+ * <p>
+ * 格式：magic(int) version(int) 内容长度(int) 内容 CRC32(long)，随后为内容
+ * （序号、时间、NAV、最新价格、策略状态；价格以十进制字符串保存，不损失精度）。
+ * 临时文件经内存映射写入并 force 落盘后再重命名；读取时 magic、版本、长度或 CRC 不符的文件视为不存在。
+ */
+@Slf4j
+public final class CheckpointFile {
+    private static final int MAGIC = 0x50564350; // "PVCP"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 4 + 4 + 4 + 8;
+
+    private final Path path;
+    private final Path tempPath;
+
+    public CheckpointFile(Path path) {
+        this.path = path;
+        this.tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public void write(ValuationCheckpoint checkpoint) throws IOException {
+        byte[] payload = encode(checkpoint);
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + payload.length);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(payload.length).putLong(crc.getValue()).put(payload);
+            buffer.force();
+        }
+        Files.move(tempPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        syncDirectory(parent);
+    }
+
+    /**
+     * 读取检查点；文件不存在或不完整时返回 null
+     */
+    public ValuationCheckpoint read() throws IOException {
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(path);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        if (bytes.length < HEADER_BYTES) {
+            log.warn("检查点文件不完整，忽略：{}（{} 字节）", path, bytes.length);
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int magic = buffer.getInt();
+        int version = buffer.getInt();
+        int length = buffer.getInt();
+        long expectedCrc = buffer.getLong();
+        if (magic != MAGIC || version != VERSION || length != bytes.length - HEADER_BYTES) {
+            log.warn("检查点文件格式不符，忽略：{}", path);
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes, HEADER_BYTES, length);
+        if (crc.getValue() != expectedCrc) {
+            log.warn("检查点文件校验失败，忽略：{}", path);
+            return null;
+        }
+        return decode(new DataInputStream(new ByteArrayInputStream(bytes, HEADER_BYTES, length)));
+    }
+
+    private static byte[] encode(ValuationCheckpoint checkpoint) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(checkpoint.getUpdateCount());
+        out.writeLong(checkpoint.getTimestamp());
+        out.writeUTF(checkpoint.getTotalNav().toPlainString());
+        writePrices(out, checkpoint.getPrices());
+        writePrices(out, checkpoint.getStrategyState());
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static ValuationCheckpoint decode(DataInputStream in) throws IOException {
+        int updateCount = in.readInt();
+        long timestamp = in.readLong();
+        BigDecimal totalNav = new BigDecimal(in.readUTF());
+        Map<String, MarketData> prices = readPrices(in);
+        Map<String, MarketData> strategyState = readPrices(in);
+        return new ValuationCheckpoint(updateCount, timestamp, totalNav, prices, strategyState);
+    }
+
+    private static void writePrices(DataOutputStream out, Map<String, MarketData> prices) throws IOException {
+        out.writeInt(prices.size());
+        for (MarketData marketData : prices.values()) {
+            out.writeUTF(marketData.getTicker());
+            out.writeUTF(marketData.getPrice().toPlainString());
+            out.writeLong(marketData.getTimestamp());
+        }
+    }
+
+    private static Map<String, MarketData> readPrices(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        Map<String, MarketData> prices = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            String ticker = in.readUTF();
+            prices.put(ticker, new MarketData(ticker, new BigDecimal(in.readUTF()), in.readLong()));
+        }
+        return prices;
+    }
+
+    // 重命名本身也要落盘；不支持对目录 fsync 的平台（如 Windows）上跳过
+    private static void syncDirectory(Path directory) {
+        if (directory == null) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            log.debug("检查点目录无法 fsync：{}", directory, e);
+        }
+    }
+}
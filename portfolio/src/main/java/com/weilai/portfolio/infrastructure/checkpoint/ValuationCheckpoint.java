@@ -0,0 +1,51 @@
+package com.weilai.portfolio.infrastructure.checkpoint;
+
+import com.weilai.portfolio.entity.MarketData;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * 估值检查点：最近一次估值的序号、时间与 NAV，估值所用的各标的最新价格，以及定价策略的状态（各标的上一次生成的价格）
+ */
+public final class ValuationCheckpoint {
+    private final int updateCount;
+    private final long timestamp;
+    private final BigDecimal totalNav;
+    private final Map<String, MarketData> prices;
+    private final Map<String, MarketData> strategyState;
+
+    public ValuationCheckpoint(int updateCount, long timestamp, BigDecimal totalNav,
+                               Map<String, MarketData> prices, Map<String, MarketData> strategyState) {
+        this.updateCount = updateCount;
+        this.timestamp = timestamp;
+        this.totalNav = totalNav;
+        this.prices = Collections.unmodifiableMap(prices);
+        this.strategyState = Collections.unmodifiableMap(strategyState);
+    }
+
+    public ValuationCheckpoint withStrategyState(Map<String, MarketData> strategyState) {
+        return new ValuationCheckpoint(updateCount, timestamp, totalNav, prices, strategyState);
+    }
+
+    public int getUpdateCount() {
+        return updateCount;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public BigDecimal getTotalNav() {
+        return totalNav;
+    }
+
+    public Map<String, MarketData> getPrices() {
+        return prices;
+    }
+
+    public Map<String, MarketData> getStrategyState() {
+        return strategyState;
+    }
+}
@@ -1,11 +1,13 @@
 package com.weilai.portfolio.infrastructure.marketdata.strategy;
 
+import com.weilai.portfolio.entity.MarketData;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Random;
 
@@ -36,11 +38,15 @@ public class GBMPricingStrategy implements PricingStrategy {
 
     private static final int SCALE = 2;
     private static final RoundingMode ROUNDING_MODE = RoundingMode.HALF_UP;
-    private static final double YEAR_SECONDS = 7257600.0; // 附录指定的年秒数
+    public static final double YEAR_SECONDS = 7257600.0; // 附录指定的年秒数
+    // 年秒数即 252 个交易日 × 每日 8 小时；μ、σ 按此年化，行情时钟只计交易时间
+    public static final int TRADING_DAYS_PER_YEAR = 252;
+    public static final double TRADING_DAY_SECONDS = YEAR_SECONDS / TRADING_DAYS_PER_YEAR;
     private final Random random = new Random();
 
+    // 行情线程生成价格，检查点线程读取状态，两者经对象锁互斥
     @Override
-    public BigDecimal generatePrice(String ticker) {
+    public synchronized BigDecimal generatePrice(String ticker) {
         long currentTimestamp = System.currentTimeMillis();
         String upperTicker = ticker.toUpperCase();
 
@@ -89,10 +95,35 @@ public class GBMPricingStrategy implements PricingStrategy {
         return finalPrice;
     }
 
-    // 获取标的对应的μ（预期收益）
-    private double getMu(String ticker) {
+    /**
+     * 检查点：各标的上一次生成的价格与时间
+     */
+    public synchronized Map<String, MarketData> snapshotState() {
+        Map<String, MarketData> state = new LinkedHashMap<>();
+        for (Map.Entry<String, BigDecimal> entry : lastPriceMap.entrySet()) {
+            state.put(entry.getKey(), new MarketData(entry.getKey(), entry.getValue(),
+                    lastTimestampMap.get(entry.getKey())));
+        }
+        return state;
+    }
+
+    /**
+     * 从检查点恢复：价格从上一次生成的价格继续，不再回到初始价格；
+     * 时间记为恢复时刻，停机期间不计入 Δt，恢复后的第一步与平时的步长相同，下游看不到跳变
+     */
+    public synchronized void restoreState(Map<String, MarketData> state) {
+        long now = System.currentTimeMillis();
+        for (MarketData marketData : state.values()) {
+            String ticker = marketData.getTicker().toUpperCase();
+            lastPriceMap.put(ticker, marketData.getPrice().setScale(SCALE, ROUNDING_MODE));
+            lastTimestampMap.put(ticker, now);
+        }
+    }
+
+    // 获取标的对应的μ（预期收益），也供 Monte Carlo VaR 模拟使用
+    public double getMu(String ticker) {
         // 降级后：传统switch语句
-        switch (ticker) {
+        switch (ticker.toUpperCase()) {
             case "AAPL":
                 return muAAPL;
             case "TELSA":
@@ -102,9 +133,9 @@ public class GBMPricingStrategy implements PricingStrategy {
         }
     }
 
-    // 获取标的对应的σ（波动率）
-    private double getSigma(String ticker) {
-        switch (ticker) {
+    // 获取标的对应的σ（波动率），也供 Monte Carlo VaR 模拟使用
+    public double getSigma(String ticker) {
+        switch (ticker.toUpperCase()) {
             case "AAPL":
                 return sigmaAAPL;
             case "TELSA":
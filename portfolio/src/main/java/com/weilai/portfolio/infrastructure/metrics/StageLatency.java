@@ -0,0 +1,60 @@
+package com.weilai.portfolio.infrastructure.metrics;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单个流水线阶段的延迟直方图（HdrHistogram Recorder：写入端无锁，只有读取端加锁）
+ */
+public class StageLatency {
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(10);
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    private final String name;
+    private final Recorder recorder = new Recorder(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS);
+    // 读取端：累计直方图 + 可回收的区间直方图，避免每次读取都分配
+    private final Histogram accumulated = new Histogram(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS);
+    private Histogram interval;
+
+    public StageLatency(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void recordNanos(long nanos) {
+        recordMicros(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    public void recordMillis(long millis) {
+        recordMicros(TimeUnit.MILLISECONDS.toMicros(millis));
+    }
+
+    public void recordMicros(long micros) {
+        // 超出量程的值截断，保证热路径上不抛异常
+        recorder.recordValue(Math.min(Math.max(micros, 0L), HIGHEST_TRACKABLE_MICROS));
+    }
+
+    public synchronized StageLatencySnapshot snapshot() {
+        interval = recorder.getIntervalHistogram(interval);
+        accumulated.add(interval);
+        return new StageLatencySnapshot(
+                accumulated.getTotalCount(),
+                accumulated.getMean(),
+                accumulated.getValueAtPercentile(50.0),
+                accumulated.getValueAtPercentile(90.0),
+                accumulated.getValueAtPercentile(99.0),
+                accumulated.getValueAtPercentile(99.9),
+                accumulated.getMaxValue()
+        );
+    }
+
+    public synchronized void reset() {
+        recorder.reset();
+        accumulated.reset();
+    }
+}
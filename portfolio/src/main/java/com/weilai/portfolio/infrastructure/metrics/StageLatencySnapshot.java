@@ -0,0 +1,19 @@
+package com.weilai.portfolio.infrastructure.metrics;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 阶段延迟统计快照（单位：微秒）
+ */
+@Data
+@AllArgsConstructor
+public class StageLatencySnapshot {
+    private long count;
+    private double meanMicros;
+    private long p50Micros;
+    private long p90Micros;
+    private long p99Micros;
+    private long p999Micros;
+    private long maxMicros;
+}
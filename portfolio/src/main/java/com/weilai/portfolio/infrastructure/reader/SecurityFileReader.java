@@ -0,0 +1,134 @@
+package com.weilai.portfolio.infrastructure.reader;
+
+import com.weilai.portfolio.entity.ExerciseStyle;
+import com.weilai.portfolio.entity.Security;
+import com.weilai.portfolio.entity.SecurityType;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * 证券主数据文件读取器（CSV：ticker,securityType,strikePrice,maturityDate,underlyingTicker,exerciseStyle，首行为表头）
+ * <p>
+ * 逐行按需读取：下游请求多少行才解析多少行，整个文件不会读入内存。股票的行权价、到期日与行权方式留空。
+ * 期权链中大量合约共用同一标的、到期日与行权价，这些字段按值复用同一个对象，减少解析与常驻内存。
+ */
+@Component
+@Slf4j
+public class SecurityFileReader {
+    private static final int COLUMNS = 6;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int MAX_SHARED_VALUES = 1 << 16; // 每种复用字段最多缓存的不同取值
+
+    private final ResourceLoader resourceLoader;
+
+    public SecurityFileReader(ResourceLoader resourceLoader) {
+        this.resourceLoader = resourceLoader;
+    }
+
+    public Flux<Security> readSecurities(String location) {
+        return Flux.using(
+                () -> new BufferedReader(new InputStreamReader(
+                        resourceLoader.getResource(location).getInputStream(), StandardCharsets.UTF_8), BUFFER_SIZE),
+                reader -> Flux.defer(() -> {
+                    LineParser parser = new LineParser(location);
+                    return Flux.fromStream(reader.lines())
+                            .<Security>handle((line, sink) -> {
+                                Security security = parser.parse(line);
+                                if (security != null) {
+                                    sink.next(security);
+                                }
+                            });
+                }),
+                reader -> {
+                    try {
+                        reader.close();
+                    } catch (IOException e) {
+                        log.error("关闭证券主数据文件失败，路径：{}", location, e);
+                    }
+                });
+    }
+
+    // 每次订阅一个解析器，复用字段的缓存随订阅结束释放
+    private static final class LineParser {
+        private final String location;
+        private final String[] fields = new String[COLUMNS];
+        private final Map<String, String> underlyings = new HashMap<>();
+        private final Map<String, BigDecimal> strikes = new HashMap<>();
+        private final Map<String, LocalDate> maturities = new HashMap<>();
+        private long lineNumber;
+
+        LineParser(String location) {
+            this.location = location;
+        }
+
+        Security parse(String line) {
+            lineNumber++;
+            if (lineNumber == 1 || line.isEmpty()) {
+                return null; // 跳过表头与空行
+            }
+            if (!split(line)) {
+                log.warn("跳过无效证券行（第 {} 行）：{}", lineNumber, line);
+                return null;
+            }
+            try {
+                SecurityType type = SecurityType.valueOf(fields[1]);
+                return new Security(null, fields[0], type,
+                        shared(strikes, fields[2], BigDecimal::new),
+                        shared(maturities, fields[3], LocalDate::parse),
+                        shared(underlyings, fields[4], Function.identity()),
+                        fields[5] == null ? null : ExerciseStyle.valueOf(fields[5]));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException(
+                        "证券主数据格式错误：" + location + " 第 " + lineNumber + " 行：" + line, e);
+            }
+        }
+
+        // 按逗号切分到 fields（空字段为 null），列数不符时返回 false
+        private boolean split(String line) {
+            int column = 0;
+            int start = 0;
+            while (column < COLUMNS) {
+                int end = line.indexOf(',', start);
+                if (end < 0) {
+                    end = line.length();
+                } else if (column == COLUMNS - 1) {
+                    return false;
+                }
+                String field = line.substring(start, end).trim();
+                fields[column++] = field.isEmpty() ? null : field;
+                if (end == line.length()) {
+                    break;
+                }
+                start = end + 1;
+            }
+            return column == COLUMNS && fields[0] != null && fields[1] != null;
+        }
+
+        private static <T> T shared(Map<String, T> values, String text, Function<String, T> parser) {
+            if (text == null) {
+                return null;
+            }
+            T value = values.get(text);
+            if (value == null) {
+                if (values.size() >= MAX_SHARED_VALUES) {
+                    values.clear();
+                }
+                value = parser.apply(text);
+                values.put(text, value);
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.weilai.portfolio.infrastructure.sharding;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 一致性哈希环（murmur3_32）：每个节点在环上有 virtualNodes 个虚拟节点，键归属于顺时针方向的第一个虚拟节点
+ * <p>
+ * 只依赖节点名，不依赖节点顺序；增减一个节点时只有约 1/N 的键改变归属。构造后不可变，可多线程共享。
+ */
+public final class ConsistentHashRing {
+    private static final HashFunction HASH = Hashing.murmur3_32();
+
+    private final List<String> nodes;
+    private final int[] points;        // 虚拟节点的哈希值（升序）
+    private final String[] pointNodes; // 与 points 下标一致的节点
+
+    public ConsistentHashRing(Collection<String> nodes, int virtualNodes) {
+        if (virtualNodes <= 0) {
+            throw new IllegalArgumentException("虚拟节点数必须大于0：" + virtualNodes);
+        }
+        Set<String> distinct = new LinkedHashSet<>(nodes);
+        if (distinct.isEmpty() || distinct.size() != nodes.size() || distinct.contains("")) {
+            throw new IllegalArgumentException("分片节点不能为空或重复：" + nodes);
+        }
+        this.nodes = new ArrayList<>(distinct);
+
+        int count = distinct.size() * virtualNodes;
+        long[] sorted = new long[count]; // 高 32 位为哈希值，低 32 位为节点下标，排序后哈希相同的虚拟节点顺序也确定
+        int n = 0;
+        for (int node = 0; node < this.nodes.size(); node++) {
+            for (int replica = 0; replica < virtualNodes; replica++) {
+                int hash = hash(this.nodes.get(node) + "#" + replica);
+                sorted[n++] = ((long) hash << 32) | node;
+            }
+        }
+        Arrays.sort(sorted);
+        this.points = new int[count];
+        this.pointNodes = new String[count];
+        for (int i = 0; i < count; i++) {
+            points[i] = (int) (sorted[i] >> 32);
+            pointNodes[i] = this.nodes.get((int) sorted[i]);
+        }
+    }
+
+    public List<String> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * 键所属的节点
+     */
+    public String nodeFor(String key) {
+        int index = Arrays.binarySearch(points, hash(key));
+        if (index < 0) {
+            index = -index - 1;
+            if (index == points.length) {
+                index = 0; // 越过最大值后回到环的起点
+            }
+        }
+        return pointNodes[index];
+    }
+
+    private static int hash(String key) {
+        return HASH.hashString(key, StandardCharsets.UTF_8).asInt();
+    }
+}
@@ -0,0 +1,93 @@
+package com.weilai.portfolio.infrastructure.sharding;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 本实例的分片：多个 portfolio 实例读取同一份持仓 CSV，按标的在一致性哈希环上划分，每个实例只估值自己的标的
+ * （期权随其标的）并在消息中带上分片标识，无需手工拆分持仓文件。
+ * <p>
+ * 分片成员来自静态配置 portfolio.shard.nodes（逗号分隔），或本机的协调文件 portfolio.shard.nodes-file
+ * （每行一个节点，# 开头为注释；配置后优先于 nodes），在启动时读取。
+ * portfolio.shard.node-id 为空时不分片，本实例拥有全部标的。
+ */
+@Component
+@Slf4j
+public class ShardAssignment {
+    private final String shardId;           // 不分片时为空串
+    private final ConsistentHashRing ring;  // 不分片时为 null
+
+    public ShardAssignment(@Value("${portfolio.shard.node-id:}") String nodeId,
+                           @Value("${portfolio.shard.nodes:}") String nodes,
+                           @Value("${portfolio.shard.nodes-file:}") String nodesFile,
+                           @Value("${portfolio.shard.virtual-nodes:128}") int virtualNodes) {
+        this.shardId = nodeId.trim();
+        if (shardId.isEmpty()) {
+            this.ring = null;
+            return;
+        }
+        List<String> members = nodesFile.trim().isEmpty() ? parseNodes(nodes) : readNodesFile(nodesFile.trim());
+        if (!members.contains(shardId)) {
+            throw new IllegalArgumentException("portfolio.shard.node-id 不在分片节点中：" + shardId + "，节点：" + members);
+        }
+        this.ring = new ConsistentHashRing(members, virtualNodes);
+        log.info("Shard [{}] of {} nodes {}", shardId, members.size(), members);
+    }
+
+    public boolean isEnabled() {
+        return ring != null;
+    }
+
+    public String getShardId() {
+        return shardId;
+    }
+
+    /**
+     * 标的是否归本实例估值（不分片时总是 true）
+     */
+    public boolean owns(String underlying) {
+        return ring == null || shardId.equals(ring.nodeFor(underlying));
+    }
+
+    /**
+     * 本实例的发送源标识：分片时每个分片是独立的发送源（接收端按发送源分别排序），为 源标识/分片
+     */
+    public String sourceId(String baseSourceId) {
+        return ring == null ? baseSourceId : baseSourceId + "/" + shardId;
+    }
+
+    private static List<String> parseNodes(String nodes) {
+        List<String> members = new ArrayList<>();
+        for (String node : nodes.split(",")) {
+            if (!node.trim().isEmpty()) {
+                members.add(node.trim());
+            }
+        }
+        return members;
+    }
+
+    private static List<String> readNodesFile(String file) {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(Paths.get(file), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("无法读取分片协调文件：" + file, e);
+        }
+        List<String> members = new ArrayList<>();
+        for (String line : lines) {
+            String node = line.trim();
+            if (!node.isEmpty() && !node.startsWith("#")) {
+                members.add(node);
+            }
+        }
+        return members;
+    }
+}
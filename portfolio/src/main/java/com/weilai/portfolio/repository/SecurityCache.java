@@ -0,0 +1,32 @@
+package com.weilai.portfolio.repository;
+
+import com.weilai.portfolio.entity.Security;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 内存中的证券参考数据（按 ticker），由 SecurityMasterLoader 直接写入、不经数据库；
+ * 估值时优先于 security 表查询，同一 ticker 以这里为准
+ */
+@Component
+public class SecurityCache {
+    private final Map<String, Security> securities = new ConcurrentHashMap<>();
+
+    public Security get(String ticker) {
+        return securities.get(ticker);
+    }
+
+    public void put(Security security) {
+        securities.put(security.getTicker(), security);
+    }
+
+    public int size() {
+        return securities.size();
+    }
+
+    public void clear() {
+        securities.clear();
+    }
+}
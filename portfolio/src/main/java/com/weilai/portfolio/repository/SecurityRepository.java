@@ -3,10 +3,16 @@ package com.weilai.portfolio.repository;
 import com.weilai.portfolio.entity.Security;
 import org.springframework.data.r2dbc.repository.R2dbcRepository;
 import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.Collection;
+
 @Repository
 public interface SecurityRepository extends R2dbcRepository<Security, Long> {
     // 按标的代码查询证券（返回Mono<Security>，适配响应式）
     Mono<Security> findByTicker(String ticker);
+
+    // 按一批标的代码查询证券（IN 查询），只取持仓引用到的证券
+    Flux<Security> findByTickerIn(Collection<String> tickers);
 }
\ No newline at end of file
@@ -0,0 +1,204 @@
+package com.weilai.portfolio.service;
+
+import com.weilai.portfolio.entity.SecurityType;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * 美式期权定价（标的不派息）
+ * <p>
+ * - 看涨：不派息时提前行权不会更优，与欧式相同，直接用 Black-Scholes
+ * - 看跌：BAW（Barone-Adesi-Whaley 二次近似，默认）或 BINOMIAL（Cox-Ross-Rubinstein 二叉树，精确模式）
+ * <p>
+ * 与现价无关的量按 (T, r, σ) 缓存，在 tick 之间复用：BAW 的临界价格与行权价成正比，缓存的是临界价格 / 行权价；
+ * 二叉树缓存各节点相对现价的乘数与贴现后的上下行概率，每个 tick 只做一次倒推。
+ * 取整规则与 BlackScholesPricingService.calculate 相同。
+ */
+@Service
+public class AmericanOptionPricingService {
+    private static final int MAX_BOUNDARY_ITERATIONS = 100;
+    private static final double BOUNDARY_TOLERANCE = 1e-9;
+    private static final double INV_SQRT_2PI = 1.0 / Math.sqrt(2 * Math.PI);
+
+    public enum Model {
+        BAW, BINOMIAL
+    }
+
+    private final Model model;
+    private final int binomialSteps;
+    private final int cacheSize;
+    private final Map<Key, ExerciseBoundary> boundaries = new ConcurrentHashMap<>();
+    private final Map<Key, BinomialLattice> lattices = new ConcurrentHashMap<>();
+
+    public AmericanOptionPricingService(@Value("${portfolio.option.american.model:BAW}") Model model,
+                                        @Value("${portfolio.option.american.binomial-steps:200}") int binomialSteps,
+                                        @Value("${portfolio.option.american.cache-size:4096}") int cacheSize) {
+        if (binomialSteps <= 0) {
+            throw new IllegalArgumentException("portfolio.option.american.binomial-steps 必须大于0：" + binomialSteps);
+        }
+        if (cacheSize <= 0) {
+            throw new IllegalArgumentException("portfolio.option.american.cache-size 必须大于0：" + cacheSize);
+        }
+        this.model = model;
+        this.binomialSteps = binomialSteps;
+        this.cacheSize = cacheSize;
+    }
+
+    public Model getModel() {
+        return model;
+    }
+
+    /**
+     * 美式期权价格（参数与返回值同 BlackScholesPricingService.calculate）
+     */
+    public BigDecimal calculate(
+            SecurityType securityType,
+            BigDecimal underlyingPrice,
+            BigDecimal strikePrice,
+            double timeToMaturity,
+            double riskFreeRate,
+            double volatility
+    ) {
+        if (underlyingPrice.compareTo(BigDecimal.ZERO) <= 0
+                || strikePrice.compareTo(BigDecimal.ZERO) <= 0
+                || timeToMaturity <= 0) {
+            return BigDecimal.ZERO;
+        }
+        return BlackScholesPricingService.roundPrice(theoreticalPrice(securityType, underlyingPrice.doubleValue(),
+                strikePrice.doubleValue(), timeToMaturity, riskFreeRate, volatility));
+    }
+
+    /**
+     * 美式期权理论价格（未取整），使用配置的模型；S、K、T 须大于 0
+     */
+    public double theoreticalPrice(SecurityType securityType, double S, double K, double T, double r, double sigma) {
+        return theoreticalPrice(model, securityType, S, K, T, r, sigma);
+    }
+
+    public double theoreticalPrice(Model model, SecurityType securityType, double S, double K, double T,
+                                   double r, double sigma) {
+        double sqrtT = Math.sqrt(T);
+        double discountedStrike = K * Math.exp(-r * T);
+        double european = BlackScholesPricingService.theoreticalPrice(securityType, S, Math.log(S / K), T, sqrtT,
+                discountedStrike, r, sigma);
+        // 看涨不提前行权；r <= 0 或 σ <= 0 时看跌也没有提前行权的溢价
+        if (securityType != SecurityType.PUT || r <= 0 || sigma <= 0) {
+            return european;
+        }
+        if (model == Model.BINOMIAL) {
+            BinomialLattice lattice = cached(lattices, new Key(T, r, sigma),
+                    key -> new BinomialLattice(T, r, sigma, binomialSteps));
+            if (lattice.isValid()) {
+                return lattice.put(S, K);
+            }
+            // 步长过大时风险中性概率越界，改用 BAW
+        }
+        ExerciseBoundary boundary = cached(boundaries, new Key(T, r, sigma),
+                key -> new ExerciseBoundary(T, r, sigma));
+        double moneyness = S / K;
+        if (moneyness <= boundary.criticalRatio) {
+            return K - S; // 临界价格以下立即行权
+        }
+        double premium = K * boundary.scale * Math.pow(moneyness / boundary.criticalRatio, boundary.q1);
+        return Math.max(european + premium, K - S);
+    }
+
+    int cachedConstants() {
+        return boundaries.size() + lattices.size();
+    }
+
+    // 超过上限时整体清空（到期日逐日推移，旧的键不会再用到）
+    private <V> V cached(Map<Key, V> cache, Key key, Function<Key, V> factory) {
+        V value = cache.get(key);
+        if (value != null) {
+            return value;
+        }
+        if (cache.size() >= cacheSize) {
+            cache.clear();
+        }
+        return cache.computeIfAbsent(key, factory);
+    }
+
+    /**
+     * BAW 看跌的提前行权边界（行权价归一化为 1）：临界价格比 S* / K、指数 q1 与溢价系数 A1/K
+     * 临界价格由 Newton 迭代求解 1 - S* = p(S*) - (1 - N(-d1(S*)))·S* / q1（Haug 的初值与迭代格式）
+     */
+    private static final class ExerciseBoundary {
+        final double criticalRatio;
+        final double q1;
+        final double scale;
+
+        ExerciseBoundary(double T, double r, double sigma) {
+            double sqrtT = Math.sqrt(T);
+            double volSqrtT = sigma * sqrtT;
+            double discount = Math.exp(-r * T);
+            double m = 2 * r / (sigma * sigma); // 不派息：持有成本 b = r，N = M
+            double n = m;
+            double k = 1 - discount;
+            q1 = (-(n - 1) - Math.sqrt((n - 1) * (n - 1) + 4 * m / k)) / 2;
+
+            // 初值：T → ∞ 的临界价格与 T → 0 的行权价之间插值
+            double q1Infinite = (-(n - 1) - Math.sqrt((n - 1) * (n - 1) + 4 * m)) / 2;
+            double infinite = 1 / (1 - 1 / q1Infinite);
+            double h1 = (r * T - 2 * volSqrtT) / (1 - infinite);
+            double si = infinite + (1 - infinite) * Math.exp(h1);
+
+            double d1 = d1(si, T, r, sigma, volSqrtT);
+            for (int iteration = 0; iteration < MAX_BOUNDARY_ITERATIONS; iteration++) {
+                double cdf = BlackScholesPricingService.normalCdf(-d1);
+                double rhs = put(si, T, sqrtT, discount, r, sigma) - (1 - cdf) * si / q1;
+                if (Math.abs((1 - si) - rhs) <= BOUNDARY_TOLERANCE) {
+                    break;
+                }
+                double slope = -cdf * (1 - 1 / q1) - (1 + Math.exp(-0.5 * d1 * d1) * INV_SQRT_2PI / volSqrtT) / q1;
+                si = (1 - rhs + slope * si) / (1 + slope);
+                d1 = d1(si, T, r, sigma, volSqrtT);
+            }
+            criticalRatio = si;
+            scale = -(si / q1) * (1 - BlackScholesPricingService.normalCdf(-d1));
+        }
+
+        private static double d1(double s, double T, double r, double sigma, double volSqrtT) {
+            return (Math.log(s) + (r + 0.5 * sigma * sigma) * T) / volSqrtT;
+        }
+
+        private static double put(double s, double T, double sqrtT, double discount, double r, double sigma) {
+            return BlackScholesPricingService.theoreticalPrice(SecurityType.PUT, s, Math.log(s), T, sqrtT,
+                    discount, r, sigma);
+        }
+    }
+
+    private static final class Key {
+        private final double years;
+        private final double rate;
+        private final double sigma;
+
+        private Key(double years, double rate, double sigma) {
+            this.years = years;
+            this.rate = rate;
+            this.sigma = sigma;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return Double.compare(years, other.years) == 0 && Double.compare(rate, other.rate) == 0
+                    && Double.compare(sigma, other.sigma) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = Double.hashCode(years);
+            hash = 31 * hash + Double.hashCode(rate);
+            return 31 * hash + Double.hashCode(sigma);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.weilai.portfolio.service;
+
+/**
+ * Cox-Ross-Rubinstein 二叉树（美式看跌）：与现价、行权价无关的量构造时算好，定价时只做一次倒推
+ * <p>
+ * 第 i 步第 j 个节点（j 次上行）的标的价格为 S·u^(2j-i)，乘数预先存入 multipliers[2j-i+steps]；
+ * 每一步的继续持有价值为 pu·V(j+1) + pd·V(j)（pu、pd 已含单步贴现）。
+ */
+final class BinomialLattice {
+    private final int steps;
+    private final double up;          // 贴现后的上行概率
+    private final double down;        // 贴现后的下行概率
+    private final double[] multipliers;
+    private final boolean valid;
+
+    BinomialLattice(double T, double r, double sigma, int steps) {
+        this.steps = steps;
+        double dt = T / steps;
+        double u = Math.exp(sigma * Math.sqrt(dt));
+        double d = 1 / u;
+        double growth = Math.exp(r * dt);
+        double p = (growth - d) / (u - d);
+        double discount = 1 / growth;
+        this.valid = p > 0 && p < 1;
+        this.up = discount * p;
+        this.down = discount * (1 - p);
+        this.multipliers = new double[2 * steps + 1];
+        multipliers[steps] = 1.0;
+        for (int k = 1; k <= steps; k++) {
+            multipliers[steps + k] = multipliers[steps + k - 1] * u;
+            multipliers[steps - k] = multipliers[steps - k + 1] * d;
+        }
+    }
+
+    // 风险中性概率越界（u·d 区间没有夹住单步增长率）时不可用
+    boolean isValid() {
+        return valid;
+    }
+
+    double put(double S, double K) {
+        double[] values = new double[steps + 1];
+        for (int j = 0; j <= steps; j++) {
+            values[j] = Math.max(K - S * multipliers[2 * j], 0.0);
+        }
+        for (int i = steps - 1; i >= 0; i--) {
+            int offset = steps - i;
+            for (int j = 0; j <= i; j++) {
+                double hold = up * values[j + 1] + down * values[j];
+                double exercise = K - S * multipliers[2 * j + offset];
+                values[j] = Math.max(hold, exercise);
+            }
+        }
+        return values[0];
+    }
+}
@@ -7,6 +7,8 @@ import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
 
 @Service
 public class BlackScholesPricingService {
@@ -20,6 +22,9 @@ public class BlackScholesPricingService {
 
     private static final int SCALE = 4;
     private static final RoundingMode ROUNDING_MODE = RoundingMode.HALF_UP;
+    private static final double UNITS = Math.pow(10, SCALE);
+    // 超过该量级时 double 乘法的误差可能影响进位，改走 BigDecimal
+    private static final double FAST_ROUNDING_LIMIT = 1e9;
 
     public BigDecimal calculate(
             SecurityType securityType,
@@ -41,31 +46,102 @@ public class BlackScholesPricingService {
         double r = riskFreeRate;
         double sigma = volatility;
 
-        double d1 = calculateD1(S, K, T, r, sigma);
-        double d2 = d1 - sigma * Math.sqrt(T);
+        double price = theoreticalPrice(securityType, S, Math.log(S / K), T, Math.sqrt(T), K * Math.exp(-r * T), r, sigma);
+        return roundPrice(price);
+    }
 
-        double nd1 = normalCdf(d1);
-        double nd2 = normalCdf(d2);
+    /**
+     * Black-Scholes 理论价格（未取整）：ln(S/K)、√T 与 K·e^(-rT) 由调用方预先算好，可在多个情景之间共享，
+     * 计算顺序与 calculate 相同，相同输入下结果逐位一致
+     */
+    static double theoreticalPrice(SecurityType securityType, double S, double logMoneyness, double T,
+                                   double sqrtT, double discountedStrike, double r, double sigma) {
+        double numerator = logMoneyness + (r + 0.5 * sigma * sigma) * T;
+        double denominator = sigma * sqrtT;
+        double d1 = denominator == 0 ? 0 : numerator / denominator;
+        double d2 = d1 - sigma * sqrtT;
 
-        BigDecimal optionPrice;
         if (securityType == SecurityType.CALL) {
-            double callPrice = S * nd1 - K * Math.exp(-r * T) * nd2;
-            optionPrice = BigDecimal.valueOf(callPrice).setScale(SCALE, ROUNDING_MODE);
-        } else {
-            double putPrice = K * Math.exp(-r * T) * normalCdf(-d2) - S * normalCdf(-d1);
-            optionPrice = BigDecimal.valueOf(putPrice).setScale(SCALE, ROUNDING_MODE);
+            return S * normalCdf(d1) - discountedStrike * normalCdf(d2);
         }
+        return discountedStrike * normalCdf(-d2) - S * normalCdf(-d1);
+    }
+
+    /**
+     * 理论价格按 calculate 的规则取整后的定点 long（SCALE 位小数，HALF_UP，负数取 0）
+     * 远离进位边界时直接在 double 上取整；接近边界或数值过大时经 BigDecimal，保证与 calculate 一致
+     */
+    static long priceUnits(double price) {
+        double scaled = price * UNITS;
+        if (Math.abs(scaled) < FAST_ROUNDING_LIMIT && Math.abs(scaled - Math.floor(scaled) - 0.5) > 1e-6) {
+            return Math.max(0L, Math.round(scaled));
+        }
+        return roundPrice(price).setScale(SCALE).unscaledValue().longValueExact();
+    }
 
+    static BigDecimal roundPrice(double price) {
+        BigDecimal optionPrice = BigDecimal.valueOf(price).setScale(SCALE, ROUNDING_MODE);
         return optionPrice.compareTo(BigDecimal.ZERO) < 0 ? BigDecimal.ZERO : optionPrice;
     }
 
+    /**
+     * 每单位期权的希腊值：delta、gamma（标的每变动 1 时 delta 的变化）、vega（波动率每变动 1 个百分点时的价格变化）
+     * 与 calculate 使用相同的 d1 与正态分布近似；参数无效（calculate 返回 0 的情形）时全为 0
+     */
+    public OptionGreeks greeks(
+            SecurityType securityType,
+            double underlyingPrice,
+            double strikePrice,
+            double timeToMaturity,
+            double riskFreeRate,
+            double volatility
+    ) {
+        if (underlyingPrice <= 0 || strikePrice <= 0 || timeToMaturity <= 0 || volatility <= 0) {
+            return OptionGreeks.ZERO;
+        }
+        double sqrtT = Math.sqrt(timeToMaturity);
+        double d1 = calculateD1(underlyingPrice, strikePrice, timeToMaturity, riskFreeRate, volatility);
+        double pdf = Math.exp(-0.5 * d1 * d1) / Math.sqrt(2 * Math.PI);
+
+        double delta = securityType == SecurityType.CALL ? normalCdf(d1) : normalCdf(d1) - 1.0;
+        double gamma = pdf / (underlyingPrice * volatility * sqrtT);
+        double vega = underlyingPrice * pdf * sqrtT / 100.0;
+        return new OptionGreeks(delta, gamma, vega);
+    }
+
+    // 获取标的股票的σ（与GBM策略中的σ保持一致）
+    public double getUnderlyingSigma(String underlyingTicker) {
+        // 此处应与GBMPricingStrategy中的σ逻辑一致，可通过配置中心或数据库统一管理
+        String ticker = underlyingTicker.toUpperCase();
+        double sigma;
+        switch (ticker) {
+            case "AAPL":
+                sigma = 0.2; // 需与GBM的sigmaAAPL保持一致
+                break;
+            case "TELSA":
+                sigma = 0.3; // 需与GBM的sigmaTELSA保持一致
+                break;
+            default:
+                sigma = 0.2;
+                break;
+        }
+        return sigma;
+    }
+
+    // 距到期的年数（按自然日计算，至少 0.0001）
+    public double timeToMaturity(LocalDate maturityDate, LocalDate valuationDate) {
+        if (maturityDate == null) return 0.0001;
+        long days = ChronoUnit.DAYS.between(valuationDate, maturityDate);
+        return Math.max(0.0001, days / 365.0);
+    }
+
     private double calculateD1(double S, double K, double T, double r, double sigma) {
         double numerator = Math.log(S / K) + (r + 0.5 * sigma * sigma) * T;
         double denominator = sigma * Math.sqrt(T);
         return denominator == 0 ? 0 : numerator / denominator;
     }
 
-    private double normalCdf(double x) {
+    static double normalCdf(double x) {
         boolean isNegative = x < 0;
         double absX = Math.abs(x);
 
@@ -0,0 +1,26 @@
+package com.weilai.portfolio.service;
+
+import com.google.protobuf.Message;
+
+/**
+ * 编码阶段的产出：估值快照及其线上消息（行式 PortfolioValuationMessage 或列式 PortfolioValuationBatch）
+ * <p>
+ * 发送阶段按消息类型选择 RPC；快照保留到发送完成，供接收端要求关键帧时重新编码。
+ */
+public final class EncodedValuation {
+    private final ValuationSnapshot snapshot;
+    private final Message message;
+
+    public EncodedValuation(ValuationSnapshot snapshot, Message message) {
+        this.snapshot = snapshot;
+        this.message = message;
+    }
+
+    public ValuationSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+}
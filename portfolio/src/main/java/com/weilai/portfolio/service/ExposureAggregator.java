@@ -0,0 +1,275 @@
+package com.weilai.portfolio.service;
+
+import com.weilai.portfolio.entity.ExerciseStyle;
+import com.weilai.portfolio.entity.MarketData;
+import com.weilai.portfolio.entity.Position;
+import com.weilai.portfolio.entity.Security;
+import com.weilai.portfolio.entity.SecurityType;
+import com.weilai.portfolio.infrastructure.metrics.PipelineMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按标的汇总的实时风险：净股数、delta 股数、delta 金额、gamma、vega（期权按 Security.underlyingTicker 归类，股票归入自身）
+ * <p>
+ * 增量维护：每个持仓的贡献以定点 long（SCALE 位小数）保存，某个标的价格变化时只重算挂在该标的下的持仓，
+ * 按新旧贡献之差更新该标的的汇总；持仓数量变化时只重算该持仓。整数差分与全量重算逐位一致，不会漂移。
+ * 到期时间按自然日计算，估值日期变化时全量重算一次。美式期权的希腊值同样按 Black-Scholes 计算（不含提前行权溢价的影响）。
+ * <p>
+ * 写入（load / update / updateQuantity）互斥执行；查询读取最近一次发布的不可变结果。
+ */
+@Slf4j
+@Component
+public class ExposureAggregator {
+    public static final int SCALE = UnderlyingExposure.SCALE;
+    private static final double UNITS = Math.pow(10, SCALE);
+    private static final long UNITS_PER_SHARE = (long) UNITS;
+
+    private final BlackScholesPricingService optionPricingService;
+    private final int contractMultiplier;
+    private final LongAdder revaluedCounter;
+
+    // 各持仓（下标与持仓、快照行一致）
+    private int[] underlyingOf = new int[0]; // 所属标的下标，证券表中不存在的持仓为 -1
+    private SecurityType[] types;
+    private ExerciseStyle[] styles;
+    private double[] strikes;
+    private LocalDate[] maturities;
+    private double[] yearsToMaturity;         // 按 valuationDate 计算
+    private long[] quantities;
+    private long[] deltaShares;
+    private long[] deltaDollars;
+    private long[] gammas;
+    private long[] vegas;
+
+    // 各标的（按代码排序）
+    private String[] underlyings = new String[0];
+    private int[][] positionsByUnderlying;
+    private BigDecimal[] lastPrices;          // 上次重算时的标的价格，尚无行情为 null
+    private long[] netSharesTotal;
+    private long[] deltaSharesTotal;
+    private long[] deltaDollarsTotal;
+    private long[] gammaTotal;
+    private long[] vegaTotal;
+
+    private LocalDate valuationDate;
+    private volatile Map<String, UnderlyingExposure> published = Collections.emptyMap();
+
+    public ExposureAggregator(BlackScholesPricingService optionPricingService,
+                              @Value("${portfolio.option.contract-multiplier:1}") int contractMultiplier,
+                              PipelineMetrics pipelineMetrics) {
+        this.optionPricingService = optionPricingService;
+        this.contractMultiplier = contractMultiplier;
+        this.revaluedCounter = pipelineMetrics.counter("exposure-positions-revalued");
+    }
+
+    /**
+     * 载入持仓簿（启动时调用一次）；此后各标的在收到第一笔价格时计算
+     */
+    synchronized void load(Position[] positions, ResolvedBook book) {
+        Map<String, List<Integer>> byUnderlying = new TreeMap<>();
+        String[] underlyingTickers = new String[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            Security security = book.securityAt(i);
+            if (security != null) {
+                underlyingTickers[i] = security.getSecurityType() == SecurityType.STOCK
+                        ? security.getTicker() : security.getUnderlyingTicker();
+            }
+            if (underlyingTickers[i] != null) {
+                byUnderlying.computeIfAbsent(underlyingTickers[i], key -> new ArrayList<>()).add(i);
+            }
+        }
+
+        int count = byUnderlying.size();
+        underlyings = byUnderlying.keySet().toArray(new String[0]);
+        positionsByUnderlying = new int[count][];
+        lastPrices = new BigDecimal[count];
+        netSharesTotal = new long[count];
+        deltaSharesTotal = new long[count];
+        deltaDollarsTotal = new long[count];
+        gammaTotal = new long[count];
+        vegaTotal = new long[count];
+
+        int n = positions.length;
+        underlyingOf = new int[n];
+        types = new SecurityType[n];
+        styles = new ExerciseStyle[n];
+        strikes = new double[n];
+        maturities = new LocalDate[n];
+        yearsToMaturity = new double[n];
+        quantities = new long[n];
+        deltaShares = new long[n];
+        deltaDollars = new long[n];
+        gammas = new long[n];
+        vegas = new long[n];
+        Arrays.fill(underlyingOf, -1);
+
+        int u = 0;
+        for (List<Integer> members : byUnderlying.values()) {
+            positionsByUnderlying[u] = new int[members.size()];
+            for (int k = 0; k < members.size(); k++) {
+                int i = members.get(k);
+                Security security = book.securityAt(i);
+                underlyingOf[i] = u;
+                types[i] = security.getSecurityType();
+                styles[i] = security.getExerciseStyle() == null ? ExerciseStyle.EUROPEAN : security.getExerciseStyle();
+                strikes[i] = security.getStrikePrice() == null ? 0.0 : security.getStrikePrice().doubleValue();
+                maturities[i] = security.getMaturityDate();
+                quantities[i] = positions[i].getQuantity();
+                if (types[i] == SecurityType.STOCK) {
+                    netSharesTotal[u] += quantities[i];
+                }
+                positionsByUnderlying[u][k] = i;
+            }
+            u++;
+        }
+        valuationDate = null;
+        publish();
+        log.info("Exposure rollups: {} underlyings over {} positions", count, n);
+    }
+
+    /**
+     * 按最新价格更新：只重算价格有变化的标的下的持仓，返回更新后的全部标的汇总
+     */
+    synchronized Collection<UnderlyingExposure> update(Map<String, MarketData> prices) {
+        if (positionsByUnderlying == null) {
+            return published.values(); // 持仓簿尚未载入
+        }
+        LocalDate today = LocalDate.now();
+        boolean newDay = !today.equals(valuationDate);
+        if (newDay) {
+            valuationDate = today;
+            for (int i = 0; i < maturities.length; i++) {
+                yearsToMaturity[i] = optionPricingService.timeToMaturity(maturities[i], today);
+            }
+        }
+
+        boolean changed = false;
+        for (int u = 0; u < underlyings.length; u++) {
+            MarketData marketData = prices.get(underlyings[u]);
+            BigDecimal price = marketData == null ? lastPrices[u] : marketData.getPrice();
+            if (price == null || (!newDay && price.equals(lastPrices[u]))) {
+                continue;
+            }
+            lastPrices[u] = price;
+            double underlyingPrice = price.doubleValue();
+            for (int i : positionsByUnderlying[u]) {
+                revaluePosition(i, underlyingPrice);
+            }
+            revaluedCounter.add(positionsByUnderlying[u].length);
+            changed = true;
+        }
+        if (changed) {
+            publish();
+        }
+        return published.values();
+    }
+
+    /**
+     * 持仓数量变化：只重算该持仓并差分更新所属标的的汇总
+     */
+    public synchronized void updateQuantity(int position, long quantity) {
+        int u = underlyingOf[position];
+        if (u < 0) {
+            quantities[position] = quantity;
+            return;
+        }
+        if (types[position] == SecurityType.STOCK) {
+            netSharesTotal[u] += quantity - quantities[position];
+        }
+        quantities[position] = quantity;
+        if (lastPrices[u] != null) {
+            revaluePosition(position, lastPrices[u].doubleValue());
+            revaluedCounter.increment();
+        }
+        publish();
+    }
+
+    /**
+     * 全部标的的最新汇总（按标的代码排序）
+     */
+    public Collection<UnderlyingExposure> current() {
+        return published.values();
+    }
+
+    /**
+     * 单个标的的最新汇总，标的不在持仓中时为 null
+     */
+    public UnderlyingExposure get(String underlying) {
+        return published.get(underlying);
+    }
+
+    /**
+     * 复制当前持仓簿与各标的最近一次价格，供情景分析与 VaR 使用；持仓簿尚未载入时为 null
+     */
+    synchronized ScenarioBook scenarioBook() {
+        if (positionsByUnderlying == null) {
+            return null;
+        }
+        double[] prices = new double[underlyings.length];
+        for (int u = 0; u < underlyings.length; u++) {
+            prices[u] = lastPrices[u] == null ? Double.NaN : lastPrices[u].doubleValue();
+        }
+        return new ScenarioBook(underlyingOf.clone(), types.clone(), styles.clone(), strikes.clone(),
+                maturities.clone(), quantities.clone(), underlyings.clone(), prices, contractMultiplier);
+    }
+
+    // 重算一个持仓的贡献，按新旧之差更新所属标的的汇总
+    private void revaluePosition(int i, double underlyingPrice) {
+        int u = underlyingOf[i];
+        long quantity = quantities[i];
+        long newDeltaShares;
+        long newDeltaDollars;
+        long newGamma;
+        long newVega;
+        if (types[i] == SecurityType.STOCK) {
+            newDeltaShares = Math.multiplyExact(quantity, UNITS_PER_SHARE);
+            newDeltaDollars = toUnits(quantity * underlyingPrice);
+            newGamma = 0L;
+            newVega = 0L;
+        } else {
+            OptionGreeks greeks = optionPricingService.greeks(types[i], underlyingPrice, strikes[i],
+                    yearsToMaturity[i], optionPricingService.getRiskFreeRate(),
+                    optionPricingService.getUnderlyingSigma(underlyings[u]));
+            double shares = (double) quantity * contractMultiplier;
+            newDeltaShares = toUnits(greeks.getDelta() * shares);
+            newDeltaDollars = toUnits(greeks.getDelta() * shares * underlyingPrice);
+            newGamma = toUnits(greeks.getGamma() * shares);
+            newVega = toUnits(greeks.getVega() * shares);
+        }
+        deltaSharesTotal[u] += newDeltaShares - deltaShares[i];
+        deltaDollarsTotal[u] += newDeltaDollars - deltaDollars[i];
+        gammaTotal[u] += newGamma - gammas[i];
+        vegaTotal[u] += newVega - vegas[i];
+        deltaShares[i] = newDeltaShares;
+        deltaDollars[i] = newDeltaDollars;
+        gammas[i] = newGamma;
+        vegas[i] = newVega;
+    }
+
+    private static long toUnits(double value) {
+        return Math.round(value * UNITS);
+    }
+
+    private void publish() {
+        Map<String, UnderlyingExposure> exposures = new LinkedHashMap<>();
+        for (int u = 0; u < underlyings.length; u++) {
+            exposures.put(underlyings[u], new UnderlyingExposure(underlyings[u], netSharesTotal[u],
+                    deltaSharesTotal[u], deltaDollarsTotal[u], gammaTotal[u], vegaTotal[u]));
+        }
+        published = Collections.unmodifiableMap(exposures);
+    }
+}
@@ -0,0 +1,123 @@
+package com.weilai.portfolio.service;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+
+/**
+ * 定点累加器：金额按固定 scale 转为整数，以 128 位（两个 long）补码累加
+ * <p>
+ * 整数加法满足结合律与交换律，累加顺序、分块方式、线程数都不影响结果；
+ * 增量更新（subtract 旧值 + add 新值）与全量重算逐位一致，不会像 double 那样漂移。
+ * 小数位超过 scale 的金额在加入前按 HALF_EVEN 单独取整（取整只与该金额本身有关，不破坏顺序无关性）。
+ * <p>
+ * 非线程安全：每个线程使用自己的累加器，最后 merge。
+ */
+public final class FixedPointAccumulator {
+    public static final int DEFAULT_SCALE = 4; // 与估值价格、列式线上格式的定点位数一致
+
+    private static final BigInteger TWO_64 = BigInteger.ONE.shiftLeft(64);
+
+    private final int scale;
+    private long high; // 高 64 位（有符号）
+    private long low;  // 低 64 位（无符号）
+
+    public FixedPointAccumulator() {
+        this(DEFAULT_SCALE);
+    }
+
+    public FixedPointAccumulator(int scale) {
+        if (scale < 0) {
+            throw new IllegalArgumentException("scale 不能为负：" + scale);
+        }
+        this.scale = scale;
+    }
+
+    public FixedPointAccumulator add(BigDecimal amount) {
+        BigDecimal scaled = amount.setScale(scale, RoundingMode.HALF_EVEN);
+        if (scaled.precision() <= 18) {
+            // 常见情况：定点值在 long 范围内，不经过 BigInteger
+            return addUnscaled(scaled.scaleByPowerOfTen(scale).longValueExact());
+        }
+        BigInteger unscaled = scaled.unscaledValue();
+        return add128(unscaled.shiftRight(64).longValue(), unscaled.longValue());
+    }
+
+    /**
+     * 单笔金额按 scale 转为定点 long（HALF_EVEN 取整，超出 long 范围时抛 ArithmeticException）
+     */
+    public static long toUnscaled(BigDecimal amount, int scale) {
+        return amount.setScale(scale, RoundingMode.HALF_EVEN).scaleByPowerOfTen(scale).longValueExact();
+    }
+
+    public FixedPointAccumulator subtract(BigDecimal amount) {
+        return add(amount.negate());
+    }
+
+    /**
+     * 加上已按本累加器 scale 定点化的金额
+     */
+    public FixedPointAccumulator addUnscaled(long unscaled) {
+        return add128(unscaled >> 63, unscaled); // 符号扩展到 128 位
+    }
+
+    /**
+     * 合并另一线程的累加结果（scale 必须相同）
+     */
+    public FixedPointAccumulator merge(FixedPointAccumulator other) {
+        if (other.scale != scale) {
+            throw new IllegalArgumentException("scale 不一致：" + scale + " / " + other.scale);
+        }
+        return add128(other.high, other.low);
+    }
+
+    public void reset() {
+        high = 0;
+        low = 0;
+    }
+
+    public int getScale() {
+        return scale;
+    }
+
+    public BigDecimal toBigDecimal() {
+        if (high == (low >> 63)) {
+            return BigDecimal.valueOf(low, scale); // 结果在 long 范围内
+        }
+        BigInteger lowUnsigned = BigInteger.valueOf(low);
+        if (low < 0) {
+            lowUnsigned = lowUnsigned.add(TWO_64);
+        }
+        return new BigDecimal(BigInteger.valueOf(high).shiftLeft(64).add(lowUnsigned), scale);
+    }
+
+    private FixedPointAccumulator add128(long otherHigh, long otherLow) {
+        long sum = low + otherLow;
+        long carry = Long.compareUnsigned(sum, low) < 0 ? 1 : 0;
+        low = sum;
+        high = high + otherHigh + carry;
+        return this;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof FixedPointAccumulator)) {
+            return false;
+        }
+        FixedPointAccumulator other = (FixedPointAccumulator) o;
+        return scale == other.scale && high == other.high && low == other.low;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * scale + Long.hashCode(high)) + Long.hashCode(low);
+    }
+
+    @Override
+    public String toString() {
+        return toBigDecimal().toPlainString();
+    }
+}
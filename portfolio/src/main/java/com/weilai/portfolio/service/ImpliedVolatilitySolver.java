@@ -0,0 +1,303 @@
+package com.weilai.portfolio.service;
+
+import com.weilai.portfolio.entity.SecurityType;
+import com.weilai.portfolio.infrastructure.metrics.PipelineMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 批量隐含波动率：由期权价格反解 Black-Scholes 波动率（与 BlackScholesPricingService 使用同一定价实现，解出的波动率可精确复现价格）
+ * <p>
+ * 输入输出均为基本类型数组（第 i 个元素对应第 i 个期权），适合每个 tick 对整条期权链重算：
+ * - vols 既是初值也是结果：传入上一个 tick 的解即可热启动；初值无效（NaN 或超出范围）时从 Manaster-Koehler 拐点起步
+ * - 各期权的 ln(S/K)、√T、K·e^(-rT) 只算一次；Newton 迭代按轮进行，每轮只处理仍未收敛的期权，价格误差不超过各自容差即退出
+ * - Newton 步长越出当前区间或 vega 过小时，该期权改用 Brent 法在区间内求解
+ * 价格超出无套利区间或无法在 [MIN_VOLATILITY, MAX_VOLATILITY] 内复现时结果为 NaN。
+ */
+@Component
+public class ImpliedVolatilitySolver {
+    static final double MIN_VOLATILITY = 1e-4;
+    static final double MAX_VOLATILITY = 5.0;
+    private static final double VEGA_FLOOR = 1e-10;
+    private static final double VOLATILITY_TOLERANCE = 1e-12;
+    private static final int MAX_BRENT_ITERATIONS = 100;
+    private static final double INV_SQRT_2PI = 1.0 / Math.sqrt(2 * Math.PI);
+
+    private final BlackScholesPricingService optionPricingService;
+    private final double defaultTolerance;
+    private final int maxNewtonIterations;
+    private final LongAdder solvedCounter;
+    private final LongAdder failedCounter;
+    private final LongAdder newtonStepCounter;
+    private final LongAdder brentCounter;
+
+    public ImpliedVolatilitySolver(BlackScholesPricingService optionPricingService,
+                                   @Value("${portfolio.option.implied-vol.tolerance:1e-6}") double defaultTolerance,
+                                   @Value("${portfolio.option.implied-vol.max-newton-iterations:8}") int maxNewtonIterations,
+                                   PipelineMetrics pipelineMetrics) {
+        if (!(defaultTolerance > 0)) {
+            throw new IllegalArgumentException("portfolio.option.implied-vol.tolerance 必须大于0：" + defaultTolerance);
+        }
+        if (maxNewtonIterations < 0) {
+            throw new IllegalArgumentException("portfolio.option.implied-vol.max-newton-iterations 不能小于0：" + maxNewtonIterations);
+        }
+        this.optionPricingService = optionPricingService;
+        this.defaultTolerance = defaultTolerance;
+        this.maxNewtonIterations = maxNewtonIterations;
+        this.solvedCounter = pipelineMetrics.counter("implied-vol-solved");
+        this.failedCounter = pipelineMetrics.counter("implied-vol-failed");
+        this.newtonStepCounter = pipelineMetrics.counter("implied-vol-newton-steps");
+        this.brentCounter = pipelineMetrics.counter("implied-vol-brent-fallbacks");
+    }
+
+    /**
+     * 求解前 count 个期权的隐含波动率，结果写回 vols，返回成功求解的个数
+     *
+     * @param tolerances 各期权的价格容差，为 null 或元素不大于 0 时使用默认容差
+     * @param vols       初值（通常为上一个 tick 的解），求解后为隐含波动率，失败为 NaN
+     */
+    public int solve(int count, SecurityType[] types, double[] spots, double[] strikes, double[] years,
+                     double[] prices, double[] tolerances, double[] vols) {
+        Chain chain = new Chain(count, types, spots, strikes, years, prices, tolerances,
+                optionPricingService.getRiskFreeRate(), defaultTolerance);
+        int[] active = new int[count];
+        int[] fallback = new int[count];
+        int activeCount = 0;
+        int fallbackCount = 0;
+        int solved = 0;
+        int failed = 0;
+
+        for (int i = 0; i < count; i++) {
+            if (!chain.prepare(i)) {
+                vols[i] = Double.NaN;
+                failed++;
+                continue;
+            }
+            if (!(vols[i] >= MIN_VOLATILITY && vols[i] <= MAX_VOLATILITY)) {
+                vols[i] = chain.initialGuess(i);
+            }
+            active[activeCount++] = i;
+        }
+
+        // Newton：每轮只处理尚未收敛的期权，压缩活跃下标
+        long newtonSteps = 0;
+        for (int iteration = 0; iteration < maxNewtonIterations && activeCount > 0; iteration++) {
+            int remaining = 0;
+            for (int k = 0; k < activeCount; k++) {
+                int i = active[k];
+                double sigma = vols[i];
+                double diff = chain.price(i, sigma) - prices[i];
+                newtonSteps++;
+                if (Math.abs(diff) <= chain.tolerance[i]) {
+                    solved++;
+                    continue;
+                }
+                // 价格随波动率单调递增，据此收窄区间
+                if (diff > 0) {
+                    chain.high[i] = sigma;
+                } else {
+                    chain.low[i] = sigma;
+                }
+                double vega = chain.vega(i, sigma);
+                double next = sigma - diff / vega;
+                if (vega > VEGA_FLOOR && next > chain.low[i] && next < chain.high[i]) {
+                    vols[i] = next;
+                    active[remaining++] = i;
+                } else {
+                    fallback[fallbackCount++] = i;
+                }
+            }
+            activeCount = remaining;
+        }
+        for (int k = 0; k < activeCount; k++) {
+            fallback[fallbackCount++] = active[k]; // Newton 次数用尽
+        }
+
+        for (int k = 0; k < fallbackCount; k++) {
+            int i = fallback[k];
+            vols[i] = brent(chain, i);
+            if (Double.isNaN(vols[i])) {
+                failed++;
+            } else {
+                solved++;
+            }
+        }
+        newtonStepCounter.add(newtonSteps);
+        brentCounter.add(fallbackCount);
+        solvedCounter.add(solved);
+        failedCounter.add(failed);
+        return solved;
+    }
+
+    // Brent 法（Numerical Recipes zbrent）在区间 [low, high] 内求价格误差的零点，价格误差不超过容差即返回
+    private static double brent(Chain chain, int i) {
+        double target = chain.prices[i];
+        double tolerance = chain.tolerance[i];
+        double a = chain.low[i];
+        double b = chain.high[i];
+        double fa = chain.price(i, a) - target;
+        double fb = chain.price(i, b) - target;
+        if (Math.abs(fa) <= tolerance) {
+            return a;
+        }
+        if (Math.abs(fb) <= tolerance) {
+            return b;
+        }
+        if (fa > 0 || fb < 0) {
+            return Double.NaN; // 区间端点不夹住目标价格
+        }
+        double c = b;
+        double fc = fb;
+        double d = b - a;
+        double e = d;
+        for (int iteration = 0; iteration < MAX_BRENT_ITERATIONS; iteration++) {
+            if ((fb > 0 && fc > 0) || (fb < 0 && fc < 0)) {
+                c = a;
+                fc = fa;
+                d = b - a;
+                e = d;
+            }
+            if (Math.abs(fc) < Math.abs(fb)) {
+                a = b;
+                b = c;
+                c = a;
+                fa = fb;
+                fb = fc;
+                fc = fa;
+            }
+            double tolerance1 = 2 * Math.ulp(1.0) * Math.abs(b) + 0.5 * VOLATILITY_TOLERANCE;
+            double middle = 0.5 * (c - b);
+            if (Math.abs(fb) <= tolerance) {
+                return b;
+            }
+            if (Math.abs(middle) <= tolerance1) {
+                return Double.NaN; // 区间已收敛到浮点精度，价格仍达不到容差
+            }
+            if (Math.abs(e) >= tolerance1 && Math.abs(fa) > Math.abs(fb)) {
+                // 反二次插值（a == c 时退化为割线）
+                double s = fb / fa;
+                double p;
+                double q;
+                if (a == c) {
+                    p = 2 * middle * s;
+                    q = 1 - s;
+                } else {
+                    double qa = fa / fc;
+                    double r = fb / fc;
+                    p = s * (2 * middle * qa * (qa - r) - (b - a) * (r - 1));
+                    q = (qa - 1) * (r - 1) * (s - 1);
+                }
+                if (p > 0) {
+                    q = -q;
+                }
+                p = Math.abs(p);
+                if (2 * p < Math.min(3 * middle * q - Math.abs(tolerance1 * q), Math.abs(e * q))) {
+                    e = d;
+                    d = p / q;
+                } else {
+                    d = middle;
+                    e = d;
+                }
+            } else {
+                d = middle;
+                e = d;
+            }
+            a = b;
+            fa = fb;
+            b += Math.abs(d) > tolerance1 ? d : Math.copySign(tolerance1, middle);
+            fb = chain.price(i, b) - target;
+        }
+        return Math.abs(fb) <= tolerance ? b : Double.NaN;
+    }
+
+    /**
+     * 一批期权的输入与每个期权只需计算一次的常量
+     */
+    private static final class Chain {
+        final SecurityType[] types;
+        final double[] spots;
+        final double[] years;
+        final double[] prices;
+        final double riskFreeRate;
+
+        final double[] strikes;
+        final double[] tolerance;
+        final double[] logMoneyness;
+        final double[] sqrtYears;
+        final double[] discountedStrikes;
+        final double[] low;
+        final double[] high;
+
+        Chain(int count, SecurityType[] types, double[] spots, double[] strikes, double[] years, double[] prices,
+              double[] tolerances, double riskFreeRate, double defaultTolerance) {
+            this.types = types;
+            this.spots = spots;
+            this.strikes = strikes;
+            this.years = years;
+            this.prices = prices;
+            this.riskFreeRate = riskFreeRate;
+            this.tolerance = new double[count];
+            this.logMoneyness = new double[count];
+            this.sqrtYears = new double[count];
+            this.discountedStrikes = new double[count];
+            this.low = new double[count];
+            this.high = new double[count];
+            for (int i = 0; i < count; i++) {
+                tolerance[i] = tolerances != null && tolerances[i] > 0 ? tolerances[i] : defaultTolerance;
+            }
+        }
+
+        // 计算常量并检查无套利区间，参数无效或价格超出区间时返回 false
+        boolean prepare(int i) {
+            double S = spots[i];
+            double K = strikes[i];
+            double T = years[i];
+            double target = prices[i];
+            if (!(S > 0 && K > 0 && T > 0 && target >= 0) || types[i] == SecurityType.STOCK) {
+                return false;
+            }
+            logMoneyness[i] = Math.log(S / K);
+            sqrtYears[i] = Math.sqrt(T);
+            discountedStrikes[i] = K * Math.exp(-riskFreeRate * T);
+            double lower;
+            double upper;
+            if (types[i] == SecurityType.CALL) {
+                lower = Math.max(0.0, S - discountedStrikes[i]);
+                upper = S;
+            } else {
+                lower = Math.max(0.0, discountedStrikes[i] - S);
+                upper = discountedStrikes[i];
+            }
+            if (target < lower - tolerance[i] || target >= upper) {
+                return false;
+            }
+            low[i] = MIN_VOLATILITY;
+            high[i] = MAX_VOLATILITY;
+            return true;
+        }
+
+        double price(int i, double sigma) {
+            return BlackScholesPricingService.theoreticalPrice(types[i], spots[i], logMoneyness[i], years[i],
+                    sqrtYears[i], discountedStrikes[i], riskFreeRate, sigma);
+        }
+
+        // 看涨与看跌相同：S·φ(d1)·√T（波动率变动 1 时的价格变化）
+        double vega(int i, double sigma) {
+            double T = years[i];
+            double d1 = (logMoneyness[i] + (riskFreeRate + 0.5 * sigma * sigma) * T) / (sigma * sqrtYears[i]);
+            return spots[i] * Math.exp(-0.5 * d1 * d1) * INV_SQRT_2PI * sqrtYears[i];
+        }
+
+        // Manaster-Koehler：从价格对波动率的拐点 √(2|ln(S/K) + rT| / T) 起步，Newton 单调收敛；平值远期时退化为 0，改用 Brenner-Subrahmanyam 近似
+        double initialGuess(int i) {
+            double T = years[i];
+            double guess = Math.sqrt(2 * Math.abs(logMoneyness[i] + riskFreeRate * T) / T);
+            if (!(guess > MIN_VOLATILITY)) {
+                guess = prices[i] / spots[i] / (sqrtYears[i] * INV_SQRT_2PI);
+            }
+            return Math.min(Math.max(guess, 0.01), 2.0);
+        }
+    }
+}
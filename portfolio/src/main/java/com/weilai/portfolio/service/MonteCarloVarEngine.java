@@ -0,0 +1,522 @@
+package com.weilai.portfolio.service;
+
+import com.weilai.portfolio.entity.ExerciseStyle;
+import com.weilai.portfolio.entity.SecurityType;
+import com.weilai.portfolio.infrastructure.marketdata.strategy.GBMPricingStrategy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Monte Carlo VaR / ES：按 GBMPricingStrategy 的 μ、σ 模拟各标的持有期（交易日）末价格（对数正态，标的间按相关系数经 Cholesky 分解相关），
+ * 在每条路径上重估整个持仓簿（股票按价格、期权按 Black-Scholes 或美式定价，剩余期限扣除持有期），统计损益分布
+ * <p>
+ * - 期权按 (标的, 类型, 行权方式, 行权价, 到期日) 合并为合约；同一标的下全部期权的价值只取决于该标的的期末价格，
+ *   因此预先在对数价格网格（±8 个标准差、curve-points 个点）上算出合计价值，路径上线性插值；
+ *   每条路径的代价与标的个数而非持仓笔数成正比。网格之外或 exact=true 时逐个合约定价。
+ * - 路径按块在 var 线程上并行生成，每块一个由种子派生的 SplittableRandom 与 Ziggurat 正态生成器，结果与线程数无关。
+ * - 每块只保留最大的 ⌊N(1-α)⌋+1 个损失（TailLosses），不对全部损益排序；均值、方差按块合并。
+ */
+@Slf4j
+@Service
+public class MonteCarloVarEngine {
+    private static final int SCALE = ValuationSnapshot.SCALE;
+    private static final double CURVE_WIDTH = 8.0;
+
+    private final ExposureAggregator exposureAggregator;
+    private final BlackScholesPricingService optionPricingService;
+    private final AmericanOptionPricingService americanPricingService;
+    private final GBMPricingStrategy gbmPricingStrategy;
+
+    @Value("${portfolio.var.paths:100000}")
+    private int defaultPaths;
+
+    @Value("${portfolio.var.horizon-days:1}")
+    private int defaultHorizonDays;
+
+    @Value("${portfolio.var.confidence:0.99}")
+    private double defaultConfidence;
+
+    @Value("${portfolio.var.correlation:0.0}")
+    private double defaultCorrelation;
+
+    // 并行线程数，0 表示 CPU 核数
+    @Value("${portfolio.var.threads:0}")
+    private int threads;
+
+    // 每块路径数
+    @Value("${portfolio.var.block-size:8192}")
+    private int blockSize;
+
+    @Value("${portfolio.var.max-paths:5000000}")
+    private int maxPaths;
+
+    // 每个标的的价值曲线网格点数
+    @Value("${portfolio.var.curve-points:1025}")
+    private int curvePoints;
+
+    private Scheduler scheduler;
+
+    public MonteCarloVarEngine(ExposureAggregator exposureAggregator,
+                               BlackScholesPricingService optionPricingService,
+                               AmericanOptionPricingService americanPricingService,
+                               GBMPricingStrategy gbmPricingStrategy) {
+        this.exposureAggregator = exposureAggregator;
+        this.optionPricingService = optionPricingService;
+        this.americanPricingService = americanPricingService;
+        this.gbmPricingStrategy = gbmPricingStrategy;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (threads < 0) {
+            throw new IllegalArgumentException("portfolio.var.threads 不能小于0：" + threads);
+        }
+        if (blockSize <= 0 || maxPaths <= 0) {
+            throw new IllegalArgumentException("portfolio.var.block-size 与 max-paths 必须大于0");
+        }
+        if (curvePoints < 2) {
+            throw new IllegalArgumentException("portfolio.var.curve-points 不能小于2：" + curvePoints);
+        }
+        if (threads == 0) {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+        scheduler = Schedulers.newParallel("var", threads, true);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.dispose();
+        }
+    }
+
+    /**
+     * 计算 VaR / ES；请求无效时以 IllegalArgumentException 结束，持仓簿尚未载入时以 IllegalStateException 结束
+     */
+    public Mono<VarResult> run(VarRequest request) {
+        long startNanos = System.nanoTime();
+        return Mono.fromCallable(() -> prepare(request))
+                .subscribeOn(scheduler)
+                .flatMap(model -> Flux.range(0, model.underlyingCount())
+                        .flatMap(u -> Mono.fromRunnable(() -> model.buildCurve(u)).subscribeOn(scheduler), threads)
+                        .then(Mono.just(model)))
+                .flatMap(model -> Flux.range(0, model.blockSeeds.length)
+                        .flatMapSequential(block -> Mono.fromCallable(() -> simulateBlock(model, block))
+                                .subscribeOn(scheduler), threads)
+                        .reduce(PathStatistics::merge)
+                        .map(statistics -> model.result(statistics, (System.nanoTime() - startNanos) / 1_000_000L)));
+    }
+
+    private PathStatistics simulateBlock(Model model, int block) {
+        int from = block * blockSize;
+        int paths = Math.min(blockSize, model.paths - from);
+        ZigguratGaussian gaussian = new ZigguratGaussian(new SplittableRandom(model.blockSeeds[block]));
+        int underlyings = model.underlyingCount();
+        double[] epsilon = new double[underlyings];
+        PathStatistics statistics = new PathStatistics(model.tailSize);
+        for (int p = 0; p < paths; p++) {
+            for (int u = 0; u < underlyings; u++) {
+                epsilon[u] = gaussian.next();
+            }
+            double pnl = 0.0;
+            for (int u = 0; u < underlyings; u++) {
+                double[] row = model.cholesky[u];
+                double z = 0.0;
+                for (int k = 0; k <= u; k++) {
+                    z += row[k] * epsilon[k];
+                }
+                pnl += model.pnl(u, model.lnSpot[u] + model.drift[u] + model.volSqrtH[u] * z);
+            }
+            statistics.add(pnl);
+        }
+        return statistics;
+    }
+
+    private Model prepare(VarRequest request) {
+        int paths = request.getPaths() == null ? defaultPaths : request.getPaths();
+        int horizonDays = request.getHorizonDays() == null ? defaultHorizonDays : request.getHorizonDays();
+        double confidence = request.getConfidence() == null ? defaultConfidence : request.getConfidence();
+        double correlation = request.getCorrelation() == null ? defaultCorrelation : request.getCorrelation();
+        long seed = request.getSeed() == null ? ThreadLocalRandom.current().nextLong() : request.getSeed();
+        boolean exact = Boolean.TRUE.equals(request.getExact());
+        if (paths <= 0 || paths > maxPaths) {
+            throw new IllegalArgumentException("paths 必须在 1 到 " + maxPaths + " 之间：" + paths);
+        }
+        if (horizonDays <= 0) {
+            throw new IllegalArgumentException("horizonDays 必须大于0：" + horizonDays);
+        }
+        if (!(confidence > 0 && confidence < 1)) {
+            throw new IllegalArgumentException("confidence 必须在 (0, 1) 之间：" + confidence);
+        }
+        if (!(correlation > -1 && correlation < 1)) {
+            throw new IllegalArgumentException("correlation 必须在 (-1, 1) 之间：" + correlation);
+        }
+        ScenarioBook book = exposureAggregator.scenarioBook();
+        if (book == null) {
+            throw new IllegalStateException("持仓簿尚未载入");
+        }
+
+        int blocks = (paths + blockSize - 1) / blockSize;
+        long[] blockSeeds = new long[blocks];
+        SplittableRandom seeds = new SplittableRandom(seed);
+        for (int b = 0; b < blocks; b++) {
+            blockSeeds[b] = seeds.nextLong();
+        }
+        int tailSize = (int) Math.floor(paths * (1 - confidence)) + 1;
+        Model model = new Model(book, optionPricingService, americanPricingService, gbmPricingStrategy,
+                LocalDate.now(), paths, horizonDays, confidence, tailSize, blockSeeds, exact, curvePoints);
+        model.cholesky = cholesky(uniformCorrelation(model.underlyingCount(), correlation));
+        return model;
+    }
+
+    private static double[][] uniformCorrelation(int size, double correlation) {
+        double[][] matrix = new double[size][size];
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                matrix[i][j] = i == j ? 1.0 : correlation;
+            }
+        }
+        return matrix;
+    }
+
+    /**
+     * 交易日持有期对应的自然日数（至少1天），用于期末的期权剩余期限
+     */
+    static long calendarDays(int tradingDays) {
+        return Math.max(1L, Math.round(tradingDays * 365.0 / GBMPricingStrategy.TRADING_DAYS_PER_YEAR));
+    }
+
+    /**
+     * 对称正定矩阵的 Cholesky 分解（下三角 L，L·Lᵀ = matrix），矩阵不正定时抛出 IllegalArgumentException
+     */
+    static double[][] cholesky(double[][] matrix) {
+        int n = matrix.length;
+        double[][] lower = new double[n][];
+        for (int i = 0; i < n; i++) {
+            lower[i] = new double[i + 1];
+            for (int j = 0; j <= i; j++) {
+                double sum = matrix[i][j];
+                for (int k = 0; k < j; k++) {
+                    sum -= lower[i][k] * lower[j][k];
+                }
+                if (i == j) {
+                    if (sum <= 0) {
+                        throw new IllegalArgumentException("相关系数矩阵不是正定的");
+                    }
+                    lower[i][i] = Math.sqrt(sum);
+                } else {
+                    lower[i][j] = sum / lower[j][j];
+                }
+            }
+        }
+        return lower;
+    }
+
+    /**
+     * 一次请求的模拟模型：有行情的各标的的价格过程参数、股票股数、期权合约，以及期末期权价值曲线
+     */
+    private static final class Model {
+        final int paths;
+        final int horizonDays;
+        final double confidence;
+        final int tailSize;
+        final long[] blockSeeds;
+        final boolean exact;
+        final double riskFreeRate;
+        final AmericanOptionPricingService americanPricingService;
+        double[][] cholesky;
+
+        // 各标的
+        final double[] spot;
+        final double[] lnSpot;
+        final double[] drift;            // (μ - σ²/2)·h
+        final double[] volSqrtH;         // σ·√h
+        final double[] pricingSigma;     // 期权定价使用的波动率
+        final double[] stockShares;
+        final double[] baseOptionValue;  // 当前价格、当前剩余期限下的期权价值
+
+        // 各标的的期权合约（期末剩余期限下的常量）
+        final SecurityType[][] types;
+        final ExerciseStyle[][] styles;
+        final double[][] strikes;
+        final double[][] lnStrikes;
+        final double[][] years;
+        final double[][] sqrtYears;
+        final double[][] discountedStrikes;
+        final double[][] contracts;      // 数量 × 合约乘数
+
+        // 期末期权价值曲线：lnS = curveLow + j·curveStep
+        final int curvePoints;
+        final double[] curveLow;
+        final double[] curveStep;
+        final double[][] curves;
+
+        Model(ScenarioBook book, BlackScholesPricingService pricingService,
+              AmericanOptionPricingService americanPricingService, GBMPricingStrategy gbm,
+              LocalDate valuationDate, int paths, int horizonDays, double confidence, int tailSize,
+              long[] blockSeeds, boolean exact, int curvePoints) {
+            this.paths = paths;
+            this.horizonDays = horizonDays;
+            this.confidence = confidence;
+            this.tailSize = tailSize;
+            this.blockSeeds = blockSeeds;
+            this.exact = exact;
+            this.riskFreeRate = pricingService.getRiskFreeRate();
+            this.americanPricingService = americanPricingService;
+            this.curvePoints = curvePoints;
+
+            // 只模拟有行情的标的；期权按 (类型, 行权方式, 行权价, 到期日) 合并
+            int[] index = new int[book.underlyings.length];
+            List<String> tickers = new ArrayList<>();
+            List<Double> prices = new ArrayList<>();
+            for (int u = 0; u < book.underlyings.length; u++) {
+                index[u] = Double.isNaN(book.prices[u]) || book.prices[u] <= 0 ? -1 : tickers.size();
+                if (index[u] >= 0) {
+                    tickers.add(book.underlyings[u]);
+                    prices.add(book.prices[u]);
+                }
+            }
+            int count = tickers.size();
+            stockShares = new double[count];
+            List<Map<ContractKey, Double>> contractsByUnderlying = new ArrayList<>();
+            for (int u = 0; u < count; u++) {
+                contractsByUnderlying.add(new LinkedHashMap<>());
+            }
+            for (int i = 0; i < book.size(); i++) {
+                int u = book.underlyingOf[i] < 0 ? -1 : index[book.underlyingOf[i]];
+                if (u < 0) {
+                    continue;
+                }
+                if (book.types[i] == SecurityType.STOCK) {
+                    stockShares[u] += book.quantities[i];
+                } else if (book.strikes[i] > 0) {
+                    contractsByUnderlying.get(u).merge(
+                            new ContractKey(book.types[i], book.styles[i], book.strikes[i], book.maturities[i]),
+                            (double) book.quantities[i] * book.contractMultiplier, Double::sum);
+                }
+            }
+
+            // 持有期按交易日计，与 GBMPricingStrategy 的 μ、σ 同一时间单位（年秒数）；
+            // 期权剩余期限按自然日计，期末日期取相同年份比例对应的自然日数
+            double h = horizonDays * GBMPricingStrategy.TRADING_DAY_SECONDS / GBMPricingStrategy.YEAR_SECONDS;
+            LocalDate horizonDate = valuationDate.plusDays(calendarDays(horizonDays));
+            spot = new double[count];
+            lnSpot = new double[count];
+            drift = new double[count];
+            volSqrtH = new double[count];
+            pricingSigma = new double[count];
+            baseOptionValue = new double[count];
+            types = new SecurityType[count][];
+            styles = new ExerciseStyle[count][];
+            strikes = new double[count][];
+            lnStrikes = new double[count][];
+            years = new double[count][];
+            sqrtYears = new double[count][];
+            discountedStrikes = new double[count][];
+            contracts = new double[count][];
+            curveLow = new double[count];
+            curveStep = new double[count];
+            curves = new double[count][];
+            for (int u = 0; u < count; u++) {
+                String ticker = tickers.get(u);
+                double sigma = gbm.getSigma(ticker);
+                spot[u] = prices.get(u);
+                lnSpot[u] = Math.log(spot[u]);
+                drift[u] = (gbm.getMu(ticker) - 0.5 * sigma * sigma) * h;
+                volSqrtH[u] = sigma * Math.sqrt(h);
+                pricingSigma[u] = pricingService.getUnderlyingSigma(ticker);
+
+                Map<ContractKey, Double> merged = contractsByUnderlying.get(u);
+                int n = merged.size();
+                types[u] = new SecurityType[n];
+                styles[u] = new ExerciseStyle[n];
+                strikes[u] = new double[n];
+                lnStrikes[u] = new double[n];
+                years[u] = new double[n];
+                sqrtYears[u] = new double[n];
+                discountedStrikes[u] = new double[n];
+                contracts[u] = new double[n];
+                int c = 0;
+                for (Map.Entry<ContractKey, Double> entry : merged.entrySet()) {
+                    ContractKey key = entry.getKey();
+                    double K = key.strike;
+                    types[u][c] = key.type;
+                    styles[u][c] = key.style;
+                    strikes[u][c] = K;
+                    lnStrikes[u][c] = Math.log(K);
+                    contracts[u][c] = entry.getValue();
+                    // 当前价值用当前剩余期限，期末价值用扣除持有期后的剩余期限
+                    double T = pricingService.timeToMaturity(key.maturity, valuationDate);
+                    baseOptionValue[u] += contracts[u][c] * optionPrice(u, c, spot[u], lnSpot[u] - lnStrikes[u][c],
+                            T, Math.sqrt(T), K * Math.exp(-riskFreeRate * T));
+                    double horizonT = pricingService.timeToMaturity(key.maturity, horizonDate);
+                    years[u][c] = horizonT;
+                    sqrtYears[u][c] = Math.sqrt(horizonT);
+                    discountedStrikes[u][c] = K * Math.exp(-riskFreeRate * horizonT);
+                    c++;
+                }
+                double halfWidth = Math.max(CURVE_WIDTH * volSqrtH[u], 1e-6);
+                curveLow[u] = lnSpot[u] + drift[u] - halfWidth;
+                curveStep[u] = 2 * halfWidth / (curvePoints - 1);
+            }
+        }
+
+        int underlyingCount() {
+            return spot.length;
+        }
+
+        void buildCurve(int u) {
+            if (exact || contracts[u].length == 0) {
+                return;
+            }
+            double[] curve = new double[curvePoints];
+            for (int j = 0; j < curvePoints; j++) {
+                double lnS = curveLow[u] + j * curveStep[u];
+                curve[j] = horizonOptionValue(u, Math.exp(lnS), lnS);
+            }
+            curves[u] = curve;
+        }
+
+        // 一条路径上标的 u 的损益
+        double pnl(int u, double lnS) {
+            double S = Math.exp(lnS);
+            double pnl = stockShares[u] * (S - spot[u]);
+            if (contracts[u].length == 0) {
+                return pnl;
+            }
+            double[] curve = curves[u];
+            double position = (lnS - curveLow[u]) / curveStep[u];
+            double optionValue;
+            if (curve != null && position >= 0 && position < curvePoints - 1) {
+                int j = (int) position;
+                double weight = position - j;
+                optionValue = curve[j] + weight * (curve[j + 1] - curve[j]);
+            } else {
+                optionValue = horizonOptionValue(u, S, lnS);
+            }
+            return pnl + optionValue - baseOptionValue[u];
+        }
+
+        private double horizonOptionValue(int u, double S, double lnS) {
+            double value = 0.0;
+            for (int c = 0; c < contracts[u].length; c++) {
+                value += contracts[u][c] * optionPrice(u, c, S, lnS - lnStrikes[u][c], years[u][c],
+                        sqrtYears[u][c], discountedStrikes[u][c]);
+            }
+            return value;
+        }
+
+        // 标的 u 的第 c 个合约在价格 S、剩余期限 T 下的单位价值
+        private double optionPrice(int u, int c, double S, double logMoneyness, double T, double sqrtT,
+                                   double discountedStrike) {
+            if (styles[u][c] == ExerciseStyle.AMERICAN) {
+                return Math.max(0.0, americanPricingService.theoreticalPrice(types[u][c], S, strikes[u][c], T,
+                        riskFreeRate, pricingSigma[u]));
+            }
+            return Math.max(0.0, BlackScholesPricingService.theoreticalPrice(types[u][c], S, logMoneyness, T, sqrtT,
+                    discountedStrike, riskFreeRate, pricingSigma[u]));
+        }
+
+        VarResult result(PathStatistics statistics, long elapsedMillis) {
+            double[] losses = statistics.tail.descending();
+            int beyond = tailSize - 1; // 严格超过 VaR 的路径数上限 ⌊N(1-α)⌋
+            double valueAtRisk = losses[tailSize - 1];
+            double shortfall = 0.0;
+            int worst = Math.max(beyond, 1);
+            for (int k = 0; k < worst; k++) {
+                shortfall += losses[k];
+            }
+            log.info("Monte Carlo VaR: {} paths, {} underlyings, {} day(s) at {} in {}ms",
+                    paths, underlyingCount(), horizonDays, confidence, elapsedMillis);
+            return new VarResult(paths, horizonDays, confidence, money(valueAtRisk), money(shortfall / worst),
+                    money(statistics.mean), money(statistics.standardDeviation()), elapsedMillis);
+        }
+
+        private static BigDecimal money(double value) {
+            return BigDecimal.valueOf(value).setScale(SCALE, RoundingMode.HALF_UP);
+        }
+    }
+
+    private static final class ContractKey {
+        final SecurityType type;
+        final ExerciseStyle style;
+        final double strike;
+        final LocalDate maturity;
+
+        ContractKey(SecurityType type, ExerciseStyle style, double strike, LocalDate maturity) {
+            this.type = type;
+            this.style = style;
+            this.strike = strike;
+            this.maturity = maturity;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof ContractKey)) {
+                return false;
+            }
+            ContractKey other = (ContractKey) o;
+            return type == other.type && style == other.style && Double.compare(strike, other.strike) == 0
+                    && Objects.equals(maturity, other.maturity);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(type, style, strike, maturity);
+        }
+    }
+
+    /**
+     * 一块路径的损益统计：均值与二阶中心矩（Welford），以及最大的若干个损失；按块顺序合并
+     */
+    private static final class PathStatistics {
+        final TailLosses tail;
+        long count;
+        double mean;
+        double m2;
+
+        PathStatistics(int tailSize) {
+            this.tail = new TailLosses(tailSize);
+        }
+
+        void add(double pnl) {
+            count++;
+            double delta = pnl - mean;
+            mean += delta / count;
+            m2 += delta * (pnl - mean);
+            tail.offer(-pnl);
+        }
+
+        PathStatistics merge(PathStatistics other) {
+            long total = count + other.count;
+            double delta = other.mean - mean;
+            mean += delta * other.count / total;
+            m2 += other.m2 + delta * delta * count * other.count / total;
+            count = total;
+            tail.merge(other.tail);
+            return this;
+        }
+
+        double standardDeviation() {
+            return count > 1 ? Math.sqrt(m2 / (count - 1)) : 0.0;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.weilai.portfolio.service;
+
+/**
+ * 每单位期权的希腊值（见 BlackScholesPricingService.greeks）
+ */
+public final class OptionGreeks {
+    public static final OptionGreeks ZERO = new OptionGreeks(0.0, 0.0, 0.0);
+
+    private final double delta;
+    private final double gamma;
+    private final double vega;
+
+    public OptionGreeks(double delta, double gamma, double vega) {
+        this.delta = delta;
+        this.gamma = gamma;
+        this.vega = vega;
+    }
+
+    public double getDelta() {
+        return delta;
+    }
+
+    public double getGamma() {
+        return gamma;
+    }
+
+    public double getVega() {
+        return vega;
+    }
+}
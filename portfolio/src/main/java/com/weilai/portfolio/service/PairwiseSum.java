@@ -0,0 +1,34 @@
+package com.weilai.portfolio.service;
+
+/**
+ * 两两树形归约：归约顺序只由下标决定，与分块由哪个线程、以什么顺序完成无关
+ */
+final class PairwiseSum {
+
+    private PairwiseSum() {
+    }
+
+    /**
+     * 合并各分块的定点累加器（scale 必须相同，结果沿用输入的 scale；输入为空时返回默认 scale 的零）
+     * 输入中的累加器会被原地合并，调用后不应再使用
+     */
+    static FixedPointAccumulator of(FixedPointAccumulator[] values) {
+        if (values.length == 0) {
+            return new FixedPointAccumulator();
+        }
+        FixedPointAccumulator result = new FixedPointAccumulator(values[0].getScale());
+        FixedPointAccumulator[] level = values.clone();
+        int length = level.length;
+        while (length > 1) {
+            int half = (length + 1) / 2;
+            for (int i = 0; i < length / 2; i++) {
+                level[i] = level[2 * i].merge(level[2 * i + 1]);
+            }
+            if ((length & 1) == 1) {
+                level[half - 1] = level[length - 1];
+            }
+            length = half;
+        }
+        return result.merge(level[0]);
+    }
+}
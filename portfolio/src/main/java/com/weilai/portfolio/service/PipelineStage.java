@@ -0,0 +1,86 @@
+package com.weilai.portfolio.service;
+
+import com.weilai.portfolio.infrastructure.metrics.PipelineMetrics;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * 估值流水线的一个阶段：独占调度器（线程名 valuation-阶段名）并统计忙碌时间
+ * <p>
+ * 利用率 = 忙碌时间 / (经过时间 × 线程数)，以瞬时值 {name}-utilization-pct 上报，统计窗口为两次读取之间。
+ * 相邻阶段经有界缓冲交接，各阶段可同时处理不同的估值，吞吐量由利用率最高的阶段决定。
+ */
+final class PipelineStage {
+    private final String name;
+    private final int threads;
+    private final Scheduler scheduler;
+    private final LongAdder busyNanos = new LongAdder();
+    private final LongSupplier clock;
+
+    private long windowStartNanos;
+    private long windowBusyNanos;
+
+    PipelineStage(String name, int threads, PipelineMetrics pipelineMetrics) {
+        this(name, threads, pipelineMetrics, System::nanoTime);
+    }
+
+    PipelineStage(String name, int threads, PipelineMetrics pipelineMetrics, LongSupplier clock) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("阶段 " + name + " 的线程数必须大于0：" + threads);
+        }
+        this.name = name;
+        this.threads = threads;
+        this.clock = clock;
+        this.scheduler = threads == 1
+                ? Schedulers.newSingle("valuation-" + name, true)
+                : Schedulers.newParallel("valuation-" + name, threads, true);
+        this.windowStartNanos = clock.getAsLong();
+        pipelineMetrics.gauge(name + "-utilization-pct", this::utilizationPercent);
+    }
+
+    Scheduler scheduler() {
+        return scheduler;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    int getThreads() {
+        return threads;
+    }
+
+    long now() {
+        return clock.getAsLong();
+    }
+
+    /**
+     * 记录一段从 startNanos（取自 now()）开始、到此刻结束的工作
+     */
+    void recordBusySince(long startNanos) {
+        busyNanos.add(clock.getAsLong() - startNanos);
+    }
+
+    /**
+     * 上次读取以来的利用率（百分比）；跨窗口的工作计入结束时所在的窗口，因此结果截断到 100
+     */
+    synchronized long utilizationPercent() {
+        long now = clock.getAsLong();
+        long busy = busyNanos.sum();
+        long elapsed = now - windowStartNanos;
+        long windowBusy = busy - windowBusyNanos;
+        windowStartNanos = now;
+        windowBusyNanos = busy;
+        if (elapsed <= 0) {
+            return 0L;
+        }
+        return Math.min(100L, Math.round(100.0 * windowBusy / ((double) elapsed * threads)));
+    }
+
+    void dispose() {
+        scheduler.dispose();
+    }
+}
@@ -1,15 +1,29 @@
 package com.weilai.portfolio.service;
 
+import com.google.protobuf.Message;
+import com.weilai.portfolio.entity.ExerciseStyle;
 import com.weilai.portfolio.entity.MarketData;
-import com.weilai.portfolio.entity.PortfolioValuation;
 import com.weilai.portfolio.entity.Position;
+import com.weilai.portfolio.entity.Security;
 import com.weilai.portfolio.entity.SecurityType;
 import com.weilai.portfolio.grpc.client.PortfolioValuationClient;
+import com.weilai.portfolio.grpc.client.ValuationBatcher;
+import com.weilai.portfolio.grpc.codec.ValuationFrameCodec;
+import com.weilai.portfolio.grpc.valuation.ExposureRollupProto;
 import com.weilai.portfolio.grpc.valuation.MarketDataChangeProto;
+import com.weilai.portfolio.grpc.valuation.PortfolioValuationBatch;
 import com.weilai.portfolio.grpc.valuation.PortfolioValuationMessage;
 import com.weilai.portfolio.grpc.valuation.PositionProto;
+import com.weilai.portfolio.grpc.valuation.UnderlyingExposureProto;
+import com.weilai.portfolio.grpc.valuation.ValuationFormat;
+import com.weilai.portfolio.grpc.valuation.ValuationResponse;
+import com.weilai.portfolio.infrastructure.checkpoint.ValuationCheckpoint;
+import com.weilai.portfolio.infrastructure.metrics.PipelineMetrics;
+import com.weilai.portfolio.infrastructure.metrics.StageLatency;
 import com.weilai.portfolio.infrastructure.marketdata.provider.ReactiveMarketDataProvider;
 import com.weilai.portfolio.infrastructure.reader.CsvPositionReader;
+import com.weilai.portfolio.infrastructure.sharding.ShardAssignment;
+import com.weilai.portfolio.repository.SecurityCache;
 import com.weilai.portfolio.repository.SecurityRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -19,12 +33,16 @@ import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
+import javax.annotation.PreDestroy;
 import java.math.BigDecimal;
 import java.time.Duration;
 import java.time.LocalDate;
-import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Service
@@ -46,6 +64,12 @@ public class ReactivePortfolioValuator {
         TARGET_STOCKS.add("TELSA");
     }
 
+    // 证券表 IN 查询每批的代码数
+    private static final int SECURITY_QUERY_BATCH = 1000;
+
+    // 定点单位换算为货币单位
+    private static final double UNITS_PER_CURRENCY = Math.pow(10, ValuationSnapshot.SCALE);
+
     private static class PriceState {
         Map<String, MarketData> previousPrices; // 上一次的价格快照
         Map<String, MarketData> currentPrices;  // 当前的价格快照
@@ -59,47 +83,197 @@ public class ReactivePortfolioValuator {
     }
 
     private final SecurityRepository securityRepository;
+    private final SecurityCache securityCache;
+    private final SecurityMasterLoader securityMasterLoader;
     private final BlackScholesPricingService optionPricingService;
+    private final AmericanOptionPricingService americanPricingService;
     private final CsvPositionReader csvPositionReader;
     private final ReactiveMarketDataProvider marketDataProvider;
+    private final ValuationSendQueue valuationSendQueue;
+    private final ExposureAggregator exposureAggregator;
+    private final ValuationCheckpointer checkpointer;
+    private final ShardAssignment shardAssignment;
+
+    // 流水线各阶段延迟与计数
+    private final StageLatency tickToSnapshot;
+    private final StageLatency snapshotToNav;
+    private final StageLatency navToProto;
+    private final StageLatency sendToAck;
+    private final LongAdder tickCounter;
+    private final LongAdder valuationCounter;
+    private final LongAdder sendFailureCounter;
+    private final LongAdder sendDroppedCounter;
+    private final LongAdder rebasedKeyFrameCounter;
+    private final LongAdder snapshotWaitCounter;
+    private final PipelineMetrics pipelineMetrics;
+
+    // 本实例估值的持仓（分片时只含归本分片的标的及其期权）与证券信息只读取一次，JIT 预热与实时估值共用
+    private final Mono<Position[]> positionsMono;
+    private final Mono<Map<String, Security>> securitiesMono;
 
     public ReactivePortfolioValuator(SecurityRepository securityRepository,
+                                     SecurityCache securityCache,
+                                     SecurityMasterLoader securityMasterLoader,
                                      BlackScholesPricingService optionPricingService,
+                                     AmericanOptionPricingService americanPricingService,
                                      CsvPositionReader csvPositionReader,
-                                     ReactiveMarketDataProvider marketDataProvider) {
+                                     ReactiveMarketDataProvider marketDataProvider,
+                                     ValuationSendQueue valuationSendQueue,
+                                     ExposureAggregator exposureAggregator,
+                                     ValuationCheckpointer checkpointer,
+                                     ShardAssignment shardAssignment,
+                                     PipelineMetrics pipelineMetrics) {
         this.securityRepository = securityRepository;
+        this.securityCache = securityCache;
+        this.securityMasterLoader = securityMasterLoader;
         this.optionPricingService = optionPricingService;
+        this.americanPricingService = americanPricingService;
         this.csvPositionReader = csvPositionReader;
         this.marketDataProvider = marketDataProvider;
+        this.valuationSendQueue = valuationSendQueue;
+        this.exposureAggregator = exposureAggregator;
+        this.checkpointer = checkpointer;
+        this.shardAssignment = shardAssignment;
+        this.tickToSnapshot = pipelineMetrics.stage("tick-to-snapshot");
+        this.snapshotToNav = pipelineMetrics.stage("snapshot-to-nav");
+        this.navToProto = pipelineMetrics.stage("nav-to-proto");
+        this.sendToAck = pipelineMetrics.stage("send-to-ack");
+        this.tickCounter = pipelineMetrics.counter("ticks");
+        this.valuationCounter = pipelineMetrics.counter("valuations");
+        this.sendFailureCounter = pipelineMetrics.counter("send-failures");
+        this.sendDroppedCounter = pipelineMetrics.counter("send-dropped");
+        this.rebasedKeyFrameCounter = pipelineMetrics.counter("send-rebased-key-frames");
+        this.snapshotWaitCounter = pipelineMetrics.counter("snapshot-buffer-waits");
+        this.pipelineMetrics = pipelineMetrics;
+        // 证券信息只在启动时查询一次（先等待证券主数据文件加载完成），且只解析持仓引用到的代码；
+        // 内存中的证券参考数据优先于证券表
+        Mono<List<Position>> csvPositionsMono = Mono.defer(() -> csvPositionReader.readPositions().collectList())
+                .cache();
+        this.securitiesMono = csvPositionsMono
+                .flatMap(positions -> securityMasterLoader.loadConfigured()
+                        .then(Mono.defer(() -> resolveSecurities(positions))))
+                .cache();
+        this.positionsMono = csvPositionsMono
+                .zipWith(securitiesMono, this::ownedPositions)
+                .cache();
     }
 
     @Value("${portfolio.option.contract-multiplier}")
     private int contractMultiplier;
 
-    public Flux<PortfolioValuation> calculateRealTimeValuation() {
-        Flux<Position> positionFlux = csvPositionReader.readPositions();
-        Mono<Position[]> positionsMono = positionFlux
-                .collectList()
-                .map(list -> list.toArray(new Position[0]))
+    // 发送源标识，接收端据此区分多个发送端并分别按序号排序
+    // 分片时每个分片是独立的发送源（源标识/分片）
+    private String sourceId;
+    // 会话 id（启动时间）：从检查点恢复后序号可能低于重启前已发送的序号，接收端据此重置该发送源的排序
+    private final long sessionId = System.currentTimeMillis();
+
+    @Value("${portfolio.valuation.source-id:${spring.application.name:portfolio}}")
+    void setSourceId(String sourceId) {
+        this.sourceId = shardAssignment.sourceId(sourceId);
+    }
+
+    // 价格快照采样间隔（毫秒），决定估值频率上限
+    @Value("${portfolio.valuation.sample-interval:500}")
+    private long sampleInterval;
+
+    // 首选线上格式（COLUMNAR 需与接收端协商成功才会使用）与列式关键帧间隔
+    @Value("${portfolio.valuation.wire-format:COLUMNAR}")
+    private ValuationFormat preferredWireFormat;
+
+    @Value("${portfolio.valuation.key-frame-interval:100}")
+    private int keyFrameInterval;
+
+    // 并行估值：持仓按 chunk-size 切块，在 rails 条 rail 上并行估值（0 表示 CPU 核数）；false 时逐笔查询证券表估值
+    @Value("${portfolio.valuation.parallel.enabled:false}")
+    private boolean parallelEnabled;
+
+    @Value("${portfolio.valuation.parallel.chunk-size:2048}")
+    private int parallelChunkSize;
+
+    @Value("${portfolio.valuation.parallel.rails:0}")
+    private int parallelRails;
+
+    // 分阶段流水线：行情进入 intake 阶段的缓冲，以及 aggregation / encode 阶段之前最多排队的估值数
+    @Value("${portfolio.valuation.pipeline.intake-buffer:256}")
+    private int intakeBuffer;
+
+    @Value("${portfolio.valuation.pipeline.handoff-size:2}")
+    private int handoffSize;
+
+    // 各阶段的调度器；revaluation 在并行模式下有 rails 个线程，其余阶段依赖顺序，均为单线程
+    private PipelineStage intakeStage;
+    private PipelineStage revaluationStage;
+    private PipelineStage aggregationStage;
+    private PipelineStage encodeStage;
+
+    // 协商结果，发送失败后置空以便重新协商（接收端可能已更换版本）
+    private volatile ValuationFormat wireFormat;
+    private ValuationFrameCodec.Encoder frameEncoder; // 在 encode 阶段创建与使用，发送线程只调用 requestKeyFrame
+    // 发送线程最近交出的帧序号，即接收端下一帧的增量基准；-1 表示未知（丢弃或发送失败之后）
+    private volatile int lastSentFrame = -1;
+
+    /**
+     * 实时估值流，分为五个阶段，各阶段在自己的调度器上运行，相邻阶段经有界缓冲交接：
+     * intake（行情合并为价格快照）→ revaluation（逐笔估值写入快照）→ aggregation（NAV 归约）
+     * → encode（转换为线上消息）→ send（ValuationSendQueue 的发送线程）
+     * 发出的快照在 onNext 返回后即可能被后续估值复用，订阅方需在 onNext 中同步使用，或先 retain、用完 release
+     */
+    public Flux<ValuationSnapshot> calculateRealTimeValuation() {
+        startStages();
+        // gRPC 发送在发送队列自己的线程上进行，接收端变慢不会阻塞估值
+        valuationSendQueue.start(this::sendEncodedValuation);
+        // 热重启：行情订阅之前恢复定价策略，价格快照与估值序号从检查点继续
+        ValuationCheckpoint checkpoint = checkpointer.restore();
+        Map<String, MarketData> restoredPrices = checkpoint == null
+                ? new HashMap<>() : new HashMap<>(checkpoint.getPrices());
+        int restoredUpdateCount = checkpoint == null ? 0 : checkpoint.getUpdateCount();
+        checkpointer.start();
+        // 快照槽位：发送队列容量 + 正在发送的一个 + 正在估值的一个 + aggregation/encode 各自的交接缓冲与处理中的一个
+        Mono<ValuationSnapshotPool> snapshotPoolMono = positionsMono
+                .map(positions -> {
+                    ValuationSnapshotPool pool = new ValuationSnapshotPool(positions,
+                            valuationSendQueue.getCapacity() + 2 + 2 * (handoffSize + 1), snapshotWaitCounter);
+                    pipelineMetrics.gauge("snapshot-buffers-free", pool::available);
+                    log.info("Valuation snapshots: {} buffers x {} positions", pool.getSlots(), positions.length);
+                    return pool;
+                })
+                .cache();
+        // 已解析的持仓簿，供并行估值与按标的的风险汇总使用
+        Mono<ResolvedBook> bookMono = positionsMono
+                .flatMap(positions -> securitiesMono
+                        .map(securities -> ResolvedBook.resolve(positions, securities))
+                        .doOnNext(book -> exposureAggregator.load(positions, book)))
+                .doOnNext(book -> {
+                    if (parallelEnabled) {
+                        log.info("Parallel valuation: {} positions in chunks of {}", book.size(), parallelChunkSize);
+                    }
+                })
                 .cache();
 
-        Flux<MarketData> marketDataFlux = marketDataProvider.publishMarketData();
-        Mono<Map<String, MarketData>> latestPriceCacheMono = Mono.just(new HashMap<>());
+        // 分片时只处理归本分片的标的的行情
+        Flux<MarketData> marketDataFlux = marketDataProvider.publishMarketData()
+                .filter(marketData -> shardAssignment.owns(marketData.getTicker()))
+                .doOnNext(marketData -> tickCounter.increment());
+        Map<String, MarketData> latestPrices = new HashMap<>(restoredPrices); // 只在 intake 线程上访问
 
-        // 生成价格快照流（每500ms一次）
+        // intake：行情在独立线程上合并，每sampleInterval毫秒（默认500ms）取一次价格快照
         Flux<HashMap<String, MarketData>> priceSnapshotFlux = marketDataFlux
-                .flatMap(marketData -> latestPriceCacheMono.flatMap(cache -> {
-                    cache.put(marketData.getTicker(), marketData);
-                    return Mono.just(new HashMap<>(cache)); // 返回缓存副本，避免并发修改
-                }))
-                .sample(Duration.ofMillis(500))
+                .publishOn(intakeStage.scheduler(), intakeBuffer)
+                .map(marketData -> {
+                    long startNanos = intakeStage.now();
+                    latestPrices.put(marketData.getTicker(), marketData);
+                    HashMap<String, MarketData> copy = new HashMap<>(latestPrices); // 返回副本，采样线程读取时不受后续行情影响
+                    intakeStage.recordBusySince(startNanos);
+                    return copy;
+                })
+                .sample(Duration.ofMillis(sampleInterval))
                 .filter(cache -> !cache.isEmpty());
 
         // 调整scan逻辑：记录上一次和当前的价格快照
         Flux<PriceState> priceStateFlux = priceSnapshotFlux
                 .scan(
-                        // 初始状态：上一次为空，当前为空，计数0
-                        new PriceState(new HashMap<>(), new HashMap<>(), 0),
+                        // 初始状态：上一次为空，当前为检查点中的价格（冷启动为空），计数从检查点继续（冷启动为0）
+                        new PriceState(new HashMap<>(), restoredPrices, restoredUpdateCount),
                         // 累加器：新状态的previous = 旧状态的current，新状态的current = 当前快照
                         (previousState, currentSnapshot) ->
                                 new PriceState(
@@ -107,58 +281,218 @@ public class ReactivePortfolioValuator {
                                         currentSnapshot,              // 当前 = 最新快照
                                         previousState.updateCount + 1 // 计数+1
                                 )
-                );
+                )
+                // 热重启时初始状态即检查点中已发出的估值，不再重复发送，下一次估值的序号紧接检查点
+                .skip(checkpoint == null ? 0 : 1);
 
-        // 生成估值结果（包含价格变化信息）
-        return priceStateFlux.flatMap(state -> positionsMono.flatMap(positions -> {
-            // 3. 直接从state中获取上一次和当前价格，无需block
-            Map<String, BigDecimal> changedPrices = new HashMap<>();
-            Map<String, MarketData> currentPrices = state.currentPrices;
-            Map<String, MarketData> lastPrices = state.previousPrices; // 这里直接用state保存的上一次价格
-
-            for (String ticker : TARGET_STOCKS) {
-                MarketData current = currentPrices.get(ticker);
-                MarketData last = lastPrices.get(ticker);
-                if (current != null && (last == null || !current.getPrice().equals(last.getPrice()))) {
-                    changedPrices.put(ticker, current.getPrice());
-                }
+        // revaluation 同一时刻只计算一次估值，上一次完成后才取下一个价格状态（不预取），跟不上采样时只估值最新的价格；
+        // 之后每个阶段处理当前估值时，上游阶段已可开始下一次估值
+        return priceStateFlux
+                .onBackpressureLatest()
+                .concatMap(state -> bookMono.then(snapshotPoolMono)
+                        .flatMap(pool -> revalue(state, pool, bookMono))
+                        .subscribeOn(revaluationStage.scheduler()), 0)
+                .publishOn(aggregationStage.scheduler(), handoffSize)
+                .map(this::aggregate)
+                .publishOn(encodeStage.scheduler(), handoffSize)
+                .map(this::encode)
+                // 下游 onNext 返回后释放估值自身持有的引用
+                .concatMap(snapshot -> Mono.just(snapshot).doFinally(signal -> snapshot.release()), 1)
+                // 取消订阅时仍在阶段缓冲中的快照归还槽位
+                .doOnDiscard(Revaluation.class, revaluation -> revaluation.snapshot.release())
+                .doOnDiscard(ValuationSnapshot.class, ValuationSnapshot::release);
+    }
+
+    private synchronized void startStages() {
+        if (intakeStage != null) {
+            return;
+        }
+        if (intakeBuffer <= 0 || handoffSize <= 0) {
+            throw new IllegalArgumentException("portfolio.valuation.pipeline.intake-buffer 与 handoff-size 必须大于0");
+        }
+        int rails = parallelRails > 0 ? parallelRails : Schedulers.DEFAULT_POOL_SIZE;
+        intakeStage = new PipelineStage("intake", 1, pipelineMetrics);
+        revaluationStage = new PipelineStage("revaluation", parallelEnabled ? rails : 1, pipelineMetrics);
+        aggregationStage = new PipelineStage("aggregation", 1, pipelineMetrics);
+        encodeStage = new PipelineStage("encode", 1, pipelineMetrics);
+        log.info("Valuation pipeline: intake-buffer={}, revaluation threads={}, handoff-size={}",
+                intakeBuffer, revaluationStage.getThreads(), handoffSize);
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (intakeStage == null) {
+            return;
+        }
+        intakeStage.dispose();
+        revaluationStage.dispose();
+        aggregationStage.dispose();
+        encodeStage.dispose();
+    }
+
+    /**
+     * JIT 预热用的估值：与实时估值相同的逐笔定价、NAV 归约、风险汇总、两种线上格式的编码与序列化，
+     * 但使用自己的快照、风险汇总与编码器；不发送、不协商格式，不计入估值指标与检查点，也不改变定价策略的状态
+     */
+    ValuationWarmup.Target warmUpTarget() {
+        Position[] positions = positionsMono.block();
+        ResolvedBook book = ResolvedBook.resolve(positions, securitiesMono.block());
+        return new WarmUpTarget(positions, book);
+    }
+
+    // 持仓引用到的证券：先取内存中的参考数据，其余按代码分批 IN 查询证券表，不加载整张证券表
+    private Mono<Map<String, Security>> resolveSecurities(List<Position> positions) {
+        Map<String, Security> securities = new HashMap<>();
+        Set<String> missing = new HashSet<>();
+        for (Position position : positions) {
+            String ticker = position.getTicker();
+            Security cached = securityCache.get(ticker);
+            if (cached != null) {
+                securities.put(ticker, cached);
+            } else {
+                missing.add(ticker);
             }
+        }
+        log.info("Securities: {} tickers referenced, {} from security master, {} queried",
+                securities.size() + missing.size(), securities.size(), missing.size());
+        return Flux.fromIterable(missing)
+                .buffer(SECURITY_QUERY_BATCH)
+                .concatMap(securityRepository::findByTickerIn)
+                .collect(() -> securities, (map, security) -> map.put(security.getTicker(), security));
+    }
 
-            // 计算每个持仓的价值和价格（后续逻辑不变）
-            Flux<BigDecimal> positionValueFlux = Flux.fromArray(positions)
-                    .flatMap(position -> calculatePositionWithPriceCache(position, currentPrices));
-
-            return positionValueFlux
-                    .reduce(BigDecimal.ZERO, BigDecimal::add)
-                    .map(totalNav -> {
-                        PortfolioValuation valuation = new PortfolioValuation(
-                                positions,
-                                totalNav,
-                                System.currentTimeMillis(),
-                                state.updateCount,
-                                changedPrices
-                        );
-
-                        // 转换为gRPC消息并发送
-                        sendValuationToGrpc(valuation);
-
-                        return valuation;
-                    });
-        }));
-    }
-
-    // 转换并发送估值结果
-    private void sendValuationToGrpc(PortfolioValuation valuation) {
-        log.info("开始发送估值 #{} 到gRPC服务", valuation.getUpdateCount()); // 新增日志
-        // 转换Position到PositionProto
-        List<PositionProto> positionProtos = Arrays.stream(valuation.getPositions())
-                .map(pos -> PositionProto.newBuilder()
-                        .setTicker(pos.getTicker())
-                        .setQuantity(pos.getQuantity())
-                        .setPrice(pos.getPrice().doubleValue())
-                        .setMarketValue(pos.getMarketValue().doubleValue())
-                        .build())
-                .collect(Collectors.toList());
+    // 分片时只保留标的归本分片的持仓（股票按自身代码，期权按标的；证券表中查不到的按持仓代码）
+    private Position[] ownedPositions(List<Position> positions, Map<String, Security> securities) {
+        if (!shardAssignment.isEnabled()) {
+            return positions.toArray(new Position[0]);
+        }
+        List<Position> owned = new ArrayList<>();
+        Set<String> underlyings = new HashSet<>();
+        for (Position position : positions) {
+            Security security = securities.get(position.getTicker());
+            String underlying = security == null || security.getSecurityType() == SecurityType.STOCK
+                    ? position.getTicker() : security.getUnderlyingTicker();
+            if (shardAssignment.owns(underlying)) {
+                owned.add(position);
+                underlyings.add(underlying);
+            }
+        }
+        log.info("Shard [{}]: {} of {} positions on {} underlyings", shardAssignment.getShardId(),
+                owned.size(), positions.size(), underlyings.size());
+        return owned.toArray(new Position[0]);
+    }
+
+    // revaluation：取空闲槽位并写入各持仓的价格与市值；上一次估值的槽位可能仍在后续阶段，互不干扰
+    private Mono<Revaluation> revalue(PriceState state, ValuationSnapshotPool pool, Mono<ResolvedBook> bookMono) {
+        // 3. 直接从state中获取上一次和当前价格，无需block
+        Map<String, BigDecimal> changedPrices = new HashMap<>();
+        Map<String, MarketData> currentPrices = state.currentPrices;
+        Map<String, MarketData> lastPrices = state.previousPrices; // 这里直接用state保存的上一次价格
+        long tickTimestamp = latestTickTimestamp(currentPrices);
+        long snapshotNanos = System.nanoTime();
+        tickToSnapshot.recordMillis(System.currentTimeMillis() - tickTimestamp);
+        collectChangedPrices(lastPrices, currentPrices, changedPrices);
+
+        ValuationSnapshot snapshot = pool.acquire();
+        Mono<FixedPointAccumulator[]> partialsMono;
+        if (parallelEnabled) {
+            partialsMono = bookMono.flatMap(book -> calculateBookInParallel(book, snapshot, currentPrices));
+        } else {
+            // 逐笔模式的查询在 R2DBC 线程上完成，阶段忙碌时间按估值从开始到完成计
+            long startNanos = revaluationStage.now();
+            partialsMono = Flux.range(0, snapshot.size())
+                    .flatMap(index -> calculatePositionWithPriceCache(index, snapshot, currentPrices))
+                    .reduceWith(() -> new FixedPointAccumulator(ValuationSnapshot.SCALE),
+                            FixedPointAccumulator::addUnscaled)
+                    .map(sum -> new FixedPointAccumulator[]{sum})
+                    .doOnSuccess(partials -> revaluationStage.recordBusySince(startNanos));
+        }
+        return partialsMono
+                .map(partials -> new Revaluation(state, snapshot, partials, changedPrices, tickTimestamp, snapshotNanos))
+                .doOnError(error -> snapshot.release());
+    }
+
+    private static void collectChangedPrices(Map<String, MarketData> lastPrices, Map<String, MarketData> currentPrices,
+                                             Map<String, BigDecimal> changedPrices) {
+        for (String ticker : TARGET_STOCKS) {
+            MarketData current = currentPrices.get(ticker);
+            MarketData last = lastPrices.get(ticker);
+            if (current != null && (last == null || !current.getPrice().equals(last.getPrice()))) {
+                changedPrices.put(ticker, current.getPrice());
+            }
+        }
+    }
+
+    // aggregation：按块下标两两归约 NAV，增量更新按标的的风险汇总，补全快照元数据后快照不再修改
+    private ValuationSnapshot aggregate(Revaluation revaluation) {
+        long startNanos = aggregationStage.now();
+        FixedPointAccumulator totalNav = PairwiseSum.of(revaluation.partials);
+        Collection<UnderlyingExposure> exposures = exposureAggregator.update(revaluation.state.currentPrices);
+        ValuationSnapshot snapshot = revaluation.snapshot;
+        snapshot.complete(
+                totalNav.toBigDecimal(),
+                System.currentTimeMillis(),
+                revaluation.state.updateCount,
+                revaluation.changedPrices,
+                revaluation.tickTimestamp,
+                exposures
+        );
+        checkpointer.record(snapshot.getUpdateCount(), snapshot.getTimestamp(), snapshot.getTotalNav(),
+                revaluation.state.currentPrices);
+        snapshotToNav.recordNanos(System.nanoTime() - revaluation.snapshotNanos);
+        valuationCounter.increment();
+        aggregationStage.recordBusySince(startNanos);
+        return snapshot;
+    }
+
+    // encode：按协商的线上格式转换为gRPC消息，交给发送队列（队列持有自己的引用）；列式编码器只在本阶段的单线程上使用
+    private ValuationSnapshot encode(ValuationSnapshot snapshot) {
+        long startNanos = encodeStage.now();
+        ValuationFormat format = wireFormat;
+        if (format == null) {
+            format = portfolioValuationClient.negotiateFormat(sourceId, preferredWireFormat);
+            wireFormat = format;
+        }
+        long protoStartNanos = System.nanoTime();
+        Message message;
+        if (format == ValuationFormat.COLUMNAR) {
+            if (frameEncoder == null) {
+                frameEncoder = newFrameEncoder();
+            }
+            message = encodeFrame(frameEncoder, snapshot);
+        } else {
+            message = toValuationMessage(snapshot);
+        }
+        navToProto.recordNanos(System.nanoTime() - protoStartNanos);
+        encodeStage.recordBusySince(startNanos);
+
+        valuationSendQueue.offer(new EncodedValuation(snapshot, message));
+        return snapshot;
+    }
+
+    // send：在 valuation-send 线程上按编码时的格式发送
+    private void sendEncodedValuation(EncodedValuation encoded) {
+        ValuationSnapshot snapshot = encoded.getSnapshot();
+        log.info("开始发送估值 #{} 到gRPC服务", snapshot.getUpdateCount()); // 新增日志
+        if (encoded.getMessage() instanceof PortfolioValuationBatch) {
+            sendValuationFrame(snapshot, rebase(snapshot, (PortfolioValuationBatch) encoded.getMessage()));
+        } else {
+            sendValuationMessage((PortfolioValuationMessage) encoded.getMessage());
+        }
+    }
+
+    // 行式格式：PortfolioValuationMessage
+    private PortfolioValuationMessage toValuationMessage(ValuationSnapshot valuation) {
+        // 定点列转换为PositionProto（units / 10^SCALE 与 BigDecimal.doubleValue 结果一致）
+        List<PositionProto> positionProtos = new ArrayList<>(valuation.size());
+        for (int i = 0; i < valuation.size(); i++) {
+            positionProtos.add(PositionProto.newBuilder()
+                    .setTicker(valuation.getTicker(i))
+                    .setQuantity(valuation.getQuantity(i))
+                    .setPrice(valuation.getPriceUnits(i) / UNITS_PER_CURRENCY)
+                    .setMarketValue(valuation.getMarketValueUnits(i) / UNITS_PER_CURRENCY)
+                    .build());
+        }
 
         // 转换市场数据变化
         List<MarketDataChangeProto> marketDataProtos = valuation.getChangedMarketData().entrySet().stream()
@@ -169,101 +503,335 @@ public class ReactivePortfolioValuator {
                 .collect(Collectors.toList());
 
         // 构建消息
-        PortfolioValuationMessage message = PortfolioValuationMessage.newBuilder()
+        return PortfolioValuationMessage.newBuilder()
                 .addAllPositions(positionProtos)
                 .setTotalNav(valuation.getTotalNav().doubleValue())
                 .setTimestamp(valuation.getTimestamp())
                 .setUpdateCount(valuation.getUpdateCount())
                 .addAllChangedMarketData(marketDataProtos)
+                .setTickTimestamp(valuation.getTickTimestamp())
+                .setSourceId(sourceId)
+                .setShardId(shardAssignment.getShardId())
+                .setSessionId(sessionId)
+                .setExposures(toExposureProto(valuation.getExposures()))
                 .build();
+    }
 
-        // 发送消息
-        portfolioValuationClient.sendValuation(
-                param -> message,
-                response -> log.info("估值消息发送成功: {}", response),
-                e -> log.error("估值消息发送失败", e),
-                message
-        );
+    // 风险汇总转换为线上格式（定点原值，不经过 BigDecimal）
+    private static ExposureRollupProto toExposureProto(Collection<UnderlyingExposure> exposures) {
+        ExposureRollupProto.Builder builder = ExposureRollupProto.newBuilder().setScale(UnderlyingExposure.SCALE);
+        for (UnderlyingExposure exposure : exposures) {
+            builder.addUnderlyings(UnderlyingExposureProto.newBuilder()
+                    .setUnderlying(exposure.getUnderlying())
+                    .setNetShares(exposure.getNetShares())
+                    .setDeltaShares(exposure.deltaSharesUnits())
+                    .setDeltaDollars(exposure.deltaDollarsUnits())
+                    .setGamma(exposure.gammaUnits())
+                    .setVega(exposure.vegaUnits()));
+        }
+        return builder.build();
     }
 
-    // 计算持仓时设置price字段
-    private Mono<BigDecimal> calculatePositionWithPriceCache(Position position, Map<String, MarketData> priceCache) {
-        String positionTicker = position.getTicker();
-        int quantity = position.getQuantity();
+    private void sendValuationMessage(PortfolioValuationMessage message) {
+        long sendStartNanos = System.nanoTime();
+        Consumer<ValuationResponse> onAck = response -> {
+            sendToAck.recordNanos(System.nanoTime() - sendStartNanos);
+            log.info("估值消息发送成功: {}", response);
+        };
+        Consumer<Throwable> onError = e -> {
+            if (e instanceof ValuationBatcher.DroppedException) {
+                // 攒批积压被丢弃，接收端仍在线，无需重新协商
+                sendDroppedCounter.increment();
+                return;
+            }
+            sendFailureCounter.increment();
+            wireFormat = null;
+            log.error("估值消息发送失败", e);
+        };
+        if (portfolioValuationClient.isBatching()) {
+            portfolioValuationClient.sendBatched(message, onAck, onError);
+            return;
+        }
+        // 发送消息（阻塞调用，成功回调时即收到接收端确认）
+        portfolioValuationClient.sendValuation(param -> message, onAck, onError, message);
+    }
 
-        return securityRepository.findByTicker(positionTicker)
-                .flatMap(security -> {
-                    MarketData targetMarketData = null;
-                    if (security.getSecurityType() == SecurityType.STOCK) {
-                        targetMarketData = priceCache.get(positionTicker);
-                    } else {
-                        String underlyingTicker = security.getUnderlyingTicker();
-                        targetMarketData = priceCache.get(underlyingTicker);
-                    }
+    // 帧在进入发送队列之前编码，增量基准是上一条编码的估值；发送队列或攒批丢弃过估值、上一帧发送失败时
+    // 接收端没有这个基准，改为以关键帧发送，其后的帧仍以本估值为基准
+    private PortfolioValuationBatch rebase(ValuationSnapshot valuation, PortfolioValuationBatch frame) {
+        if (!frame.getKeyFrame() && frame.getBaseUpdateCount() != lastSentFrame) {
+            rebasedKeyFrameCounter.increment();
+            log.debug("估值 #{} 的增量基准 #{} 未发送，改为关键帧", frame.getUpdateCount(), frame.getBaseUpdateCount());
+            frame = encodeFrame(newFrameEncoder(), valuation);
+        }
+        lastSentFrame = frame.getUpdateCount();
+        return frame;
+    }
 
-                    if (targetMarketData == null) {
-                        log.info("标的{}暂无最新价格，市值暂设为0", positionTicker);
-                        position.setPrice(BigDecimal.ZERO);
-                        position.setMarketValue(BigDecimal.ZERO);
-                        return Mono.just(BigDecimal.ZERO);
-                    }
+    // 列式格式：PortfolioValuationBatch；帧已在 encode 阶段按顺序编码，发送线程保持同一顺序
+    private void sendValuationFrame(ValuationSnapshot valuation, PortfolioValuationBatch frame) {
+        if (portfolioValuationClient.isBatching()) {
+            sendFrameBatched(frame);
+            return;
+        }
+        // 接收端缺少基准帧（例如刚重启）时，立即以关键帧重发同一估值，避免接收端出现序号缺口；
+        // 关键帧由独立的编码器生成，不打乱 encode 阶段编码器的增量基准（其后的帧以本估值为基准）
+        if (sendFrameOnce(frame)) {
+            log.warn("接收端要求关键帧，估值 #{} 以关键帧重发", valuation.getUpdateCount());
+            sendFrameOnce(encodeFrame(newFrameEncoder(), valuation));
+        }
+    }
 
-                    // 股票：设置价格为市场价格
-                    if (security.getSecurityType() == SecurityType.STOCK) {
-                        BigDecimal stockPrice = targetMarketData.getPrice();
-                        position.setPrice(stockPrice); // 存储股票当前价格
-                        BigDecimal stockValue = stockPrice.multiply(BigDecimal.valueOf(quantity));
-                        position.setMarketValue(stockValue);
-                        return Mono.just(stockValue);
+    // 攒批发送时确认是异步的，无法重发同一估值：接收端要求关键帧或批次被丢弃时让发送线程的下一帧成为关键帧
+    private void sendFrameBatched(PortfolioValuationBatch frame) {
+        long sendStartNanos = System.nanoTime();
+        portfolioValuationClient.sendBatched(frame,
+                response -> {
+                    sendToAck.recordNanos(System.nanoTime() - sendStartNanos);
+                    if (response.getKeyFrameRequired()) {
+                        lastSentFrame = -1;
                     }
-                    // 期权：设置价格为理论价格
-                    else {
-                        double underlyingSigma = getUnderlyingSigma(security.getUnderlyingTicker());
-                        BigDecimal optionPrice = optionPricingService.calculate(
-                                security.getSecurityType(),
-                                targetMarketData.getPrice(),
-                                security.getStrikePrice(),
-                                calculateTimeToMaturity(security.getMaturityDate()),
-                                optionPricingService.getRiskFreeRate(),
-                                underlyingSigma
-                        );
-                        position.setPrice(optionPrice); // 存储期权理论价格
-                        BigDecimal optionValue = optionPrice
-                                .multiply(BigDecimal.valueOf(quantity))
-                                .multiply(BigDecimal.valueOf(contractMultiplier));
-                        position.setMarketValue(optionValue);
-                        return Mono.just(optionValue);
+                    log.info("估值帧发送成功: {}", response.getMessage());
+                },
+                e -> {
+                    lastSentFrame = -1;
+                    if (e instanceof ValuationBatcher.DroppedException) {
+                        // 攒批积压被丢弃：后续帧缺少增量基准，下一帧改为关键帧，无需重新协商
+                        sendDroppedCounter.increment();
+                        return;
                     }
-                })
+                    sendFailureCounter.increment();
+                    // 重新协商后接收端从关键帧重新开始
+                    frameEncoder.requestKeyFrame();
+                    wireFormat = null;
+                    log.error("估值帧发送失败", e);
+                });
+    }
+
+    private ValuationFrameCodec.Encoder newFrameEncoder() {
+        return new ValuationFrameCodec.Encoder(sourceId, shardAssignment.getShardId(), sessionId,
+                ValuationSnapshot.SCALE, keyFrameInterval);
+    }
+
+    // 快照的定点列直接交给编码器（scale 相同，不经过 BigDecimal / double）
+    private PortfolioValuationBatch encodeFrame(ValuationFrameCodec.Encoder encoder, ValuationSnapshot valuation) {
+        return encoder.encode(valuation.getUpdateCount(), valuation.getTimestamp(), valuation.getTickTimestamp(),
+                valuation.tickers(), valuation.quantities(), valuation.prices(), valuation.marketValues(),
+                ValuationSnapshot.SCALE,
+                FixedPointAccumulator.toUnscaled(valuation.getTotalNav(), ValuationSnapshot.SCALE),
+                valuation.getChangedMarketData(), toExposureProto(valuation.getExposures()));
+    }
+
+    // 返回接收端是否要求关键帧
+    private boolean sendFrameOnce(PortfolioValuationBatch frame) {
+        long sendStartNanos = System.nanoTime();
+        AtomicBoolean keyFrameRequired = new AtomicBoolean();
+        portfolioValuationClient.sendValuationFrame(
+                param -> frame,
+                response -> {
+                    sendToAck.recordNanos(System.nanoTime() - sendStartNanos);
+                    keyFrameRequired.set(response.getKeyFrameRequired());
+                    log.info("估值帧发送成功: {}", response.getMessage());
+                },
+                e -> {
+                    sendFailureCounter.increment();
+                    // 接收端可能重启，丢失了增量基准帧
+                    lastSentFrame = -1;
+                    frameEncoder.requestKeyFrame();
+                    wireFormat = null;
+                    log.error("估值帧发送失败", e);
+                },
+                frame
+        );
+        return keyFrameRequired.get();
+    }
+
+    // 快照中最新一笔行情的时间戳，用于衡量行情到接收端的端到端延迟
+    private long latestTickTimestamp(Map<String, MarketData> priceCache) {
+        long latest = 0L;
+        for (MarketData marketData : priceCache.values()) {
+            latest = Math.max(latest, marketData.getTimestamp());
+        }
+        return latest;
+    }
+
+    // 逐笔模式：查询证券（内存中的参考数据优先，其次证券表）后估值，结果写入快照第 index 行，返回市值（定点）
+    private Mono<Long> calculatePositionWithPriceCache(int index, ValuationSnapshot snapshot,
+                                                       Map<String, MarketData> priceCache) {
+        String ticker = snapshot.getTicker(index);
+        return Mono.justOrEmpty(securityCache.get(ticker))
+                .switchIfEmpty(Mono.defer(() -> securityRepository.findByTicker(ticker)))
+                .map(security -> valuePosition(index, security, snapshot, priceCache))
+                // 证券表中查不到的持仓不计入 NAV
+                .switchIfEmpty(Mono.fromSupplier(() -> zeroPosition(index, snapshot)))
                 .onErrorResume(error -> {
                     log.error("计算持仓价值异常", error);
-                    position.setPrice(BigDecimal.ZERO);
-                    position.setMarketValue(BigDecimal.ZERO);
-                    return Mono.just(BigDecimal.ZERO);
+                    return Mono.just(zeroPosition(index, snapshot));
                 });
     }
-    // 获取标的股票的σ（与GBM策略中的σ保持一致）
-    private double getUnderlyingSigma(String underlyingTicker) {
-        // 此处应与GBMPricingStrategy中的σ逻辑一致，可通过配置中心或数据库统一管理
-        String ticker = underlyingTicker.toUpperCase();
-        double sigma;
-        switch (ticker) {
-            case "AAPL":
-                sigma = 0.2; // 需与GBM的sigmaAAPL保持一致
-                break;
-            case "TELSA":
-                sigma = 0.3; // 需与GBM的sigmaTELSA保持一致
-                break;
-            default:
-                sigma = 0.2;
-                break;
+
+    // 并行模式：按 chunkSize 切分持仓，各块在 revaluation 阶段的 rail 上同步估值，块内定点累加；块间归约在 aggregation 阶段按下标进行
+    private Mono<FixedPointAccumulator[]> calculateBookInParallel(ResolvedBook book, ValuationSnapshot snapshot,
+                                                                  Map<String, MarketData> priceCache) {
+        int chunks = book.chunkCount(parallelChunkSize);
+        return Flux.range(0, chunks)
+                .parallel(Math.min(revaluationStage.getThreads(), Math.max(chunks, 1)))
+                .runOn(revaluationStage.scheduler())
+                .map(chunk -> new ChunkValue(chunk, valueChunk(book, chunk, snapshot, priceCache)))
+                .sequential()
+                .collect(() -> new FixedPointAccumulator[chunks],
+                        (partials, value) -> partials[value.chunk] = value.value);
+    }
+
+    private FixedPointAccumulator valueChunk(ResolvedBook book, int chunk, ValuationSnapshot snapshot,
+                                             Map<String, MarketData> priceCache) {
+        long startNanos = revaluationStage.now();
+        FixedPointAccumulator sum = sumChunk(book, chunk, snapshot, priceCache);
+        revaluationStage.recordBusySince(startNanos);
+        return sum;
+    }
+
+    private FixedPointAccumulator sumChunk(ResolvedBook book, int chunk, ValuationSnapshot snapshot,
+                                           Map<String, MarketData> priceCache) {
+        int from = chunk * parallelChunkSize;
+        int to = Math.min(from + parallelChunkSize, book.size());
+        FixedPointAccumulator sum = new FixedPointAccumulator(ValuationSnapshot.SCALE);
+        for (int i = from; i < to; i++) {
+            Security security = book.securityAt(i);
+            if (security == null) {
+                zeroPosition(i, snapshot); // 与逐笔模式一致：证券表中查不到的持仓不计入 NAV
+                continue;
+            }
+            try {
+                sum.addUnscaled(valuePosition(i, security, snapshot, priceCache));
+            } catch (RuntimeException error) {
+                log.error("计算持仓价值异常", error);
+                zeroPosition(i, snapshot);
+            }
+        }
+        return sum;
+    }
+
+    // 单笔持仓估值（逐笔与并行两种模式共用，保证结果逐位一致）：价格与市值写入快照，返回市值（定点）
+    private long valuePosition(int index, Security security, ValuationSnapshot snapshot,
+                               Map<String, MarketData> priceCache) {
+        String positionTicker = snapshot.getTicker(index);
+        int quantity = snapshot.getQuantity(index);
+        MarketData targetMarketData;
+        if (security.getSecurityType() == SecurityType.STOCK) {
+            targetMarketData = priceCache.get(positionTicker);
+        } else {
+            targetMarketData = priceCache.get(security.getUnderlyingTicker());
+        }
+
+        if (targetMarketData == null) {
+            log.info("标的{}暂无最新价格，市值暂设为0", positionTicker);
+            return zeroPosition(index, snapshot);
+        }
+
+        // 股票：价格为市场价格
+        if (security.getSecurityType() == SecurityType.STOCK) {
+            long stockPrice = FixedPointAccumulator.toUnscaled(targetMarketData.getPrice(), ValuationSnapshot.SCALE);
+            long stockValue = Math.multiplyExact(stockPrice, (long) quantity);
+            snapshot.setPosition(index, stockPrice, stockValue);
+            return stockValue;
+        }
+        // 期权：价格为理论价格（美式期权按 AmericanOptionPricingService 定价）
+        double underlyingSigma = optionPricingService.getUnderlyingSigma(security.getUnderlyingTicker());
+        double timeToMaturity = optionPricingService.timeToMaturity(security.getMaturityDate(), LocalDate.now());
+        BigDecimal optionPrice = security.getExerciseStyle() == ExerciseStyle.AMERICAN
+                ? americanPricingService.calculate(security.getSecurityType(), targetMarketData.getPrice(),
+                        security.getStrikePrice(), timeToMaturity, optionPricingService.getRiskFreeRate(), underlyingSigma)
+                : optionPricingService.calculate(security.getSecurityType(), targetMarketData.getPrice(),
+                        security.getStrikePrice(), timeToMaturity, optionPricingService.getRiskFreeRate(), underlyingSigma);
+        long optionPriceUnits = FixedPointAccumulator.toUnscaled(optionPrice, ValuationSnapshot.SCALE);
+        long optionValue = Math.multiplyExact(Math.multiplyExact(optionPriceUnits, (long) quantity), (long) contractMultiplier);
+        snapshot.setPosition(index, optionPriceUnits, optionValue);
+        return optionValue;
+    }
+
+    // 槽位会被复用，不能留下更早一次估值的数据
+    private static long zeroPosition(int index, ValuationSnapshot snapshot) {
+        snapshot.setPosition(index, 0L, 0L);
+        return 0L;
+    }
+
+    // revaluation 阶段交给 aggregation 阶段的中间结果
+    private static final class Revaluation {
+        private final PriceState state;
+        private final ValuationSnapshot snapshot;
+        private final FixedPointAccumulator[] partials; // 各块的定点部分和（逐笔模式只有一块）
+        private final Map<String, BigDecimal> changedPrices;
+        private final long tickTimestamp;
+        private final long snapshotNanos;
+
+        private Revaluation(PriceState state, ValuationSnapshot snapshot, FixedPointAccumulator[] partials,
+                            Map<String, BigDecimal> changedPrices, long tickTimestamp, long snapshotNanos) {
+            this.state = state;
+            this.snapshot = snapshot;
+            this.partials = partials;
+            this.changedPrices = changedPrices;
+            this.tickTimestamp = tickTimestamp;
+            this.snapshotNanos = snapshotNanos;
+        }
+    }
+
+    private final class WarmUpTarget implements ValuationWarmup.Target {
+        private final ResolvedBook book;
+        private final ValuationSnapshotPool pool;
+        private final ExposureAggregator exposures;
+        private final ValuationFrameCodec.Encoder encoder;
+        private final Set<String> underlyings = new TreeSet<>();
+        private Map<String, MarketData> previousPrices = new HashMap<>();
+
+        private WarmUpTarget(Position[] positions, ResolvedBook book) {
+            this.book = book;
+            this.pool = new ValuationSnapshotPool(positions, 2, new LongAdder());
+            this.exposures = new ExposureAggregator(optionPricingService, contractMultiplier, new PipelineMetrics());
+            this.exposures.load(positions, book);
+            this.encoder = newFrameEncoder();
+            for (int i = 0; i < book.size(); i++) {
+                Security security = book.securityAt(i);
+                if (security != null) {
+                    underlyings.add(security.getSecurityType() == SecurityType.STOCK
+                            ? security.getTicker() : security.getUnderlyingTicker());
+                }
+            }
+        }
+
+        @Override
+        public Collection<String> underlyings() {
+            return underlyings;
+        }
+
+        @Override
+        public int valueOnce(int iteration, Map<String, MarketData> prices) {
+            Map<String, BigDecimal> changedPrices = new HashMap<>();
+            collectChangedPrices(previousPrices, prices, changedPrices);
+            previousPrices = prices;
+            ValuationSnapshot snapshot = pool.acquire();
+            try {
+                FixedPointAccumulator[] partials = new FixedPointAccumulator[book.chunkCount(parallelChunkSize)];
+                for (int chunk = 0; chunk < partials.length; chunk++) {
+                    partials[chunk] = sumChunk(book, chunk, snapshot, prices);
+                }
+                snapshot.complete(PairwiseSum.of(partials).toBigDecimal(), System.currentTimeMillis(), iteration,
+                        changedPrices, latestTickTimestamp(prices), exposures.update(prices));
+                return encodeFrame(encoder, snapshot).toByteArray().length
+                        + toValuationMessage(snapshot).toByteArray().length;
+            } finally {
+                snapshot.release();
+            }
         }
-        return sigma;
     }
 
-    private double calculateTimeToMaturity(LocalDate maturityDate) {
-        if (maturityDate == null) return 0.0001;
-        long days = ChronoUnit.DAYS.between(LocalDate.now(), maturityDate);
-        return Math.max(0.0001, days / 365.0);
+    private static final class ChunkValue {
+        private final int chunk;
+        private final FixedPointAccumulator value;
+
+        private ChunkValue(int chunk, FixedPointAccumulator value) {
+            this.chunk = chunk;
+            this.value = value;
+        }
     }
 }
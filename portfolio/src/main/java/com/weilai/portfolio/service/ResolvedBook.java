@@ -0,0 +1,38 @@
+package com.weilai.portfolio.service;
+
+import com.weilai.portfolio.entity.Position;
+import com.weilai.portfolio.entity.Security;
+
+import java.util.Map;
+
+/**
+ * 已解析的持仓簿：各持仓的证券信息按下标排列（与持仓、快照行的下标一致），估值时不再逐笔查询证券表
+ * 持仓按 CSV 顺序排列，固定大小的分块即为连续的下标区间
+ */
+final class ResolvedBook {
+    private final Security[] securities; // 证券表中不存在的持仓为 null
+
+    private ResolvedBook(Security[] securities) {
+        this.securities = securities;
+    }
+
+    static ResolvedBook resolve(Position[] positions, Map<String, Security> securitiesByTicker) {
+        Security[] securities = new Security[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            securities[i] = securitiesByTicker.get(positions[i].getTicker());
+        }
+        return new ResolvedBook(securities);
+    }
+
+    int size() {
+        return securities.length;
+    }
+
+    int chunkCount(int chunkSize) {
+        return (securities.length + chunkSize - 1) / chunkSize;
+    }
+
+    Security securityAt(int index) {
+        return securities[index];
+    }
+}
@@ -0,0 +1,42 @@
+package com.weilai.portfolio.service;
+
+import com.weilai.portfolio.entity.ExerciseStyle;
+import com.weilai.portfolio.entity.SecurityType;
+
+import java.time.LocalDate;
+
+/**
+ * 情景分析与 Monte Carlo VaR 用的持仓簿副本（由 ExposureAggregator 复制，之后不再变化）
+ * <p>
+ * 各持仓：所属标的下标（证券表中不存在为 -1）、证券类型、行权方式、行权价、到期日、当前数量；
+ * 各标的：代码与最近一次估值使用的价格（尚无行情为 NaN）。
+ */
+final class ScenarioBook {
+    final int[] underlyingOf;
+    final SecurityType[] types;
+    final ExerciseStyle[] styles;
+    final double[] strikes;
+    final LocalDate[] maturities;
+    final long[] quantities;
+    final String[] underlyings;
+    final double[] prices;
+    final int contractMultiplier;
+
+    ScenarioBook(int[] underlyingOf, SecurityType[] types, ExerciseStyle[] styles, double[] strikes,
+                 LocalDate[] maturities, long[] quantities, String[] underlyings, double[] prices,
+                 int contractMultiplier) {
+        this.underlyingOf = underlyingOf;
+        this.types = types;
+        this.styles = styles;
+        this.strikes = strikes;
+        this.maturities = maturities;
+        this.quantities = quantities;
+        this.underlyings = underlyings;
+        this.prices = prices;
+        this.contractMultiplier = contractMultiplier;
+    }
+
+    int size() {
+        return underlyingOf.length;
+    }
+}
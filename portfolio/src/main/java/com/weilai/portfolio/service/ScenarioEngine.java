@@ -0,0 +1,352 @@
+package com.weilai.portfolio.service;
+
+import com.weilai.portfolio.entity.ExerciseStyle;
+import com.weilai.portfolio.entity.SecurityType;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import javax.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 情景 / 压力测试引擎：在现价 × 波动率 × 时间网格上重估整个持仓簿（持仓与价格取自 ExposureAggregator 的当前状态）
+ * <p>
+ * 与情景无关的量只算一次：各标的在每个现价冲击下的价格，各期权在每个现价冲击下的 ln(S/K)，
+ * 以及每个时间推移下的 T、√T 与 K·e^(-rT)。网格按 (时间, 波动率) 切片，一个切片遍历一次持仓即得到全部现价冲击下的净值；
+ * 持仓按块在 scenario 线程上并行计算，块结果以定点整数合并，结果与线程数、分块方式无关。切片依次计算、逐个流式返回。
+ * <p>
+ * 定价使用与估值流水线相同的 Black-Scholes / 美式期权实现与取整规则，不加冲击的情景与最近一次估值的净值一致。
+ */
+@Slf4j
+@Service
+public class ScenarioEngine {
+    private static final double MIN_VOLATILITY = 0.0001;
+
+    private final ExposureAggregator exposureAggregator;
+    private final BlackScholesPricingService optionPricingService;
+    private final AmericanOptionPricingService americanPricingService;
+    private final int threads;
+    private final int chunkSize;
+    private final int maxScenarios;
+    private final Scheduler scheduler;
+
+    public ScenarioEngine(ExposureAggregator exposureAggregator,
+                          BlackScholesPricingService optionPricingService,
+                          AmericanOptionPricingService americanPricingService,
+                          @Value("${portfolio.scenario.threads:0}") int threads,
+                          @Value("${portfolio.scenario.chunk-size:2048}") int chunkSize,
+                          @Value("${portfolio.scenario.max-scenarios:10000}") int maxScenarios) {
+        if (threads < 0) {
+            throw new IllegalArgumentException("portfolio.scenario.threads 不能小于0：" + threads);
+        }
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("portfolio.scenario.chunk-size 必须大于0：" + chunkSize);
+        }
+        if (maxScenarios <= 0) {
+            throw new IllegalArgumentException("portfolio.scenario.max-scenarios 必须大于0：" + maxScenarios);
+        }
+        this.exposureAggregator = exposureAggregator;
+        this.optionPricingService = optionPricingService;
+        this.americanPricingService = americanPricingService;
+        this.threads = threads == 0 ? Runtime.getRuntime().availableProcessors() : threads;
+        this.chunkSize = chunkSize;
+        this.maxScenarios = maxScenarios;
+        this.scheduler = Schedulers.newParallel("scenario", this.threads, true);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.dispose();
+    }
+
+    /**
+     * 按网格重估持仓簿，结果按 时间推移 → 波动率冲击 → 现价冲击 的顺序逐个返回
+     * 网格无效时以 IllegalArgumentException 结束，持仓簿尚未载入时以 IllegalStateException 结束
+     */
+    public Flux<ScenarioResult> run(ScenarioGrid grid) {
+        return Mono.fromCallable(() -> prepare(grid))
+                .subscribeOn(scheduler)
+                .flatMapMany(prepared -> valueSlice(prepared, 0.0, 0, 0, 1)
+                        .map(base -> base[0].toBigDecimal())
+                        .flatMapMany(baseNav -> Flux.range(0, prepared.sliceCount())
+                                .concatMap(slice -> valueSlice(prepared, prepared.volShock(slice),
+                                        prepared.dayIndex(slice), 1, prepared.spotShocks.length)
+                                        .flatMapIterable(navs -> prepared.results(slice, navs, baseNav)))));
+    }
+
+    // 一个切片在现价冲击 [spotFrom, spotTo) 下的净值：持仓按块并行计算后合并
+    private Mono<FixedPointAccumulator[]> valueSlice(Prepared prepared, double volShock, int day,
+                                                     int spotFrom, int spotTo) {
+        int chunks = (prepared.book.size() + chunkSize - 1) / chunkSize;
+        return Flux.range(0, chunks)
+                .parallel(threads)
+                .runOn(scheduler)
+                .map(chunk -> valueChunk(prepared, volShock, day, spotFrom, spotTo, chunk))
+                .reduce(ScenarioEngine::merge)
+                .defaultIfEmpty(newNavs(spotTo - spotFrom));
+    }
+
+    private FixedPointAccumulator[] valueChunk(Prepared prepared, double volShock, int day,
+                                               int spotFrom, int spotTo, int chunk) {
+        ScenarioBook book = prepared.book;
+        FixedPointAccumulator[] navs = newNavs(spotTo - spotFrom);
+        int from = chunk * chunkSize;
+        int to = Math.min(from + chunkSize, book.size());
+        for (int i = from; i < to; i++) {
+            int u = book.underlyingOf[i];
+            if (u < 0 || prepared.spotPrices[u] == null) {
+                continue; // 证券不存在或标的尚无行情：与估值一致计为 0
+            }
+            long quantity = book.quantities[i];
+            if (book.types[i] == SecurityType.STOCK) {
+                long[] units = prepared.spotUnits[u];
+                for (int s = spotFrom; s < spotTo; s++) {
+                    navs[s - spotFrom].addUnscaled(Math.multiplyExact(units[units.length == 1 ? 0 : s], quantity));
+                }
+                continue;
+            }
+            double[] logMoneyness = prepared.logMoneyness[i];
+            if (logMoneyness == null) {
+                continue;
+            }
+            double[] spots = prepared.spotPrices[u];
+            double sigma = prepared.shocked[u]
+                    ? Math.max(prepared.sigmas[u] + volShock, MIN_VOLATILITY) : prepared.sigmas[u];
+            double T = prepared.years[day][i];
+            double sqrtT = prepared.sqrtYears[day][i];
+            double discountedStrike = prepared.discountedStrikes[day][i];
+            if (book.styles[i] == ExerciseStyle.AMERICAN) {
+                for (int s = spotFrom; s < spotTo; s++) {
+                    navs[s - spotFrom].addUnscaled(americanValue(prepared, book.types[i],
+                            spots[spots.length == 1 ? 0 : s], book.strikes[i], T, sigma, quantity));
+                }
+            } else if (spots.length == 1) {
+                long value = optionValue(prepared, book.types[i], spots[0], logMoneyness[0], T, sqrtT,
+                        discountedStrike, sigma, quantity);
+                for (int s = spotFrom; s < spotTo; s++) {
+                    navs[s - spotFrom].addUnscaled(value);
+                }
+            } else {
+                for (int s = spotFrom; s < spotTo; s++) {
+                    navs[s - spotFrom].addUnscaled(optionValue(prepared, book.types[i], spots[s], logMoneyness[s],
+                            T, sqrtT, discountedStrike, sigma, quantity));
+                }
+            }
+        }
+        return navs;
+    }
+
+    // 与估值流水线相同：理论价格按 SCALE 位取整后乘以数量与合约乘数
+    private static long optionValue(Prepared prepared, SecurityType type, double S, double logMoneyness, double T,
+                                    double sqrtT, double discountedStrike, double sigma, long quantity) {
+        if (S <= 0) {
+            return 0L;
+        }
+        long priceUnits = BlackScholesPricingService.priceUnits(BlackScholesPricingService.theoreticalPrice(
+                type, S, logMoneyness, T, sqrtT, discountedStrike, prepared.riskFreeRate, sigma));
+        return Math.multiplyExact(Math.multiplyExact(priceUnits, quantity), (long) prepared.book.contractMultiplier);
+    }
+
+    // 美式期权：常量由 AmericanOptionPricingService 按 (T, r, σ) 缓存，同一切片内的现价冲击共用
+    private long americanValue(Prepared prepared, SecurityType type, double S, double K, double T, double sigma,
+                               long quantity) {
+        if (S <= 0) {
+            return 0L;
+        }
+        long priceUnits = BlackScholesPricingService.priceUnits(americanPricingService.theoreticalPrice(
+                type, S, K, T, prepared.riskFreeRate, sigma));
+        return Math.multiplyExact(Math.multiplyExact(priceUnits, quantity), (long) prepared.book.contractMultiplier);
+    }
+
+    private static FixedPointAccumulator[] newNavs(int count) {
+        FixedPointAccumulator[] navs = new FixedPointAccumulator[count];
+        for (int k = 0; k < count; k++) {
+            navs[k] = new FixedPointAccumulator(ValuationSnapshot.SCALE);
+        }
+        return navs;
+    }
+
+    private static FixedPointAccumulator[] merge(FixedPointAccumulator[] left, FixedPointAccumulator[] right) {
+        for (int k = 0; k < left.length; k++) {
+            left[k].merge(right[k]);
+        }
+        return left;
+    }
+
+    private Prepared prepare(ScenarioGrid grid) {
+        // 下标 0 固定为不加冲击，用于计算盈亏的基准
+        double[] spotShocks = withBase(values(grid.getSpotShocks(), "spotShocks"));
+        double[] volShocks = values(grid.getVolShocks(), "volShocks");
+        int[] dayShifts = withBase(days(grid.getDayShifts()));
+        for (double shock : spotShocks) {
+            if (shock <= -1) {
+                throw new IllegalArgumentException("现价冲击必须大于 -1：" + shock);
+            }
+        }
+        long scenarios = (long) (spotShocks.length - 1) * volShocks.length * (dayShifts.length - 1);
+        if (scenarios > maxScenarios) {
+            throw new IllegalArgumentException("情景数 " + scenarios + " 超过上限 " + maxScenarios);
+        }
+        ScenarioBook book = exposureAggregator.scenarioBook();
+        if (book == null) {
+            throw new IllegalStateException("持仓簿尚未载入");
+        }
+        Set<String> shockedUnderlyings = grid.getUnderlyings() == null
+                ? Collections.<String>emptySet() : new HashSet<>(grid.getUnderlyings());
+        return new Prepared(book, spotShocks, volShocks, dayShifts, shockedUnderlyings,
+                optionPricingService, LocalDate.now());
+    }
+
+    private static double[] values(List<Double> shocks, String name) {
+        if (shocks == null || shocks.isEmpty()) {
+            return new double[]{0.0};
+        }
+        double[] values = new double[shocks.size()];
+        for (int k = 0; k < values.length; k++) {
+            Double shock = shocks.get(k);
+            if (shock == null || Double.isNaN(shock) || Double.isInfinite(shock)) {
+                throw new IllegalArgumentException(name + " 含无效值：" + shock);
+            }
+            values[k] = shock;
+        }
+        return values;
+    }
+
+    private static int[] days(List<Integer> shifts) {
+        if (shifts == null || shifts.isEmpty()) {
+            return new int[]{0};
+        }
+        int[] days = new int[shifts.size()];
+        for (int k = 0; k < days.length; k++) {
+            Integer shift = shifts.get(k);
+            if (shift == null || shift < 0) {
+                throw new IllegalArgumentException("dayShifts 必须为非负整数：" + shift);
+            }
+            days[k] = shift;
+        }
+        return days;
+    }
+
+    private static double[] withBase(double[] values) {
+        double[] result = new double[values.length + 1];
+        System.arraycopy(values, 0, result, 1, values.length);
+        return result;
+    }
+
+    private static int[] withBase(int[] values) {
+        int[] result = new int[values.length + 1];
+        System.arraycopy(values, 0, result, 1, values.length);
+        return result;
+    }
+
+    /**
+     * 一次请求中与情景无关、在全部情景间共享的量
+     */
+    private static final class Prepared {
+        final ScenarioBook book;
+        final double[] spotShocks;   // [0] 为基准
+        final double[] volShocks;
+        final int[] dayShifts;       // [0] 为基准
+        final double riskFreeRate;
+
+        // 各标的：是否受冲击、基础波动率、各现价冲击下的价格及其定点值（不受冲击的标的只有一列，尚无行情为 null）
+        final boolean[] shocked;
+        final double[] sigmas;
+        final double[][] spotPrices;
+        final long[][] spotUnits;
+
+        // 各期权：各现价冲击下的 ln(S/K)（无法定价为 null），各时间推移下的 T、√T、K·e^(-rT)
+        final double[][] logMoneyness;
+        final double[][] years;
+        final double[][] sqrtYears;
+        final double[][] discountedStrikes;
+
+        Prepared(ScenarioBook book, double[] spotShocks, double[] volShocks, int[] dayShifts,
+                 Set<String> shockedUnderlyings, BlackScholesPricingService pricingService, LocalDate valuationDate) {
+            this.book = book;
+            this.spotShocks = spotShocks;
+            this.volShocks = volShocks;
+            this.dayShifts = dayShifts;
+            this.riskFreeRate = pricingService.getRiskFreeRate();
+
+            int underlyingCount = book.underlyings.length;
+            shocked = new boolean[underlyingCount];
+            sigmas = new double[underlyingCount];
+            spotPrices = new double[underlyingCount][];
+            spotUnits = new long[underlyingCount][];
+            for (int u = 0; u < underlyingCount; u++) {
+                shocked[u] = shockedUnderlyings.isEmpty() || shockedUnderlyings.contains(book.underlyings[u]);
+                sigmas[u] = pricingService.getUnderlyingSigma(book.underlyings[u]);
+                double price = book.prices[u];
+                if (Double.isNaN(price)) {
+                    continue;
+                }
+                int columns = shocked[u] ? spotShocks.length : 1;
+                spotPrices[u] = new double[columns];
+                spotUnits[u] = new long[columns];
+                for (int s = 0; s < columns; s++) {
+                    spotPrices[u][s] = price * (1 + spotShocks[s]);
+                    spotUnits[u][s] = BlackScholesPricingService.priceUnits(spotPrices[u][s]);
+                }
+            }
+
+            int n = book.size();
+            logMoneyness = new double[n][];
+            years = new double[dayShifts.length][n];
+            sqrtYears = new double[dayShifts.length][n];
+            discountedStrikes = new double[dayShifts.length][n];
+            for (int i = 0; i < n; i++) {
+                int u = book.underlyingOf[i];
+                double K = book.strikes[i];
+                if (u < 0 || book.types[i] == SecurityType.STOCK || spotPrices[u] == null || K <= 0) {
+                    continue;
+                }
+                double[] logs = new double[spotPrices[u].length];
+                for (int s = 0; s < logs.length; s++) {
+                    logs[s] = Math.log(spotPrices[u][s] / K);
+                }
+                logMoneyness[i] = logs;
+                for (int d = 0; d < dayShifts.length; d++) {
+                    double T = pricingService.timeToMaturity(book.maturities[i], valuationDate.plusDays(dayShifts[d]));
+                    years[d][i] = T;
+                    sqrtYears[d][i] = Math.sqrt(T);
+                    discountedStrikes[d][i] = K * Math.exp(-riskFreeRate * T);
+                }
+            }
+            log.debug("Scenario grid: {} scenarios over {} positions", sliceCount() * (spotShocks.length - 1), n);
+        }
+
+        int sliceCount() {
+            return (dayShifts.length - 1) * volShocks.length;
+        }
+
+        int dayIndex(int slice) {
+            return 1 + slice / volShocks.length;
+        }
+
+        double volShock(int slice) {
+            return volShocks[slice % volShocks.length];
+        }
+
+        List<ScenarioResult> results(int slice, FixedPointAccumulator[] navs, BigDecimal baseNav) {
+            List<ScenarioResult> results = new ArrayList<>(navs.length);
+            for (int s = 1; s < spotShocks.length; s++) {
+                BigDecimal nav = navs[s - 1].toBigDecimal();
+                results.add(new ScenarioResult(spotShocks[s], volShock(slice), dayShifts[dayIndex(slice)],
+                        nav, nav.subtract(baseNav)));
+            }
+            return results;
+        }
+    }
+}
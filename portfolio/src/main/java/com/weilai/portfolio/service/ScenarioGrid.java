@@ -0,0 +1,21 @@
+package com.weilai.portfolio.service;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 情景网格：现价冲击 × 波动率冲击 × 时间推移的笛卡尔积，每个组合是一个情景
+ * - spotShocks   标的价格的相对变动，-0.1 表示下跌 10%（须大于 -1）
+ * - volShocks    波动率的绝对变动，0.05 表示上升 5 个百分点（冲击后至少为 0.0001）
+ * - dayShifts    估值日向后推移的自然日数（不小于 0）
+ * - underlyings  受现价与波动率冲击的标的，为空时冲击全部标的；时间推移总是作用于整个持仓簿
+ * 各项为空时取 [0]
+ */
+@Data
+public class ScenarioGrid {
+    private List<Double> spotShocks;
+    private List<Double> volShocks;
+    private List<Integer> dayShifts;
+    private List<String> underlyings;
+}
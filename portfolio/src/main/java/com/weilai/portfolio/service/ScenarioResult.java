@@ -0,0 +1,48 @@
+package com.weilai.portfolio.service;
+
+import java.math.BigDecimal;
+
+/**
+ * 单个情景的重估结果：情景参数、情景下的持仓簿净值，以及相对当前价格（不加冲击）的盈亏
+ */
+public final class ScenarioResult {
+    private final double spotShock;
+    private final double volShock;
+    private final int dayShift;
+    private final BigDecimal nav;
+    private final BigDecimal pnl;
+
+    ScenarioResult(double spotShock, double volShock, int dayShift, BigDecimal nav, BigDecimal pnl) {
+        this.spotShock = spotShock;
+        this.volShock = volShock;
+        this.dayShift = dayShift;
+        this.nav = nav;
+        this.pnl = pnl;
+    }
+
+    public double getSpotShock() {
+        return spotShock;
+    }
+
+    public double getVolShock() {
+        return volShock;
+    }
+
+    public int getDayShift() {
+        return dayShift;
+    }
+
+    public BigDecimal getNav() {
+        return nav;
+    }
+
+    public BigDecimal getPnl() {
+        return pnl;
+    }
+
+    @Override
+    public String toString() {
+        return "ScenarioResult{spotShock=" + spotShock + ", volShock=" + volShock + ", dayShift=" + dayShift
+                + ", nav=" + nav + ", pnl=" + pnl + '}';
+    }
+}
@@ -0,0 +1,144 @@
+package com.weilai.portfolio.service;
+
+import com.weilai.portfolio.entity.Security;
+import com.weilai.portfolio.infrastructure.reader.SecurityFileReader;
+import com.weilai.portfolio.repository.SecurityCache;
+import io.r2dbc.spi.Statement;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * 证券主数据批量加载：流式读取证券文件（股票与完整期权链），写入 security 表或直接写入 SecurityCache
+ * <p>
+ * - DATABASE：按 batch-size 行攒批，每批在一个连接上执行一条多行 VALUES 的 MERGE（按 ticker 插入或更新），
+ *   最多 concurrency 批同时执行；批次写完才继续读取，同一时刻在内存中的行数不超过 (concurrency + 1) × batch-size
+ * - CACHE：跳过数据库，逐行写入 SecurityCache
+ * <p>
+ * 配置了 portfolio.security-master.file 时，估值在解析证券之前等待加载完成（只加载一次）。
+ */
+@Service
+@Slf4j
+public class SecurityMasterLoader {
+    private static final String UPSERT_PREFIX = "MERGE INTO security "
+            + "(ticker, security_type, strike_price, maturity_date, underlying_ticker, exercise_style) KEY (ticker) VALUES ";
+    private static final int COLUMNS = 6;
+
+    public enum Target {
+        DATABASE, CACHE
+    }
+
+    private final SecurityFileReader securityFileReader;
+    private final SecurityCache securityCache;
+    private final DatabaseClient databaseClient;
+    private final int batchSize;
+    private final int concurrency;
+    private final String batchSql; // 满批的语句，只有最后一批不满
+    private final Mono<Long> configuredLoad;
+
+    public SecurityMasterLoader(SecurityFileReader securityFileReader,
+                                SecurityCache securityCache,
+                                DatabaseClient databaseClient,
+                                @Value("${portfolio.security-master.file:}") String file,
+                                @Value("${portfolio.security-master.target:DATABASE}") Target target,
+                                @Value("${portfolio.security-master.batch-size:1000}") int batchSize,
+                                @Value("${portfolio.security-master.concurrency:4}") int concurrency) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("portfolio.security-master.batch-size 必须大于0：" + batchSize);
+        }
+        if (concurrency <= 0) {
+            throw new IllegalArgumentException("portfolio.security-master.concurrency 必须大于0：" + concurrency);
+        }
+        this.securityFileReader = securityFileReader;
+        this.securityCache = securityCache;
+        this.databaseClient = databaseClient;
+        this.batchSize = batchSize;
+        this.concurrency = concurrency;
+        this.batchSql = upsertSql(batchSize);
+        this.configuredLoad = file.trim().isEmpty() ? Mono.just(0L) : load(file.trim(), target).cache();
+    }
+
+    /**
+     * 加载配置的证券文件（未配置时为 0 行）；多次订阅只加载一次
+     */
+    public Mono<Long> loadConfigured() {
+        return configuredLoad;
+    }
+
+    /**
+     * 加载 location 处的证券文件，返回写入的行数
+     */
+    public Mono<Long> load(String location, Target target) {
+        return Mono.defer(() -> {
+            long startNanos = System.nanoTime();
+            Flux<Security> securities = securityFileReader.readSecurities(location);
+            Mono<Long> rows = target == Target.CACHE ? loadIntoCache(securities) : loadIntoDatabase(securities);
+            return rows.doOnNext(count -> log.info("Security master: {} rows from {} into {} in {} ms",
+                    count, location, target, (System.nanoTime() - startNanos) / 1_000_000));
+        });
+    }
+
+    Mono<Long> loadIntoCache(Flux<Security> securities) {
+        return securities.doOnNext(securityCache::put).count();
+    }
+
+    // prefetch 为 1：攒批只比正在执行的批次多读一批，数据库变慢时文件读取随之放慢
+    Mono<Long> loadIntoDatabase(Flux<Security> securities) {
+        return securities
+                .buffer(batchSize)
+                .flatMap(this::upsert, concurrency, 1)
+                .reduce(0L, Long::sum);
+    }
+
+    private Mono<Long> upsert(List<Security> batch) {
+        return databaseClient.inConnectionMany(connection -> {
+            // 不用 Statement.add() 绑定多组参数：r2dbc-h2 0.9 调用过 add() 的语句无法执行
+            Statement statement = connection.createStatement(
+                    batch.size() == batchSize ? batchSql : upsertSql(batch.size()));
+            for (int i = 0; i < batch.size(); i++) {
+                bind(statement, i * COLUMNS, batch.get(i));
+            }
+            return Flux.from(statement.execute())
+                    .flatMap(result -> Flux.from(result.getRowsUpdated()))
+                    .map(Number::longValue);
+        }).reduce(0L, Long::sum);
+    }
+
+    // MERGE ... VALUES ($1, ..., $6), ($7, ..., $12), ...
+    static String upsertSql(int rows) {
+        StringBuilder sql = new StringBuilder(UPSERT_PREFIX.length() + rows * 40).append(UPSERT_PREFIX);
+        for (int row = 0; row < rows; row++) {
+            sql.append(row == 0 ? "(" : ", (");
+            for (int column = 1; column <= COLUMNS; column++) {
+                sql.append(column == 1 ? "$" : ", $").append(row * COLUMNS + column);
+            }
+            sql.append(')');
+        }
+        return sql.toString();
+    }
+
+    private static void bind(Statement statement, int offset, Security security) {
+        statement.bind(offset, security.getTicker());
+        statement.bind(offset + 1, security.getSecurityType().name());
+        bindNullable(statement, offset + 2, security.getStrikePrice(), BigDecimal.class);
+        bindNullable(statement, offset + 3, security.getMaturityDate(), LocalDate.class);
+        bindNullable(statement, offset + 4, security.getUnderlyingTicker(), String.class);
+        bindNullable(statement, offset + 5,
+                security.getExerciseStyle() == null ? null : security.getExerciseStyle().name(), String.class);
+    }
+
+    private static void bindNullable(Statement statement, int index, Object value, Class<?> type) {
+        if (value == null) {
+            statement.bindNull(index, type);
+        } else {
+            statement.bind(index, value);
+        }
+    }
+}
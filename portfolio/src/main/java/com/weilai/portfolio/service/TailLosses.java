@@ -0,0 +1,85 @@
+package com.weilai.portfolio.service;
+
+import java.util.Arrays;
+
+/**
+ * 只保留最大的 capacity 个损失（小顶堆），用于从大量模拟路径中得到经验分位数与尾部均值而无需对全部损益排序
+ * <p>
+ * 每块路径各用一个实例，最后依次 merge；保留下来的是全部样本中最大的 capacity 个，与合并顺序无关。
+ */
+final class TailLosses {
+    private final double[] heap;
+    private int size;
+
+    TailLosses(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity 必须大于0：" + capacity);
+        }
+        this.heap = new double[capacity];
+    }
+
+    void offer(double loss) {
+        if (size < heap.length) {
+            heap[size] = loss;
+            siftUp(size++);
+        } else if (loss > heap[0]) {
+            heap[0] = loss;
+            siftDown(0);
+        }
+    }
+
+    TailLosses merge(TailLosses other) {
+        for (int k = 0; k < other.size; k++) {
+            offer(other.heap[k]);
+        }
+        return this;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * 保留的损失，从大到小
+     */
+    double[] descending() {
+        double[] losses = Arrays.copyOf(heap, size);
+        Arrays.sort(losses);
+        for (int i = 0, j = size - 1; i < j; i++, j--) {
+            double t = losses[i];
+            losses[i] = losses[j];
+            losses[j] = t;
+        }
+        return losses;
+    }
+
+    private void siftUp(int k) {
+        double value = heap[k];
+        while (k > 0) {
+            int parent = (k - 1) >>> 1;
+            if (heap[parent] <= value) {
+                break;
+            }
+            heap[k] = heap[parent];
+            k = parent;
+        }
+        heap[k] = value;
+    }
+
+    private void siftDown(int k) {
+        double value = heap[k];
+        int half = size >>> 1;
+        while (k < half) {
+            int child = 2 * k + 1;
+            if (child + 1 < size && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (value <= heap[child]) {
+                break;
+            }
+            heap[k] = heap[child];
+            k = child;
+        }
+        heap[k] = value;
+    }
+}
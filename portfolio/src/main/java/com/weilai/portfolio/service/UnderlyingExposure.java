@@ -0,0 +1,83 @@
+package com.weilai.portfolio.service;
+
+import java.math.BigDecimal;
+
+/**
+ * 单个标的的风险汇总（不可变），股数与金额为 SCALE 位小数的定点 long
+ */
+public final class UnderlyingExposure {
+    public static final int SCALE = FixedPointAccumulator.DEFAULT_SCALE;
+
+    private final String underlying;
+    private final long netShares;
+    private final long deltaShares;
+    private final long deltaDollars;
+    private final long gamma;
+    private final long vega;
+
+    UnderlyingExposure(String underlying, long netShares, long deltaShares, long deltaDollars, long gamma, long vega) {
+        this.underlying = underlying;
+        this.netShares = netShares;
+        this.deltaShares = deltaShares;
+        this.deltaDollars = deltaDollars;
+        this.gamma = gamma;
+        this.vega = vega;
+    }
+
+    public String getUnderlying() {
+        return underlying;
+    }
+
+    /**
+     * 股票持仓股数
+     */
+    public long getNetShares() {
+        return netShares;
+    }
+
+    /**
+     * delta 调整后的股数（股票 + 期权 delta × 数量 × 合约乘数）
+     */
+    public BigDecimal getDeltaShares() {
+        return BigDecimal.valueOf(deltaShares, SCALE);
+    }
+
+    /**
+     * delta 股数 × 标的价格
+     */
+    public BigDecimal getDeltaDollars() {
+        return BigDecimal.valueOf(deltaDollars, SCALE);
+    }
+
+    /**
+     * 标的价格每变动 1 时 delta 股数的变化
+     */
+    public BigDecimal getGamma() {
+        return BigDecimal.valueOf(gamma, SCALE);
+    }
+
+    /**
+     * 波动率每变动 1 个百分点时的市值变化
+     */
+    public BigDecimal getVega() {
+        return BigDecimal.valueOf(vega, SCALE);
+    }
+
+    // 以下为定点原值，供同包的编码路径使用
+
+    long deltaSharesUnits() {
+        return deltaShares;
+    }
+
+    long deltaDollarsUnits() {
+        return deltaDollars;
+    }
+
+    long gammaUnits() {
+        return gamma;
+    }
+
+    long vegaUnits() {
+        return vega;
+    }
+}
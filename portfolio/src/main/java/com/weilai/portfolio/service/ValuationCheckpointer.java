@@ -0,0 +1,142 @@
+package com.weilai.portfolio.service;
+
+import com.weilai.portfolio.entity.MarketData;
+import com.weilai.portfolio.infrastructure.checkpoint.CheckpointFile;
+import com.weilai.portfolio.infrastructure.checkpoint.ValuationCheckpoint;
+import com.weilai.portfolio.infrastructure.marketdata.strategy.GBMPricingStrategy;
+import com.weilai.portfolio.infrastructure.metrics.PipelineMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 估值检查点与热重启
+ * <p>
+ * aggregation 阶段每次估值后只记录一个引用（最新价格快照本身不再修改），由独立的 valuation-checkpoint 线程
+ * 每 interval-ms 毫秒检查一次，有新估值时连同 GBM 定价策略的状态写入检查点文件，估值线程不做任何 I/O。
+ * 启动时读取检查点：定价策略从上一次的价格继续，估值序号从检查点的序号继续，接收端看不到重置。
+ * portfolio.checkpoint.file 为空时不启用。
+ */
+@Component
+@Slf4j
+public class ValuationCheckpointer {
+    private final GBMPricingStrategy gbmPricingStrategy;
+    private final CheckpointFile file; // 为 null 时不启用
+    private final long intervalMillis;
+    private final LongAdder writtenCounter;
+    private final LongAdder failureCounter;
+
+    private volatile ValuationCheckpoint latest; // 最近一次估值，策略状态在写入时补全
+    private int writtenUpdateCount = -1;         // 只在持有对象锁时访问
+    private Scheduler scheduler;
+    private Disposable task;
+
+    public ValuationCheckpointer(GBMPricingStrategy gbmPricingStrategy,
+                                 PipelineMetrics pipelineMetrics,
+                                 @Value("${portfolio.checkpoint.file:}") String file,
+                                 @Value("${portfolio.checkpoint.interval-ms:1000}") long intervalMillis) {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("portfolio.checkpoint.interval-ms 必须大于0：" + intervalMillis);
+        }
+        this.gbmPricingStrategy = gbmPricingStrategy;
+        this.file = file.trim().isEmpty() ? null : new CheckpointFile(Paths.get(file.trim()));
+        this.intervalMillis = intervalMillis;
+        this.writtenCounter = pipelineMetrics.counter("checkpoints-written");
+        this.failureCounter = pipelineMetrics.counter("checkpoint-failures");
+    }
+
+    public boolean isEnabled() {
+        return file != null;
+    }
+
+    /**
+     * 读取检查点并恢复定价策略的状态；未启用、文件不存在或不完整时返回 null（冷启动）
+     */
+    public ValuationCheckpoint restore() {
+        if (file == null) {
+            return null;
+        }
+        ValuationCheckpoint checkpoint;
+        try {
+            checkpoint = file.read();
+        } catch (IOException e) {
+            log.error("读取检查点失败，冷启动：{}", file.getPath(), e);
+            return null;
+        }
+        if (checkpoint == null) {
+            log.info("No checkpoint at {}, starting cold", file.getPath());
+            return null;
+        }
+        gbmPricingStrategy.restoreState(checkpoint.getStrategyState());
+        synchronized (this) {
+            writtenUpdateCount = checkpoint.getUpdateCount();
+        }
+        log.info("Resumed from checkpoint {}: valuation #{}, NAV {}, {} prices, taken {} ms ago",
+                file.getPath(), checkpoint.getUpdateCount(), checkpoint.getTotalNav(), checkpoint.getPrices().size(),
+                System.currentTimeMillis() - checkpoint.getTimestamp());
+        return checkpoint;
+    }
+
+    /**
+     * 记录最近一次估值（aggregation 阶段调用）；prices 在记录后不得再修改
+     */
+    public void record(int updateCount, long timestamp, BigDecimal totalNav, Map<String, MarketData> prices) {
+        if (file != null) {
+            latest = new ValuationCheckpoint(updateCount, timestamp, totalNav, prices,
+                    Collections.<String, MarketData>emptyMap());
+        }
+    }
+
+    public synchronized void start() {
+        if (file == null || task != null) {
+            return;
+        }
+        scheduler = Schedulers.newSingle("valuation-checkpoint", true);
+        task = scheduler.schedulePeriodically(this::checkpoint, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        log.info("Valuation checkpoints every {} ms to {}", intervalMillis, file.getPath());
+    }
+
+    /**
+     * 有新估值时写入检查点，返回是否写入
+     */
+    synchronized boolean checkpoint() {
+        ValuationCheckpoint pending = latest;
+        if (file == null || pending == null || pending.getUpdateCount() == writtenUpdateCount) {
+            return false;
+        }
+        try {
+            file.write(pending.withStrategyState(gbmPricingStrategy.snapshotState()));
+            writtenUpdateCount = pending.getUpdateCount();
+            writtenCounter.increment();
+            return true;
+        } catch (IOException | RuntimeException e) {
+            failureCounter.increment();
+            log.error("写入检查点失败：{}", file.getPath(), e);
+            return false;
+        }
+    }
+
+    // 停止时写入最后一次估值，正常关闭后重启不丢失最近的状态
+    @PreDestroy
+    public synchronized void stop() {
+        if (task == null) {
+            return;
+        }
+        task.dispose();
+        checkpoint();
+        scheduler.dispose();
+        task = null;
+    }
+}
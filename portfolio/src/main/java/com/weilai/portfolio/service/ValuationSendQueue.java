@@ -0,0 +1,160 @@
+package com.weilai.portfolio.service;
+
+import com.weilai.portfolio.infrastructure.metrics.PipelineMetrics;
+import com.weilai.portfolio.infrastructure.metrics.StageLatency;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 估值发送队列：流水线的 send 阶段。编码阶段只负责入队，gRPC 发送在独立的 valuation-send 线程上按入队顺序执行
+ * <p>
+ * 接收端变慢时队列写满，按溢出策略处理：
+ * - DROP_OLDEST：丢弃最旧的一条（默认）
+ * - LATEST：只保留最新一条，入队时丢弃所有未发送的估值
+ * - BLOCK：阻塞编码阶段直到有空位（不丢估值，但背压会逐级传回定价）
+ * <p>
+ * 队列持有快照的一个引用，发送完成或被丢弃时释放，槽位随即可供后续估值复用。
+ */
+@Slf4j
+@Component
+public class ValuationSendQueue {
+
+    public enum OverflowPolicy {
+        DROP_OLDEST,
+        LATEST,
+        BLOCK
+    }
+
+    private final int capacity;
+    private final OverflowPolicy overflowPolicy;
+    private final BlockingQueue<Pending> queue;
+    private final PipelineStage stage;
+
+    private final StageLatency queueWait;
+    private final LongAdder droppedCounter;
+    private volatile boolean started;
+
+    public ValuationSendQueue(@Value("${portfolio.valuation.send-queue.capacity:4}") int capacity,
+                              @Value("${portfolio.valuation.send-queue.overflow-policy:DROP_OLDEST}")
+                              OverflowPolicy overflowPolicy,
+                              PipelineMetrics pipelineMetrics) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("portfolio.valuation.send-queue.capacity 必须大于0");
+        }
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.stage = new PipelineStage("send", 1, pipelineMetrics);
+        this.queueWait = pipelineMetrics.stage("send-queue-wait");
+        this.droppedCounter = pipelineMetrics.counter("send-dropped");
+        pipelineMetrics.gauge("send-queue-depth", queue::size);
+    }
+
+    /**
+     * 启动发送线程（只需调用一次），sender 在 valuation-send 线程上逐条执行
+     */
+    public synchronized void start(Consumer<EncodedValuation> sender) {
+        if (started) {
+            return;
+        }
+        started = true;
+        stage.scheduler().schedule(() -> drain(sender));
+        log.info("Valuation send queue started: capacity={}, overflow-policy={}",
+                capacity, overflowPolicy);
+    }
+
+    /**
+     * 入队（由编码阶段调用）；仅 BLOCK 策略在队列满时阻塞
+     */
+    public void offer(EncodedValuation valuation) {
+        valuation.getSnapshot().retain();
+        Pending pending = new Pending(valuation, System.nanoTime());
+        switch (overflowPolicy) {
+            case BLOCK:
+                try {
+                    queue.put(pending);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    drop(pending);
+                }
+                break;
+            case LATEST:
+                Pending stale;
+                while ((stale = queue.poll()) != null) {
+                    drop(stale);
+                }
+                offerDroppingOldest(pending);
+                break;
+            default:
+                offerDroppingOldest(pending);
+                break;
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int size() {
+        return queue.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        stage.dispose();
+    }
+
+    // 与发送线程并发出队时可能需要重试
+    private void offerDroppingOldest(Pending pending) {
+        while (!queue.offer(pending)) {
+            Pending oldest = queue.poll();
+            if (oldest != null) {
+                drop(oldest);
+            }
+        }
+    }
+
+    private void drop(Pending pending) {
+        droppedCounter.increment();
+        pending.valuation.getSnapshot().release();
+    }
+
+    private void drain(Consumer<EncodedValuation> sender) {
+        while (!Thread.currentThread().isInterrupted()) {
+            Pending pending;
+            try {
+                pending = queue.take();
+            } catch (InterruptedException e) {
+                return; // 调度器关闭
+            }
+            queueWait.recordNanos(System.nanoTime() - pending.enqueueNanos);
+            ValuationSnapshot snapshot = pending.valuation.getSnapshot();
+            long startNanos = stage.now();
+            try {
+                sender.accept(pending.valuation);
+            } catch (RuntimeException e) {
+                log.error("估值 #{} 发送异常", snapshot.getUpdateCount(), e);
+            } finally {
+                stage.recordBusySince(startNanos);
+                snapshot.release();
+            }
+        }
+    }
+
+    private static final class Pending {
+        private final EncodedValuation valuation;
+        private final long enqueueNanos;
+
+        private Pending(EncodedValuation valuation, long enqueueNanos) {
+            this.valuation = valuation;
+            this.enqueueNanos = enqueueNanos;
+        }
+    }
+}
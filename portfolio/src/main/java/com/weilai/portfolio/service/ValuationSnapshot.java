@@ -0,0 +1,168 @@
+package com.weilai.portfolio.service;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 一次估值的只读快照：各持仓的价格与市值为定点 long（SCALE 位小数），存放在 ValuationSnapshotPool 预分配的槽位中
+ * <p>
+ * 估值线程写满槽位后发布，之后不再修改；持有方用完调用 release，引用计数归零后槽位回到池中供后续估值复用。
+ * 需要在当前持有方 release 之后继续使用快照时，先 retain。
+ */
+public final class ValuationSnapshot {
+    public static final int SCALE = FixedPointAccumulator.DEFAULT_SCALE;
+
+    private final ValuationSnapshotPool pool;
+    private final String[] tickers;   // 与池共享，不变
+    private final int[] quantities;   // 与池共享，不变
+    private final long[] prices;
+    private final long[] marketValues;
+    private final AtomicInteger refCount = new AtomicInteger();
+
+    private BigDecimal totalNav;
+    private long timestamp;
+    private int updateCount;
+    private Map<String, BigDecimal> changedMarketData;
+    private long tickTimestamp;
+    private Collection<UnderlyingExposure> exposures = Collections.emptyList();
+
+    ValuationSnapshot(ValuationSnapshotPool pool, String[] tickers, int[] quantities) {
+        this.pool = pool;
+        this.tickers = tickers;
+        this.quantities = quantities;
+        this.prices = new long[tickers.length];
+        this.marketValues = new long[tickers.length];
+    }
+
+    // ---------- 写入（仅估值线程，发布前） ----------
+
+    void setPosition(int index, long priceUnits, long marketValueUnits) {
+        prices[index] = priceUnits;
+        marketValues[index] = marketValueUnits;
+    }
+
+    void complete(BigDecimal totalNav, long timestamp, int updateCount,
+                  Map<String, BigDecimal> changedMarketData, long tickTimestamp,
+                  Collection<UnderlyingExposure> exposures) {
+        this.totalNav = totalNav;
+        this.timestamp = timestamp;
+        this.updateCount = updateCount;
+        this.changedMarketData = changedMarketData;
+        this.tickTimestamp = tickTimestamp;
+        this.exposures = exposures;
+    }
+
+    // ---------- 引用计数 ----------
+
+    void acquired() {
+        refCount.set(1);
+    }
+
+    // 已回到池中的快照（引用计数为0）不能再 retain，否则会与取走该槽位的下一次估值共用
+    public ValuationSnapshot retain() {
+        int count;
+        do {
+            count = refCount.get();
+            if (count <= 0) {
+                throw new IllegalStateException("ValuationSnapshot #" + updateCount + " retained after release");
+            }
+        } while (!refCount.compareAndSet(count, count + 1));
+        return this;
+    }
+
+    // 引用计数不会低于0：多余的 release 直接拒绝，不会把槽位重复放回池中
+    public void release() {
+        int count;
+        do {
+            count = refCount.get();
+            if (count <= 0) {
+                throw new IllegalStateException("ValuationSnapshot #" + updateCount + " released too many times");
+            }
+        } while (!refCount.compareAndSet(count, count - 1));
+        if (count == 1) {
+            pool.recycle(this);
+        }
+    }
+
+    int refCount() {
+        return refCount.get();
+    }
+
+    // ---------- 只读视图 ----------
+
+    public int size() {
+        return tickers.length;
+    }
+
+    public String getTicker(int index) {
+        return tickers[index];
+    }
+
+    public int getQuantity(int index) {
+        return quantities[index];
+    }
+
+    public long getPriceUnits(int index) {
+        return prices[index];
+    }
+
+    public long getMarketValueUnits(int index) {
+        return marketValues[index];
+    }
+
+    public BigDecimal getPrice(int index) {
+        return BigDecimal.valueOf(prices[index], SCALE);
+    }
+
+    public BigDecimal getMarketValue(int index) {
+        return BigDecimal.valueOf(marketValues[index], SCALE);
+    }
+
+    public BigDecimal getTotalNav() {
+        return totalNav;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public int getUpdateCount() {
+        return updateCount;
+    }
+
+    public Map<String, BigDecimal> getChangedMarketData() {
+        return changedMarketData;
+    }
+
+    public long getTickTimestamp() {
+        return tickTimestamp;
+    }
+
+    /**
+     * 按标的汇总的风险（不可变，可在 release 之后继续持有）
+     */
+    public Collection<UnderlyingExposure> getExposures() {
+        return exposures;
+    }
+
+    // 以下直接暴露底层数组，供同包的编码路径整列读取，调用方不得修改
+
+    String[] tickers() {
+        return tickers;
+    }
+
+    int[] quantities() {
+        return quantities;
+    }
+
+    long[] prices() {
+        return prices;
+    }
+
+    long[] marketValues() {
+        return marketValues;
+    }
+}
@@ -0,0 +1,67 @@
+package com.weilai.portfolio.service;
+
+import com.weilai.portfolio.entity.Position;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 估值快照槽位池：启动时按持仓数一次性分配，运行期不再分配价格/市值数组
+ * <p>
+ * 至少两个槽位（双缓冲）：第 N 次估值在发送时，第 N+1 次估值写入另一个槽位，互不干扰，无需复制或加锁。
+ * 槽位全部被占用（发送队列积压）时 acquire 阻塞，直到有快照被释放。
+ */
+final class ValuationSnapshotPool {
+    private final BlockingQueue<ValuationSnapshot> free;
+    private final int slots;
+    private final LongAdder waitCounter;
+
+    ValuationSnapshotPool(Position[] positions, int slots, LongAdder waitCounter) {
+        if (slots < 2) {
+            throw new IllegalArgumentException("快照槽位数不能少于2：" + slots);
+        }
+        String[] tickers = new String[positions.length];
+        int[] quantities = new int[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            tickers[i] = positions[i].getTicker();
+            quantities[i] = positions[i].getQuantity();
+        }
+        this.slots = slots;
+        this.free = new ArrayBlockingQueue<>(slots);
+        for (int i = 0; i < slots; i++) {
+            free.add(new ValuationSnapshot(this, tickers, quantities));
+        }
+        this.waitCounter = waitCounter;
+    }
+
+    /**
+     * 取一个空闲槽位，调用方持有一个引用
+     */
+    ValuationSnapshot acquire() {
+        ValuationSnapshot snapshot = free.poll();
+        if (snapshot == null) {
+            waitCounter.increment();
+            try {
+                snapshot = free.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for a valuation snapshot buffer", e);
+            }
+        }
+        snapshot.acquired();
+        return snapshot;
+    }
+
+    void recycle(ValuationSnapshot snapshot) {
+        free.offer(snapshot);
+    }
+
+    int getSlots() {
+        return slots;
+    }
+
+    int available() {
+        return free.size();
+    }
+}
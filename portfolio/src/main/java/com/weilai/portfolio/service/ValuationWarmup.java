@@ -0,0 +1,153 @@
+package com.weilai.portfolio.service;
+
+import com.weilai.portfolio.entity.MarketData;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * 启动时的 JIT 预热
+ * <p>
+ * 订阅行情之前，用合成行情（各标的从 100 起按几何随机游走）驱动完整的估值、定价与 protobuf 编码路径，
+ * 让热点方法在第一笔真实行情到来之前完成 JIT 编译。不向接收端发送任何内容，也不影响估值序号、指标与检查点。
+ * 每 window 次估值取一次耗时中位数，达到 min-iterations 后与上一窗口相差不超过 tolerance 即视为已稳定；
+ * 最多 max-iterations 次或 max-duration-ms 毫秒。portfolio.warmup.enabled 为 false 时不预热。
+ */
+@Component
+@Slf4j
+public class ValuationWarmup {
+
+    /**
+     * 预热目标：一次完整的估值（不发送），返回编码后的字节数
+     */
+    interface Target {
+        Collection<String> underlyings();
+
+        int valueOnce(int iteration, Map<String, MarketData> prices);
+    }
+
+    private static final double INITIAL_PRICE = 100.0;
+    private static final double STEP_VOLATILITY = 0.01;
+
+    private final ReactivePortfolioValuator valuator;
+    private final boolean enabled;
+    private final int minIterations;
+    private final int maxIterations;
+    private final int window;
+    private final double tolerance;
+    private final long maxDurationMillis;
+
+    public ValuationWarmup(ReactivePortfolioValuator valuator,
+                           @Value("${portfolio.warmup.enabled:false}") boolean enabled,
+                           @Value("${portfolio.warmup.min-iterations:200}") int minIterations,
+                           @Value("${portfolio.warmup.max-iterations:2000}") int maxIterations,
+                           @Value("${portfolio.warmup.window:50}") int window,
+                           @Value("${portfolio.warmup.tolerance:0.05}") double tolerance,
+                           @Value("${portfolio.warmup.max-duration-ms:30000}") long maxDurationMillis) {
+        if (window <= 0 || minIterations < 0 || maxIterations < minIterations) {
+            throw new IllegalArgumentException("portfolio.warmup 配置无效：window=" + window
+                    + ", min-iterations=" + minIterations + ", max-iterations=" + maxIterations);
+        }
+        if (tolerance < 0 || maxDurationMillis <= 0) {
+            throw new IllegalArgumentException("portfolio.warmup.tolerance 不能为负，max-duration-ms 必须大于0");
+        }
+        this.valuator = valuator;
+        this.enabled = enabled;
+        this.minIterations = minIterations;
+        this.maxIterations = maxIterations;
+        this.window = window;
+        this.tolerance = tolerance;
+        this.maxDurationMillis = maxDurationMillis;
+    }
+
+    /**
+     * 执行预热（未启用时直接返回），返回预热的估值次数
+     */
+    public int run() {
+        if (!enabled) {
+            return 0;
+        }
+        return run(valuator.warmUpTarget());
+    }
+
+    int run(Target target) {
+        String[] underlyings = target.underlyings().toArray(new String[0]);
+        double[] prices = new double[underlyings.length];
+        Arrays.fill(prices, INITIAL_PRICE);
+        Random random = new Random(42L);
+        Stabilizer stabilizer = new Stabilizer(window, tolerance, minIterations);
+
+        long start = System.nanoTime();
+        long deadline = start + maxDurationMillis * 1_000_000L;
+        long firstNanos = 0L;
+        long bytes = 0L;
+        int iterations = 0;
+        boolean stable = false;
+        while (iterations < maxIterations && !stable && System.nanoTime() < deadline) {
+            Map<String, MarketData> ticks = new HashMap<>();
+            long timestamp = System.currentTimeMillis();
+            for (int i = 0; i < underlyings.length; i++) {
+                prices[i] *= Math.exp(STEP_VOLATILITY * random.nextGaussian());
+                ticks.put(underlyings[i], new MarketData(underlyings[i],
+                        BigDecimal.valueOf(prices[i]).setScale(2, RoundingMode.HALF_UP), timestamp));
+            }
+            long iterationStart = System.nanoTime();
+            bytes += target.valueOnce(++iterations, ticks);
+            long nanos = System.nanoTime() - iterationStart;
+            if (iterations == 1) {
+                firstNanos = nanos;
+            }
+            stable = stabilizer.record(nanos);
+        }
+        log.info("JIT warm-up: {} valuations in {} ms ({} underlyings, {} KB encoded), latency {} us -> {} us, {}",
+                iterations, (System.nanoTime() - start) / 1_000_000, underlyings.length, bytes / 1024,
+                firstNanos / 1000, stabilizer.lastMedian() / 1000, stable ? "stable" : "not yet stable");
+        return iterations;
+    }
+
+    /**
+     * 延迟稳定判断：按窗口取中位数，相邻两个窗口相差不超过 tolerance 且已达到最少次数时视为稳定
+     */
+    static final class Stabilizer {
+        private final long[] samples;
+        private final double tolerance;
+        private final int minIterations;
+        private int count;
+        private int recorded;
+        private long lastMedian = -1L;
+
+        Stabilizer(int window, double tolerance, int minIterations) {
+            this.samples = new long[window];
+            this.tolerance = tolerance;
+            this.minIterations = minIterations;
+        }
+
+        boolean record(long nanos) {
+            samples[count++] = nanos;
+            recorded++;
+            if (count < samples.length) {
+                return false;
+            }
+            count = 0;
+            long[] sorted = samples.clone();
+            Arrays.sort(sorted);
+            long median = sorted[sorted.length / 2];
+            long previous = lastMedian;
+            lastMedian = median;
+            return previous >= 0 && recorded >= minIterations
+                    && Math.abs(median - previous) <= tolerance * previous;
+        }
+
+        long lastMedian() {
+            return Math.max(lastMedian, 0L);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.weilai.portfolio.service;
+
+import lombok.Data;
+
+/**
+ * Monte Carlo VaR 请求，各项为空时取配置的默认值
+ * - paths        模拟路径数
+ * - horizonDays  持有期（交易日，一年 252 个，与 GBM 的 μ、σ 同一年化口径）
+ * - confidence   置信度，如 0.99
+ * - correlation  任意两个标的之间收益的相关系数
+ * - seed         随机数种子，相同种子与参数得到相同结果（与线程数无关）
+ * - exact        为 true 时每条路径逐个期权合约定价，否则使用按标的预先定价的价值曲线
+ */
+@Data
+public class VarRequest {
+    private Integer paths;
+    private Integer horizonDays;
+    private Double confidence;
+    private Double correlation;
+    private Long seed;
+    private Boolean exact;
+}
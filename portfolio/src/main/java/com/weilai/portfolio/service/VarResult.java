@@ -0,0 +1,74 @@
+package com.weilai.portfolio.service;
+
+import java.math.BigDecimal;
+
+/**
+ * Monte Carlo VaR 结果：持有期损益分布的 VaR 与 ES（损失记为正数），以及损益的均值与标准差
+ */
+public final class VarResult {
+    private final int paths;
+    private final int horizonDays;
+    private final double confidence;
+    private final BigDecimal valueAtRisk;
+    private final BigDecimal expectedShortfall;
+    private final BigDecimal meanPnl;
+    private final BigDecimal pnlStdDev;
+    private final long elapsedMillis;
+
+    VarResult(int paths, int horizonDays, double confidence, BigDecimal valueAtRisk, BigDecimal expectedShortfall,
+              BigDecimal meanPnl, BigDecimal pnlStdDev, long elapsedMillis) {
+        this.paths = paths;
+        this.horizonDays = horizonDays;
+        this.confidence = confidence;
+        this.valueAtRisk = valueAtRisk;
+        this.expectedShortfall = expectedShortfall;
+        this.meanPnl = meanPnl;
+        this.pnlStdDev = pnlStdDev;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public int getPaths() {
+        return paths;
+    }
+
+    public int getHorizonDays() {
+        return horizonDays;
+    }
+
+    public double getConfidence() {
+        return confidence;
+    }
+
+    /**
+     * 损失的经验分位数：超过该损失的路径占比不超过 1 - confidence
+     */
+    public BigDecimal getValueAtRisk() {
+        return valueAtRisk;
+    }
+
+    /**
+     * 最差的 (1 - confidence) 比例路径的平均损失
+     */
+    public BigDecimal getExpectedShortfall() {
+        return expectedShortfall;
+    }
+
+    public BigDecimal getMeanPnl() {
+        return meanPnl;
+    }
+
+    public BigDecimal getPnlStdDev() {
+        return pnlStdDev;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "VarResult{paths=" + paths + ", horizonDays=" + horizonDays + ", confidence=" + confidence
+                + ", valueAtRisk=" + valueAtRisk + ", expectedShortfall=" + expectedShortfall
+                + ", meanPnl=" + meanPnl + ", pnlStdDev=" + pnlStdDev + ", elapsedMillis=" + elapsedMillis + '}';
+    }
+}
@@ -0,0 +1,72 @@
+package com.weilai.portfolio.service;
+
+import java.util.SplittableRandom;
+
+/**
+ * 标准正态随机数（Ziggurat 方法，128 层，Doornik 2005 的改进版本），每个实例独占一个 SplittableRandom，不是线程安全的
+ * <p>
+ * 约 99% 的样本只需一个 64 位随机数、一次查表与一次乘法；其余落在楔形或尾部时再做拒绝采样。
+ * 层号取随机数的低 7 位，均匀数取高 53 位，两者互不重叠。
+ */
+final class ZigguratGaussian {
+    private static final int LAYERS = 128;
+    private static final double R = 3.442619855899;        // 最底层矩形的右边界
+    private static final double V = 9.91256303526217e-3;   // 每层面积
+    private static final double DOUBLE_UNIT = 0x1.0p-53;
+
+    private static final double[] X = new double[LAYERS + 1];
+    private static final double[] RATIO = new double[LAYERS];
+
+    static {
+        double f = Math.exp(-0.5 * R * R);
+        X[0] = V / f; // 底层含尾部，等效宽度 V / f(R)
+        X[1] = R;
+        X[LAYERS] = 0;
+        for (int i = 2; i < LAYERS; i++) {
+            X[i] = Math.sqrt(-2 * Math.log(V / X[i - 1] + f));
+            f = Math.exp(-0.5 * X[i] * X[i]);
+        }
+        for (int i = 0; i < LAYERS; i++) {
+            RATIO[i] = X[i + 1] / X[i];
+        }
+    }
+
+    private final SplittableRandom random;
+
+    ZigguratGaussian(SplittableRandom random) {
+        this.random = random;
+    }
+
+    double next() {
+        for (;;) {
+            long bits = random.nextLong();
+            int layer = (int) bits & (LAYERS - 1);
+            double u = 2 * ((bits >>> 11) * DOUBLE_UNIT) - 1;
+            // 落在层内矩形：直接接受
+            if (Math.abs(u) < RATIO[layer]) {
+                return u * X[layer];
+            }
+            if (layer == 0) {
+                return tail(u < 0);
+            }
+            // 楔形：按密度拒绝采样
+            double x = u * X[layer];
+            double f0 = Math.exp(-0.5 * (X[layer] * X[layer] - x * x));
+            double f1 = Math.exp(-0.5 * (X[layer + 1] * X[layer + 1] - x * x));
+            if (f1 + random.nextDouble() * (f0 - f1) < 1.0) {
+                return x;
+            }
+        }
+    }
+
+    // |x| > R 的尾部（Marsaglia 1964）
+    private double tail(boolean negative) {
+        double x;
+        double y;
+        do {
+            x = Math.log(1 - random.nextDouble()) / R;
+            y = Math.log(1 - random.nextDouble());
+        } while (-2 * y < x * x);
+        return negative ? x - R : R - x;
+    }
+}
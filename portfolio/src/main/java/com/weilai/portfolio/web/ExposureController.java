@@ -0,0 +1,38 @@
+package com.weilai.portfolio.web;
+
+import com.weilai.portfolio.service.ExposureAggregator;
+import com.weilai.portfolio.service.UnderlyingExposure;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+
+/**
+ * 按标的汇总的风险查询接口（读取最近一次估值后的结果，不触发计算）
+ * - GET /exposures              全部标的
+ * - GET /exposures/{underlying} 单个标的
+ */
+@RestController
+@RequestMapping("/exposures")
+@RequiredArgsConstructor
+public class ExposureController {
+    private final ExposureAggregator exposureAggregator;
+
+    @GetMapping
+    public Mono<Collection<UnderlyingExposure>> exposures() {
+        return Mono.fromSupplier(exposureAggregator::current);
+    }
+
+    @GetMapping("/{underlying}")
+    public Mono<UnderlyingExposure> exposure(@PathVariable String underlying) {
+        return Mono.justOrEmpty(exposureAggregator.get(underlying))
+                .switchIfEmpty(Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND,
+                        "持仓中没有标的 " + underlying)));
+    }
+}
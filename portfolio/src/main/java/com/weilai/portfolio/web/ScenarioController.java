@@ -0,0 +1,36 @@
+package com.weilai.portfolio.web;
+
+import com.weilai.portfolio.service.ScenarioEngine;
+import com.weilai.portfolio.service.ScenarioGrid;
+import com.weilai.portfolio.service.ScenarioResult;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * 情景 / 压力测试接口：按现价 × 波动率 × 时间网格重估当前持仓簿，每个情景一行 JSON（NDJSON）逐个返回
+ * - POST /scenarios  请求体为 ScenarioGrid，省略时只计算不加冲击的情景
+ */
+@RestController
+@RequestMapping("/scenarios")
+@RequiredArgsConstructor
+public class ScenarioController {
+    private final ScenarioEngine scenarioEngine;
+
+    @PostMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<ScenarioResult> scenarios(@RequestBody(required = false) Mono<ScenarioGrid> grid) {
+        return grid.defaultIfEmpty(new ScenarioGrid())
+                .flatMapMany(scenarioEngine::run)
+                .onErrorMap(IllegalArgumentException.class,
+                        e -> new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage()))
+                .onErrorMap(IllegalStateException.class,
+                        e -> new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage()));
+    }
+}
@@ -0,0 +1,34 @@
+package com.weilai.portfolio.web;
+
+import com.weilai.portfolio.service.MonteCarloVarEngine;
+import com.weilai.portfolio.service.VarRequest;
+import com.weilai.portfolio.service.VarResult;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+/**
+ * Monte Carlo VaR / ES 接口（按当前持仓与最近一次估值的价格模拟）
+ * - POST /var  请求体为 VarRequest，省略时全部使用配置的默认值
+ */
+@RestController
+@RequestMapping("/var")
+@RequiredArgsConstructor
+public class VarController {
+    private final MonteCarloVarEngine varEngine;
+
+    @PostMapping
+    public Mono<VarResult> valueAtRisk(@RequestBody(required = false) Mono<VarRequest> request) {
+        return request.defaultIfEmpty(new VarRequest())
+                .flatMap(varEngine::run)
+                .onErrorMap(IllegalArgumentException.class,
+                        e -> new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage()))
+                .onErrorMap(IllegalStateException.class,
+                        e -> new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage()));
+    }
+}
@@ -8,7 +8,8 @@ CREATE TABLE IF NOT EXISTS security (
     security_type VARCHAR(20) NOT NULL CHECK (security_type IN ('STOCK', 'CALL', 'PUT')),
     strike_price DECIMAL(18,2),
     maturity_date DATE,
-    underlying_ticker VARCHAR(50)
+    underlying_ticker VARCHAR(50),
+    exercise_style VARCHAR(20) CHECK (exercise_style IN ('EUROPEAN', 'AMERICAN'))
 );
 
 -- 清空表数据（避免重复初始化）
@@ -22,9 +23,10 @@ VALUES
     ('TELSA', 'STOCK', 'TELSA');
 
 -- 2. 期权类（修正字段名：securityType→security_type、strikePrice→strike_price、maturityDate→maturity_date）
-INSERT INTO security (ticker, security_type, strike_price, maturity_date, underlying_ticker)
+-- 个股期权均为美式
+INSERT INTO security (ticker, security_type, strike_price, maturity_date, underlying_ticker, exercise_style)
 VALUES
-('AAPL-MAY-2026-110-C', 'CALL', 110.00, '2026-05-31', 'AAPL'),
-('AAPL-MAY-2026-110-P', 'PUT', 110.00, '2026-05-31', 'AAPL'),
-('TELSA-JUN-2026-400-C', 'CALL', 400.00, '2026-06-30', 'TELSA'),
-('TELSA-JUL-2026-400-P', 'PUT', 400.00, '2026-07-31', 'TELSA');
\ No newline at end of file
+('AAPL-MAY-2026-110-C', 'CALL', 110.00, '2026-05-31', 'AAPL', 'AMERICAN'),
+('AAPL-MAY-2026-110-P', 'PUT', 110.00, '2026-05-31', 'AAPL', 'AMERICAN'),
+('TELSA-JUN-2026-400-C', 'CALL', 400.00, '2026-06-30', 'TELSA', 'AMERICAN'),
+('TELSA-JUL-2026-400-P', 'PUT', 400.00, '2026-07-31', 'TELSA', 'AMERICAN');
\ No newline at end of file
@@ -0,0 +1,320 @@
+package com.weilai.portfolio.grpc.client;
+
+import com.weilai.portfolio.grpc.valuation.PortfolioValuationMessage;
+import com.weilai.portfolio.grpc.valuation.PortfolioValuationServiceGrpc;
+import com.weilai.portfolio.grpc.valuation.PositionProto;
+import com.weilai.portfolio.grpc.valuation.ValuationBatchEntry;
+import com.weilai.portfolio.grpc.valuation.ValuationBatchRequest;
+import com.weilai.portfolio.grpc.valuation.ValuationResponse;
+import com.weilai.portfolio.service.ValuationSendQueue.OverflowPolicy;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ValuationBatcherTest {
+    private static final ValuationResponse OK = ValuationResponse.newBuilder().setSuccess(true).build();
+    private static final long NO_LINGER = TimeUnit.MINUTES.toMillis(1);
+
+    // 记录每个批次中估值序号的 RPC
+    private static final class RecordingRpc implements Function<ValuationBatchRequest, ValuationResponse> {
+        private final List<List<Integer>> batches = Collections.synchronizedList(new ArrayList<>());
+        private final CountDownLatch entered = new CountDownLatch(1);
+        private final CountDownLatch release;
+        private volatile RuntimeException failure;
+
+        private RecordingRpc(boolean blockFirst) {
+            this.release = new CountDownLatch(blockFirst ? 1 : 0);
+        }
+
+        @Override
+        public ValuationResponse apply(ValuationBatchRequest request) {
+            entered.countDown();
+            try {
+                assertTrue(release.await(5, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            List<Integer> updateCounts = new ArrayList<>();
+            for (ValuationBatchEntry entry : request.getEntriesList()) {
+                updateCounts.add(entry.getValuation().getUpdateCount());
+            }
+            batches.add(updateCounts);
+            if (failure != null) {
+                throw failure;
+            }
+            return OK;
+        }
+
+        private List<Integer> sent() {
+            List<Integer> all = new ArrayList<>();
+            synchronized (batches) {
+                batches.forEach(all::addAll);
+            }
+            return all;
+        }
+    }
+
+    // 各估值的回调结果：ack / 异常
+    private static final class Callbacks {
+        private final List<Integer> acked = Collections.synchronizedList(new ArrayList<>());
+        private final List<Integer> dropped = Collections.synchronizedList(new ArrayList<>());
+        private final List<Integer> failed = Collections.synchronizedList(new ArrayList<>());
+
+        private void add(ValuationBatcher batcher, int updateCount) {
+            add(batcher, updateCount, 0);
+        }
+
+        private void add(ValuationBatcher batcher, int updateCount, int positions) {
+            PortfolioValuationMessage.Builder message = PortfolioValuationMessage.newBuilder()
+                    .setUpdateCount(updateCount);
+            for (int i = 0; i < positions; i++) {
+                message.addPositionsBuilder().setTicker("SYN" + i).setQuantity(i);
+            }
+            batcher.add(message.build(),
+                    response -> acked.add(updateCount),
+                    e -> (e instanceof ValuationBatcher.DroppedException ? dropped : failed).add(updateCount));
+        }
+    }
+
+    private static void await(CountDownLatch latch) throws InterruptedException {
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+
+    private static void awaitSize(List<?> list, int size) throws InterruptedException {
+        for (int i = 0; i < 500 && list.size() < size; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(size, list.size());
+    }
+
+    /**
+     * 攒满 max-count 条立即发送，不足的部分在关闭时发送
+     */
+    @Test
+    void add_MaxCount_FlushesFullBatch() throws InterruptedException {
+        RecordingRpc rpc = new RecordingRpc(false);
+        Callbacks callbacks = new Callbacks();
+        ValuationBatcher batcher = new ValuationBatcher(rpc, null, 3, Integer.MAX_VALUE, NO_LINGER, 4,
+                OverflowPolicy.DROP_OLDEST);
+        for (int i = 1; i <= 5; i++) {
+            callbacks.add(batcher, i);
+        }
+        awaitSize(rpc.batches, 1);
+        assertEquals(Arrays.asList(1, 2, 3), rpc.batches.get(0));
+
+        batcher.close();
+        assertEquals(Arrays.asList(Arrays.asList(1, 2, 3), Arrays.asList(4, 5)), rpc.batches);
+        assertEquals(Arrays.asList(1, 2, 3, 4, 5), callbacks.acked);
+    }
+
+    /**
+     * 攒满 max-bytes 字节立即发送
+     */
+    @Test
+    void add_MaxBytes_FlushesWhenReached() throws InterruptedException {
+        RecordingRpc rpc = new RecordingRpc(false);
+        Callbacks callbacks = new Callbacks();
+        int entryBytes = ValuationBatchEntry.newBuilder().setValuation(PortfolioValuationMessage.newBuilder()
+                .setUpdateCount(1)
+                .addPositions(PositionProto.newBuilder()
+                        .setTicker("SYN0").setQuantity(0))
+                .build()).build().getSerializedSize();
+        ValuationBatcher batcher = new ValuationBatcher(rpc, null, 1000, entryBytes * 2, NO_LINGER, 4,
+                OverflowPolicy.DROP_OLDEST);
+        callbacks.add(batcher, 1, 1);
+        callbacks.add(batcher, 2, 1);
+        callbacks.add(batcher, 3, 1);
+        awaitSize(rpc.batches, 1);
+        assertEquals(Arrays.asList(1, 2), rpc.batches.get(0));
+        batcher.close();
+    }
+
+    /**
+     * 不满一批时在第一条入队 linger-ms 后发送
+     */
+    @Test
+    void add_Linger_FlushesAfterDelay() throws InterruptedException {
+        RecordingRpc rpc = new RecordingRpc(false);
+        Callbacks callbacks = new Callbacks();
+        ValuationBatcher batcher = new ValuationBatcher(rpc, null, 100, Integer.MAX_VALUE, 50L, 4,
+                OverflowPolicy.DROP_OLDEST);
+        long start = System.nanoTime();
+        callbacks.add(batcher, 1);
+        callbacks.add(batcher, 2);
+        assertTrue(rpc.batches.isEmpty());
+
+        awaitSize(callbacks.acked, 2);
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(40));
+        assertEquals(Collections.singletonList(Arrays.asList(1, 2)), rpc.batches);
+        batcher.close();
+    }
+
+    /**
+     * 多个批次按入队顺序串行发送，回调也按顺序执行
+     */
+    @Test
+    void add_ManyBatches_KeepOrder() throws InterruptedException {
+        RecordingRpc rpc = new RecordingRpc(false);
+        Callbacks callbacks = new Callbacks();
+        ValuationBatcher batcher = new ValuationBatcher(rpc, null, 7, Integer.MAX_VALUE, 5L, 1000,
+                OverflowPolicy.BLOCK);
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 1; i <= 500; i++) {
+            callbacks.add(batcher, i);
+            expected.add(i);
+        }
+        batcher.close();
+        assertEquals(expected, rpc.sent());
+        assertEquals(expected, callbacks.acked);
+    }
+
+    /**
+     * RPC 失败时批内每条估值都回调异常
+     */
+    @Test
+    void add_RpcFailure_CallsExceptionHandlers() throws InterruptedException {
+        RecordingRpc rpc = new RecordingRpc(false);
+        rpc.failure = new IllegalStateException("receiver down");
+        Callbacks callbacks = new Callbacks();
+        ValuationBatcher batcher = new ValuationBatcher(rpc, null, 2, Integer.MAX_VALUE, NO_LINGER, 4,
+                OverflowPolicy.DROP_OLDEST);
+        callbacks.add(batcher, 1);
+        callbacks.add(batcher, 2);
+        awaitSize(callbacks.failed, 2);
+        assertTrue(callbacks.acked.isEmpty());
+        assertTrue(callbacks.dropped.isEmpty());
+        batcher.close();
+    }
+
+    /**
+     * DROP_OLDEST：等待发送的批次超过 max-pending 时丢弃最旧的批次，其余按顺序发送
+     */
+    @Test
+    void add_DropOldest_BoundsPendingBatches() throws InterruptedException {
+        RecordingRpc rpc = new RecordingRpc(true);
+        Callbacks callbacks = new Callbacks();
+        ValuationBatcher batcher = new ValuationBatcher(rpc, null, 1, Integer.MAX_VALUE, NO_LINGER, 2,
+                OverflowPolicy.DROP_OLDEST);
+        callbacks.add(batcher, 1);
+        await(rpc.entered); // #1 正在发送，接收端卡住
+        for (int i = 2; i <= 6; i++) {
+            callbacks.add(batcher, i);
+        }
+        assertEquals(2, batcher.pendingBatches());
+        assertEquals(Arrays.asList(2, 3, 4), callbacks.dropped);
+
+        rpc.release.countDown();
+        batcher.close();
+        assertEquals(Arrays.asList(1, 5, 6), rpc.sent());
+        assertEquals(Arrays.asList(1, 5, 6), callbacks.acked);
+    }
+
+    /**
+     * LATEST：只保留最新的批次
+     */
+    @Test
+    void add_Latest_KeepsNewestBatch() throws InterruptedException {
+        RecordingRpc rpc = new RecordingRpc(true);
+        Callbacks callbacks = new Callbacks();
+        ValuationBatcher batcher = new ValuationBatcher(rpc, null, 1, Integer.MAX_VALUE, NO_LINGER, 4,
+                OverflowPolicy.LATEST);
+        callbacks.add(batcher, 1);
+        await(rpc.entered);
+        for (int i = 2; i <= 4; i++) {
+            callbacks.add(batcher, i);
+        }
+        assertEquals(1, batcher.pendingBatches());
+        assertEquals(Arrays.asList(2, 3), callbacks.dropped);
+
+        rpc.release.countDown();
+        batcher.close();
+        assertEquals(Arrays.asList(1, 4), rpc.sent());
+    }
+
+    /**
+     * BLOCK：等待发送的批次满时阻塞调用方，不丢估值
+     */
+    @Test
+    void add_Block_WaitsForSender() throws InterruptedException {
+        RecordingRpc rpc = new RecordingRpc(true);
+        Callbacks callbacks = new Callbacks();
+        ValuationBatcher batcher = new ValuationBatcher(rpc, null, 1, Integer.MAX_VALUE, NO_LINGER, 1,
+                OverflowPolicy.BLOCK);
+        callbacks.add(batcher, 1);
+        await(rpc.entered);
+        callbacks.add(batcher, 2);
+
+        AtomicBoolean returned = new AtomicBoolean();
+        Thread producer = new Thread(() -> {
+            callbacks.add(batcher, 3);
+            returned.set(true);
+        });
+        producer.start();
+        producer.join(100);
+        assertFalse(returned.get());
+
+        rpc.release.countDown();
+        producer.join(TimeUnit.SECONDS.toMillis(5));
+        assertTrue(returned.get());
+        batcher.close();
+        assertEquals(Arrays.asList(1, 2, 3), rpc.sent());
+        assertTrue(callbacks.dropped.isEmpty());
+    }
+
+    @Test
+    void constructor_InvalidMaxPending_Throws() {
+        assertThrows(IllegalArgumentException.class, () -> new ValuationBatcher(new RecordingRpc(false), null,
+                1, 1, 1L, 0, OverflowPolicy.BLOCK));
+    }
+
+    /**
+     * 接收端挂起不响应：每次调用在 deadline 后以 DEADLINE_EXCEEDED 失败，BLOCK 策略下发送也不会卡住
+     */
+    @Test
+    void send_ReceiverHangs_FailsWithDeadlineExceeded() throws Exception {
+        String name = InProcessServerBuilder.generateName();
+        Server server = InProcessServerBuilder.forName(name)
+                .addService(new PortfolioValuationServiceGrpc.PortfolioValuationServiceImplBase() {
+                    @Override
+                    public void batchValuations(ValuationBatchRequest request,
+                                                StreamObserver<ValuationResponse> responseObserver) {
+                        // 不响应也不关闭调用
+                    }
+                })
+                .build()
+                .start();
+        ManagedChannel channel = InProcessChannelBuilder.forName(name).build();
+        List<Throwable> failures = new CopyOnWriteArrayList<>();
+        try (ValuationBatcher batcher = new ValuationBatcher(channel, 1, Integer.MAX_VALUE, NO_LINGER, 1,
+                OverflowPolicy.BLOCK, 100L)) {
+            long start = System.nanoTime();
+            for (int i = 1; i <= 3; i++) {
+                batcher.add(PortfolioValuationMessage.newBuilder().setUpdateCount(i).build(),
+                        response -> fail("挂起的接收端不应确认"), failures::add);
+            }
+            awaitSize(failures, 3);
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(3));
+            for (Throwable failure : failures) {
+                assertEquals(Status.Code.DEADLINE_EXCEEDED, Status.fromThrowable(failure).getCode());
+            }
+        } finally {
+            server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.weilai.portfolio.grpc.codec;
+
+import com.weilai.portfolio.entity.PortfolioValuation;
+import com.weilai.portfolio.entity.Position;
+import com.weilai.portfolio.grpc.valuation.PortfolioValuationBatch;
+import com.weilai.portfolio.grpc.valuation.PortfolioValuationMessage;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ValuationFrameCodecTest {
+
+    private static Position position(String ticker, int quantity, double price) {
+        return new Position(ticker, quantity, BigDecimal.valueOf(price * quantity), BigDecimal.valueOf(price));
+    }
+
+    private static PortfolioValuation valuation(int updateCount, Position... positions) {
+        BigDecimal nav = BigDecimal.ZERO;
+        for (Position position : positions) {
+            nav = nav.add(position.getMarketValue());
+        }
+        Map<String, BigDecimal> changed = new HashMap<>();
+        changed.put("AAPL", positions[0].getPrice());
+        return new PortfolioValuation(positions, nav, 1000L + updateCount, updateCount, changed, 900L + updateCount,
+                "test");
+    }
+
+    /**
+     * 关键帧 + 增量帧往返后与原值一致，增量帧比关键帧小
+     */
+    @Test
+    void encodeDecode_KeyThenDeltaFrames_RoundTrip() {
+        ValuationFrameCodec.Encoder encoder = new ValuationFrameCodec.Encoder("test", "shard-a", 4, 100);
+        ValuationFrameCodec.Decoder decoder = new ValuationFrameCodec.Decoder();
+
+        PortfolioValuationBatch key = encoder.encode(valuation(1,
+                position("AAPL", 100, 110.25), position("AAPL-C", -3, 5.1234), position("TELSA", 10, 450.5)));
+        PortfolioValuationBatch delta = encoder.encode(valuation(2,
+                position("AAPL", 100, 110.30), position("AAPL-C", -3, 5.1500), position("TELSA", 10, 450.5)));
+        assertTrue(key.getKeyFrame());
+        assertFalse(delta.getKeyFrame());
+        assertEquals(1, delta.getBaseUpdateCount());
+        assertTrue(delta.getSerializedSize() < key.getSerializedSize());
+
+        decoder.decode(key);
+        PortfolioValuationMessage decoded = decoder.decode(delta);
+        assertEquals(2, decoded.getUpdateCount());
+        assertEquals("test", decoded.getSourceId());
+        assertEquals("shard-a", decoded.getShardId());
+        assertEquals(3, decoded.getPositionsCount());
+        assertEquals("AAPL-C", decoded.getPositions(1).getTicker());
+        assertEquals(-3, decoded.getPositions(1).getQuantity());
+        assertEquals(5.15, decoded.getPositions(1).getPrice(), 1e-9);
+        assertEquals(110.30 * 100 + 5.15 * -3 + 450.5 * 10, decoded.getTotalNav(), 1e-6);
+        assertEquals(110.30, decoded.getChangedMarketData(0).getPrice(), 1e-9);
+        assertEquals(902L, decoded.getTickTimestamp());
+    }
+
+    /**
+     * 解码器没有基准帧时要求关键帧，随后的关键帧可以恢复
+     */
+    @Test
+    void decode_DeltaWithoutBase_RequiresKeyFrame() {
+        ValuationFrameCodec.Encoder encoder = new ValuationFrameCodec.Encoder("test", 4, 100);
+        encoder.encode(valuation(1, position("AAPL", 100, 110.0)));
+        PortfolioValuationBatch delta = encoder.encode(valuation(2, position("AAPL", 100, 111.0)));
+
+        ValuationFrameCodec.Decoder restarted = new ValuationFrameCodec.Decoder();
+        assertThrows(ValuationFrameCodec.KeyFrameRequiredException.class, () -> restarted.decode(delta));
+
+        encoder.requestKeyFrame();
+        PortfolioValuationBatch key = encoder.encode(valuation(2, position("AAPL", 100, 111.0)));
+        assertTrue(key.getKeyFrame());
+        assertEquals(111.0, restarted.decode(key).getPositions(0).getPrice(), 1e-9);
+    }
+
+    /**
+     * 增量帧的基准帧来自发送端的上一个会话（序号相同也不能接上）时要求关键帧
+     */
+    @Test
+    void decode_DeltaFromAnotherSession_RequiresKeyFrame() {
+        ValuationFrameCodec.Encoder before = new ValuationFrameCodec.Encoder("test", "", 100L, 4, 100);
+        ValuationFrameCodec.Decoder decoder = new ValuationFrameCodec.Decoder();
+        decoder.decode(before.encode(valuation(1, position("AAPL", 100, 110.0))));
+
+        ValuationFrameCodec.Encoder after = new ValuationFrameCodec.Encoder("test", "", 200L, 4, 100);
+        after.encode(valuation(1, position("AAPL", 100, 120.0)));
+        PortfolioValuationBatch delta = after.encode(valuation(2, position("AAPL", 100, 121.0)));
+        assertEquals(1, delta.getBaseUpdateCount());
+        assertThrows(ValuationFrameCodec.KeyFrameRequiredException.class, () -> decoder.decode(delta));
+
+        after.requestKeyFrame();
+        PortfolioValuationMessage decoded = decoder.decode(after.encode(valuation(2, position("AAPL", 100, 121.0))));
+        assertEquals(200L, decoded.getSessionId());
+        assertEquals(121.0, decoded.getPositions(0).getPrice(), 1e-9);
+    }
+
+    /**
+     * 中间一帧被丢弃时，下一估值由独立编码器以关键帧发送，原编码器后续的增量帧仍能接上
+     */
+    @Test
+    void decode_DroppedFrameRebasedAsKeyFrame_LaterDeltasApply() {
+        ValuationFrameCodec.Encoder encoder = new ValuationFrameCodec.Encoder("test", 4, 100);
+        ValuationFrameCodec.Decoder decoder = new ValuationFrameCodec.Decoder();
+        decoder.decode(encoder.encode(valuation(1, position("AAPL", 100, 110.0), position("TELSA", 10, 450.0))));
+        encoder.encode(valuation(2, position("AAPL", 100, 111.0), position("TELSA", 10, 451.0))); // 被丢弃
+        PortfolioValuationBatch delta = encoder.encode(valuation(3,
+                position("AAPL", 100, 112.0), position("TELSA", 10, 451.0)));
+        assertEquals(2, delta.getBaseUpdateCount());
+
+        PortfolioValuationBatch key = new ValuationFrameCodec.Encoder("test", 4, 100).encode(valuation(3,
+                position("AAPL", 100, 112.0), position("TELSA", 10, 451.0)));
+        assertTrue(key.getKeyFrame());
+        assertEquals(112.0, decoder.decode(key).getPositions(0).getPrice(), 1e-9);
+
+        PortfolioValuationMessage next = decoder.decode(encoder.encode(valuation(4,
+                position("AAPL", 100, 112.5), position("TELSA", 10, 449.0))));
+        assertEquals(4, next.getUpdateCount());
+        assertEquals(112.5, next.getPositions(0).getPrice(), 1e-9);
+        assertEquals(449.0, next.getPositions(1).getPrice(), 1e-9);
+        assertEquals(112.5 * 100 + 449.0 * 10, next.getTotalNav(), 1e-6);
+    }
+
+    /**
+     * 持仓行变化或达到关键帧间隔时发送关键帧
+     */
+    @Test
+    void encode_RowsChangedOrIntervalReached_EmitsKeyFrame() {
+        ValuationFrameCodec.Encoder encoder = new ValuationFrameCodec.Encoder("test", 4, 2);
+        assertTrue(encoder.encode(valuation(1, position("AAPL", 1, 1.0))).getKeyFrame());
+        assertFalse(encoder.encode(valuation(2, position("AAPL", 1, 1.0))).getKeyFrame());
+        assertFalse(encoder.encode(valuation(3, position("AAPL", 1, 1.0))).getKeyFrame());
+        assertTrue(encoder.encode(valuation(4, position("AAPL", 1, 1.0))).getKeyFrame());
+        assertTrue(encoder.encode(valuation(5, position("AAPL", 1, 1.0), position("TELSA", 1, 2.0))).getKeyFrame());
+        assertEquals(Collections.singletonList(0L),
+                encoder.encode(valuation(6, position("AAPL", 1, 1.0), position("TELSA", 1, 2.0)))
+                        .getQuantitiesList().subList(0, 1));
+    }
+
+    /**
+     * 按定点列编码与按 PortfolioValuation 编码得到相同的帧；列的 scale 与编码器不同时换算
+     */
+    @Test
+    void encodeColumns_SameAsEntityEncoding() {
+        ValuationFrameCodec.Encoder fromEntity = new ValuationFrameCodec.Encoder("test", 4, 100);
+        ValuationFrameCodec.Encoder fromColumns = new ValuationFrameCodec.Encoder("test", 4, 100);
+        PortfolioValuation valuation = valuation(1, position("AAPL", 100, 110.25), position("AAPL-C", -3, 5.1234));
+
+        PortfolioValuationBatch expected = fromEntity.encode(valuation);
+        PortfolioValuationBatch actual = fromColumns.encode(1, 1001L, 901L,
+                new String[]{"AAPL", "AAPL-C"}, new int[]{100, -3},
+                new long[]{1_102_500L, 51_234L}, new long[]{110_250_000L, -153_702L}, 4,
+                110_096_298L, valuation.getChangedMarketData());
+        assertEquals(expected, actual);
+
+        ValuationFrameCodec.Encoder cents = new ValuationFrameCodec.Encoder("test", 4, 100);
+        PortfolioValuationBatch rescaled = cents.encode(1, 1001L, 901L,
+                new String[]{"AAPL"}, new int[]{100}, new long[]{11_025L}, new long[]{1_102_500L}, 2,
+                1_102_500L, Collections.emptyMap());
+        assertEquals(1_102_500L, rescaled.getPrices(0));
+        assertEquals(110_250_000L, rescaled.getTotalNav());
+    }
+}
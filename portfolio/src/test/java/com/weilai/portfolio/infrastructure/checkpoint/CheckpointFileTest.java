@@ -0,0 +1,87 @@
+package com.weilai.portfolio.infrastructure.checkpoint;
+
+import com.weilai.portfolio.entity.MarketData;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CheckpointFileTest {
+
+    @TempDir
+    Path dir;
+
+    private static Map<String, MarketData> prices(String... tickerPrices) {
+        Map<String, MarketData> prices = new LinkedHashMap<>();
+        for (int i = 0; i < tickerPrices.length; i += 2) {
+            prices.put(tickerPrices[i], new MarketData(tickerPrices[i], new BigDecimal(tickerPrices[i + 1]), 1000L + i));
+        }
+        return prices;
+    }
+
+    private static ValuationCheckpoint checkpoint(int updateCount) {
+        return new ValuationCheckpoint(updateCount, 1_700_000_000_000L + updateCount,
+                new BigDecimal("123456789.012345"), prices("AAPL", "110.25", "TELSA", "449.90"),
+                prices("AAPL", "110.31", "TELSA", "450.02"));
+    }
+
+    @Test
+    void write_ThenRead_RoundTrips() throws IOException {
+        CheckpointFile file = new CheckpointFile(dir.resolve("state").resolve("portfolio.ckpt"));
+        file.write(checkpoint(41));
+        file.write(checkpoint(42));
+
+        ValuationCheckpoint read = file.read();
+        assertEquals(42, read.getUpdateCount());
+        assertEquals(1_700_000_000_042L, read.getTimestamp());
+        assertEquals(new BigDecimal("123456789.012345"), read.getTotalNav());
+        assertEquals(checkpoint(42).getPrices(), read.getPrices());
+        assertEquals(checkpoint(42).getStrategyState(), read.getStrategyState());
+        // 临时文件已重命名为检查点
+        try (Stream<Path> files = Files.list(dir.resolve("state"))) {
+            assertEquals(Arrays.asList("portfolio.ckpt"),
+                    files.map(path -> path.getFileName().toString()).collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    void read_MissingFile_ReturnsNull() throws IOException {
+        assertNull(new CheckpointFile(dir.resolve("missing.ckpt")).read());
+    }
+
+    /**
+     * 内容被改动、被截断或不是检查点文件时视为不存在
+     */
+    @Test
+    void read_DamagedFile_ReturnsNull() throws IOException {
+        Path path = dir.resolve("portfolio.ckpt");
+        CheckpointFile file = new CheckpointFile(path);
+        file.write(checkpoint(7));
+        byte[] bytes = Files.readAllBytes(path);
+
+        byte[] flipped = bytes.clone();
+        flipped[flipped.length - 3] ^= 0x10;
+        Files.write(path, flipped);
+        assertNull(file.read());
+
+        Files.write(path, Arrays.copyOf(bytes, bytes.length - 1));
+        assertNull(file.read());
+        Files.write(path, Arrays.copyOf(bytes, 10));
+        assertNull(file.read());
+        Files.write(path, "not a checkpoint file".getBytes("UTF-8"));
+        assertNull(file.read());
+
+        Files.write(path, bytes);
+        assertEquals(7, file.read().getUpdateCount());
+    }
+}
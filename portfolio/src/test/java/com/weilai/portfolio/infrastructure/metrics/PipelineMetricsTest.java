@@ -0,0 +1,99 @@
+package com.weilai.portfolio.infrastructure.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PipelineMetricsTest {
+    private final PipelineMetrics metrics = new PipelineMetrics();
+
+    @SuppressWarnings("unchecked")
+    private static <T> Map<String, T> section(Map<String, Object> snapshot, String name) {
+        return (Map<String, T>) snapshot.get(name);
+    }
+
+    /**
+     * 同名的阶段与计数器只注册一次，调用方持有的引用即注册表中的实例
+     */
+    @Test
+    void stageAndCounter_SameName_SameInstance() {
+        assertSame(metrics.stage("send"), metrics.stage("send"));
+        assertSame(metrics.counter("ticks"), metrics.counter("ticks"));
+        assertNotSame(metrics.stage("send"), metrics.stage("encode"));
+    }
+
+    /**
+     * 快照按名称排序输出各阶段延迟、计数器，瞬时值在读取快照时求值
+     */
+    @Test
+    void snapshot_RecordedValues_SortedByName() {
+        metrics.stage("send").recordMicros(300L);
+        metrics.stage("encode").recordMicros(100L);
+        metrics.stage("encode").recordMicros(200L);
+        metrics.counter("valuations").add(5L);
+        metrics.counter("ticks").increment();
+        AtomicLong depth = new AtomicLong(3L);
+        metrics.gauge("send-queue-depth", depth::get);
+        depth.set(7L);
+
+        Map<String, Object> snapshot = metrics.snapshot();
+        Map<String, StageLatencySnapshot> stages = section(snapshot, "stages");
+        assertEquals(Arrays.asList("encode", "send"), new ArrayList<>(stages.keySet()));
+        assertEquals(2L, stages.get("encode").getCount());
+        assertEquals(300L, stages.get("send").getMaxMicros());
+
+        Map<String, Long> counters = section(snapshot, "counters");
+        assertEquals(Arrays.asList("ticks", "valuations"), new ArrayList<>(counters.keySet()));
+        assertEquals(5L, counters.get("valuations"));
+
+        Map<String, Long> gauges = section(snapshot, "gauges");
+        assertEquals(7L, gauges.get("send-queue-depth"));
+        assertTrue((Long) snapshot.get("uptimeMillis") >= 0L);
+    }
+
+    /**
+     * 同名瞬时值后注册的覆盖先注册的
+     */
+    @Test
+    void gauge_Reregistered_LatestWins() {
+        metrics.gauge("snapshot-buffers-free", () -> 1L);
+        metrics.gauge("snapshot-buffers-free", () -> 2L);
+
+        Map<String, Long> gauges = section(metrics.snapshot(), "gauges");
+        assertEquals(2L, gauges.get("snapshot-buffers-free"));
+    }
+
+    /**
+     * reset 清零各阶段与计数器，但保留已注册的名称与调用方持有的引用；瞬时值不受影响
+     */
+    @Test
+    void reset_StagesAndCounters_Cleared() {
+        StageLatency send = metrics.stage("send");
+        send.recordMicros(300L);
+        metrics.snapshot();
+        send.recordMicros(400L);
+        metrics.counter("ticks").add(10L);
+        metrics.gauge("send-queue-depth", () -> 4L);
+
+        metrics.reset();
+        Map<String, Object> snapshot = metrics.snapshot();
+        Map<String, StageLatencySnapshot> stages = section(snapshot, "stages");
+        Map<String, Long> counters = section(snapshot, "counters");
+        Map<String, Long> gauges = section(snapshot, "gauges");
+        assertEquals(0L, stages.get("send").getCount());
+        assertEquals(0L, counters.get("ticks"));
+        assertEquals(4L, gauges.get("send-queue-depth"));
+
+        // 热路径上持有的引用在 reset 后继续有效
+        send.recordMicros(50L);
+        metrics.counter("ticks").increment();
+        snapshot = metrics.snapshot();
+        assertEquals(1L, PipelineMetricsTest.<StageLatencySnapshot>section(snapshot, "stages").get("send").getCount());
+        assertEquals(1L, PipelineMetricsTest.<Long>section(snapshot, "counters").get("ticks"));
+    }
+}
@@ -0,0 +1,89 @@
+package com.weilai.portfolio.infrastructure.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StageLatencyTest {
+    // HdrHistogram 3 位有效数字：读出的值与写入值相差不超过 0.1%
+    private static final double PRECISION = 0.001;
+
+    private static void assertMicros(long expected, long actual) {
+        assertEquals(expected, actual, Math.max(1.0, expected * PRECISION));
+    }
+
+    /**
+     * 纳秒、毫秒、微秒三种写入统一换算为微秒
+     */
+    @Test
+    void record_MixedUnits_ConvertedToMicros() {
+        StageLatency latency = new StageLatency("encode");
+        latency.recordNanos(1_000_000L);
+        latency.recordMicros(2_000L);
+        latency.recordMillis(3L);
+
+        StageLatencySnapshot snapshot = latency.snapshot();
+        assertEquals(3L, snapshot.getCount());
+        assertMicros(2_000L, snapshot.getP50Micros());
+        assertMicros(3_000L, snapshot.getMaxMicros());
+        assertEquals(2_000.0, snapshot.getMeanMicros(), 2_000.0 * PRECISION);
+    }
+
+    /**
+     * 负值记为0，超出量程（10分钟）的值截断到量程上限，不抛异常
+     */
+    @Test
+    void recordMicros_OutOfRange_Clamped() {
+        StageLatency latency = new StageLatency("send");
+        latency.recordMicros(-5L);
+        latency.recordMillis(TimeUnit.HOURS.toMillis(1));
+
+        StageLatencySnapshot snapshot = latency.snapshot();
+        assertEquals(2L, snapshot.getCount());
+        assertEquals(0L, snapshot.getP50Micros());
+        assertMicros(TimeUnit.MINUTES.toMicros(10), snapshot.getMaxMicros());
+    }
+
+    /**
+     * 每次读取把新区间并入累计直方图：多次读取之间的记录不丢失、不重复计数
+     */
+    @Test
+    void snapshot_RepeatedReads_Accumulate() {
+        StageLatency latency = new StageLatency("valuation");
+        latency.recordMicros(100L);
+        assertEquals(1L, latency.snapshot().getCount());
+        assertEquals(1L, latency.snapshot().getCount());
+
+        for (int i = 1; i <= 99; i++) {
+            latency.recordMicros(100L + i);
+        }
+        StageLatencySnapshot snapshot = latency.snapshot();
+        assertEquals(100L, snapshot.getCount());
+        assertMicros(149L, snapshot.getP50Micros());
+        assertMicros(198L, snapshot.getP99Micros());
+        assertMicros(199L, snapshot.getMaxMicros());
+    }
+
+    /**
+     * reset 同时清空累计值与尚未读取的区间记录，之后只统计新记录
+     */
+    @Test
+    void reset_ClearsAccumulatedAndPending() {
+        StageLatency latency = new StageLatency("aggregation");
+        latency.recordMicros(5_000L);
+        latency.snapshot();
+        latency.recordMicros(7_000L);
+
+        latency.reset();
+        StageLatencySnapshot cleared = latency.snapshot();
+        assertEquals(0L, cleared.getCount());
+        assertEquals(0L, cleared.getMaxMicros());
+
+        latency.recordMicros(10L);
+        StageLatencySnapshot snapshot = latency.snapshot();
+        assertEquals(1L, snapshot.getCount());
+        assertEquals(10L, snapshot.getMaxMicros());
+    }
+}
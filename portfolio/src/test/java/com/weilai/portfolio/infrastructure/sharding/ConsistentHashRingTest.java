@@ -0,0 +1,69 @@
+package com.weilai.portfolio.infrastructure.sharding;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConsistentHashRingTest {
+
+    private static final int KEYS = 30_000;
+
+    private static String key(int i) {
+        return "UND" + i;
+    }
+
+    /**
+     * 归属只取决于节点集合，与节点顺序无关
+     */
+    @Test
+    void nodeFor_IndependentOfNodeOrder() {
+        ConsistentHashRing ring = new ConsistentHashRing(Arrays.asList("a", "b", "c"), 128);
+        ConsistentHashRing reordered = new ConsistentHashRing(Arrays.asList("c", "a", "b"), 128);
+        for (int i = 0; i < KEYS; i++) {
+            assertEquals(ring.nodeFor(key(i)), reordered.nodeFor(key(i)));
+        }
+    }
+
+    @Test
+    void nodeFor_SpreadsKeysEvenly() {
+        ConsistentHashRing ring = new ConsistentHashRing(Arrays.asList("a", "b", "c"), 128);
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            counts.merge(ring.nodeFor(key(i)), 1, Integer::sum);
+        }
+        assertEquals(3, counts.size());
+        for (int count : counts.values()) {
+            assertTrue(count > KEYS / 3 * 0.75 && count < KEYS / 3 * 1.25, counts.toString());
+        }
+    }
+
+    /**
+     * 增加一个节点时，只有约 1/N 的键改变归属，且都归新节点
+     */
+    @Test
+    void addNode_MovesOnlyKeysToNewNode() {
+        ConsistentHashRing before = new ConsistentHashRing(Arrays.asList("a", "b", "c"), 128);
+        ConsistentHashRing after = new ConsistentHashRing(Arrays.asList("a", "b", "c", "d"), 128);
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            String from = before.nodeFor(key(i));
+            String to = after.nodeFor(key(i));
+            if (!from.equals(to)) {
+                assertEquals("d", to);
+                moved++;
+            }
+        }
+        assertTrue(moved > KEYS * 0.15 && moved < KEYS * 0.35, "moved " + moved);
+    }
+
+    @Test
+    void constructor_RejectsEmptyOrDuplicateNodes() {
+        assertThrows(IllegalArgumentException.class, () -> new ConsistentHashRing(Arrays.<String>asList(), 16));
+        assertThrows(IllegalArgumentException.class, () -> new ConsistentHashRing(Arrays.asList("a", "a"), 16));
+        assertThrows(IllegalArgumentException.class, () -> new ConsistentHashRing(Arrays.asList("a"), 0));
+    }
+}
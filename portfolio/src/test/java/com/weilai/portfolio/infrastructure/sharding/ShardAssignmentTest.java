@@ -0,0 +1,76 @@
+package com.weilai.portfolio.infrastructure.sharding;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardAssignmentTest {
+
+    @TempDir
+    Path dir;
+
+    /**
+     * 多个本地实例使用同一份成员配置：每个标的恰好归一个实例
+     */
+    @Test
+    void owns_InstancesPartitionUnderlyings() {
+        ShardAssignment[] instances = {
+                new ShardAssignment("a", "a,b,c", "", 128),
+                new ShardAssignment("b", " a, b ,c", "", 128),
+                new ShardAssignment("c", "a,b,c,", "", 128)
+        };
+        int[] owned = new int[instances.length];
+        for (int i = 0; i < 3000; i++) {
+            int owners = 0;
+            for (int shard = 0; shard < instances.length; shard++) {
+                if (instances[shard].owns("UND" + i)) {
+                    owners++;
+                    owned[shard]++;
+                }
+            }
+            assertEquals(1, owners);
+        }
+        for (int count : owned) {
+            assertTrue(count > 0, Arrays.toString(owned));
+        }
+        assertEquals("portfolio/b", instances[1].sourceId("portfolio"));
+        assertEquals("b", instances[1].getShardId());
+    }
+
+    /**
+     * 协调文件（注释与空行忽略）优先于静态配置，结果与相同成员的静态配置一致
+     */
+    @Test
+    void nodesFile_OverridesStaticNodes() throws IOException {
+        Path file = dir.resolve("shards.txt");
+        Files.write(file, Arrays.asList("# portfolio shards", "a", "", "b", "c"), StandardCharsets.UTF_8);
+        ShardAssignment fromFile = new ShardAssignment("c", "x,y", file.toString(), 128);
+        ShardAssignment fromConfig = new ShardAssignment("c", "a,b,c", "", 128);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(fromConfig.owns("UND" + i), fromFile.owns("UND" + i));
+        }
+    }
+
+    @Test
+    void disabled_OwnsEverything() {
+        ShardAssignment disabled = new ShardAssignment(" ", "a,b", "", 128);
+        assertFalse(disabled.isEnabled());
+        assertTrue(disabled.owns("AAPL"));
+        assertEquals("", disabled.getShardId());
+        assertEquals("portfolio", disabled.sourceId("portfolio"));
+    }
+
+    @Test
+    void unknownNodeOrMissingFile_Rejected() {
+        assertThrows(IllegalArgumentException.class, () -> new ShardAssignment("d", "a,b,c", "", 128));
+        assertThrows(IllegalArgumentException.class,
+                () -> new ShardAssignment("a", "", dir.resolve("missing.txt").toString(), 128));
+    }
+}
@@ -0,0 +1,101 @@
+package com.weilai.portfolio.service;
+
+import com.weilai.portfolio.entity.SecurityType;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AmericanOptionPricingServiceTest {
+
+    private final AmericanOptionPricingService baw =
+            new AmericanOptionPricingService(AmericanOptionPricingService.Model.BAW, 200, 4096);
+    private final AmericanOptionPricingService binomial =
+            new AmericanOptionPricingService(AmericanOptionPricingService.Model.BINOMIAL, 200, 4096);
+
+    private static double european(SecurityType type, double S, double K, double T, double r, double sigma) {
+        return BlackScholesPricingService.theoreticalPrice(type, S, Math.log(S / K), T, Math.sqrt(T),
+                K * Math.exp(-r * T), r, sigma);
+    }
+
+    /**
+     * 美式看跌参考值（Longstaff-Schwartz 2001 表 1 的有限差分结果，约有 0.01 的误差：K=40, r=0.06, σ=0.2, T=1）
+     */
+    @Test
+    void put_MatchesReferenceValues() {
+        AmericanOptionPricingService fine =
+                new AmericanOptionPricingService(AmericanOptionPricingService.Model.BINOMIAL, 2000, 16);
+        double[] spots = {36, 40, 44};
+        double[] expected = {4.478, 2.314, 1.110};
+        for (int k = 0; k < spots.length; k++) {
+            assertEquals(expected[k], fine.theoreticalPrice(SecurityType.PUT, spots[k], 40, 1, 0.06, 0.2), 0.01);
+            assertEquals(expected[k], binomial.theoreticalPrice(SecurityType.PUT, spots[k], 40, 1, 0.06, 0.2), 0.015);
+            assertEquals(expected[k], baw.theoreticalPrice(SecurityType.PUT, spots[k], 40, 1, 0.06, 0.2), 0.03);
+        }
+    }
+
+    /**
+     * 看涨与欧式相同；看跌不低于内在价值（BAW 不低于欧式价格），深度价内时等于内在价值；两种模型之间误差很小
+     */
+    @Test
+    void bounds_HoldForBothModels() {
+        SplittableRandom random = new SplittableRandom(11);
+        for (int k = 0; k < 500; k++) {
+            double S = 100;
+            double K = 50 + random.nextInt(101);
+            double T = 0.01 + random.nextDouble() * 2;
+            double sigma = 0.1 + random.nextDouble() * 0.5;
+            assertEquals(european(SecurityType.CALL, S, K, T, 0.03, sigma),
+                    baw.theoreticalPrice(SecurityType.CALL, S, K, T, 0.03, sigma));
+            assertEquals(european(SecurityType.CALL, S, K, T, 0.03, sigma),
+                    binomial.theoreticalPrice(SecurityType.CALL, S, K, T, 0.03, sigma));
+
+            double europeanPut = european(SecurityType.PUT, S, K, T, 0.03, sigma);
+            double fast = baw.theoreticalPrice(SecurityType.PUT, S, K, T, 0.03, sigma);
+            double lattice = binomial.theoreticalPrice(SecurityType.PUT, S, K, T, 0.03, sigma);
+            assertTrue(fast >= europeanPut - 1e-12, "K=" + K + " T=" + T);
+            assertTrue(fast >= K - S - 1e-12, "K=" + K + " T=" + T);
+            assertTrue(lattice >= K - S - 1e-12, "K=" + K + " T=" + T);
+            assertEquals(lattice, fast, 0.05 + 0.01 * lattice, "K=" + K + " T=" + T + " σ=" + sigma);
+        }
+        assertEquals(60, baw.theoreticalPrice(SecurityType.PUT, 40, 100, 0.5, 0.03, 0.2), 1e-12);
+        assertEquals(60, binomial.theoreticalPrice(SecurityType.PUT, 40, 100, 0.5, 0.03, 0.2), 1e-12);
+    }
+
+    /**
+     * 与现价无关的常量按 (T, r, σ) 缓存：现价变化只复用，不新增
+     */
+    @Test
+    void constants_ReusedBetweenTicks() {
+        double[] years = {0.1, 0.5, 1.0};
+        for (double spot : new double[]{95, 100, 105}) {
+            for (double T : years) {
+                for (int K = 80; K <= 120; K += 5) {
+                    binomial.theoreticalPrice(SecurityType.PUT, spot, K, T, 0.02, 0.25);
+                    baw.theoreticalPrice(SecurityType.PUT, spot, K, T, 0.02, 0.25);
+                }
+            }
+            assertEquals(years.length, binomial.cachedConstants());
+            assertEquals(years.length, baw.cachedConstants());
+        }
+        AmericanOptionPricingService small = new AmericanOptionPricingService(AmericanOptionPricingService.Model.BAW, 200, 2);
+        double first = small.theoreticalPrice(SecurityType.PUT, 100, 100, 0.1, 0.02, 0.25);
+        for (double T : years) {
+            small.theoreticalPrice(SecurityType.PUT, 100, 100, T, 0.02, 0.25);
+        }
+        assertTrue(small.cachedConstants() <= 2);
+        assertEquals(first, small.theoreticalPrice(SecurityType.PUT, 100, 100, 0.1, 0.02, 0.25));
+    }
+
+    @Test
+    void calculate_RoundsLikeBlackScholes() {
+        assertEquals(BigDecimal.ZERO, baw.calculate(SecurityType.PUT, BigDecimal.ZERO, BigDecimal.TEN, 1, 0.02, 0.2));
+        assertEquals(BigDecimal.ZERO, baw.calculate(SecurityType.PUT, BigDecimal.TEN, BigDecimal.TEN, 0, 0.02, 0.2));
+        BigDecimal price = baw.calculate(SecurityType.PUT, BigDecimal.valueOf(36), BigDecimal.valueOf(40), 1, 0.06, 0.2);
+        assertEquals(4, price.scale());
+        assertEquals(BlackScholesPricingService.roundPrice(
+                baw.theoreticalPrice(SecurityType.PUT, 36, 40, 1, 0.06, 0.2)), price);
+    }
+}
@@ -9,6 +9,8 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.test.util.ReflectionTestUtils;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.SplittableRandom;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -216,4 +218,49 @@ class BlackScholesPricingServiceTest {
         // 使用compareTo比较BigDecimal，避免精度问题导致的比较失败
         assertEquals(0, result.compareTo(BigDecimal.ZERO));
     }
-}
\ No newline at end of file
+
+    /**
+     * 希腊值与价格的有限差分一致，且满足看涨/看跌平价（delta 相差 1，gamma、vega 相同）
+     */
+    @Test
+    void greeks_MatchFiniteDifferences() {
+        double h = 0.01;
+        double up = pricingService.calculate(SecurityType.CALL, BigDecimal.valueOf(100 + h), STRIKE_PRICE,
+                TIME_TO_MATURITY, RISK_FREE_RATE, VOLATILITY).doubleValue();
+        double down = pricingService.calculate(SecurityType.CALL, BigDecimal.valueOf(100 - h), STRIKE_PRICE,
+                TIME_TO_MATURITY, RISK_FREE_RATE, VOLATILITY).doubleValue();
+        double volUp = pricingService.calculate(SecurityType.CALL, UNDERLYING_PRICE, STRIKE_PRICE,
+                TIME_TO_MATURITY, RISK_FREE_RATE, VOLATILITY + 0.01).doubleValue();
+        double volDown = pricingService.calculate(SecurityType.CALL, UNDERLYING_PRICE, STRIKE_PRICE,
+                TIME_TO_MATURITY, RISK_FREE_RATE, VOLATILITY - 0.01).doubleValue();
+
+        OptionGreeks call = pricingService.greeks(SecurityType.CALL, 100, 100,
+                TIME_TO_MATURITY, RISK_FREE_RATE, VOLATILITY);
+        assertEquals((up - down) / (2 * h), call.getDelta(), 0.01);
+        assertEquals((volUp - volDown) / 2, call.getVega(), 0.001);
+        assertEquals(0.01955, call.getGamma(), 0.0001); // φ(0.2) / (100 × 0.2 × 1)
+
+        OptionGreeks put = pricingService.greeks(SecurityType.PUT, 100, 100,
+                TIME_TO_MATURITY, RISK_FREE_RATE, VOLATILITY);
+        assertEquals(call.getDelta() - 1.0, put.getDelta(), 1e-12);
+        assertEquals(call.getGamma(), put.getGamma(), 1e-12);
+        assertEquals(call.getVega(), put.getVega(), 1e-12);
+
+        assertSame(OptionGreeks.ZERO, pricingService.greeks(SecurityType.CALL, 100, 100, 0, RISK_FREE_RATE, VOLATILITY));
+    }
+
+    /**
+     * priceUnits 的快速取整与 calculate 的 BigDecimal 取整（HALF_UP、负数取 0）逐个一致，包括恰好落在进位边界上的价格
+     */
+    @Test
+    void priceUnits_SameAsBigDecimalRounding() {
+        SplittableRandom random = new SplittableRandom(11);
+        for (int k = 0; k < 200_000; k++) {
+            double price = k % 4 == 0
+                    ? (random.nextInt(-10_000, 10_000_000) + 0.5) / 10_000.0  // 进位边界
+                    : random.nextDouble(-1, 200_000);
+            BigDecimal rounded = BigDecimal.valueOf(price).setScale(4, RoundingMode.HALF_UP).max(BigDecimal.ZERO);
+            assertEquals(rounded.unscaledValue().longValueExact(), BlackScholesPricingService.priceUnits(price), "price " + price);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.weilai.portfolio.service;
+
+import com.weilai.portfolio.entity.MarketData;
+import com.weilai.portfolio.entity.Position;
+import com.weilai.portfolio.entity.Security;
+import com.weilai.portfolio.entity.SecurityType;
+import com.weilai.portfolio.infrastructure.metrics.PipelineMetrics;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExposureAggregatorTest {
+
+    private static final String[] UNDERLYINGS = {"AAPL", "MSFT", "TELSA"};
+
+    private final List<Security> securities = new ArrayList<>();
+    private final List<Position> positions = new ArrayList<>();
+
+    private static BlackScholesPricingService pricingService() {
+        BlackScholesPricingService service = new BlackScholesPricingService();
+        ReflectionTestUtils.setField(service, "riskFreeRate", 0.02);
+        return service;
+    }
+
+    private void book(int optionsPerUnderlying) {
+        SplittableRandom random = new SplittableRandom(3);
+        for (String underlying : UNDERLYINGS) {
+            securities.add(new Security(null, underlying, SecurityType.STOCK, null, null, null, null));
+            positions.add(new Position(underlying, random.nextInt(-500, 500), null, null));
+            for (int k = 0; k < optionsPerUnderlying; k++) {
+                String ticker = underlying + "-" + k;
+                SecurityType type = k % 2 == 0 ? SecurityType.CALL : SecurityType.PUT;
+                securities.add(new Security(null, ticker, type, BigDecimal.valueOf(80 + random.nextInt(40)),
+                        LocalDate.now().plusDays(30 + random.nextInt(300)), underlying, null));
+                positions.add(new Position(ticker, random.nextInt(-50, 50), null, null));
+            }
+        }
+        // 证券表中不存在的持仓不计入任何标的
+        positions.add(new Position("UNKNOWN", 1000, null, null));
+    }
+
+    private ExposureAggregator load(PipelineMetrics metrics) {
+        ExposureAggregator aggregator = new ExposureAggregator(pricingService(), 100, metrics);
+        Map<String, Security> byTicker = new HashMap<>();
+        for (Security security : securities) {
+            byTicker.put(security.getTicker(), security);
+        }
+        Position[] book = positions.toArray(new Position[0]);
+        aggregator.load(book, ResolvedBook.resolve(book, byTicker));
+        return aggregator;
+    }
+
+    private static MarketData tick(String ticker, double price) {
+        return new MarketData(ticker, BigDecimal.valueOf(price).setScale(2, RoundingMode.HALF_UP), 0L);
+    }
+
+    private static void assertSameExposures(ExposureAggregator expected, ExposureAggregator actual) {
+        assertEquals(expected.current().size(), actual.current().size());
+        Iterator<UnderlyingExposure> left = expected.current().iterator();
+        Iterator<UnderlyingExposure> right = actual.current().iterator();
+        while (left.hasNext()) {
+            UnderlyingExposure a = left.next();
+            UnderlyingExposure b = right.next();
+            assertEquals(a.getUnderlying(), b.getUnderlying());
+            assertEquals(a.getNetShares(), b.getNetShares(), a.getUnderlying());
+            assertEquals(a.getDeltaShares(), b.getDeltaShares(), a.getUnderlying());
+            assertEquals(a.getDeltaDollars(), b.getDeltaDollars(), a.getUnderlying());
+            assertEquals(a.getGamma(), b.getGamma(), a.getUnderlying());
+            assertEquals(a.getVega(), b.getVega(), a.getUnderlying());
+        }
+    }
+
+    /**
+     * 逐笔行情与持仓数量变化按差分维护的汇总，与按当前持仓、当前价格全量计算的结果逐位一致
+     */
+    @Test
+    void incrementalUpdates_SameAsFullRebuild() {
+        book(40);
+        ExposureAggregator incremental = load(new PipelineMetrics());
+        SplittableRandom random = new SplittableRandom(5);
+        Map<String, MarketData> prices = new HashMap<>();
+        for (String underlying : UNDERLYINGS) {
+            prices.put(underlying, tick(underlying, 100));
+        }
+        incremental.update(prices);
+
+        for (int step = 1; step <= 2000; step++) {
+            String underlying = UNDERLYINGS[random.nextInt(UNDERLYINGS.length)];
+            prices.put(underlying, tick(underlying, 60 + random.nextDouble() * 80));
+            incremental.update(new HashMap<>(prices));
+            if (step % 7 == 0) {
+                int position = random.nextInt(positions.size());
+                int quantity = random.nextInt(-500, 500);
+                positions.get(position).setQuantity(quantity);
+                incremental.updateQuantity(position, quantity);
+            }
+            if (step % 250 == 0) {
+                ExposureAggregator rebuilt = load(new PipelineMetrics());
+                rebuilt.update(prices);
+                assertSameExposures(rebuilt, incremental);
+            }
+        }
+    }
+
+    /**
+     * 只重算价格有变化的标的下的持仓
+     */
+    @Test
+    void update_OnlyChangedUnderlyingRevalued() {
+        book(10);
+        PipelineMetrics metrics = new PipelineMetrics();
+        ExposureAggregator aggregator = load(metrics);
+        Map<String, MarketData> prices = new HashMap<>();
+        prices.put("AAPL", tick("AAPL", 100));
+        prices.put("MSFT", tick("MSFT", 200));
+        aggregator.update(prices);
+        assertEquals(22L, metrics.counter("exposure-positions-revalued").sum());
+
+        // 价格未变：不重算
+        aggregator.update(new HashMap<>(prices));
+        assertEquals(22L, metrics.counter("exposure-positions-revalued").sum());
+
+        prices.put("MSFT", tick("MSFT", 201));
+        prices.put("TELSA", tick("TELSA", 300));
+        aggregator.update(prices);
+        assertEquals(44L, metrics.counter("exposure-positions-revalued").sum());
+    }
+
+    /**
+     * 股票：delta 股数即股数，delta 金额为股数 × 价格，没有 gamma / vega
+     */
+    @Test
+    void update_StockOnly_ExposureIsShares() {
+        securities.add(new Security(null, "AAPL", SecurityType.STOCK, null, null, null, null));
+        positions.add(new Position("AAPL", 150, null, null));
+        ExposureAggregator aggregator = load(new PipelineMetrics());
+        assertEquals(0, aggregator.get("AAPL").getDeltaShares().signum()); // 尚无价格
+        assertEquals(150L, aggregator.get("AAPL").getNetShares());
+
+        Map<String, MarketData> prices = new HashMap<>();
+        prices.put("AAPL", tick("AAPL", 110.25));
+        aggregator.update(prices);
+        UnderlyingExposure exposure = aggregator.get("AAPL");
+        assertEquals(0, new BigDecimal("150").compareTo(exposure.getDeltaShares()));
+        assertEquals(0, new BigDecimal("16537.5").compareTo(exposure.getDeltaDollars()));
+        assertEquals(0, exposure.getGamma().signum());
+        assertEquals(0, exposure.getVega().signum());
+        assertNull(aggregator.get("MSFT"));
+    }
+}
@@ -0,0 +1,128 @@
+package com.weilai.portfolio.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FixedPointAccumulatorTest {
+
+    private static BigDecimal randomMarketValue(SplittableRandom random) {
+        // 期权市值（scale 4）与股票市值（scale 2），正负混合，量级到 10^9
+        return BigDecimal.valueOf(random.nextLong(-10_000_000_000_000L, 10_000_000_000_000L), random.nextBoolean() ? 4 : 2);
+    }
+
+    private static FixedPointAccumulator fullRecompute(BigDecimal[] values) {
+        FixedPointAccumulator total = new FixedPointAccumulator();
+        for (BigDecimal value : values) {
+            total.add(value);
+        }
+        return total;
+    }
+
+    /**
+     * 一百万次增量更新（减旧值、加新值）后与全量重算逐位一致；double 增量累加则会漂移
+     */
+    @Test
+    void incrementalUpdates_MillionTicks_NeverDriftFromFullRecompute() {
+        SplittableRandom random = new SplittableRandom(7);
+        BigDecimal[] values = new BigDecimal[2000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = randomMarketValue(random);
+        }
+        FixedPointAccumulator incremental = fullRecompute(values);
+        double doubleIncremental = 0;
+        for (BigDecimal value : values) {
+            doubleIncremental += value.doubleValue();
+        }
+
+        for (int tick = 1; tick <= 1_000_000; tick++) {
+            int i = random.nextInt(values.length);
+            BigDecimal updated = randomMarketValue(random);
+            incremental.subtract(values[i]).add(updated);
+            doubleIncremental += updated.doubleValue() - values[i].doubleValue();
+            values[i] = updated;
+            if (tick % 10_000 == 0) {
+                assertEquals(fullRecompute(values), incremental, "tick " + tick);
+            }
+        }
+
+        BigDecimal exact = BigDecimal.ZERO;
+        for (BigDecimal value : values) {
+            exact = exact.add(value);
+        }
+        assertEquals(0, exact.compareTo(incremental.toBigDecimal()));
+        assertNotEquals(exact.doubleValue(), doubleIncremental, "double 增量累加应出现漂移");
+    }
+
+    /**
+     * 多线程分别累加后合并，结果与单线程一致且与分片方式无关
+     */
+    @Test
+    void merge_AcrossThreads_SameAsSingleThread() throws Exception {
+        SplittableRandom random = new SplittableRandom(11);
+        BigDecimal[] values = new BigDecimal[100_000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = randomMarketValue(random);
+        }
+        FixedPointAccumulator expected = fullRecompute(values);
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            for (int shards : new int[]{2, 3, 7, 16}) {
+                List<Future<FixedPointAccumulator>> futures = new ArrayList<>();
+                for (int shard = 0; shard < shards; shard++) {
+                    int first = shard;
+                    futures.add(pool.submit(() -> {
+                        FixedPointAccumulator partial = new FixedPointAccumulator();
+                        for (int i = first; i < values.length; i += shards) {
+                            partial.add(values[i]);
+                        }
+                        return partial;
+                    }));
+                }
+                FixedPointAccumulator merged = new FixedPointAccumulator();
+                for (int shard = futures.size() - 1; shard >= 0; shard--) {
+                    merged.merge(futures.get(shard).get());
+                }
+                assertEquals(expected, merged, "shards=" + shards);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * 超出 long 范围时进位到高 64 位，回到 long 范围后结果仍正确
+     */
+    @Test
+    void add_BeyondLongRange_CarriesIntoHighWord() {
+        BigDecimal big = BigDecimal.valueOf(Long.MAX_VALUE, 4);
+        FixedPointAccumulator accumulator = new FixedPointAccumulator();
+        accumulator.add(big).add(big).add(big);
+        assertEquals(big.multiply(BigDecimal.valueOf(3)), accumulator.toBigDecimal());
+
+        accumulator.subtract(big).subtract(big).subtract(big).add(new BigDecimal("-1.25"));
+        assertEquals(new BigDecimal("-1.2500"), accumulator.toBigDecimal());
+
+        BigDecimal huge = new BigDecimal("123456789012345678901234567.8901");
+        assertEquals(huge, new FixedPointAccumulator().add(huge).toBigDecimal());
+    }
+
+    /**
+     * 小数位超过 scale 的金额按 HALF_EVEN 单独取整
+     */
+    @Test
+    void add_ExtraDecimals_RoundedPerAmount() {
+        FixedPointAccumulator accumulator = new FixedPointAccumulator(2);
+        accumulator.add(new BigDecimal("0.125")).add(new BigDecimal("0.135"));
+        assertEquals(new BigDecimal("0.26"), accumulator.toBigDecimal());
+    }
+}
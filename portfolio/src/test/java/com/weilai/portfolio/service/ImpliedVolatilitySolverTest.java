@@ -0,0 +1,146 @@
+package com.weilai.portfolio.service;
+
+import com.weilai.portfolio.entity.SecurityType;
+import com.weilai.portfolio.infrastructure.metrics.PipelineMetrics;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImpliedVolatilitySolverTest {
+
+    private static final int COUNT = 5000;
+    private static final double RATE = 0.02;
+
+    private final BlackScholesPricingService pricingService = new BlackScholesPricingService();
+    private final SecurityType[] types = new SecurityType[COUNT];
+    private final double[] spots = new double[COUNT];
+    private final double[] strikes = new double[COUNT];
+    private final double[] years = new double[COUNT];
+    private final double[] prices = new double[COUNT];
+    private final double[] trueVols = new double[COUNT];
+
+    ImpliedVolatilitySolverTest() {
+        ReflectionTestUtils.setField(pricingService, "riskFreeRate", RATE);
+    }
+
+    // 随机期权链，按已知波动率定价
+    private void chain(long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int i = 0; i < COUNT; i++) {
+            types[i] = i % 2 == 0 ? SecurityType.CALL : SecurityType.PUT;
+            spots[i] = 100;
+            strikes[i] = 60 + random.nextInt(81);
+            years[i] = 0.02 + random.nextDouble() * 2;
+            trueVols[i] = 0.05 + random.nextDouble() * 1.2;
+            prices[i] = Math.max(0.0, price(i, spots[i], trueVols[i])); // 与 calculate 一样不出现负价格
+        }
+    }
+
+    private double price(int i, double spot, double sigma) {
+        double T = years[i];
+        return BlackScholesPricingService.theoreticalPrice(types[i], spot, Math.log(spot / strikes[i]), T,
+                Math.sqrt(T), strikes[i] * Math.exp(-RATE * T), RATE, sigma);
+    }
+
+    private static double vega(double spot, double strike, double T, double sigma) {
+        double d1 = (Math.log(spot / strike) + (RATE + 0.5 * sigma * sigma) * T) / (sigma * Math.sqrt(T));
+        return spot * Math.exp(-0.5 * d1 * d1) / Math.sqrt(2 * Math.PI) * Math.sqrt(T);
+    }
+
+    /**
+     * 冷启动：每个期权的隐含波动率复现价格（误差不超过容差），vega 不可忽略时与真实波动率一致
+     */
+    @Test
+    void coldStart_RecoversVolatility() {
+        chain(1);
+        PipelineMetrics metrics = new PipelineMetrics();
+        ImpliedVolatilitySolver solver = new ImpliedVolatilitySolver(pricingService, 1e-8, 8, metrics);
+        double[] vols = new double[COUNT];
+        Arrays.fill(vols, Double.NaN);
+
+        int solved = solver.solve(COUNT, types, spots, strikes, years, prices, null, vols);
+        assertEquals(COUNT, solved);
+        for (int i = 0; i < COUNT; i++) {
+            assertEquals(prices[i], price(i, spots[i], vols[i]), 1e-8, "option " + i);
+            if (vega(spots[i], strikes[i], years[i], trueVols[i]) > 0.01) {
+                assertEquals(trueVols[i], vols[i], 1e-6, "option " + i);
+            }
+        }
+        assertEquals(COUNT, metrics.counter("implied-vol-solved").sum());
+        assertEquals(0L, metrics.counter("implied-vol-failed").sum());
+    }
+
+    /**
+     * 热启动：标的小幅变动后以上一个 tick 的解为初值，Newton 步数明显少于冷启动
+     */
+    @Test
+    void warmStart_FewerNewtonSteps() {
+        chain(2);
+        PipelineMetrics cold = new PipelineMetrics();
+        double[] vols = new double[COUNT];
+        Arrays.fill(vols, Double.NaN);
+        new ImpliedVolatilitySolver(pricingService, 1e-8, 8, cold)
+                .solve(COUNT, types, spots, strikes, years, prices, null, vols);
+
+        // 下一个 tick：标的上涨 0.1%，波动率小幅变化
+        SplittableRandom random = new SplittableRandom(3);
+        for (int i = 0; i < COUNT; i++) {
+            spots[i] = 100.1;
+            trueVols[i] *= 1 + (random.nextDouble() - 0.5) * 0.01;
+            prices[i] = Math.max(0.0, price(i, spots[i], trueVols[i]));
+        }
+        PipelineMetrics warm = new PipelineMetrics();
+        int solved = new ImpliedVolatilitySolver(pricingService, 1e-8, 8, warm)
+                .solve(COUNT, types, spots, strikes, years, prices, null, vols);
+        assertEquals(COUNT, solved);
+        assertTrue(warm.counter("implied-vol-newton-steps").sum() < cold.counter("implied-vol-newton-steps").sum(),
+                warm.counter("implied-vol-newton-steps").sum() + " vs " + cold.counter("implied-vol-newton-steps").sum());
+        for (int i = 0; i < COUNT; i++) {
+            assertEquals(prices[i], price(i, spots[i], vols[i]), 1e-8, "option " + i);
+        }
+    }
+
+    /**
+     * 不允许 Newton 迭代时全部由 Brent 法求解；各期权使用各自的容差
+     */
+    @Test
+    void brentFallback_PerOptionTolerance() {
+        chain(4);
+        PipelineMetrics metrics = new PipelineMetrics();
+        ImpliedVolatilitySolver solver = new ImpliedVolatilitySolver(pricingService, 1e-8, 0, metrics);
+        double[] tolerances = new double[COUNT];
+        for (int i = 0; i < COUNT; i++) {
+            tolerances[i] = i % 2 == 0 ? 1e-3 : 0.0; // 0 使用默认容差
+        }
+        double[] vols = new double[COUNT];
+        assertEquals(COUNT, solver.solve(COUNT, types, spots, strikes, years, prices, tolerances, vols));
+        assertEquals(COUNT, metrics.counter("implied-vol-brent-fallbacks").sum());
+        for (int i = 0; i < COUNT; i++) {
+            assertEquals(prices[i], price(i, spots[i], vols[i]), i % 2 == 0 ? 1e-3 : 1e-8, "option " + i);
+        }
+    }
+
+    /**
+     * 价格超出无套利区间或参数无效时结果为 NaN，其余期权不受影响
+     */
+    @Test
+    void arbitrageViolations_NaN() {
+        SecurityType[] t = {SecurityType.CALL, SecurityType.CALL, SecurityType.PUT, SecurityType.CALL, SecurityType.PUT};
+        double[] s = {100, 100, 100, 100, 100};
+        double[] k = {100, 80, 120, 100, 100};
+        double[] y = {1, 1, 1, 0, 1};
+        double[] p = {100, 10, 1, 5, 8};   // 看涨价格达到标的价格；低于内在价值；低于内在价值；期限为0；正常
+        double[] vols = new double[5];
+        ImpliedVolatilitySolver solver = new ImpliedVolatilitySolver(pricingService, 1e-8, 8, new PipelineMetrics());
+        assertEquals(1, solver.solve(5, t, s, k, y, p, null, vols));
+        for (int i = 0; i < 4; i++) {
+            assertTrue(Double.isNaN(vols[i]), "option " + i);
+        }
+        assertEquals(8, BlackScholesPricingService.theoreticalPrice(SecurityType.PUT, 100, 0, 1, 1,
+                100 * Math.exp(-RATE), RATE, vols[4]), 1e-8);
+    }
+}
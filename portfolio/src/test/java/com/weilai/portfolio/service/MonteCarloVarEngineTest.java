@@ -0,0 +1,268 @@
+package com.weilai.portfolio.service;
+
+import com.weilai.portfolio.entity.ExerciseStyle;
+import com.weilai.portfolio.entity.MarketData;
+import com.weilai.portfolio.entity.Position;
+import com.weilai.portfolio.entity.Security;
+import com.weilai.portfolio.entity.SecurityType;
+import com.weilai.portfolio.infrastructure.marketdata.strategy.GBMPricingStrategy;
+import com.weilai.portfolio.infrastructure.metrics.PipelineMetrics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MonteCarloVarEngineTest {
+
+    private final BlackScholesPricingService pricingService = new BlackScholesPricingService();
+    private final AmericanOptionPricingService american =
+            new AmericanOptionPricingService(AmericanOptionPricingService.Model.BAW, 200, 4096);
+    private final GBMPricingStrategy gbm = new GBMPricingStrategy();
+    private final List<Security> securities = new ArrayList<>();
+    private final List<Position> positions = new ArrayList<>();
+    private final Map<String, MarketData> prices = new HashMap<>();
+    private final List<MonteCarloVarEngine> engines = new ArrayList<>();
+
+    MonteCarloVarEngineTest() {
+        ReflectionTestUtils.setField(pricingService, "riskFreeRate", 0.02);
+        ReflectionTestUtils.setField(gbm, "muAAPL", 0.08);
+        ReflectionTestUtils.setField(gbm, "sigmaAAPL", 0.2);
+        ReflectionTestUtils.setField(gbm, "muTELSA", 0.12);
+        ReflectionTestUtils.setField(gbm, "sigmaTELSA", 0.3);
+    }
+
+    @AfterEach
+    void shutdown() {
+        engines.forEach(MonteCarloVarEngine::shutdown);
+    }
+
+    private void stock(String ticker, long quantity, double price) {
+        securities.add(new Security(null, ticker, SecurityType.STOCK, null, null, null, null));
+        positions.add(new Position(ticker, (int) quantity, null, null));
+        prices.put(ticker, new MarketData(ticker, BigDecimal.valueOf(price), 0L));
+    }
+
+    private void option(String underlying, SecurityType type, ExerciseStyle style, int strike, int days, int quantity) {
+        String ticker = underlying + "-" + type + "-" + strike + "-" + days + "-" + positions.size();
+        securities.add(new Security(null, ticker, type, BigDecimal.valueOf(strike),
+                LocalDate.now().plusDays(days), underlying, style));
+        positions.add(new Position(ticker, quantity, null, null));
+    }
+
+    private MonteCarloVarEngine engine(int threads, int blockSize) {
+        ExposureAggregator aggregator = new ExposureAggregator(pricingService, 100, new PipelineMetrics());
+        Map<String, Security> byTicker = new HashMap<>();
+        for (Security security : securities) {
+            byTicker.put(security.getTicker(), security);
+        }
+        Position[] book = positions.toArray(new Position[0]);
+        aggregator.load(book, ResolvedBook.resolve(book, byTicker));
+        aggregator.update(prices);
+
+        MonteCarloVarEngine engine = new MonteCarloVarEngine(aggregator, pricingService, american, gbm);
+        ReflectionTestUtils.setField(engine, "defaultPaths", 100_000);
+        ReflectionTestUtils.setField(engine, "defaultHorizonDays", 1);
+        ReflectionTestUtils.setField(engine, "defaultConfidence", 0.99);
+        ReflectionTestUtils.setField(engine, "threads", threads);
+        ReflectionTestUtils.setField(engine, "blockSize", blockSize);
+        ReflectionTestUtils.setField(engine, "maxPaths", 1_000_000);
+        ReflectionTestUtils.setField(engine, "curvePoints", 1025);
+        engine.start();
+        engines.add(engine);
+        return engine;
+    }
+
+    private static VarRequest request(int paths, int horizonDays, double correlation, long seed) {
+        VarRequest request = new VarRequest();
+        request.setPaths(paths);
+        request.setHorizonDays(horizonDays);
+        request.setCorrelation(correlation);
+        request.setSeed(seed);
+        return request;
+    }
+
+    // GBM 行情的时间单位：一年 7257600 秒（252 个交易日 × 8 小时）
+    private static double gbmYears(int tradingDays) {
+        return tradingDays * 8 * 3600 / 7257600.0;
+    }
+
+    /**
+     * 单只股票：VaR 与对数正态分布的解析分位数一致，ES 大于 VaR；持有期按交易日、与 GBM 的 μ、σ 同一年化口径
+     */
+    @Test
+    void singleStock_MatchesLognormalQuantile() {
+        stock("AAPL", 1000, 100);
+        VarResult result = engine(2, 8192).run(request(200_000, 10, 0.0, 42L)).block();
+
+        double h = gbmYears(10);
+        double drift = (0.08 - 0.5 * 0.2 * 0.2) * h;
+        double z = -2.3263478740408408; // N⁻¹(0.01)
+        double expected = 1000 * 100 * (1 - Math.exp(drift + 0.2 * Math.sqrt(h) * z));
+        assertEquals(expected, result.getValueAtRisk().doubleValue(), expected * 0.02);
+        assertTrue(result.getExpectedShortfall().compareTo(result.getValueAtRisk()) > 0);
+        assertEquals(1000 * 100 * 0.2 * Math.sqrt(h), result.getPnlStdDev().doubleValue(), 1000 * 100 * 0.2 * Math.sqrt(h) * 0.02);
+    }
+
+    /**
+     * 1 个交易日的 VaR 即 GBM 行情在 8 小时内的对数正态分位数（95%），不是 1/365 年
+     */
+    @Test
+    void singleStock_OneTradingDay_UsesGbmYear() {
+        stock("TELSA", 200, 450);
+        VarRequest request = request(400_000, 1, 0.0, 11L);
+        request.setConfidence(0.95);
+        VarResult result = engine(2, 8192).run(request).block();
+
+        double h = gbmYears(1);
+        assertEquals(1.0 / 252, h, 1e-15);
+        double sigmaSqrtH = 0.3 * Math.sqrt(h);
+        double z = -1.6448536269514722; // N⁻¹(0.05)
+        double exposure = 200 * 450;
+        double expected = exposure * (1 - Math.exp((0.12 - 0.5 * 0.3 * 0.3) * h + sigmaSqrtH * z));
+        assertEquals(expected, result.getValueAtRisk().doubleValue(), expected * 0.01);
+        double calendarYearVar = exposure * (1 - Math.exp((0.12 - 0.045) / 365 + 0.3 * Math.sqrt(1 / 365.0) * z));
+        assertTrue(result.getValueAtRisk().doubleValue() > calendarYearVar * 1.1);
+        assertEquals(1, result.getHorizonDays());
+    }
+
+    /**
+     * 交易日持有期换算为期权剩余期限使用的自然日数
+     */
+    @Test
+    void calendarDays_TradingDaysScaledToCalendar() {
+        assertEquals(1L, MonteCarloVarEngine.calendarDays(1));
+        assertEquals(7L, MonteCarloVarEngine.calendarDays(5));
+        assertEquals(365L, MonteCarloVarEngine.calendarDays(252));
+    }
+
+    /**
+     * 相同种子：结果与线程数无关；期权价值曲线插值与逐合约定价一致（含美式期权）
+     */
+    @Test
+    void optionBook_DeterministicAndCurveMatchesExact() {
+        stock("AAPL", 1000, 110);
+        stock("TELSA", -500, 450);
+        SplittableRandom random = new SplittableRandom(9);
+        for (int k = 0; k < 60; k++) {
+            String underlying = k % 2 == 0 ? "AAPL" : "TELSA";
+            int strike = (underlying.equals("AAPL") ? 90 : 380) + random.nextInt(8) * 5;
+            option(underlying, k % 3 == 0 ? SecurityType.PUT : SecurityType.CALL,
+                    k % 4 == 0 ? ExerciseStyle.AMERICAN : ExerciseStyle.EUROPEAN, strike,
+                    1 + random.nextInt(200), random.nextInt(-30, 30));
+        }
+        VarRequest request = request(50_000, 5, 0.5, 7L);
+        VarResult single = engine(1, 4096).run(request).block();
+        VarResult parallel = engine(3, 4096).run(request).block();
+        assertEquals(single.getValueAtRisk(), parallel.getValueAtRisk());
+        assertEquals(single.getExpectedShortfall(), parallel.getExpectedShortfall());
+        assertEquals(single.getMeanPnl(), parallel.getMeanPnl());
+        assertEquals(single.getPnlStdDev(), parallel.getPnlStdDev());
+
+        request.setExact(true);
+        VarResult exact = engine(2, 4096).run(request).block();
+        double tolerance = exact.getValueAtRisk().abs().doubleValue() * 1e-5;
+        assertEquals(exact.getValueAtRisk().doubleValue(), single.getValueAtRisk().doubleValue(), tolerance);
+        assertEquals(exact.getExpectedShortfall().doubleValue(), single.getExpectedShortfall().doubleValue(), tolerance);
+    }
+
+    /**
+     * 多头股票组合：相关性越高，分散效果越小，VaR 越大
+     */
+    @Test
+    void correlation_IncreasesDiversifiedVar() {
+        stock("AAPL", 1000, 100);
+        stock("MSFT", 1000, 100);
+        stock("TELSA", 300, 300);
+        MonteCarloVarEngine engine = engine(2, 8192);
+        VarResult independent = engine.run(request(100_000, 1, 0.0, 1L)).block();
+        VarResult correlated = engine.run(request(100_000, 1, 0.8, 1L)).block();
+        assertTrue(correlated.getValueAtRisk().compareTo(independent.getValueAtRisk()) > 0);
+    }
+
+    @Test
+    void invalidRequest_Rejected() {
+        stock("AAPL", 1000, 100);
+        MonteCarloVarEngine engine = engine(1, 1024);
+        assertThrows(IllegalArgumentException.class, () -> engine.run(request(0, 1, 0.0, 1L)).block());
+        assertThrows(IllegalArgumentException.class, () -> engine.run(request(2_000_000, 1, 0.0, 1L)).block());
+        assertThrows(IllegalArgumentException.class, () -> engine.run(request(1000, 0, 0.0, 1L)).block());
+        assertThrows(IllegalArgumentException.class, () -> engine.run(request(1000, 1, 1.0, 1L)).block());
+        VarRequest confidence = request(1000, 1, 0.0, 1L);
+        confidence.setConfidence(1.0);
+        assertThrows(IllegalArgumentException.class, () -> engine.run(confidence).block());
+    }
+
+    @Test
+    void cholesky_ReproducesMatrix_RejectsNonPositiveDefinite() {
+        double[][] matrix = {{1.0, 0.3, -0.2}, {0.3, 1.0, 0.5}, {-0.2, 0.5, 1.0}};
+        double[][] lower = MonteCarloVarEngine.cholesky(matrix);
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j <= i; j++) {
+                double sum = 0;
+                for (int k = 0; k <= j; k++) {
+                    sum += lower[i][k] * lower[j][k];
+                }
+                assertEquals(matrix[i][j], sum, 1e-12);
+            }
+        }
+        assertThrows(IllegalArgumentException.class,
+                () -> MonteCarloVarEngine.cholesky(new double[][]{{1.0, 0.9, 0.9}, {0.9, 1.0, -0.9}, {0.9, -0.9, 1.0}}));
+    }
+
+    /**
+     * Ziggurat 正态样本的均值、方差、峰度与 1% 尾部概率
+     */
+    @Test
+    void ziggurat_StandardNormalMoments() {
+        ZigguratGaussian gaussian = new ZigguratGaussian(new SplittableRandom(3));
+        int n = 2_000_000;
+        double sum = 0;
+        double sumSq = 0;
+        double sumFourth = 0;
+        int below = 0;
+        for (int k = 0; k < n; k++) {
+            double z = gaussian.next();
+            sum += z;
+            sumSq += z * z;
+            sumFourth += z * z * z * z;
+            if (z < -2.3263478740408408) {
+                below++;
+            }
+        }
+        assertEquals(0.0, sum / n, 0.003);
+        assertEquals(1.0, sumSq / n, 0.005);
+        assertEquals(3.0, sumFourth / n, 0.05);
+        assertEquals(0.01, (double) below / n, 0.0005);
+    }
+
+    @Test
+    void tailLosses_KeepsLargestAcrossMerges() {
+        SplittableRandom random = new SplittableRandom(5);
+        double[] all = new double[10_000];
+        TailLosses merged = new TailLosses(101);
+        for (int block = 0; block < 10; block++) {
+            TailLosses tail = new TailLosses(101);
+            for (int k = 0; k < 1000; k++) {
+                all[block * 1000 + k] = random.nextDouble();
+                tail.offer(all[block * 1000 + k]);
+            }
+            merged.merge(tail);
+        }
+        Arrays.sort(all);
+        double[] kept = merged.descending();
+        assertEquals(101, kept.length);
+        for (int k = 0; k < kept.length; k++) {
+            assertEquals(all[all.length - 1 - k], kept[k]);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.weilai.portfolio.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PairwiseSumTest {
+
+    private static BigDecimal[] amounts(int count, long seed, int scale) {
+        SplittableRandom random = new SplittableRandom(seed);
+        BigDecimal[] values = new BigDecimal[count];
+        for (int i = 0; i < count; i++) {
+            // 正负混合，部分金额超出 long 定点范围，走 128 位路径
+            long unscaled = random.nextLong(-10_000_000L, 10_000_000L);
+            values[i] = i % 97 == 0
+                    ? BigDecimal.valueOf(Long.MAX_VALUE).multiply(BigDecimal.valueOf(unscaled)).movePointLeft(scale)
+                    : BigDecimal.valueOf(unscaled, scale);
+        }
+        return values;
+    }
+
+    private static FixedPointAccumulator[] chunkSums(BigDecimal[] values, int chunkSize, int scale) {
+        List<FixedPointAccumulator> chunks = new ArrayList<>();
+        for (int from = 0; from < values.length; from += chunkSize) {
+            FixedPointAccumulator sum = new FixedPointAccumulator(scale);
+            for (int i = from; i < Math.min(from + chunkSize, values.length); i++) {
+                sum.add(values[i]);
+            }
+            chunks.add(sum);
+        }
+        return chunks.toArray(new FixedPointAccumulator[0]);
+    }
+
+    /**
+     * 与精确的顺序累加结果一致（非默认 scale 同样适用）
+     */
+    @Test
+    void of_MatchesExactSum() {
+        for (int scale : new int[]{FixedPointAccumulator.DEFAULT_SCALE, 6, 0}) {
+            for (int count : new int[]{1, 2, 3, 7, 64, 1001}) {
+                BigDecimal[] values = amounts(count, count, scale);
+                BigDecimal exact = BigDecimal.ZERO.setScale(scale);
+                for (BigDecimal value : values) {
+                    exact = exact.add(value);
+                }
+                FixedPointAccumulator result = PairwiseSum.of(chunkSums(values, 1, scale));
+                assertEquals(scale, result.getScale());
+                assertEquals(exact, result.toBigDecimal(), "scale=" + scale + ", count=" + count);
+            }
+        }
+    }
+
+    /**
+     * 分块数量不同（即并行度不同）时结果一致
+     */
+    @Test
+    void of_DifferentChunking_SameResult() {
+        int scale = 6;
+        BigDecimal[] values = amounts(4096, 42, scale);
+        FixedPointAccumulator expected = PairwiseSum.of(chunkSums(values, 4096, scale));
+        for (int chunkSize : new int[]{1, 3, 100, 512}) {
+            assertEquals(expected, PairwiseSum.of(chunkSums(values, chunkSize, scale)), "chunk=" + chunkSize);
+        }
+    }
+
+    /**
+     * 结果是新的累加器，不与输入共用
+     */
+    @Test
+    void of_SingleValue_ReturnsCopy() {
+        FixedPointAccumulator only = new FixedPointAccumulator(6).add(new BigDecimal("1.000001"));
+        FixedPointAccumulator result = PairwiseSum.of(new FixedPointAccumulator[]{only});
+        assertNotSame(only, result);
+        assertEquals(new BigDecimal("1.000001"), result.toBigDecimal());
+    }
+
+    @Test
+    void of_Empty_ReturnsZero() {
+        FixedPointAccumulator result = PairwiseSum.of(new FixedPointAccumulator[0]);
+        assertEquals(0, BigDecimal.ZERO.compareTo(result.toBigDecimal()));
+    }
+
+    @Test
+    void of_MixedScales_Throws() {
+        FixedPointAccumulator[] values = {new FixedPointAccumulator(4), new FixedPointAccumulator(6)};
+        assertThrows(IllegalArgumentException.class, () -> PairwiseSum.of(values));
+    }
+}
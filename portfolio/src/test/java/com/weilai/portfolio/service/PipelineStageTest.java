@@ -0,0 +1,67 @@
+package com.weilai.portfolio.service;
+
+import com.weilai.portfolio.infrastructure.metrics.PipelineMetrics;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PipelineStageTest {
+
+    private static final long MILLIS = 1_000_000L;
+
+    /**
+     * 利用率按两次读取之间的窗口计算，并按线程数归一
+     */
+    @Test
+    void utilization_PerWindowNormalizedByThreads() {
+        AtomicLong clock = new AtomicLong();
+        PipelineStage stage = new PipelineStage("revaluation", 2, new PipelineMetrics(), clock::get);
+        try {
+            // 两个线程各忙 30ms，窗口 100ms：60 / (100 × 2) = 30%
+            long start = stage.now();
+            clock.addAndGet(30 * MILLIS);
+            stage.recordBusySince(start);
+            stage.recordBusySince(start);
+            clock.addAndGet(70 * MILLIS);
+            assertEquals(30L, stage.utilizationPercent());
+
+            // 新窗口内没有工作
+            clock.addAndGet(100 * MILLIS);
+            assertEquals(0L, stage.utilizationPercent());
+        } finally {
+            stage.dispose();
+        }
+    }
+
+    /**
+     * 跨窗口的工作计入结束时的窗口，结果截断到 100；利用率以瞬时值上报
+     */
+    @Test
+    void utilization_SpanningWindows_CappedAndReportedAsGauge() {
+        AtomicLong clock = new AtomicLong();
+        PipelineMetrics metrics = new PipelineMetrics();
+        PipelineStage stage = new PipelineStage("encode", 1, metrics, clock::get);
+        try {
+            long start = stage.now();
+            clock.addAndGet(50 * MILLIS);
+            assertEquals(0L, stage.utilizationPercent());
+
+            clock.addAndGet(50 * MILLIS);
+            stage.recordBusySince(start);
+
+            @SuppressWarnings("unchecked")
+            Map<String, Long> gauges = (Map<String, Long>) metrics.snapshot().get("gauges");
+            assertEquals(100L, gauges.get("encode-utilization-pct"));
+        } finally {
+            stage.dispose();
+        }
+    }
+
+    @Test
+    void constructor_NonPositiveThreads_Rejected() {
+        assertThrows(IllegalArgumentException.class, () -> new PipelineStage("intake", 0, new PipelineMetrics()));
+    }
+}
@@ -0,0 +1,210 @@
+package com.weilai.portfolio.service;
+
+import com.weilai.portfolio.entity.ExerciseStyle;
+import com.weilai.portfolio.entity.MarketData;
+import com.weilai.portfolio.entity.Position;
+import com.weilai.portfolio.entity.Security;
+import com.weilai.portfolio.entity.SecurityType;
+import com.weilai.portfolio.infrastructure.metrics.PipelineMetrics;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScenarioEngineTest {
+
+    private static final String[] UNDERLYINGS = {"AAPL", "MSFT", "TELSA"};
+    private static final int MULTIPLIER = 100;
+
+    private final BlackScholesPricingService pricingService = pricingService();
+    private final AmericanOptionPricingService american =
+            new AmericanOptionPricingService(AmericanOptionPricingService.Model.BAW, 200, 4096);
+    private final List<Security> securities = new ArrayList<>();
+    private final List<Position> positions = new ArrayList<>();
+    private final Map<String, MarketData> prices = new HashMap<>();
+
+    private static BlackScholesPricingService pricingService() {
+        BlackScholesPricingService service = new BlackScholesPricingService();
+        ReflectionTestUtils.setField(service, "riskFreeRate", 0.02);
+        return service;
+    }
+
+    private void book(int optionsPerUnderlying) {
+        SplittableRandom random = new SplittableRandom(7);
+        for (String underlying : UNDERLYINGS) {
+            securities.add(new Security(null, underlying, SecurityType.STOCK, null, null, null, null));
+            positions.add(new Position(underlying, random.nextInt(-500, 500), null, null));
+            for (int k = 0; k < optionsPerUnderlying; k++) {
+                String ticker = underlying + "-" + k;
+                SecurityType type = k % 2 == 0 ? SecurityType.CALL : SecurityType.PUT;
+                securities.add(new Security(null, ticker, type, BigDecimal.valueOf(80 + random.nextInt(40)),
+                        LocalDate.now().plusDays(random.nextInt(300)), underlying,
+                        k % 3 == 0 ? ExerciseStyle.AMERICAN : null));
+                positions.add(new Position(ticker, random.nextInt(-50, 50), null, null));
+            }
+            prices.put(underlying, new MarketData(underlying,
+                    BigDecimal.valueOf(60 + random.nextDouble() * 80).setScale(2, RoundingMode.HALF_UP), 0L));
+        }
+        positions.add(new Position("UNKNOWN", 1000, null, null));
+    }
+
+    private ExposureAggregator aggregator() {
+        ExposureAggregator aggregator = new ExposureAggregator(pricingService, MULTIPLIER, new PipelineMetrics());
+        Map<String, Security> byTicker = new HashMap<>();
+        for (Security security : securities) {
+            byTicker.put(security.getTicker(), security);
+        }
+        Position[] book = positions.toArray(new Position[0]);
+        aggregator.load(book, ResolvedBook.resolve(book, byTicker));
+        aggregator.update(prices);
+        return aggregator;
+    }
+
+    // 按估值流水线的方式逐笔计算当前净值
+    private BigDecimal liveNav() {
+        Map<String, Security> byTicker = new HashMap<>();
+        for (Security security : securities) {
+            byTicker.put(security.getTicker(), security);
+        }
+        FixedPointAccumulator nav = new FixedPointAccumulator(ValuationSnapshot.SCALE);
+        for (Position position : positions) {
+            Security security = byTicker.get(position.getTicker());
+            if (security == null) {
+                continue;
+            }
+            if (security.getSecurityType() == SecurityType.STOCK) {
+                long price = FixedPointAccumulator.toUnscaled(prices.get(security.getTicker()).getPrice(), ValuationSnapshot.SCALE);
+                nav.addUnscaled(price * position.getQuantity());
+                continue;
+            }
+            BigDecimal spot = prices.get(security.getUnderlyingTicker()).getPrice();
+            double T = pricingService.timeToMaturity(security.getMaturityDate(), LocalDate.now());
+            double sigma = pricingService.getUnderlyingSigma(security.getUnderlyingTicker());
+            BigDecimal optionPrice = security.getExerciseStyle() == ExerciseStyle.AMERICAN
+                    ? american.calculate(security.getSecurityType(), spot, security.getStrikePrice(), T,
+                            pricingService.getRiskFreeRate(), sigma)
+                    : pricingService.calculate(security.getSecurityType(), spot, security.getStrikePrice(), T,
+                            pricingService.getRiskFreeRate(), sigma);
+            nav.addUnscaled(FixedPointAccumulator.toUnscaled(optionPrice, ValuationSnapshot.SCALE)
+                    * position.getQuantity() * MULTIPLIER);
+        }
+        return nav.toBigDecimal();
+    }
+
+    private static ScenarioGrid grid(List<Double> spotShocks, List<Double> volShocks, List<Integer> dayShifts) {
+        ScenarioGrid grid = new ScenarioGrid();
+        grid.setSpotShocks(spotShocks);
+        grid.setVolShocks(volShocks);
+        grid.setDayShifts(dayShifts);
+        return grid;
+    }
+
+    /**
+     * 不加冲击的情景与按估值流水线逐笔计算的净值逐位一致
+     */
+    @Test
+    void baseScenario_SameAsLiveValuation() {
+        book(200);
+        ScenarioEngine engine = new ScenarioEngine(aggregator(), pricingService, american, 2, 64, 100);
+        List<ScenarioResult> results = engine.run(new ScenarioGrid()).collectList().block();
+        engine.shutdown();
+
+        assertEquals(1, results.size());
+        assertEquals(liveNav(), results.get(0).getNav());
+        assertEquals(0, results.get(0).getPnl().signum());
+    }
+
+    /**
+     * 网格按 时间 → 波动率 → 现价 的顺序返回，结果与线程数、分块大小无关
+     */
+    @Test
+    void grid_SameResultsForAnyParallelism() {
+        book(100);
+        ScenarioGrid grid = grid(Arrays.asList(-0.2, -0.1, 0.0, 0.1, 0.2), Arrays.asList(-0.05, 0.0, 0.05),
+                Arrays.asList(0, 30));
+        ScenarioEngine single = new ScenarioEngine(aggregator(), pricingService, american, 1, 1000, 100);
+        ScenarioEngine parallel = new ScenarioEngine(aggregator(), pricingService, american, 4, 7, 100);
+        List<ScenarioResult> expected = single.run(grid).collectList().block();
+        List<ScenarioResult> actual = parallel.run(grid).collectList().block();
+        single.shutdown();
+        parallel.shutdown();
+
+        assertEquals(30, expected.size());
+        assertEquals(expected.toString(), actual.toString());
+        ScenarioResult first = expected.get(0);
+        assertEquals(-0.2, first.getSpotShock());
+        assertEquals(-0.05, first.getVolShock());
+        assertEquals(0, first.getDayShift());
+        ScenarioResult unshocked = expected.get(7);
+        assertEquals(0.0, unshocked.getSpotShock());
+        assertEquals(0.0, unshocked.getVolShock());
+        assertEquals(liveNav(), unshocked.getNav());
+        assertEquals(30, expected.get(29).getDayShift());
+    }
+
+    /**
+     * 多头看涨期权：净值随现价与波动率上升；各标的分别冲击的盈亏之和等于同时冲击
+     */
+    @Test
+    void longCalls_MonotoneInSpotAndVol_OnlySelectedUnderlyingShocked() {
+        for (String underlying : UNDERLYINGS) {
+            securities.add(new Security(null, underlying + "-C", SecurityType.CALL, BigDecimal.valueOf(100),
+                    LocalDate.now().plusDays(180), underlying, null));
+            positions.add(new Position(underlying + "-C", 10, null, null));
+            prices.put(underlying, new MarketData(underlying, BigDecimal.valueOf(100), 0L));
+        }
+        ScenarioEngine engine = new ScenarioEngine(aggregator(), pricingService, american, 2, 1, 100);
+        List<ScenarioResult> results = engine.run(grid(Arrays.asList(-0.1, 0.0, 0.1),
+                Arrays.asList(0.0, 0.05), null)).collectList().block();
+        assertTrue(results.get(0).getNav().compareTo(results.get(1).getNav()) < 0);
+        assertTrue(results.get(1).getNav().compareTo(results.get(2).getNav()) < 0);
+        for (int s = 0; s < 3; s++) {
+            assertTrue(results.get(s).getNav().compareTo(results.get(3 + s).getNav()) < 0);
+        }
+
+        // 分别只冲击各个标的的盈亏之和等于同时冲击全部标的
+        BigDecimal sum = BigDecimal.ZERO;
+        for (String underlying : UNDERLYINGS) {
+            ScenarioGrid single = grid(Collections.singletonList(-0.1), null, null);
+            single.setUnderlyings(Collections.singletonList(underlying));
+            BigDecimal pnl = engine.run(single).blockFirst().getPnl();
+            assertTrue(pnl.signum() < 0, underlying);
+            sum = sum.add(pnl);
+        }
+        BigDecimal allPnl = engine.run(grid(Collections.singletonList(-0.1), null, null)).blockFirst().getPnl();
+        engine.shutdown();
+        assertEquals(0, sum.compareTo(allPnl));
+    }
+
+    /**
+     * 无效网格与超过上限的网格以 IllegalArgumentException 结束，持仓簿尚未载入时以 IllegalStateException 结束
+     */
+    @Test
+    void invalidGrid_Rejected() {
+        book(1);
+        ScenarioEngine engine = new ScenarioEngine(aggregator(), pricingService, american, 1, 16, 10);
+        assertThrows(IllegalArgumentException.class, () -> engine.run(grid(Collections.singletonList(-1.0), null, null))
+                .collectList().block());
+        assertThrows(IllegalArgumentException.class, () -> engine.run(grid(null, null, Collections.singletonList(-1)))
+                .collectList().block());
+        assertThrows(IllegalArgumentException.class, () -> engine.run(grid(Arrays.asList(-0.1, 0.0, 0.1),
+                Arrays.asList(0.0, 0.1), Arrays.asList(0, 1))).collectList().block());
+        engine.shutdown();
+
+        ExposureAggregator empty = new ExposureAggregator(pricingService, MULTIPLIER, new PipelineMetrics());
+        ScenarioEngine notLoaded = new ScenarioEngine(empty, pricingService, american, 1, 16, 10);
+        assertThrows(IllegalStateException.class, () -> notLoaded.run(new ScenarioGrid()).collectList().block());
+        notLoaded.shutdown();
+    }
+}
@@ -0,0 +1,190 @@
+package com.weilai.portfolio.service;
+
+import com.weilai.portfolio.entity.ExerciseStyle;
+import com.weilai.portfolio.entity.Security;
+import com.weilai.portfolio.entity.SecurityType;
+import com.weilai.portfolio.infrastructure.reader.SecurityFileReader;
+import com.weilai.portfolio.repository.SecurityCache;
+import io.r2dbc.spi.ConnectionFactories;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SecurityMasterLoaderTest {
+
+    private static final String DDL = "CREATE TABLE security (\n"
+            + "    id BIGINT AUTO_INCREMENT PRIMARY KEY,\n"
+            + "    ticker VARCHAR(50) UNIQUE NOT NULL,\n"
+            + "    security_type VARCHAR(20) NOT NULL CHECK (security_type IN ('STOCK', 'CALL', 'PUT')),\n"
+            + "    strike_price DECIMAL(18,2),\n"
+            + "    maturity_date DATE,\n"
+            + "    underlying_ticker VARCHAR(50),\n"
+            + "    exercise_style VARCHAR(20) CHECK (exercise_style IN ('EUROPEAN', 'AMERICAN'))\n"
+            + ")";
+
+    @TempDir
+    Path dir;
+
+    private DatabaseClient databaseClient;
+    private final SecurityCache cache = new SecurityCache();
+
+    @BeforeEach
+    void createTable() {
+        databaseClient = DatabaseClient.create(ConnectionFactories.get(
+                "r2dbc:h2:mem:///security-master-" + UUID.randomUUID() + "?DB_CLOSE_DELAY=-1"));
+        databaseClient.sql(DDL).then().block();
+    }
+
+    private SecurityMasterLoader loader(int batchSize, int concurrency) {
+        return new SecurityMasterLoader(new SecurityFileReader(new DefaultResourceLoader()), cache, databaseClient,
+                "", SecurityMasterLoader.Target.DATABASE, batchSize, concurrency);
+    }
+
+    // 每个标的 1 只股票 + chains 个到期日 × 3 个行权价 × 看涨 / 看跌
+    private String writeFile(String name, int underlyings, int chains, String... extraLines) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add("ticker,securityType,strikePrice,maturityDate,underlyingTicker,exerciseStyle");
+        for (int u = 0; u < underlyings; u++) {
+            String underlying = "U" + u;
+            lines.add(underlying + ",STOCK,,," + underlying + ",");
+            for (int c = 0; c < chains; c++) {
+                LocalDate maturity = LocalDate.of(2027, 1, 15).plusMonths(c);
+                for (int strike = 90; strike <= 110; strike += 10) {
+                    lines.add(underlying + "-" + maturity + "-" + strike + "-C,CALL," + strike + ".00,"
+                            + maturity + "," + underlying + ",EUROPEAN");
+                    lines.add(underlying + "-" + maturity + "-" + strike + "-P,PUT," + strike + ".50,"
+                            + maturity + "," + underlying + ",AMERICAN");
+                }
+            }
+        }
+        lines.addAll(Arrays.asList(extraLines));
+        Path file = dir.resolve(name);
+        Files.write(file, lines, StandardCharsets.UTF_8);
+        return file.toUri().toString();
+    }
+
+    private Map<String, Security> table() {
+        Map<String, Security> rows = new HashMap<>();
+        databaseClient.sql("SELECT * FROM security")
+                .map(row -> new Security(row.get("id", Long.class), row.get("ticker", String.class),
+                        SecurityType.valueOf(row.get("security_type", String.class)),
+                        row.get("strike_price", BigDecimal.class), row.get("maturity_date", LocalDate.class),
+                        row.get("underlying_ticker", String.class),
+                        row.get("exercise_style", String.class) == null ? null
+                                : ExerciseStyle.valueOf(row.get("exercise_style", String.class))))
+                .all()
+                .doOnNext(security -> rows.put(security.getTicker(), security))
+                .blockLast();
+        return rows;
+    }
+
+    /**
+     * 分批写入证券表：跳过表头、空行与列数不符的行；重复加载按 ticker 更新，不新增行
+     */
+    @Test
+    void database_LoadsAllRowsInBatches() throws IOException {
+        String file = writeFile("securities.csv", 7, 4, "", "BROKEN,CALL,100");
+        SecurityMasterLoader loader = loader(10, 3);
+
+        assertEquals(7L * (1 + 4 * 6), loader.load(file, SecurityMasterLoader.Target.DATABASE).block());
+        Map<String, Security> rows = table();
+        assertEquals(7 * (1 + 4 * 6), rows.size());
+        assertFalse(rows.containsKey("BROKEN"));
+        assertEquals(0, cache.size());
+
+        Security stock = rows.get("U3");
+        assertEquals(SecurityType.STOCK, stock.getSecurityType());
+        assertNull(stock.getStrikePrice());
+        assertNull(stock.getMaturityDate());
+        assertNull(stock.getExerciseStyle());
+        assertEquals("U3", stock.getUnderlyingTicker());
+        Security put = rows.get("U3-2027-03-15-110-P");
+        assertEquals(SecurityType.PUT, put.getSecurityType());
+        assertEquals(0, new BigDecimal("110.50").compareTo(put.getStrikePrice()));
+        assertEquals(LocalDate.of(2027, 3, 15), put.getMaturityDate());
+        assertEquals("U3", put.getUnderlyingTicker());
+        assertEquals(ExerciseStyle.AMERICAN, put.getExerciseStyle());
+
+        String update = writeFile("update.csv", 0, 0, "U3-2027-03-15-110-P,PUT,111.00,2027-03-15,U3,");
+        assertEquals(1L, loader.load(update, SecurityMasterLoader.Target.DATABASE).block());
+        rows = table();
+        assertEquals(7 * (1 + 4 * 6), rows.size());
+        assertEquals(put.getId(), rows.get("U3-2027-03-15-110-P").getId());
+        assertEquals(0, new BigDecimal("111.00").compareTo(rows.get("U3-2027-03-15-110-P").getStrikePrice()));
+        assertNull(rows.get("U3-2027-03-15-110-P").getExerciseStyle());
+    }
+
+    /**
+     * CACHE 模式不写数据库；同一标的、到期日、行权价的字段复用同一个对象
+     */
+    @Test
+    void cache_SkipsDatabaseAndSharesRepeatedFields() throws IOException {
+        String file = writeFile("securities.csv", 3, 2);
+
+        assertEquals(3L * (1 + 2 * 6), loader(10, 3).load(file, SecurityMasterLoader.Target.CACHE).block());
+        assertEquals(3 * (1 + 2 * 6), cache.size());
+        assertTrue(table().isEmpty());
+
+        Security call = cache.get("U1-2027-02-15-90-C");
+        Security put = cache.get("U1-2027-02-15-100-P");
+        assertEquals(SecurityType.CALL, call.getSecurityType());
+        assertEquals(ExerciseStyle.EUROPEAN, call.getExerciseStyle());
+        assertSame(call.getUnderlyingTicker(), put.getUnderlyingTicker());
+        assertSame(call.getMaturityDate(), put.getMaturityDate());
+        assertSame(call.getStrikePrice(), cache.get("U2-2027-01-15-90-C").getStrikePrice());
+    }
+
+    @Test
+    void invalidValue_FailsWithLineNumber() throws IOException {
+        String file = writeFile("securities.csv", 1, 1, "BAD,FUTURE,100,2027-01-15,U0,");
+
+        IllegalArgumentException error = assertThrows(IllegalArgumentException.class,
+                () -> loader(10, 1).load(file, SecurityMasterLoader.Target.CACHE).block());
+        assertTrue(error.getMessage().contains("第 9 行"), error.getMessage());
+    }
+
+    /**
+     * 上游只按批次请求数据：单次请求不超过 concurrency 批，已读取而未写完的行不超过 (concurrency + 1) 批
+     */
+    @Test
+    void database_AppliesBackpressureToSource() {
+        int batchSize = 50;
+        int concurrency = 2;
+        AtomicLong produced = new AtomicLong();
+        AtomicLong maxRequest = new AtomicLong();
+        AtomicLong maxAhead = new AtomicLong();
+        Flux<Security> source = Flux.range(0, 5000)
+                .doOnRequest(n -> maxRequest.accumulateAndGet(n, Math::max))
+                .map(i -> new Security(null, "T" + i, SecurityType.STOCK, null, null, "T" + i, null))
+                .doOnNext(security -> maxAhead.accumulateAndGet(produced.incrementAndGet() - countRows(), Math::max));
+
+        assertEquals(5000L, loader(batchSize, concurrency).loadIntoDatabase(source).block());
+        assertEquals(5000L, countRows());
+        assertTrue(maxRequest.get() <= (long) batchSize * concurrency, "request " + maxRequest.get());
+        assertTrue(maxAhead.get() <= (long) batchSize * (concurrency + 1), "ahead " + maxAhead.get());
+    }
+
+    private long countRows() {
+        return databaseClient.sql("SELECT COUNT(*) AS n FROM security")
+                .map(row -> row.get("n", Long.class)).one().block();
+    }
+}
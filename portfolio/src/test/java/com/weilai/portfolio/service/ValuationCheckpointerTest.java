@@ -0,0 +1,81 @@
+package com.weilai.portfolio.service;
+
+import com.weilai.portfolio.entity.MarketData;
+import com.weilai.portfolio.infrastructure.checkpoint.ValuationCheckpoint;
+import com.weilai.portfolio.infrastructure.marketdata.strategy.GBMPricingStrategy;
+import com.weilai.portfolio.infrastructure.metrics.PipelineMetrics;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ValuationCheckpointerTest {
+
+    @TempDir
+    Path dir;
+
+    private ValuationCheckpointer checkpointer(GBMPricingStrategy strategy, String file) {
+        return new ValuationCheckpointer(strategy, new PipelineMetrics(), file, 1000);
+    }
+
+    private static Map<String, MarketData> prices(BigDecimal aapl) {
+        Map<String, MarketData> prices = new HashMap<>();
+        prices.put("AAPL", new MarketData("AAPL", aapl, 1L));
+        return prices;
+    }
+
+    /**
+     * 只在有新估值时写入；重启后序号、NAV、价格与定价策略的状态均从检查点继续
+     */
+    @Test
+    void restore_ResumesPricesAndSequence() {
+        String file = dir.resolve("portfolio.ckpt").toString();
+        GBMPricingStrategy before = new GBMPricingStrategy();
+        before.restoreState(prices(new BigDecimal("123.45")));
+        ValuationCheckpointer first = checkpointer(before, file);
+
+        assertFalse(first.checkpoint());
+        first.record(57, 1000L, new BigDecimal("98765.43"), prices(new BigDecimal("123.40")));
+        assertTrue(first.checkpoint());
+        assertFalse(first.checkpoint());
+
+        GBMPricingStrategy after = new GBMPricingStrategy();
+        ValuationCheckpoint checkpoint = checkpointer(after, file).restore();
+        assertEquals(57, checkpoint.getUpdateCount());
+        assertEquals(new BigDecimal("98765.43"), checkpoint.getTotalNav());
+        assertEquals(new BigDecimal("123.40"), checkpoint.getPrices().get("AAPL").getPrice());
+        assertEquals(new BigDecimal("123.45"), after.snapshotState().get("AAPL").getPrice());
+        // 恢复的时间为恢复时刻，第一步不会因停机时长而跳变
+        assertTrue(after.snapshotState().get("AAPL").getTimestamp() > 1L);
+        BigDecimal next = after.generatePrice("AAPL");
+        assertEquals(123.45, next.doubleValue(), 1.0);
+    }
+
+    @Test
+    void disabled_NeitherReadsNorWrites() throws Exception {
+        ValuationCheckpointer disabled = checkpointer(new GBMPricingStrategy(), " ");
+        assertFalse(disabled.isEnabled());
+        assertNull(disabled.restore());
+        disabled.record(1, 1L, BigDecimal.ONE, prices(BigDecimal.ONE));
+        assertFalse(disabled.checkpoint());
+        disabled.start();
+        disabled.stop();
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void restore_WithoutFile_StartsCold() {
+        GBMPricingStrategy strategy = new GBMPricingStrategy();
+        assertNull(checkpointer(strategy, dir.resolve("missing.ckpt").toString()).restore());
+        assertTrue(strategy.snapshotState().isEmpty());
+    }
+}
@@ -0,0 +1,115 @@
+package com.weilai.portfolio.service;
+
+import com.weilai.portfolio.entity.Position;
+import com.weilai.portfolio.infrastructure.metrics.PipelineMetrics;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ValuationSendQueueTest {
+
+    private static ValuationSnapshotPool pool(int slots) {
+        Position[] positions = {new Position("AAPL", 10, null, null)};
+        return new ValuationSnapshotPool(positions, slots, new LongAdder());
+    }
+
+    // 模拟估值线程：取槽位、写入、入队、释放自己的引用
+    private static void publish(ValuationSnapshotPool pool, ValuationSendQueue queue, int updateCount) {
+        ValuationSnapshot snapshot = pool.acquire();
+        snapshot.setPosition(0, updateCount * 10_000L, updateCount * 100_000L);
+        snapshot.complete(BigDecimal.valueOf(updateCount * 10L), 1000L, updateCount, Collections.emptyMap(), 900L,
+                Collections.emptyList());
+        queue.offer(new EncodedValuation(snapshot, null));
+        snapshot.release();
+    }
+
+    private static List<Integer> sendAll(ValuationSendQueue queue, int expected) throws InterruptedException {
+        List<Integer> sent = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch latch = new CountDownLatch(expected);
+        queue.start(encoded -> {
+            sent.add(encoded.getSnapshot().getUpdateCount());
+            latch.countDown();
+        });
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        return sent;
+    }
+
+    /**
+     * DROP_OLDEST：队列满时丢弃最旧的估值，其余按入队顺序发送；被丢弃的槽位回到池中
+     */
+    @Test
+    void offer_DropOldest_KeepsNewestInOrder() throws InterruptedException {
+        PipelineMetrics metrics = new PipelineMetrics();
+        ValuationSendQueue queue = new ValuationSendQueue(3, ValuationSendQueue.OverflowPolicy.DROP_OLDEST, metrics);
+        ValuationSnapshotPool pool = pool(queue.getCapacity() + 2);
+        for (int i = 1; i <= 5; i++) {
+            publish(pool, queue, i);
+        }
+        assertEquals(3, queue.size());
+        assertEquals(2L, metrics.counter("send-dropped").sum());
+        assertEquals(2, pool.available());
+
+        assertEquals(Arrays.asList(3, 4, 5), sendAll(queue, 3));
+        queue.shutdown();
+    }
+
+    /**
+     * LATEST：只保留最新一条
+     */
+    @Test
+    void offer_Latest_KeepsOnlyNewest() throws InterruptedException {
+        PipelineMetrics metrics = new PipelineMetrics();
+        ValuationSendQueue queue = new ValuationSendQueue(8, ValuationSendQueue.OverflowPolicy.LATEST, metrics);
+        ValuationSnapshotPool pool = pool(queue.getCapacity() + 2);
+        for (int i = 1; i <= 5; i++) {
+            publish(pool, queue, i);
+        }
+        assertEquals(1, queue.size());
+        assertEquals(4L, metrics.counter("send-dropped").sum());
+
+        assertEquals(Collections.singletonList(5), sendAll(queue, 1));
+        queue.shutdown();
+    }
+
+    /**
+     * 排队中的快照不会被后续估值复用；发送完成后槽位才回到池中
+     */
+    @Test
+    void offer_QueuedSnapshot_NotReusedUntilSent() throws InterruptedException {
+        ValuationSendQueue queue = new ValuationSendQueue(4, ValuationSendQueue.OverflowPolicy.BLOCK,
+                new PipelineMetrics());
+        ValuationSnapshotPool pool = pool(2);
+        publish(pool, queue, 1);
+        assertEquals(1, pool.available());
+
+        // 下一次估值只能拿到另一个槽位，写入不影响排队中的快照
+        ValuationSnapshot next = pool.acquire();
+        next.setPosition(0, 990_000L, 9_900_000L);
+        assertEquals(0, pool.available());
+
+        List<BigDecimal> prices = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch latch = new CountDownLatch(1);
+        queue.start(encoded -> {
+            prices.add(encoded.getSnapshot().getPrice(0));
+            latch.countDown();
+        });
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(0, new BigDecimal("1.0000").compareTo(prices.get(0)));
+
+        next.release();
+        for (int i = 0; i < 50 && pool.available() < 2; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, pool.available());
+        queue.shutdown();
+    }
+}
@@ -0,0 +1,155 @@
+package com.weilai.portfolio.service;
+
+import com.weilai.portfolio.entity.Position;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ValuationSnapshotPoolTest {
+    private final LongAdder waitCounter = new LongAdder();
+
+    private ValuationSnapshotPool pool(int slots) {
+        Position[] positions = {new Position("AAPL", 10, null, null), new Position("TELSA", -5, null, null)};
+        return new ValuationSnapshotPool(positions, slots, waitCounter);
+    }
+
+    /**
+     * 至少两个槽位（双缓冲）
+     */
+    @Test
+    void constructor_FewerThanTwoSlots_Rejected() {
+        assertThrows(IllegalArgumentException.class, () -> pool(1));
+    }
+
+    /**
+     * 被 retain 的快照在最后一个持有方 release 之前不会回到池中被复用
+     */
+    @Test
+    void release_Retained_NotReusedUntilLastRelease() {
+        ValuationSnapshotPool pool = pool(2);
+        ValuationSnapshot sending = pool.acquire();
+        sending.retain();
+        sending.release();
+        assertEquals(1, sending.refCount());
+        assertEquals(1, pool.available());
+
+        ValuationSnapshot next = pool.acquire();
+        assertNotSame(sending, next);
+        assertEquals(0, pool.available());
+
+        sending.release();
+        assertEquals(0, sending.refCount());
+        assertEquals(1, pool.available());
+        assertSame(sending, pool.acquire());
+        assertEquals(1, sending.refCount());
+    }
+
+    /**
+     * 槽位全部被占用时 acquire 阻塞并计数，有快照释放后立即取得该槽位
+     */
+    @Test
+    void acquire_PoolExhausted_BlocksUntilRelease() throws Exception {
+        ValuationSnapshotPool pool = pool(2);
+        ValuationSnapshot first = pool.acquire();
+        pool.acquire();
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<ValuationSnapshot> waiting = executor.submit(pool::acquire);
+            assertThrows(TimeoutException.class, () -> waiting.get(100, TimeUnit.MILLISECONDS));
+            assertEquals(1L, waitCounter.sum());
+
+            first.release();
+            assertSame(first, waiting.get(5, TimeUnit.SECONDS));
+            assertEquals(1, first.refCount());
+            assertEquals(0, pool.available());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 等待槽位时被中断：抛出异常并保留中断状态
+     */
+    @Test
+    void acquire_InterruptedWhileWaiting_Throws() {
+        ValuationSnapshotPool pool = pool(2);
+        pool.acquire();
+        pool.acquire();
+
+        Thread.currentThread().interrupt();
+        try {
+            assertThrows(IllegalStateException.class, pool::acquire);
+            assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    /**
+     * 多余的 release 被拒绝，引用计数保持为0，槽位不会被重复放回池中；已回收的快照不能再 retain
+     */
+    @Test
+    void release_TooManyTimes_RefCountNeverNegative() {
+        ValuationSnapshotPool pool = pool(2);
+        ValuationSnapshot snapshot = pool.acquire();
+        snapshot.release();
+
+        assertThrows(IllegalStateException.class, snapshot::release);
+        assertEquals(0, snapshot.refCount());
+        assertEquals(2, pool.available());
+
+        assertThrows(IllegalStateException.class, snapshot::retain);
+        assertEquals(0, snapshot.refCount());
+        assertEquals(2, pool.available());
+    }
+
+    /**
+     * 多线程并发 retain/release：引用计数不丢失，最后一次 release 恰好回收一次
+     */
+    @Test
+    void retainRelease_Concurrent_RecycledExactlyOnce() throws Exception {
+        ValuationSnapshotPool pool = pool(2);
+        ValuationSnapshot snapshot = pool.acquire();
+        int threads = 4;
+        int rounds = 10_000;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < rounds; i++) {
+                        snapshot.retain();
+                        assertTrue(snapshot.refCount() > 1);
+                        snapshot.release();
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, snapshot.refCount());
+        assertEquals(1, pool.available());
+        snapshot.release();
+        assertEquals(0, snapshot.refCount());
+        assertEquals(2, pool.available());
+    }
+}
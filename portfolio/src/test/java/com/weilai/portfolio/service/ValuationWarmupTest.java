@@ -0,0 +1,86 @@
+package com.weilai.portfolio.service;
+
+import com.weilai.portfolio.entity.MarketData;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ValuationWarmupTest {
+
+    private static ValuationWarmup warmup(boolean enabled, int min, int max, int window, double tolerance) {
+        return new ValuationWarmup(null, enabled, min, max, window, tolerance, 30_000L);
+    }
+
+    private static final class RecordingTarget implements ValuationWarmup.Target {
+        private final List<Map<String, MarketData>> ticks = new ArrayList<>();
+        private final List<Integer> iterations = new ArrayList<>();
+
+        @Override
+        public Collection<String> underlyings() {
+            return Arrays.asList("AAPL", "TELSA");
+        }
+
+        @Override
+        public int valueOnce(int iteration, Map<String, MarketData> prices) {
+            iterations.add(iteration);
+            ticks.add(prices);
+            return 1;
+        }
+    }
+
+    /**
+     * 每次估值都有全部标的的合成价格（正数、与上一次不同），估值序号从 1 递增；未达到 min-iterations 前不会提前停止
+     */
+    @Test
+    void run_FeedsSyntheticTicksUpToMaxIterations() {
+        RecordingTarget target = new RecordingTarget();
+        assertEquals(30, warmup(true, 30, 30, 10, 0.05).run(target));
+
+        assertEquals(30, target.ticks.size());
+        assertEquals(Integer.valueOf(1), target.iterations.get(0));
+        assertEquals(Integer.valueOf(30), target.iterations.get(29));
+        for (int i = 0; i < target.ticks.size(); i++) {
+            Map<String, MarketData> prices = target.ticks.get(i);
+            assertEquals(2, prices.size());
+            BigDecimal price = prices.get("AAPL").getPrice();
+            assertTrue(price.signum() > 0);
+            if (i > 0) {
+                assertNotEquals(target.ticks.get(i - 1).get("AAPL").getPrice(), price);
+            }
+        }
+    }
+
+    @Test
+    void run_Disabled_DoesNothing() {
+        assertEquals(0, warmup(false, 10, 100, 10, 0.05).run());
+    }
+
+    @Test
+    void stabilizer_StableOnceAdjacentWindowMediansAgreeAfterMinIterations() {
+        ValuationWarmup.Stabilizer stabilizer = new ValuationWarmup.Stabilizer(4, 0.05, 13);
+        long[] compiling = {900, 1000, 800, 1100};   // 解释执行
+        long[] compiled = {100, 90, 5000, 110};      // 已编译，偶有停顿（中位数不受影响）
+        for (long nanos : compiling) {
+            assertFalse(stabilizer.record(nanos));
+        }
+        for (long nanos : compiled) {
+            assertFalse(stabilizer.record(nanos));
+        }
+        // 与上一窗口一致，但尚未达到最少次数
+        for (long nanos : compiled) {
+            assertFalse(stabilizer.record(nanos));
+        }
+        for (int i = 0; i < 3; i++) {
+            assertFalse(stabilizer.record(compiled[i]));
+        }
+        assertTrue(stabilizer.record(compiled[3]));
+        assertEquals(110, stabilizer.lastMedian());
+    }
+}